@@ -10,6 +10,9 @@ import MascotConf._
 import breeze.linalg._
 import edu.gemini.spModel.core.MagnitudeBand
 
+import scala.collection.parallel.ForkJoinTaskSupport
+import scala.concurrent.forkjoin.ForkJoinPool
+
 import scalaz._
 import Scalaz._
 
@@ -59,62 +62,73 @@ object Mascot {
     }
   }
 
+  // Pool used to compute the strehl of several asterisms at once
+  private lazy val taskSupport = new ForkJoinTaskSupport(new ForkJoinPool(Runtime.getRuntime.availableProcessors))
+
+  // Number of asterisms computed in parallel between calls to the progress callback
+  private lazy val chunkSize = 2 * Runtime.getRuntime.availableProcessors
+
   /**
    * Finds the best asterisms for the given list of stars.
+   * The asterisms are computed in parallel, in chunks of a few asterisms at a time. The progress callback is always
+   * called from the calling thread, in the same order as the asterisms would be computed serially, so it can still
+   * cancel the calculations by throwing an exception.
    * @param starList unfiltered list of stars from a catalog query
    * @param bandpass determines which magnitudes are used in the calculations: (one of "B", "V", "R", "J", "H", "K")
    * @param factor multiply strehl min, max and average by this value (depends on instrument filter: See REL-426)
-   * @param filter a filter function that returns false if the Star should be excluded
    * @param progress a function(strehl, count, total) called for each asterism as it is calculated
+   * @param filter a filter function that returns false if the Star should be excluded
+   * @param parallel if false the asterisms are computed one after the other in the calling thread
    * @return a tuple: (list of stars actually used, list of asterisms found)
    */
   def findBestAsterism(starList: List[Star],
                        bandpass: MagnitudeBand = defaultBandpass,
                        factor: Double = defaultFactor,
                        progress: (Strehl, Int, Int) => Unit = defaultProgress,
-                       filter: Star => Boolean = defaultFilter)
+                       filter: Star => Boolean = defaultFilter,
+                       parallel: Boolean = true)
   : (List[Star], List[Strehl]) = {
     // sort by selected mag and select
     val sortedStarList = starList.sortWith((s1,s2) => s1.target.magnitudeIn(bandpass) < s2.target.magnitudeIn(bandpass))
     val filteredStarList = selectStarsOnMag(sortedStarList, bandpass).filter(filter)
 
     val ns = filteredStarList.length
-    var count = 0
     val trips = AllPairsAndTriples.allTrips(filteredStarList)
     val pairs = AllPairsAndTriples.allPairs(filteredStarList)
     val total = trips.length + pairs.length + ns
-    var result = List[Strehl]()
 
     Log.info(s"Mascot.findBestAsterism: input stars: $ns, total asterisms: $total")
 
-    if (ns >= 3) {
-      for ((n1, n2, n3) <- trips) {
-        count += 1
-        computeStrehl(bandpass, factor, n1, n2.some, n3.some).foreach { s =>
-          progress(s, count, total)
-          result = s :: result
-        }
-      }
-    }
-
-    if (ns >= 2) {
-      for ((n1, n2) <- pairs) {
-        count += 1
-        computeStrehl(bandpass, factor, n1, n2.some).foreach { s =>
-          progress(s, count, total)
-          result = s :: result
+    // No point in the field is close enough to all three stars of a triple if any two of them are too far apart, and
+    // checking the pairs is much cheaper than checking the triples, so triples are pruned on their pairs first.
+    val fits = pairs.filter { case (n1, n2) => doesItFit(n1, n2) }.toSet
+    def tripleFits(n1: Star, n2: Star, n3: Star) = fits((n1, n2)) && fits((n1, n3)) && fits((n2, n3))
+
+    // Asterisms in order, None for the pruned ones
+    val asterisms = (trips.map { case (n1, n2, n3) => tripleFits(n1, n2, n3).option(List(n1, n2, n3)) } ++
+                     pairs.map { case (n1, n2) => List(n1, n2).some } ++
+                     filteredStarList.map(n1 => List(n1).some)).toVector
+
+    def compute(a: Option[List[Star]]): Option[Strehl] =
+      a.flatMap(stars => computeStrehl(bandpass, factor, stars.head, stars.lift(1), stars.lift(2)))
+
+    def computeChunk(chunk: Vector[Option[List[Star]]]): Vector[Option[Strehl]] =
+      if (parallel && chunk.size > 1) {
+        val p = chunk.par
+        p.tasksupport = taskSupport
+        p.map(compute).seq
+      } else chunk.map(compute)
+
+    val size = if (parallel) chunkSize else 1
+    val result = asterisms.grouped(size).zipWithIndex.foldLeft(List[Strehl]()) {
+      case (res, (chunk, i)) =>
+        computeChunk(chunk).zipWithIndex.foldLeft(res) {
+          case (r, (Some(s), j)) =>
+            progress(s, i * size + j + 1, total)
+            s :: r
+          case (r, _)            =>
+            r
         }
-      }
-    }
-
-    if (ns >= 1) {
-      for (n1 <- filteredStarList) {
-        count += 1
-        computeStrehl(bandpass, factor, n1).foreach { s =>
-          progress(s, count, total)
-          result = s :: result
-        }
-      }
     }
 
     (filteredStarList, sortBestAsterisms(result))
@@ -79,7 +79,14 @@ object Strehl {
 
   val nmodes = 5
   val sp = nullModesSpectra()
-  var spv = vibSpectra()
+  // vibration spectra, limited to the upper freq range for spline (see optimize)
+  val spv = {
+    val v = vibSpectra()
+    if (v(::, 0).max > sampfreq) {
+      val tmp = where(v(::, 0), _ < sampfreq)
+      v(0 to tmp(tmp.size - 1), ::)
+    } else v
+  }
   val novibs = false
 
   //  func mascot_compute_strehl(void)
@@ -340,11 +347,7 @@ object Strehl {
     //  rmsvib(2) = sum((*tiltvibrms)^2.);
 
 
-    if (spv(::, 0).max > sampfreq) {
-      val tmp = where(spv(::, 0), _ < sampfreq)
-      val w = tmp(tmp.size - 1)
-      spv = spv(0 to w, ::)
-    }
+    // (done once in spv, so that asterisms can be computed concurrently)
     val freqv = spv(::, 0)
 
     val rmsvib = DenseVector.zeros[Double](2);
@@ -2,7 +2,7 @@ package edu.gemini.ags.gems.mascot
 
 import edu.gemini.spModel.core.Target.SiderealTarget
 import edu.gemini.spModel.core._
-import org.junit.Test
+import org.junit.{Ignore, Test}
 import org.junit.Assert._
 import java.util.Date
 
@@ -101,6 +101,33 @@ class MascotTest {
 
   }
 
+  @Test def testParallelFindBestAsterism() {
+    val thread = Thread.currentThread
+    var counts = List[Int]()
+    val progress = (s: Strehl, count: Int, total: Int) => {
+      assertSame(thread, Thread.currentThread)
+      counts = count :: counts
+    }
+    val (_, parallel) = Mascot.findBestAsterism(allStarList, progress = progress)
+    val (_, serial) = Mascot.findBestAsterism(allStarList, parallel = false)
+
+    assertEquals(serial.size, parallel.size)
+    assertEquals(serial.map(_.stars), parallel.map(_.stars))
+    assertEquals(serial.map(_.avgstrehl), parallel.map(_.avgstrehl))
+    assertEquals(counts.reverse, counts.sorted)
+  }
+
+  // Compares the serial and parallel asterism search on the ngc1275 field, run by hand.
+  @Ignore @Test def timingTest() {
+    def time(parallel: Boolean): Double = {
+      val start = System.nanoTime
+      for (i <- 0 until 5) Mascot.findBestAsterism(allStarList, progress = (s: Strehl, c: Int, t: Int) => (), parallel = parallel)
+      (System.nanoTime - start) / 5.0e9
+    }
+    time(true)  // warm up
+    println(f"findBestAsterism: serial ${time(false)}%.2f sec, parallel ${time(true)}%.2f sec")
+  }
+
   @Test def testSelectStarsOnMag() {
     val slist = Mascot.selectStarsOnMag(allStarList)
     assertEquals(7, slist.size)
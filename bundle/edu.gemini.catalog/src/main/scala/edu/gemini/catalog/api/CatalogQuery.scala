@@ -48,7 +48,7 @@ object CatalogQuery {
     = GemsCatalogQuery(Some(id), base, radiusConstraint, magnitudeConstraints, catalog)
 }
 
-sealed abstract class CatalogName(val id: String)
+sealed abstract class CatalogName(val id: String) extends Serializable
 
 case object sdss extends CatalogName("sdss9")
 case object gsc234 extends CatalogName("gsc234")
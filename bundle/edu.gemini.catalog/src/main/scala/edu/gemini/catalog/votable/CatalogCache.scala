@@ -0,0 +1,256 @@
+package edu.gemini.catalog.votable
+
+import java.io._
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
+import java.util.logging.{Level, Logger}
+import java.util.{LinkedHashMap => JLinkedHashMap}
+
+import edu.gemini.catalog.api.CatalogQuery
+
+import scala.collection.mutable
+import scala.concurrent.{ExecutionContext, Future, Promise, future}
+
+/**
+ * Cache of catalog query results.
+ *
+ * A query can be answered by any cached query of the same catalog whose cone contains the requested cone, the cached
+ * targets are then filtered by the requested query. To avoid checking every cached query, each cached query is
+ * indexed by the sky tiles (of `tileDegrees` side) its cone touches and only the queries indexed in the tile of the
+ * requested base position are checked.
+ *
+ * The cache is bounded by the total number of rows (targets and problems) in the cached results, evicting the least
+ * recently used results first. Identical queries to the same url made while a query is still running share its
+ * result instead of going remote again. If a directory is given, results are also written to it and read back the
+ * next time a cache is created for the same directory.
+ */
+class CatalogCache(val maxRows: Int, val dir: Option[File] = None, val tileDegrees: Double = 1.0) {
+  import CatalogCache._
+
+  require(maxRows > 0)
+  require(tileDegrees > 0 && tileDegrees <= 180)
+
+  private val raTiles  = math.ceil(360 / tileDegrees).toInt
+  private val decTiles = math.ceil(180 / tileDegrees).toInt
+
+  // compared by reference, the results may be large
+  private class Entry(val query: CatalogQuery, val result: QueryResult, val rows: Int, val tiles: List[(Int, Int)], val file: Option[File])
+
+  // in access order, i.e. least recently used first
+  private val entries = new JLinkedHashMap[CatalogQuery, Entry](16, 0.75f, true)
+  private val index = mutable.Map.empty[(Int, Int), mutable.Set[Entry]]
+  private var rows = 0
+  private var loaded = dir.isEmpty
+
+  private val inFlight = new ConcurrentHashMap[(CatalogQuery, String), Future[QueryResult]]()
+
+  private val hits = new AtomicLong()
+  private val misses = new AtomicLong()
+  private val coalesced = new AtomicLong()
+
+  /**
+   * Gets the result of the query from the cache, from a running identical query, or else by calling `remote` in the
+   * background and caching its result. Failed remote calls are not cached.
+   */
+  def apply(query: CatalogQuery, url: String)(remote: => QueryResult)(implicit ec: ExecutionContext): Future[QueryResult] =
+    find(query) match {
+      case Some(r) =>
+        hits.incrementAndGet()
+        Future.successful(r)
+      case None    =>
+        val key = (query, url)
+        val p = Promise[QueryResult]()
+        val running = inFlight.putIfAbsent(key, p.future)
+        if (running != null) {
+          coalesced.incrementAndGet()
+          running
+        } else {
+          p.completeWith(future {
+            try {
+              // It may have been cached while we were checking for running queries
+              find(query) match {
+                case Some(r) =>
+                  hits.incrementAndGet()
+                  r
+                case None    =>
+                  misses.incrementAndGet()
+                  val r = remote
+                  put(query, r)
+                  r
+              }
+            } finally {
+              inFlight.remove(key, p.future)
+            }
+          })
+          p.future
+        }
+    }
+
+  /** Finds a cached result for the query. */
+  def find(query: CatalogQuery): Option[QueryResult] = synchronized {
+    load()
+    val candidates = index.get(tileOf(query)).map(_.toList).getOrElse(Nil)
+    candidates.find(e => e.query == query).orElse(candidates.find(e => covers(e.query, query))).map { e =>
+      entries.get(e.query) // mark as recently used
+      if (e.query == query) e.result else QueryResult(query, e.result.result.filter(query))
+    }
+  }
+
+  /** Adds the result of a query to the cache, replacing any previous result for it. */
+  def put(query: CatalogQuery, result: QueryResult): Unit = {
+    // Load first, otherwise the file written below would be loaded and then deleted as replaced by this result
+    synchronized(load())
+    val file = dir.flatMap(write(query, result, _))
+    synchronized(add(query, result, file))
+  }
+
+  /** Removes all results, including those stored on disk. */
+  def clear(): Unit = synchronized {
+    entries.values.toArray(Array.empty[Entry]).foreach(remove)
+  }
+
+  /** Gets a snapshot of the cache usage. */
+  def stats: Stats = synchronized {
+    Stats(hits.get, misses.get, coalesced.get, entries.size, rows)
+  }
+
+  // A cached query can answer a query for the same catalog that lies completely within its cone, as long as it was not
+  // restricted to other magnitudes.
+  private def covers(cached: CatalogQuery, q: CatalogQuery): Boolean =
+    cached.catalog == q.catalog &&
+    (cached.magnitudeConstraints.isEmpty || cached.magnitudeConstraints == q.magnitudeConstraints) &&
+    cached.isSuperSetOf(q)
+
+  private def raIndex(ra: Double): Int = (math.floor(ra / tileDegrees).toInt % raTiles + raTiles) % raTiles
+
+  private def decIndex(dec: Double): Int = math.min(decTiles - 1, math.max(0, math.floor((dec + 90) / tileDegrees).toInt))
+
+  private def tileOf(q: CatalogQuery): (Int, Int) =
+    (raIndex(q.base.ra.toAngle.toDegrees), decIndex(q.base.dec.toDegrees))
+
+  // All the tiles touched by the cone of the query
+  private def tilesOf(q: CatalogQuery): List[(Int, Int)] = {
+    val ra  = q.base.ra.toAngle.toDegrees
+    val dec = q.base.dec.toDegrees
+    val r   = q.radiusConstraint.maxLimit.toDegrees
+
+    val decMin = dec - r
+    val decMax = dec + r
+    val maxCos = math.cos(math.toRadians(math.min(89.999, math.max(math.abs(decMin), math.abs(decMax)))))
+    val raHalf = r / maxCos
+
+    val raIxs =
+      if (decMin <= -90 || decMax >= 90 || raHalf >= 180) (0 until raTiles).toList
+      else {
+        val first = math.floor((ra - raHalf) / tileDegrees).toInt
+        val last  = math.floor((ra + raHalf) / tileDegrees).toInt
+        (first to last).map(i => (i % raTiles + raTiles) % raTiles).distinct.toList
+      }
+
+    for {
+      d <- (decIndex(decMin) to decIndex(decMax)).toList
+      a <- raIxs
+    } yield (a, d)
+  }
+
+  // Must hold the lock
+  private def add(query: CatalogQuery, result: QueryResult, file: Option[File]): Unit = {
+    Option(entries.get(query)).foreach(remove)
+
+    val e = new Entry(query, result, math.max(1, result.result.targets.rows.size + result.result.problems.size), tilesOf(query), file)
+    entries.put(query, e)
+    e.tiles.foreach(t => index.getOrElseUpdate(t, mutable.Set.empty[Entry]) += e)
+    rows += e.rows
+
+    val it = entries.values.iterator
+    while (rows > maxRows && it.hasNext) {
+      val old = it.next()
+      it.remove()
+      unindex(old)
+    }
+  }
+
+  // Must hold the lock
+  private def remove(e: Entry): Unit = {
+    entries.remove(e.query)
+    unindex(e)
+  }
+
+  private def unindex(e: Entry): Unit = {
+    e.tiles.foreach { t =>
+      index.get(t).foreach { s =>
+        s -= e
+        if (s.isEmpty) index -= t
+      }
+    }
+    rows -= e.rows
+    e.file.foreach(_.delete())
+  }
+
+  // Reads the results stored on disk the first time the cache is used. Must hold the lock
+  private def load(): Unit =
+    if (!loaded) {
+      loaded = true
+      for {
+        d <- dir.toList
+        f <- Option(d.listFiles).map(_.toList).getOrElse(Nil).filter(_.getName.endsWith(Suffix)).sortBy(_.lastModified)
+      } read(f) match {
+        case Some((q, r)) => add(q, r, Some(f))
+        case None         => f.delete()
+      }
+    }
+
+  private def write(query: CatalogQuery, result: QueryResult, d: File): Option[File] =
+    try {
+      d.mkdirs()
+      val f = File.createTempFile(s"query-${Integer.toHexString(query.hashCode)}-", Suffix, d)
+      try {
+        val out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(f)))
+        try {
+          out.writeObject(query)
+          out.writeObject(result)
+        } finally {
+          out.close()
+        }
+        Some(f)
+      } catch {
+        case ex: Exception =>
+          // Don't leave a partial result behind.
+          f.delete()
+          throw ex
+      }
+    } catch {
+      case ex: Exception =>
+        Log.log(Level.WARNING, s"Could not store catalog query result in $d", ex)
+        None
+    }
+
+  private def read(f: File): Option[(CatalogQuery, QueryResult)] =
+    try {
+      val in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(f)))
+      try {
+        Some((in.readObject().asInstanceOf[CatalogQuery], in.readObject().asInstanceOf[QueryResult]))
+      } finally {
+        in.close()
+      }
+    } catch {
+      case ex: Exception =>
+        Log.log(Level.INFO, s"Discarding unreadable catalog query result $f", ex)
+        None
+    }
+}
+
+object CatalogCache {
+  private val Log = Logger.getLogger(classOf[CatalogCache].getName)
+
+  private val Suffix = ".catalog"
+
+  /** Default maximum number of rows, i.e. a few hundred typical AGS queries. */
+  val DefaultMaxRows = 200000
+
+  /** System property with the directory in which to keep results across restarts, if any. */
+  val DirProp = "edu.gemini.catalog.cacheDir"
+
+  /** Cache usage statistics. */
+  case class Stats(hits: Long, misses: Long, coalesced: Long, entries: Int, rows: Int)
+}
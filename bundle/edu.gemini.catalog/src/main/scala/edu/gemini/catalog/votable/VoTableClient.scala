@@ -1,5 +1,6 @@
 package edu.gemini.catalog.votable
 
+import java.io.File
 import java.net.UnknownHostException
 import java.util.concurrent.atomic.AtomicInteger
 import java.util.logging.Logger
@@ -9,9 +10,8 @@ import edu.gemini.spModel.core.Angle
 import org.apache.commons.httpclient.{NameValuePair, HttpClient}
 import org.apache.commons.httpclient.methods.GetMethod
 
-import scala.annotation.tailrec
 import scala.concurrent.ExecutionContext.Implicits.global
-import scala.concurrent.{Promise, Future, future}
+import scala.concurrent.{Promise, Future}
 import scala.util.{Failure, Success}
 
 import scalaz._
@@ -24,90 +24,11 @@ trait VoTableBackend {
 trait CachedBackend extends VoTableBackend {
   case class SearchKey(query: CatalogQuery, url: String)
 
-  case class CacheEntry[K, V](k: K, v: V)
+  /** Directory in which to keep the results across restarts, if any. */
+  protected def cacheDir: Option[File] = None
 
-  /**
-   * A function memoization strategy closely based on scalaz's Memo
-   */
-  sealed abstract class Cache[K, V] {
-    def apply(z: K => V): K => V
-  }
-
-  /**
-   * Cache for CatalogQueries. Key-based caching as in Memo doesn't fulfill the needs in this case as we can reuse queries
-   * done for different combinations of targets and radius even if the query 'key' doesn't match
-   * Instead we need a function that can traverse the cache finding matches to reuse the result
-   */
-  object QueryCache {
-
-    // Container used internally on the cache, the type definition leaks into the client but that helps performance
-    // Vector was selected as it gives effective constant time for prepend, patch and dropRight
-    type CacheContainer[K, V] = Vector[CacheEntry[K, V]]
-    // Function provided by the caller to check if a value is on the cache
-    type FindFunction[K, V] = (CacheContainer[K, V], K) => Option[(Int, V)]
-
-    // based on scalaz's Memo.memo function
-    private def cache[K, V](f: (K => V) => K => V): Cache[K, V] = new Cache[K, V] {
-      def apply(z: K => V) = f(z)
-    }
-
-    // Build an LRU cache with a function that will traverse the cache finding suitable queries
-    private def lruCache[K, V](a: CacheContainer[K, V], findByKey: FindFunction[K, V], maxSize: Int = 100): Cache[K, V] = {
-      // Access needs to be synchronized
-      var m = a
-
-      cache[K, V](f => k => {
-        val value = a.synchronized {
-          val r = findByKey(m, k)
-          // Put it at the head if found
-          r.foreach {
-            case (pos, x) =>
-              // Remove it from its current position
-              m = m.patch(pos, Nil, 1)
-              // Move it to the front
-              m = CacheEntry(k, x) +: m
-          }
-          r.map(_._2)
-        }
-        value.getOrElse {
-          val r = f(k)
-          // Using smaller locks increases the chances to make multiple calls to f(k) but
-          // calling f(k) inside the lock notably reduces concurrency doing remote queries
-          a.synchronized {
-            // prepend the result at the beginning
-            m = CacheEntry(k, r) +: m
-            // Keep size constrained
-            if (m.size > maxSize) {
-              m = m.dropRight(1)
-            }
-          }
-          r
-        }
-      })
-    }
-
-    /**
-     * Builds a cache with a contains function to find cache hits
-     */
-    def buildCache[K, V](contains: FindFunction[K, V], maxSize: Int = 100) = lruCache(Vector.empty, contains, maxSize)
-    
-  }
-
-  private val cache:Cache[SearchKey, QueryResult] = {
-    // Find if a search is already in the cache
-    // Note that this assumes all catalogues give the same result for a given query
-    def contains(a: QueryCache.CacheContainer[SearchKey, QueryResult], k: SearchKey):Option[(Int, QueryResult)] = {
-      @tailrec
-      def go(pos: Int):Option[(Int, QueryResult)] =
-        a.lift(pos) match {
-          case None    => None
-          case Some(x) => if (x.k.query == k.query || x.k.query.isSuperSetOf(k.query)) Some((pos, x.v)) else go(pos + 1)
-        }
-      go(0)
-    }
-
-    QueryCache.buildCache(contains)
-  }
+  // Note that this assumes all catalogues give the same result for a given query
+  protected lazy val catalogCache = new CatalogCache(CatalogCache.DefaultMaxRows, cacheDir)
 
   // First success or last failure
   protected def selectOne[A](fs: List[Future[A]]): Future[A] = {
@@ -123,16 +44,12 @@ trait CachedBackend extends VoTableBackend {
   }
 
 
-  // Cache the query not the future so that failed queries are executed again
-  protected val cachedQuery = cache(query)
-
   // Do a query to the appropratie backend
   protected def query(e: SearchKey): QueryResult
 
-  // Cache the query not the future so that failed queries are executed again
-  protected [votable] def doQuery(query: CatalogQuery, url: String): Future[QueryResult] = future {
-    cachedQuery(SearchKey(query, url))
-  }
+  // Cache the query result not the future so that failed queries are executed again
+  protected [votable] def doQuery(query: CatalogQuery, url: String): Future[QueryResult] =
+    catalogCache(query, url)(this.query(SearchKey(query, url)))
 
 }
 
@@ -141,6 +58,8 @@ case object RemoteBackend extends CachedBackend {
 
   private val timeout = 30 * 1000 // Max time to wait
 
+  override protected def cacheDir: Option[File] = Option(System.getProperty(CatalogCache.DirProp)).map(new File(_))
+
   private def format(a: Angle)= f"${a.toDegrees}%4.03f"
 
   def queryParams(qs: CatalogQuery): Array[NameValuePair] = Array(
@@ -160,7 +79,8 @@ case object RemoteBackend extends CachedBackend {
 
     try {
       client.executeMethod(method)
-      VoTableParser.parse(e.url, method.getResponseBodyAsStream).fold(p => QueryResult(e.query, CatalogQueryResult(TargetsTable.Zero, List(p))), y => QueryResult(e.query, CatalogQueryResult(y).filter(e.query)))
+      // The parser streams the response and drops targets outside of the query as they are read
+      VoTableParser.parse(e.url, method.getResponseBodyAsStream, e.query).fold(p => QueryResult(e.query, CatalogQueryResult(TargetsTable.Zero, List(p))), y => QueryResult(e.query, CatalogQueryResult(y)))
     } finally {
       method.releaseConnection()
     }
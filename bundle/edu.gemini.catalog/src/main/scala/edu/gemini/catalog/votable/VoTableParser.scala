@@ -1,12 +1,17 @@
 package edu.gemini.catalog.votable
 
-import java.io.{ByteArrayInputStream, InputStream}
+import java.io.InputStream
+import javax.xml.XMLConstants
+import javax.xml.stream.{XMLStreamConstants, XMLInputFactory, XMLStreamReader}
+import javax.xml.transform.stream.StreamSource
+import javax.xml.validation.{Schema, SchemaFactory, ValidatorHandler}
 
+import edu.gemini.catalog.api.CatalogQuery
 import edu.gemini.spModel.core._
 import edu.gemini.spModel.core.Target.SiderealTarget
+import org.xml.sax.helpers.AttributesImpl
 
-import scala.io.Source
-import scala.xml.XML
+import scala.collection.mutable.ListBuffer
 
 import scalaz._
 import Scalaz._
@@ -24,28 +29,160 @@ object VoTableParser extends VoTableParser {
   val STAT_ERR = UcdWord("stat.error")
 
   val xsd = "/votable-1.2.xsd"
-  
-  private def validate(xmlFile: InputStream): Throwable \/ String = \/.fromTryCatch {
-    import javax.xml.transform.stream.StreamSource
-    import javax.xml.validation.SchemaFactory
-
-    val schemaLang = "http://www.w3.org/2001/XMLSchema"
-    val factory = SchemaFactory.newInstance(schemaLang)
-    val schema = factory.newSchema(new StreamSource(getClass.getResourceAsStream(xsd)))
-    val validator = schema.newValidator()
 
-    // Load in memory (Could be a problem for large responses)
-    val xmlText = Source.fromInputStream(xmlFile, "UTF-8").getLines().mkString
+  // The compiled schema is thread safe, validators are not and are created for each document
+  private lazy val schema: Schema =
+    SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI).newSchema(new StreamSource(getClass.getResourceAsStream(xsd)))
 
-    validator.validate(new StreamSource(new ByteArrayInputStream(xmlText.getBytes(java.nio.charset.Charset.forName("UTF-8")))))
-    xmlText
+  private lazy val inputFactory: XMLInputFactory = {
+    val f = XMLInputFactory.newInstance()
+    f.setProperty(XMLInputFactory.SUPPORT_DTD, false)
+    f.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false)
+    f
   }
 
   /**
    * parse takes an input stream and attempts to read the xml content and convert it to a VoTable resource
    */
   def parse(url: String, is: InputStream): CatalogResult =
-    validate(is).fold(k => \/.left(ValidationError(url)), r => \/.right(parse(XML.loadString(r))))
+    parseFiltered(url, is, _ => true)
+
+  /**
+   * Parses the input stream keeping only the targets that pass the query's radius and magnitude constraints.
+   * Targets are filtered as the rows are read, so targets outside of the query are never accumulated.
+   */
+  def parse(url: String, is: InputStream, query: CatalogQuery): CatalogResult =
+    parseFiltered(url, is, query.filter)
+
+  private def parseFiltered(url: String, is: InputStream, p: SiderealTarget => Boolean): CatalogResult = {
+    val tables = ListBuffer.empty[ParsedTable]
+    val rows   = ListBuffer.empty[CatalogProblem \/ SiderealTarget]
+    stream(url, is) {
+      case EndOfTable         => tables += ParsedTable(rows.toList); rows.clear()
+      case Row(r @ \/-(t))    => if (p(t)) rows += r
+      case Row(r)             => rows += r
+    }.map(_ => ParsedVoResource(tables.toList))
+  }
+
+  /**
+   * Reads the input stream and calls `f` for each row as soon as it has been read and at the end of each table,
+   * without building the document in memory. The document is validated against the VOTable schema while it is
+   * read, if it turns out to be invalid a ValidationError is returned but `f` may have been called already for the
+   * rows that came before the problem.
+   */
+  def stream(url: String, is: InputStream)(f: VoTableEvent => Unit): CatalogProblem \/ Unit =
+    \/.fromTryCatch {
+      val validator = schema.newValidatorHandler()
+      val reader    = new ValidatingReader(inputFactory.createXMLStreamReader(is, "UTF-8"), validator)
+      try {
+        new StreamingParser(reader, f).parse()
+      } finally {
+        reader.close()
+      }
+    }.leftMap(_ => ValidationError(url))
+
+  /** Events emitted while streaming a VOTable. */
+  sealed trait VoTableEvent
+  case class Row(row: CatalogProblem \/ SiderealTarget) extends VoTableEvent
+  case object EndOfTable extends VoTableEvent
+
+  // Reads a document with StAX, passing every event on to a schema validator. The validator throws a SAXException
+  // as soon as it finds a problem.
+  private class ValidatingReader(r: XMLStreamReader, validator: ValidatorHandler) {
+    import XMLStreamConstants._
+
+    validator.startDocument()
+
+    private def qName(prefix: String, local: String) =
+      if (prefix == null || prefix.isEmpty) local else s"$prefix:$local"
+
+    private def nonNull(s: String) = if (s == null) "" else s
+
+    def localName: String = r.getLocalName
+
+    def attribute(name: String): Option[String] = Option(r.getAttributeValue(null, name))
+
+    def text: String = r.getText
+
+    /** Advances to the next event, which is returned after being validated. */
+    def next(): Int = {
+      val event = r.next()
+      event match {
+        case START_ELEMENT =>
+          for (i <- 0 until r.getNamespaceCount) validator.startPrefixMapping(nonNull(r.getNamespacePrefix(i)), nonNull(r.getNamespaceURI(i)))
+          val attrs = new AttributesImpl()
+          for (i <- 0 until r.getAttributeCount) {
+            val name = r.getAttributeName(i)
+            attrs.addAttribute(nonNull(name.getNamespaceURI), name.getLocalPart, qName(name.getPrefix, name.getLocalPart), r.getAttributeType(i), r.getAttributeValue(i))
+          }
+          validator.startElement(nonNull(r.getNamespaceURI), r.getLocalName, qName(r.getPrefix, r.getLocalName), attrs)
+
+        case END_ELEMENT =>
+          validator.endElement(nonNull(r.getNamespaceURI), r.getLocalName, qName(r.getPrefix, r.getLocalName))
+          for (i <- 0 until r.getNamespaceCount) validator.endPrefixMapping(nonNull(r.getNamespacePrefix(i)))
+
+        case CHARACTERS | CDATA | SPACE =>
+          validator.characters(r.getTextCharacters, r.getTextStart, r.getTextLength)
+
+        case END_DOCUMENT =>
+          validator.endDocument()
+
+        case _ =>
+      }
+      event
+    }
+
+    def close(): Unit = r.close()
+  }
+
+  // Turns the table data into rows as it is read, keeping only the fields and the current row in memory
+  private class StreamingParser(r: ValidatingReader, f: VoTableEvent => Unit) {
+    import XMLStreamConstants._
+
+    private val fields = ListBuffer.empty[FieldDescriptor]
+    private val cells  = ListBuffer.empty[String]
+    private val cell   = new StringBuilder
+    private var inTableData = false
+    private var inCell      = false
+
+    private def startElement(): Unit = r.localName match {
+      case "TABLE"     => fields.clear()
+      case "FIELD"     =>
+        for {
+          id   <- r.attribute("ID")
+          name <- r.attribute("name")
+          ucd  <- r.attribute("ucd")
+        } fields += FieldDescriptor(FieldId(id, Ucd(ucd)), name)
+      case "TABLEDATA" => inTableData = true
+      case "TR"        => cells.clear()
+      case "TD"        => inCell = true; cell.clear()
+      case _           =>
+    }
+
+    private def endElement(): Unit = r.localName match {
+      case "TABLE"               => f(EndOfTable)
+      case "TABLEDATA"           => inTableData = false
+      case "TD"                  => inCell = false; cells += cell.toString()
+      case "TR" if inTableData   =>
+        val fs  = fields.toList
+        val row = if (cells.length == fs.length) TableRow(fs.zip(cells).map(Function.tupled(TableRowItem))) else TableRow(Nil)
+        f(Row(tableRow2Target(fs)(row)))
+      case _                     =>
+    }
+
+    def parse(): Unit = {
+      var event = r.next()
+      while (event != END_DOCUMENT) {
+        event match {
+          case START_ELEMENT                          => startElement()
+          case END_ELEMENT                            => endElement()
+          case CHARACTERS | CDATA | SPACE if inCell   => cell.append(r.text)
+          case _                                      =>
+        }
+        event = r.next()
+      }
+    }
+  }
 }
 
 // A MagnitudesFilter can ignore fields for certain catalogues and transform others
@@ -0,0 +1,105 @@
+package edu.gemini.catalog.votable
+
+import java.io.File
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.atomic.AtomicInteger
+
+import edu.gemini.catalog.api.{ppmxl, RadiusConstraint, CatalogQuery}
+import edu.gemini.spModel.core.{Declination, RightAscension, Angle, Coordinates}
+import org.specs2.mutable.SpecificationWithJUnit
+import org.specs2.time.NoTimeConversions
+
+import scala.concurrent._
+import scala.concurrent.duration._
+import scala.concurrent.ExecutionContext.Implicits.global
+
+class CatalogCacheSpec extends SpecificationWithJUnit with NoTimeConversions {
+
+  def coordinates(ra: Double, dec: Double) =
+    Coordinates(RightAscension.fromDegrees(ra), Declination.fromAngle(Angle.fromDegrees(dec)).getOrElse(Declination.zero))
+
+  def query(ra: Double, dec: Double, radius: Double) =
+    CatalogQuery.catalogQuery(coordinates(ra, dec), RadiusConstraint.between(Angle.zero, Angle.fromDegrees(radius)), None)
+
+  val targets = VoTableParser.parse("votable.xml", getClass.getResourceAsStream("/votable.xml")).map(CatalogQueryResult(_)).getOrElse(CatalogQueryResult.Zero)
+
+  def result(q: CatalogQuery) = QueryResult(q, targets)
+
+  "The catalog cache" should {
+    "answer queries contained in a cached query" in {
+      val cache = new CatalogCache(1000)
+      val q = query(0, 0, 0.2)
+      cache.put(q, result(q))
+
+      val q2 = query(0, 0, 0.1)
+      cache.find(q) should beSome(result(q))
+      cache.find(q2).map(_.query) should beSome(q2)
+      cache.find(q2).map(_.result) should beSome(targets.filter(q2))
+      // Same cone in another catalog or outside of the cached cone
+      cache.find(q2.copyForCatalog) should beNone
+      cache.find(query(0.2, 0, 0.1)) should beNone
+    }
+    "answer queries across tile and RA boundaries" in {
+      val cache = new CatalogCache(1000, tileDegrees = 0.1)
+      val q = query(359.95, 0, 0.5)
+      cache.put(q, result(q))
+      cache.find(query(0.2, 0.2, 0.1)).map(_.query) should beSome(query(0.2, 0.2, 0.1))
+      cache.find(query(359.7, -0.2, 0.1)).map(_.query) should beSome(query(359.7, -0.2, 0.1))
+      cache.find(query(1.0, 0, 0.1)) should beNone
+    }
+    "evict the least recently used results beyond the row limit" in {
+      val rows = targets.targets.rows.size
+      val cache = new CatalogCache(2 * rows)
+      val (q1, q2, q3) = (query(10, 0, 0.1), query(20, 0, 0.1), query(30, 0, 0.1))
+      cache.put(q1, result(q1))
+      cache.put(q2, result(q2))
+      cache.find(q1) should beSome  // q2 is now the least recently used
+      cache.put(q3, result(q3))
+
+      cache.find(q1) should beSome
+      cache.find(q2) should beNone
+      cache.find(q3) should beSome
+      cache.stats.rows should beEqualTo(2 * rows)
+    }
+    "share running queries" in {
+      val cache = new CatalogCache(1000)
+      val q = query(0, 0, 0.2)
+      val counter = new AtomicInteger(0)
+      val latch = new CountDownLatch(1)
+      def remote = {
+        counter.incrementAndGet()
+        latch.await()
+        result(q)
+      }
+      val f1 = cache(q, "url")(remote)
+      val f2 = cache(q, "url")(remote)
+      latch.countDown()
+
+      Await.result(f1, 5.seconds) should beEqualTo(result(q))
+      Await.result(f2, 5.seconds) should beEqualTo(result(q))
+      Await.result(cache(q, "url")(remote), 5.seconds) should beEqualTo(result(q))
+      counter.get should beEqualTo(1)
+    }
+    "not cache failed queries" in {
+      val cache = new CatalogCache(1000)
+      val q = query(0, 0, 0.2)
+      Await.result(cache(q, "url")(throw new RuntimeException("oops")), 5.seconds) should throwA[RuntimeException]
+      cache.find(q) should beNone
+    }
+    "keep results on disk" in {
+      val dir = new File(System.getProperty("java.io.tmpdir"), s"catalog-cache-${System.nanoTime}")
+      val q = query(0, 0, 0.2)
+      new CatalogCache(1000, Some(dir)).put(q, result(q))
+
+      val cache = new CatalogCache(1000, Some(dir))
+      cache.find(q).map(_.result.targets.rows.size) should beSome(targets.targets.rows.size)
+      cache.clear()
+      Option(dir.listFiles).map(_.length) should beSome(0)
+      dir.delete()
+    }
+  }
+
+  implicit class CatalogQueryOps(q: CatalogQuery) {
+    def copyForCatalog: CatalogQuery = CatalogQuery.catalogQuery(q.base, q.radiusConstraint, q.magnitudeConstraints, ppmxl)
+  }
+}
@@ -2,8 +2,11 @@ package edu.gemini.catalog.votable
 
 import edu.gemini.spModel.core._
 import edu.gemini.spModel.core.Target.SiderealTarget
+import edu.gemini.catalog.api.{RadiusConstraint, CatalogQuery}
 import org.specs2.mutable.SpecificationWithJUnit
 
+import scala.xml.XML
+
 import scalaz._
 import Scalaz._
 
@@ -441,5 +444,31 @@ class VoTableParserSpec extends SpecificationWithJUnit with VoTableParser {
       // rmag gets converted to r'
       imag should beEqualTo(\/.right(Some(Magnitude(5, MagnitudeBand._i, 0.34.some, MagnitudeSystem.VEGA))))
     }
+    "stream the same targets as the document based parser" in {
+      List("votable.xml", "votable-ucac4.xml", "fmag.xml", "sloan.xml").forall { xmlFile =>
+        val expected = parse(XML.load(getClass.getResourceAsStream(s"/$xmlFile")))
+        VoTableParser.parse(xmlFile, getClass.getResourceAsStream(s"/$xmlFile")) == \/.right(expected)
+      } should beTrue
+    }
+    "emit rows and the end of tables while streaming" in {
+      val xmlFile = "votable-ucac4.xml"
+      val rows = VoTableParser.parse(xmlFile, getClass.getResourceAsStream(s"/$xmlFile")).map(_.tables.map(_.rows.size).sum).getOrElse(0)
+      var rowEvents = 0
+      var tableEvents = 0
+      VoTableParser.stream(xmlFile, getClass.getResourceAsStream(s"/$xmlFile")) {
+        case VoTableParser.Row(_)     => rowEvents += 1
+        case VoTableParser.EndOfTable => tableEvents += 1
+      } should beEqualTo(\/.right(()))
+      rowEvents should beEqualTo(rows)
+      tableEvents should beEqualTo(1)
+    }
+    "filter targets by the query while streaming" in {
+      val xmlFile = "votable-ucac4.xml"
+      val all = VoTableParser.parse(xmlFile, getClass.getResourceAsStream(s"/$xmlFile")).map(r => CatalogQueryResult(r).targets.rows).getOrElse(Nil)
+      val query = CatalogQuery.catalogQuery(all.head.coordinates, RadiusConstraint.between(Angle.zero, Angle.fromDegrees(0.05)), None)
+      val filtered = VoTableParser.parse(xmlFile, getClass.getResourceAsStream(s"/$xmlFile"), query).map(r => CatalogQueryResult(r).targets.rows)
+      filtered should beEqualTo(\/.right(all.filter(query.filter)))
+      filtered.map(_.nonEmpty) should beEqualTo(\/.right(true))
+    }
   }
 }
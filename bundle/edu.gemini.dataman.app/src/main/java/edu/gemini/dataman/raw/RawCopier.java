@@ -236,10 +236,11 @@ public final class RawCopier implements DirListener {
     private boolean _copyRawFileHelper(File src, File dest, int attempt) {
         byte[] srcMd5, destMd5;
         try {
-            srcMd5 = DatamanFileUtil.md5(src);
-            DatamanFileUtil.copyFile(src, dest);
-            destMd5 = DatamanFileUtil.md5(dest);
-            
+            // The source is only read once, computing its MD5 as it is
+            // copied.  The copy is read back to verify what was written.
+            srcMd5  = DatamanFileUtil.copyFileWithChecksums(src, dest).getMd5();
+            destMd5 = DatamanFileUtil.digest(dest, "MD5");
+
         } catch (InterruptedException ex) {
             StringBuilder buf = new StringBuilder();
             buf.append('(').append(attempt);
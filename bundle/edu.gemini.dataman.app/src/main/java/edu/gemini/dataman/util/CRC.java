@@ -8,6 +8,10 @@ package edu.gemini.dataman.util;
 /**
  * CRC algorithm used by CADC.  They use unsigned ints, so we have to use
  * longs and chop off the first 32 bits when necessary.
+ *
+ * <p>The CRC is computed 8 bytes at a time using 8 tables derived from
+ * CRC_TABLE ("slicing-by-8"), which gives the same value as looking up each
+ * byte in CRC_TABLE in turn but several times faster.
  */
 public class CRC {
 
@@ -46,6 +50,21 @@ public class CRC {
         0xAFB010B1l, 0xAB710D06l, 0xA6322BDFl, 0xA2F33668l, 0xBCB4666Dl, 0xB8757BDAl, 0xB5365D03l, 0xB1F740B4l,
     };
 
+    // SLICES[k][b] is the CRC of byte b followed by k zero bytes.
+    private static final int[][] SLICES = new int[8][256];
+
+    static {
+        for (int b=0; b<256; ++b) {
+            SLICES[0][b] = (int) CRC_TABLE[b];
+        }
+        for (int k=1; k<8; ++k) {
+            for (int b=0; b<256; ++b) {
+                int prev = SLICES[k-1][b];
+                SLICES[k][b] = (prev << 8) ^ SLICES[0][prev >>> 24];
+            }
+        }
+    }
+
     private static final long INITIAL_VAL = 0xFFFFFFFFl;
     private static final long INT_MASK    = 0xFFFFFFFFl;
 
@@ -60,12 +79,29 @@ public class CRC {
     }
 
     public void update(byte[] buffer, int off, int length) {
+        final int[] t0 = SLICES[0], t1 = SLICES[1], t2 = SLICES[2], t3 = SLICES[3];
+        final int[] t4 = SLICES[4], t5 = SLICES[5], t6 = SLICES[6], t7 = SLICES[7];
+
+        int crc = (int) _val;
+        int i = off;
         int limit = off + length;
-        for (int i=off; i<limit; ++i) {
-            byte b = buffer[i];
-            int unsignedByte = (b >= 0) ? b : (b & 0x80) + (b & 0x7F);
-            _val = (CRC_TABLE[(int) ((_val >> 24) ^ unsignedByte)] ^ (_val << 8)) & INT_MASK;
+
+        // 8 bytes at a time
+        for (int sliceLimit = limit - 7; i < sliceLimit; i += 8) {
+            crc ^= ((buffer[i]   & 0xFF) << 24) | ((buffer[i+1] & 0xFF) << 16) |
+                   ((buffer[i+2] & 0xFF) <<  8) |  (buffer[i+3] & 0xFF);
+            crc = t7[crc >>> 24] ^ t6[(crc >>> 16) & 0xFF] ^
+                  t5[(crc >>> 8) & 0xFF] ^ t4[crc & 0xFF] ^
+                  t3[buffer[i+4] & 0xFF] ^ t2[buffer[i+5] & 0xFF] ^
+                  t1[buffer[i+6] & 0xFF] ^ t0[buffer[i+7] & 0xFF];
         }
+
+        // then the remaining bytes one at a time
+        for (; i < limit; ++i) {
+            crc = t0[(crc >>> 24) ^ (buffer[i] & 0xFF)] ^ (crc << 8);
+        }
+
+        _val = crc & INT_MASK;
     }
 
     public long getValue() {
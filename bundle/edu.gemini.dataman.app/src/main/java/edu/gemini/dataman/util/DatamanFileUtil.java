@@ -16,6 +16,8 @@ import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.WritableByteChannel;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -25,6 +27,82 @@ import java.util.logging.Logger;
 public final class DatamanFileUtil {
     private static final Logger LOG = Logger.getLogger(DatamanFileUtil.class.getName());
 
+    private static final int BUFFER_SIZE = 64*1024;
+
+    // Maximum number of files whose checksums are remembered.
+    private static final int MAX_CACHED_CHECKSUMS = 10000;
+
+    // Files modified more recently than this may still be modified again
+    // without their modification time changing, so their checksums are not
+    // remembered.
+    private static final long RECENT_MODIFICATION_MS = 2000;
+
+    /**
+     * Identifies a version of a file by path, size and modification time.
+     */
+    private static final class FileVersion {
+        private final String _path;
+        private final long _size;
+        private final long _lastModified;
+
+        FileVersion(File f) {
+            _path         = f.getAbsolutePath();
+            _size         = f.length();
+            _lastModified = f.lastModified();
+        }
+
+        boolean isRecent() {
+            return System.currentTimeMillis() - _lastModified < RECENT_MODIFICATION_MS;
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof FileVersion)) return false;
+            FileVersion that = (FileVersion) o;
+            return _path.equals(that._path) && (_size == that._size) &&
+                   (_lastModified == that._lastModified);
+        }
+
+        public int hashCode() {
+            int res = _path.hashCode();
+            res = 31 * res + (int) (_size ^ (_size >>> 32));
+            return 31 * res + (int) (_lastModified ^ (_lastModified >>> 32));
+        }
+    }
+
+    // Checksums of the most recently used file versions.
+    private static final Map<FileVersion, FileChecksums> CHECKSUMS =
+            new LinkedHashMap<FileVersion, FileChecksums>(16, 0.75f, true) {
+                protected boolean removeEldestEntry(Map.Entry<FileVersion, FileChecksums> me) {
+                    return size() > MAX_CACHED_CHECKSUMS;
+                }
+            };
+
+    /**
+     * Computes the CRC and MD5 of the bytes passing through it.
+     */
+    private static final class Summer {
+        private final CRC _crc = new CRC();
+        private final MessageDigest _md5 = newDigest("MD5");
+
+        void update(byte[] buf, int off, int len) {
+            _crc.update(buf, off, len);
+            _md5.update(buf, off, len);
+        }
+
+        FileChecksums getChecksums() {
+            return new FileChecksums(_crc.getValue(), _md5.digest());
+        }
+    }
+
+    private static MessageDigest newDigest(String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException ex) {
+            LOG.log(Level.SEVERE, ex.getMessage(), ex);
+            throw new RuntimeException("Bad digest algorithm: " + algorithm);
+        }
+    }
+
     private static void _closeChannel(FileChannel c, File f) {
         if (c == null) return;
         try {
@@ -59,6 +137,22 @@ public final class DatamanFileUtil {
     }
 
     public static void copyFile(File src, File dest) throws IOException, InterruptedException {
+        _copyFile(src, dest, false);
+    }
+
+    /**
+     * Copies the source file to the destination, computing the checksums of
+     * the source as it is read.
+     *
+     * @return checksums of the source file content
+     */
+    public static FileChecksums copyFileWithChecksums(File src, File dest)
+            throws IOException, InterruptedException {
+        return _copyFile(src, dest, true);
+    }
+
+    private static FileChecksums _copyFile(File src, File dest, boolean checksums)
+            throws IOException, InterruptedException {
 
         LockedFileChannel lfc_in = null;
         LockedFileChannel lfc_out= null;
@@ -70,9 +164,18 @@ public final class DatamanFileUtil {
             lfc_out = new LockedFileChannel(dest, LockedFileChannel.Mode.rw);
             lfc_out.lock();
 
+            FileChannel fc_in  = lfc_in.getChannel();
             FileChannel fc_out = lfc_out.getChannel();
-            copy(lfc_in.getChannel(), fc_out);
+            fc_out.truncate(0);
+
+            FileChecksums res = null;
+            if (checksums) {
+                res = copyWithChecksums(fc_in, fc_out);
+            } else {
+                copy(fc_in, fc_out);
+            }
             fc_out.force(true);
+            return res;
 
         } finally {
             release(lfc_out);
@@ -80,9 +183,26 @@ public final class DatamanFileUtil {
         }
     }
 
+    /**
+     * Copies the whole file, letting the OS move the bytes if it can.
+     */
+    public static void copy(FileChannel src, WritableByteChannel dest)
+            throws IOException {
+        long pos  = src.position();
+        long size = src.size();
+        while (pos < size) {
+            long count = src.transferTo(pos, size - pos, dest);
+            if (count <= 0) break;
+            pos += count;
+        }
+        src.position(pos);
+        // Copy anything left, e.g. if the file grew.
+        copy((ReadableByteChannel) src, dest);
+    }
+
     public static void copy(ReadableByteChannel src, WritableByteChannel dest)
             throws IOException {
-        ByteBuffer buf = ByteBuffer.allocateDirect(16*1024);
+        ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER_SIZE);
         while (src.read(buf) != -1) {
             buf.flip();
             while (buf.hasRemaining()) {
@@ -92,19 +212,73 @@ public final class DatamanFileUtil {
         }
     }
 
-    public static String md5HexString(File f) throws IOException, InterruptedException {
-        byte[] bA = md5(f);
-        StringBuilder buf = new StringBuilder();
+    /**
+     * Copies the source channel to the destination, computing the checksums
+     * of the bytes copied in the same pass.
+     */
+    public static FileChecksums copyWithChecksums(ReadableByteChannel src, WritableByteChannel dest)
+            throws IOException {
+        Summer sum = new Summer();
+        ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+        while (src.read(buf) != -1) {
+            buf.flip();
+            sum.update(buf.array(), 0, buf.limit());
+            while (buf.hasRemaining()) {
+                dest.write(buf);
+            }
+            buf.clear();
+        }
+        return sum.getChecksums();
+    }
+
+    /**
+     * Gets the CRC and MD5 checksums of the file, computed in a single pass.
+     * The checksums are remembered, so they are only computed again if the
+     * file's size or modification time change.
+     */
+    public static FileChecksums checksums(File f) throws IOException, InterruptedException {
+        FileVersion version = new FileVersion(f);
+        synchronized (CHECKSUMS) {
+            FileChecksums res = CHECKSUMS.get(version);
+            if (res != null) return res;
+        }
 
-        for (byte b : bA) {
-            buf.append(String.format("%02x", b));
+        FileChecksums res;
+        LockedFileChannel lfc = null;
+        try {
+            lfc = new LockedFileChannel(f, LockedFileChannel.Mode.r);
+            lfc.lock();
+            res = checksums(lfc.getChannel());
+        } finally {
+            release(lfc);
         }
 
-        return buf.toString();
+        // Only remember the checksums if the file didn't change meanwhile.
+        if (!version.isRecent() && version.equals(new FileVersion(f))) {
+            synchronized (CHECKSUMS) {
+                CHECKSUMS.put(version, res);
+            }
+        }
+        return res;
+    }
+
+    public static FileChecksums checksums(ReadableByteChannel c) throws IOException {
+        Summer sum = new Summer();
+        ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+        while (c.read(buf) != -1) {
+            buf.flip();
+            sum.update(buf.array(), 0, buf.limit());
+            buf.clear();
+        }
+        return sum.getChecksums();
+    }
+
+    public static String md5HexString(File f) throws IOException, InterruptedException {
+        return checksums(f).getMd5HexString();
     }
 
     public static byte[] md5(File f) throws IOException, InterruptedException {
-        return digest(f, "MD5");
+        return checksums(f).getMd5();
     }
 
     public static byte[] digest(File f, String algorithm) throws IOException, InterruptedException {
@@ -120,15 +294,9 @@ public final class DatamanFileUtil {
 
     public static byte[] digest(ReadableByteChannel c, String algorithm)
             throws IOException {
-        MessageDigest dig;
-        try {
-            dig = MessageDigest.getInstance(algorithm);
-        } catch (NoSuchAlgorithmException ex) {
-            LOG.log(Level.SEVERE, ex.getMessage(), ex);
-            throw new RuntimeException("Bad digest algorithm: " + algorithm);
-        }
+        MessageDigest dig = newDigest(algorithm);
 
-        ByteBuffer buf = ByteBuffer.allocateDirect(16*1024);
+        ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER_SIZE);
         while (c.read(buf) != -1) {
             buf.flip();
             dig.update(buf);
@@ -138,24 +306,16 @@ public final class DatamanFileUtil {
     }
 
     public static String crcHexString(File f) throws IOException, InterruptedException {
-        long crc = crc(f);
-        return String.format("%08x", crc);
+        return checksums(f).getCrcHexString();
     }
 
     public static long crc(File f) throws IOException, InterruptedException {
-        LockedFileChannel lfc = null;
-        try {
-            lfc = new LockedFileChannel(f, LockedFileChannel.Mode.r);
-            lfc.lock();
-            return crc(lfc.getChannel());
-        } finally {
-            release(lfc);
-        }
+        return checksums(f).getCrc();
     }
 
     public static long crc(ReadableByteChannel c) throws IOException {
         CRC crc = new CRC();
-        ByteBuffer buf = ByteBuffer.allocate(16*1024);
+        ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
         while (c.read(buf) != -1) {
             buf.flip();
             crc.update(buf.array(), 0, buf.limit());
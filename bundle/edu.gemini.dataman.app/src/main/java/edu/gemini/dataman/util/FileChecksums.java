@@ -0,0 +1,60 @@
+//
+// $Id$
+//
+
+package edu.gemini.dataman.util;
+
+import java.util.Arrays;
+
+/**
+ * The CRC and MD5 checksums of a file's content, computed together in a single
+ * pass over the file.
+ */
+public final class FileChecksums {
+    private final long _crc;
+    private final byte[] _md5;
+
+    public FileChecksums(long crc, byte[] md5) {
+        _crc = crc;
+        _md5 = md5.clone();
+    }
+
+    /**
+     * Gets the {@link CRC} used by CADC.
+     */
+    public long getCrc() {
+        return _crc;
+    }
+
+    public String getCrcHexString() {
+        return String.format("%08x", _crc);
+    }
+
+    public byte[] getMd5() {
+        return _md5.clone();
+    }
+
+    public String getMd5HexString() {
+        StringBuilder buf = new StringBuilder();
+        for (byte b : _md5) {
+            buf.append(String.format("%02x", b));
+        }
+        return buf.toString();
+    }
+
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof FileChecksums)) return false;
+
+        FileChecksums that = (FileChecksums) o;
+        return (_crc == that._crc) && Arrays.equals(_md5, that._md5);
+    }
+
+    public int hashCode() {
+        return 31 * (int) (_crc ^ (_crc >>> 32)) + Arrays.hashCode(_md5);
+    }
+
+    public String toString() {
+        return "crc=" + getCrcHexString() + ", md5=" + getMd5HexString();
+    }
+}
@@ -33,7 +33,7 @@ public final class DatasetFileImpl implements DatasetFile {
     static final String OBSCLASS = "OBSCLASS";
     static final String PROP_MD  = "PROP_MD";
 
-    private static final Set<String> KEYWORDS;
+    static final Set<String> KEYWORDS;
 
     static {
         Set<String> tmp = new TreeSet<String>();
@@ -55,7 +55,14 @@ public final class DatasetFileImpl implements DatasetFile {
             throw new DatasetFileException("Invalid FITS file: " +
                     ex.getMessage());
         }
+        return parse(fitsFile, h);
+    }
 
+    /**
+     * Creates the DatasetFile from a primary header already read from the
+     * file, which must contain at least the {@link #KEYWORDS}.
+     */
+    static DatasetFile parse(File fitsFile, Header h) throws DatasetFileException {
         if (LOG.isLoggable(Level.FINER)) {
             StringBuilder buf = new StringBuilder();
             buf.append('\n');
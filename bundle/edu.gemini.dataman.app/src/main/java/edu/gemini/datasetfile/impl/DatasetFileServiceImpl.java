@@ -8,7 +8,10 @@ import edu.gemini.datasetfile.*;
 import edu.gemini.dirmon.DirEvent;
 import edu.gemini.dirmon.DirListener;
 import edu.gemini.dirmon.MonitoredDir;
+import edu.gemini.fits.FitsConstants;
+import edu.gemini.fits.Header;
 import edu.gemini.fits.HeaderItem;
+import edu.gemini.fits.HeaderReader;
 import edu.gemini.fits.Hedit;
 import edu.gemini.spModel.dataset.DatasetLabel;
 import edu.gemini.spModel.dataset.DatasetQaState;
@@ -30,6 +33,14 @@ public final class DatasetFileServiceImpl implements DatasetFileService, DirList
 
     private static final int CACHE_SIZE = 1000;
 
+    // Blank header cards reserved when a header has to grow, so that later
+    // QA state and release updates don't shift the file again.
+    private static final int HEADER_PADDING = FitsConstants.ITEMS_PER_RECORD;
+
+    // Threads used to read the headers of the new files of a directory event,
+    // which holds every file in the directory when monitoring starts.
+    private static final int SCAN_THREADS = Runtime.getRuntime().availableProcessors();
+
     private File _dir;
     private DatasetFileState _state;
     private MonitoredDir _monitoredDir;
@@ -115,7 +126,7 @@ public final class DatasetFileServiceImpl implements DatasetFileService, DirList
 
         if (updates.size() == 0) return dset;
 
-        Hedit hedit = new Hedit(dset.getFile());
+        Hedit hedit = new Hedit(dset.getFile(), HEADER_PADDING);
 
         hedit.updatePrimary(updates);
         DatasetFile res = dset.apply(updateTmpl);
@@ -211,7 +222,7 @@ public final class DatasetFileServiceImpl implements DatasetFileService, DirList
         if ((since != -1) && (since < lastModified)) {
             Collection<File> files = dir.getModified(since, lastModified);
             for (File f : files) {
-                _handleFile(f, false);
+                _handleFile(f, false, null);
             }
         }
         _state.increaseLastModified(lastModified);
@@ -278,15 +289,25 @@ public final class DatasetFileServiceImpl implements DatasetFileService, DirList
         Collection<File> files = evt.getNewFiles();
         Collection<String> next = _guessNextDatasets(files);
         if (next != null) _expectUpdates(next);
+
+        // filter out "new" files that are really old
+        List<File> newFiles = new ArrayList<File>(files.size());
         for (File f : files) {
-            // filter out "new" files that are really old
-            if (f.lastModified() < lastMod) continue;
+            if (f.getName().endsWith(".fits") && (f.lastModified() >= lastMod)) newFiles.add(f);
+        }
 
-            _handleFile(f, true);
+        // Read the headers in parallel.  Files that couldn't be read are
+        // parsed again by _handleFile, which reports the problem.
+        Map<File, Header> headers = Collections.emptyMap();
+        try {
+            headers = HeaderReader.readPrimaries(newFiles, DatasetFileImpl.KEYWORDS, SCAN_THREADS);
+        } catch (InterruptedException ex) {
+            LOG.log(Level.WARNING, "Interrupted while reading headers", ex);
         }
+        for (File f : newFiles) _handleFile(f, true, headers.get(f));
 
         files = evt.getModifiedFiles();
-        for (File f : files) _handleFile(f, false);
+        for (File f : files) _handleFile(f, false, null);
 
         files = evt.getDeletedFiles();
         for (File f : files) _handleRemovedFile(f);
@@ -294,12 +315,13 @@ public final class DatasetFileServiceImpl implements DatasetFileService, DirList
         _state.increaseLastModified(evt.getLastModified());
     }
 
-    private void _handleFile(File f, boolean isNew) {
+    private void _handleFile(File f, boolean isNew, Header primary) {
         String fname = f.getName();
         if (!fname.endsWith(".fits")) return;
         try {
 
-            DatasetFile dsetfile = DatasetFileImpl.parse(f);
+            DatasetFile dsetfile = (primary == null) ? DatasetFileImpl.parse(f) :
+                                   DatasetFileImpl.parse(f, primary);
             _lruCache.put(fname, dsetfile);
             _labelMap.put(fname, dsetfile.getDataset().getLabel());
             if (isNew) {
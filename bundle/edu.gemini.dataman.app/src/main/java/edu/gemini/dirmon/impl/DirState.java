@@ -76,6 +76,14 @@ final class DirState {
         return res;
     }
 
+    /**
+     * Determines whether the given file of the directory is one that should be
+     * considered at all, according to the file filter.
+     */
+    boolean accepts(File f) {
+        return (_filter == null) || _filter.accept(f);
+    }
+
     private synchronized FileRecord _lookupRecord(File f) {
         return _fileMap.get(f.getName());
     }
@@ -138,6 +146,16 @@ final class DirState {
     }
 
     DirScanResults doFullScan() {
+        return doFullScan(null);
+    }
+
+    /**
+     * Scans the whole directory.
+     *
+     * @param incomplete if not <code>null</code>, receives the new or updated
+     * files that were skipped because they are not complete yet
+     */
+    DirScanResults doFullScan(Collection<File> incomplete) {
 
         Set<File> newFiles = null;
         Set<File> updFiles = null;
@@ -153,15 +171,21 @@ final class DirState {
                     if (_compPolicy.isComplete(f)) {
                         if (newFiles == null) newFiles = new TreeSet<File>();
                         newFiles.add(f);
+                    } else if (incomplete != null) {
+                        incomplete.add(f);
                     }
                 } else {
                     // This file has been seen before.  See if it has been
                     // updated and is complete.  If updated and not complete,
                     // we'll find it in a future scan.
                     long modTime = f.lastModified();
-                    if ((modTime > rec.getLastUpdate()) && _compPolicy.isComplete(f)) {
-                        if (updFiles == null) updFiles = new TreeSet<File>();
-                        updFiles.add(f);
+                    if (modTime > rec.getLastUpdate()) {
+                        if (_compPolicy.isComplete(f)) {
+                            if (updFiles == null) updFiles = new TreeSet<File>();
+                            updFiles.add(f);
+                        } else if (incomplete != null) {
+                            incomplete.add(f);
+                        }
                     }
                 }
             }
@@ -195,6 +219,16 @@ final class DirState {
     }
 
     DirScanResults doPartialScan(Collection<File> files) {
+        return doPartialScan(files, null);
+    }
+
+    /**
+     * Scans the given files of the directory.
+     *
+     * @param incomplete if not <code>null</code>, receives the new or updated
+     * files that were skipped because they are not complete yet
+     */
+    DirScanResults doPartialScan(Collection<File> files, Collection<File> incomplete) {
         if ((files == null) || (files.size() == 0)) {
             return null;
         }
@@ -206,9 +240,13 @@ final class DirState {
         for (File f : files) {
             FileRecord rec = _lookupRecord(f);
             if (rec == null) {
-                if (f.exists() && _compPolicy.isComplete(f)) {
-                    if (newFiles == null) newFiles = new TreeSet<File>();
-                    newFiles.add(f);
+                if (f.exists()) {
+                    if (_compPolicy.isComplete(f)) {
+                        if (newFiles == null) newFiles = new TreeSet<File>();
+                        newFiles.add(f);
+                    } else if (incomplete != null) {
+                        incomplete.add(f);
+                    }
                 }
             } else {
                 if (!f.exists()) {
@@ -216,9 +254,13 @@ final class DirState {
                     delFiles.add(f);
                 } else {
                     long modTime = f.lastModified();
-                    if ((modTime > rec.getLastUpdate()) && _compPolicy.isComplete(f)) {
-                        if (updFiles == null) updFiles = new TreeSet<File>();
-                        updFiles.add(f);
+                    if (modTime > rec.getLastUpdate()) {
+                        if (_compPolicy.isComplete(f)) {
+                            if (updFiles == null) updFiles = new TreeSet<File>();
+                            updFiles.add(f);
+                        } else if (incomplete != null) {
+                            incomplete.add(f);
+                        }
                     }
                 }
             }
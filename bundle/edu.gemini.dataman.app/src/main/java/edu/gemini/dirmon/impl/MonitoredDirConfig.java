@@ -11,8 +11,10 @@ import java.io.FileFilter;
  */
 public interface MonitoredDirConfig {
     long DEFAULT_FULL_DIR_POLL_PERIOD_MS   = 60 * 1000;
+    long DEFAULT_WATCHED_FULL_DIR_POLL_PERIOD_MS = 30 * 60 * 1000;
     long DEFAULT_ACTIVE_SET_POLL_PERIOD_MS =  5 * 1000;
     int  DEFAULT_ACTIVE_SET_SIZE           = 100;
+    boolean DEFAULT_USE_WATCH_SERVICE      = true;
 
     /**
      * A default MonitoredDirConfig.
@@ -24,6 +26,10 @@ public interface MonitoredDirConfig {
             return DEFAULT_FULL_DIR_POLL_PERIOD_MS;
         }
 
+        public long getWatchedFullDirPollPeriod() {
+            return DEFAULT_WATCHED_FULL_DIR_POLL_PERIOD_MS;
+        }
+
         public long getActiveSetPollPeriod() {
             return DEFAULT_ACTIVE_SET_POLL_PERIOD_MS;
         }
@@ -32,6 +38,10 @@ public interface MonitoredDirConfig {
             return DEFAULT_ACTIVE_SET_SIZE;
         }
 
+        public boolean useWatchService() {
+            return DEFAULT_USE_WATCH_SERVICE;
+        }
+
         public CompletionPolicy getCompletionPolicy() {
             return _policy;
         }
@@ -50,6 +60,16 @@ public interface MonitoredDirConfig {
      */
     long getFullDirPollPeriod();
 
+    /**
+     * Gets the time between full scans of the directory while it is watched
+     * (see {@link #useWatchService()}).  These scans only catch changes that
+     * weren't reported, so they can be much less frequent than the full scans
+     * made when polling.
+     *
+     * @return time (in ms) to wait between full scans of a watched directory
+     */
+    long getWatchedFullDirPollPeriod();
+
     /**
      * Gets the time between scans of the active set of files associated with a
      * MonitoredDir.  The active set is checked more frequently than full
@@ -68,6 +88,19 @@ public interface MonitoredDirConfig {
      */
     int getActiveSetSize();
 
+    /**
+     * Determines whether the directory is watched for changes reported by the
+     * file system instead of being polled.  When watched, files are only
+     * polled while they are incomplete (every {@link #getActiveSetPollPeriod()}
+     * ms), and the directory is still scanned in full every
+     * {@link #getWatchedFullDirPollPeriod()} ms in case a change wasn't
+     * reported.  The directory is polled instead if the file system doesn't
+     * support watching, or stops reporting the changes of the directory.
+     * Changes made by other hosts to a directory mounted over the network are
+     * typically not reported, so such directories should be polled.
+     */
+    boolean useWatchService();
+
     /**
      * Gets the policy to use to determine whether a file is judged "complete",
      * or no longer being written to.  This is awful, and file locks are used
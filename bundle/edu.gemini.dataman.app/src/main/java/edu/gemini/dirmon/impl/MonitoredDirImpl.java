@@ -11,9 +11,11 @@ import edu.gemini.dirmon.util.DefaultDirLocation;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.*;
 import java.util.*;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -75,10 +77,58 @@ public final class MonitoredDirImpl implements MonitoredDir {
         }
     }
 
-    private class Scanner implements Runnable {
+    // Logs the time between the last modification of the new and updated
+    // files and their notification.
+    private static void _logLatency(DirLocation loc, long time, DirScanResults res) {
+        if (!LOG.isLoggable(Level.FINE)) return;
+
+        long max = 0;
+        long total = 0;
+        int count = 0;
+        for (Set<File> files : Arrays.asList(res.getNewFiles(), res.getModifiedFiles())) {
+            for (File f : files) {
+                long latency = time - f.lastModified();
+                if (latency > max) max = latency;
+                total += latency;
+                ++count;
+            }
+        }
+        if (count == 0) return;
+
+        LOG.fine("Detection latency in " + loc + ": max " + max +
+                 " ms, average " + (total / count) + " ms over " + count +
+                 " file(s)");
+    }
+
+    /**
+     * Finds changes in the directory.
+     */
+    private interface Monitor {
+        void start();
+        void stop();
+    }
+
+    /**
+     * Polls the directory, scanning it in full every full dir poll period and
+     * scanning the active set every active set poll period.
+     */
+    private class Scanner implements Monitor, Runnable {
         private Timer _timer;
 
-        synchronized void start() {
+        // Whether polling takes over from a watcher that stopped working, in
+        // which case the listeners have already been initialized and the
+        // changes found by the first scan are reported.
+        private final boolean _takeOver;
+
+        Scanner() {
+            this(false);
+        }
+
+        Scanner(boolean takeOver) {
+            _takeOver = takeOver;
+        }
+
+        public synchronized void start() {
             if (_timer == null) {
                 _timer = new Timer(true);
                 Thread initThread = new Thread(this);
@@ -86,7 +136,7 @@ public final class MonitoredDirImpl implements MonitoredDir {
             }
         }
 
-        synchronized void stop() {
+        public synchronized void stop() {
             if (_timer != null) {
                 _timer.cancel();
                 _timer = null;
@@ -94,21 +144,132 @@ public final class MonitoredDirImpl implements MonitoredDir {
         }
 
         public void run() {
-            _dirState.doFullScan();
+            long start = System.currentTimeMillis();
+            DirScanResults res = _dirState.doFullScan();
             synchronized (this) {
                 if (_timer == null) return;
-                markInitialized(_dirState.getLatestModTime());
+                if (!_takeOver) markInitialized(_dirState.getLatestModTime());
                 long period = _config.getFullDirPollPeriod();
                 _timer.schedule(new FullScanTask(), period, period);
                 period = _config.getActiveSetPollPeriod();
                 _timer.schedule(new ActiveScanTask(), period, period);
             }
+            if (_takeOver && (res != null)) {
+                DirEvent evt = new DirEventImpl(MonitoredDirImpl.this, res);
+                _logScan(Level.FINER, "full", getDirLocation(), start, evt);
+                _fireEvent(evt);
+            }
+        }
+    }
+
+    /**
+     * Watches the directory for the changes reported by the file system.  The
+     * files reported as created, modified or deleted are scanned right away,
+     * and those that aren't complete yet are scanned again every active set
+     * poll period until they are.  The directory is still scanned in full
+     * every watched full dir poll period, in case a change wasn't reported, and
+     * whenever the file system reports that it lost track of the changes.  If
+     * the directory can no longer be watched, it is polled instead.
+     */
+    private class Watcher implements Monitor, Runnable {
+        private final WatchService _service;
+        private Thread _thread;
+
+        // Files changed but not complete yet, only used by the watcher thread.
+        private Set<File> _pending = new TreeSet<File>();
+
+        Watcher(WatchService service) {
+            _service = service;
+        }
+
+        public synchronized void start() {
+            if (_thread == null) {
+                _thread = new Thread(this, "Dir watcher " + getDirLocation());
+                _thread.setDaemon(true);
+                _thread.start();
+            }
+        }
+
+        public synchronized void stop() {
+            if (_thread != null) {
+                _thread.interrupt();
+                _thread = null;
+                try {
+                    _service.close();
+                } catch (IOException ex) {
+                    LOG.log(Level.WARNING, "Could not close watch service", ex);
+                }
+            }
+        }
+
+        private synchronized boolean isStopped() {
+            return _thread == null;
+        }
+
+        public void run() {
+            try {
+                _dirState.doFullScan(_pending);
+                if (isStopped()) return;
+                markInitialized(_dirState.getLatestModTime());
+
+                long activePeriod = _config.getActiveSetPollPeriod();
+                long fullPeriod   = _config.getWatchedFullDirPollPeriod();
+                long nextFullScan = System.currentTimeMillis() + fullPeriod;
+                while (!isStopped()) {
+                    long wait = nextFullScan - System.currentTimeMillis();
+                    if (!_pending.isEmpty()) wait = Math.min(wait, activePeriod);
+                    WatchKey key = (wait > 0) ? _service.poll(wait, TimeUnit.MILLISECONDS) : null;
+
+                    long start = System.currentTimeMillis();
+                    boolean overflow = false;
+                    if (key != null) {
+                        for (WatchEvent<?> evt : key.pollEvents()) {
+                            if (evt.kind() == StandardWatchEventKinds.OVERFLOW) {
+                                overflow = true;
+                            } else {
+                                File f = new File(_dir, evt.context().toString());
+                                if (_dirState.accepts(f)) _pending.add(f);
+                            }
+                        }
+                        if (!key.reset()) {
+                            LOG.severe("Can no longer watch " + getDirLocation() + ", polling it instead");
+                            _pollInstead(this);
+                            return;
+                        }
+                    }
+
+                    Set<File> incomplete = new TreeSet<File>();
+                    DirScanResults res;
+                    String type;
+                    if (overflow || (start >= nextFullScan)) {
+                        res  = _dirState.doFullScan(incomplete);
+                        type = overflow ? "overflow" : "full";
+                        nextFullScan = start + fullPeriod;
+                    } else {
+                        res  = _dirState.doPartialScan(_pending, incomplete);
+                        type = "watched";
+                    }
+                    _pending = incomplete;
+
+                    if (res != null) {
+                        DirEvent evt = new DirEventImpl(MonitoredDirImpl.this, res);
+                        _logScan(Level.FINER, type, getDirLocation(), start, evt);
+                        _logLatency(getDirLocation(), start, res);
+                        _fireEvent(evt);
+                    }
+                }
+            } catch (InterruptedException ex) {
+                // stopped
+            } catch (ClosedWatchServiceException ex) {
+                // stopped
+            }
         }
     }
 
+    private File _dir;
     private DirState _dirState;
     private ActiveFiles _activeFiles;
-    private Scanner _scanner;
+    private Monitor _monitor;
 
     private DirLocation _loc;
     private final MonitoredDirConfig _config;
@@ -132,16 +293,50 @@ public final class MonitoredDirImpl implements MonitoredDir {
     }
 
     public synchronized void start() {
-        if (_scanner == null) {
-            _scanner = new Scanner();
-            _scanner.start();
+        if (_monitor == null) {
+            if (_config.useWatchService()) _monitor = _createWatcher();
+            if (_monitor == null) _monitor = new Scanner();
+            _monitor.start();
         }
     }
 
     public synchronized void stop() {
-        if (_scanner != null) {
-            _scanner.stop();
-            _scanner = null;
+        if (_monitor != null) {
+            _monitor.stop();
+            _monitor = null;
+        }
+    }
+
+    // Replaces a watcher that can no longer watch the directory with polling,
+    // unless monitoring was stopped in the meantime.
+    private synchronized void _pollInstead(Watcher watcher) {
+        if (_monitor != watcher) return;
+        watcher.stop();
+        _monitor = new Scanner(true);
+        _monitor.start();
+    }
+
+    // Registers for the changes in the directory before it is first scanned,
+    // so that none is missed.  Returns null if the directory can't be watched.
+    private Watcher _createWatcher() {
+        WatchService service = null;
+        try {
+            service = _dir.toPath().getFileSystem().newWatchService();
+            _dir.toPath().register(service,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY,
+                    StandardWatchEventKinds.ENTRY_DELETE);
+            return new Watcher(service);
+        } catch (IOException | UnsupportedOperationException ex) {
+            LOG.log(Level.WARNING, "Could not watch " + _loc + ", polling it instead", ex);
+            if (service != null) {
+                try {
+                    service.close();
+                } catch (IOException ex2) {
+                    LOG.log(Level.WARNING, "Could not close watch service", ex2);
+                }
+            }
+            return null;
         }
     }
 
@@ -156,7 +351,7 @@ public final class MonitoredDirImpl implements MonitoredDir {
     private synchronized void _setDirLocation(DirLocation loc) throws java.io.IOException {
         if (loc == null) throw new NullPointerException("loc is null");
 
-        if (_scanner != null) {
+        if (_monitor != null) {
             throw new IllegalStateException("Currently monitoring a directory.");
         }
 
@@ -187,6 +382,7 @@ public final class MonitoredDirImpl implements MonitoredDir {
         CompletionPolicy compPolicy = _config.getCompletionPolicy();
         if (compPolicy == null) compPolicy = CompletionPolicy.IMMEDIATE;
 
+        _dir         = dir;
         _dirState    = new DirState(dir, compPolicy, _config.getFileFilter());
         _activeFiles = new ActiveFiles(dir, _config.getActiveSetSize());
     }
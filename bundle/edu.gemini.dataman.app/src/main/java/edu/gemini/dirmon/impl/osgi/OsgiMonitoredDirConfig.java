@@ -24,10 +24,14 @@ public final class OsgiMonitoredDirConfig implements MonitoredDirConfig, Seriali
 
     static final String FULL_DIR_POLL_PERIOD_PROP   = "edu.gemini.dirmon.fullDirPollPeriod";
 
+    static final String WATCHED_FULL_DIR_POLL_PERIOD_PROP = "edu.gemini.dirmon.watchedFullDirPollPeriod";
+
     static final String ACTIVE_SET_POLL_PERIOD_PROP = "edu.gemini.dirmon.activeSetPollPeriod";
 
     static final String ACTIVE_SET_SIZE_PROP        = "edu.gemini.dirmon.activeSetSize";
 
+    static final String USE_WATCH_SERVICE_PROP      = "edu.gemini.dirmon.watch";
+
     static final String COMP_POLICY_PROP = "edu.gemini.dirmon.compPolicy";
     static final String IDLE_TIME_PROP   = "edu.gemini.dirmon.maxIdleTime";
 
@@ -35,8 +39,10 @@ public final class OsgiMonitoredDirConfig implements MonitoredDirConfig, Seriali
     static final String EXCLUDE_FILE_FILTER = "edu.gemini.dirmon.excludes";
 
     private long _fullPollPeriod   = DEFAULT_FULL_DIR_POLL_PERIOD_MS;
+    private long _watchedFullPollPeriod = DEFAULT_WATCHED_FULL_DIR_POLL_PERIOD_MS;
     private long _activePollPeriod = DEFAULT_ACTIVE_SET_POLL_PERIOD_MS;
     private int  _activeSetSize    = DEFAULT_ACTIVE_SET_SIZE;
+    private boolean _useWatchService = DEFAULT_USE_WATCH_SERVICE;
 
     private CompletionPolicy _compPolicy = new IdleTimeCompletionPolicy();
 
@@ -59,6 +65,22 @@ public final class OsgiMonitoredDirConfig implements MonitoredDirConfig, Seriali
             }
         }
 
+        // Get the full poll period to use while watching.
+        propStr = ctx.getProperty(WATCHED_FULL_DIR_POLL_PERIOD_PROP);
+        if (propStr != null) {
+            try {
+                _watchedFullPollPeriod = Long.parseLong(propStr);
+                if (_watchedFullPollPeriod < 0) {
+                    _watchedFullPollPeriod = DEFAULT_WATCHED_FULL_DIR_POLL_PERIOD_MS;
+                    LOG.warning("Cannot use a negative watched full dir poll period: " + propStr);
+                } else {
+                    LOG.info("Using watchedFullDirPollPeriod=" + _watchedFullPollPeriod);
+                }
+            } catch (NumberFormatException ex) {
+                LOG.warning("Illegal value for watched full poll period: " + propStr);
+            }
+        }
+
         // Get the active set poll period to use.
         propStr = ctx.getProperty(ACTIVE_SET_POLL_PERIOD_PROP);
         if (propStr != null) {
@@ -91,6 +113,13 @@ public final class OsgiMonitoredDirConfig implements MonitoredDirConfig, Seriali
             }
         }
 
+        // Whether to watch the directory instead of polling it.
+        propStr = ctx.getProperty(USE_WATCH_SERVICE_PROP);
+        if (propStr != null) {
+            _useWatchService = Boolean.parseBoolean(propStr);
+            LOG.info("Using watch=" + _useWatchService);
+        }
+
         // Get the max write idle time
         long maxIdle = IdleTimeCompletionPolicy.DEFAULT_MAX_WRITE_IDLE_TIME;
         propStr = ctx.getProperty(IDLE_TIME_PROP);
@@ -135,6 +164,10 @@ public final class OsgiMonitoredDirConfig implements MonitoredDirConfig, Seriali
         return _fullPollPeriod;
     }
 
+    public long getWatchedFullDirPollPeriod() {
+        return _watchedFullPollPeriod;
+    }
+
     public long getActiveSetPollPeriod() {
         return _activePollPeriod;
     }
@@ -143,6 +176,10 @@ public final class OsgiMonitoredDirConfig implements MonitoredDirConfig, Seriali
         return _activeSetSize;
     }
 
+    public boolean useWatchService() {
+        return _useWatchService;
+    }
+
     public CompletionPolicy getCompletionPolicy() {
         return _compPolicy;
     }
@@ -9,6 +9,7 @@ import org.junit.Test;
 
 import java.io.File;
 import java.net.URL;
+import java.util.Random;
 
 /**
  *
@@ -52,4 +53,37 @@ public final class DatamanFileUtilTest {
         long l = DatamanFileUtil.crc(getTestFile());
         assertEquals(3910581467l, l);
     }
+
+    @Test
+    public void testCopyWithChecksums() throws Exception {
+        File dest = File.createTempFile("TestFileCopy", "txt");
+        dest.deleteOnExit();
+
+        FileChecksums sums = DatamanFileUtil.copyFileWithChecksums(getTestFile(), dest);
+        assertEquals(MD5_RES, sums.getMd5HexString());
+        assertEquals(3910581467l, sums.getCrc());
+        assertEquals(sums, DatamanFileUtil.checksums(dest));
+    }
+
+    @Test
+    public void testSlicedCRC() throws Exception {
+        // Compare with the CRC computed one byte at a time, at all offsets.
+        byte[] buf = new byte[100];
+        new Random(0).nextBytes(buf);
+        for (int off=0; off<buf.length; ++off) {
+            CRC expected = new CRC();
+            for (int i=0; i<buf.length; ++i) {
+                expected.update(buf, i, 1);
+            }
+
+            CRC actual = new CRC();
+            actual.update(buf, 0, off);
+            actual.update(buf, off, buf.length - off);
+            assertEquals(expected.getValue(), actual.getValue());
+        }
+
+        CRC crc = new CRC();
+        crc.update("123456789".getBytes("US-ASCII"));
+        assertEquals("0376e6e7", crc.getValueStr());
+    }
 }
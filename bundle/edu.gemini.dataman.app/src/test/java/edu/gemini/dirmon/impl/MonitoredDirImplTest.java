@@ -0,0 +1,143 @@
+//
+// $
+//
+
+package edu.gemini.dirmon.impl;
+
+import edu.gemini.dirmon.DirEvent;
+import edu.gemini.dirmon.DirListener;
+import edu.gemini.dirmon.MonitoredDir;
+import edu.gemini.dirmon.util.DefaultDirLocation;
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests watching a directory for changes.
+ */
+public final class MonitoredDirImplTest {
+
+    // Polls rarely, so that changes noticed within the test time were
+    // reported by the watch service.
+    private static final class TestConfig implements MonitoredDirConfig {
+        private final CompletionPolicy _policy;
+
+        TestConfig(CompletionPolicy policy) {
+            _policy = policy;
+        }
+
+        public long getFullDirPollPeriod() { return 60 * 60 * 1000; }
+        public long getWatchedFullDirPollPeriod() { return 60 * 60 * 1000; }
+        public long getActiveSetPollPeriod() { return 100; }
+        public int getActiveSetSize() { return DEFAULT_ACTIVE_SET_SIZE; }
+        public boolean useWatchService() { return true; }
+        public CompletionPolicy getCompletionPolicy() { return _policy; }
+        public FileFilter getFileFilter() { return null; }
+    }
+
+    private static final class TestListener implements DirListener {
+        final CountDownLatch init = new CountDownLatch(1);
+        final BlockingQueue<DirEvent> events = new LinkedBlockingQueue<DirEvent>();
+
+        public void init(MonitoredDir dir, long lastModified) {
+            init.countDown();
+        }
+
+        public void dirModified(DirEvent evt) {
+            events.add(evt);
+        }
+    }
+
+    private File _dir;
+    private MonitoredDirImpl _mon;
+    private TestListener _listener;
+
+    @Before
+    public void setUp() throws Exception {
+        _dir = File.createTempFile("MonitoredDirImplTest", "");
+        assertTrue(_dir.delete());
+        assertTrue(_dir.mkdir());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (_mon != null) _mon.stop();
+        File[] files = _dir.listFiles();
+        if (files != null) for (File f : files) f.delete();
+        _dir.delete();
+    }
+
+    private void start(CompletionPolicy policy) throws Exception {
+        _mon = new MonitoredDirImpl(new DefaultDirLocation(_dir.getPath()), new TestConfig(policy));
+        _listener = new TestListener();
+        _mon.addListener(_listener);
+        _mon.start();
+        assertTrue(_listener.init.await(5, TimeUnit.SECONDS));
+    }
+
+    private DirEvent nextEvent() throws InterruptedException {
+        DirEvent evt = _listener.events.poll(10, TimeUnit.SECONDS);
+        assertNotNull(evt);
+        return evt;
+    }
+
+    private static void write(File f, int size) throws IOException {
+        FileOutputStream out = new FileOutputStream(f);
+        try {
+            out.write(new byte[size]);
+        } finally {
+            out.close();
+        }
+    }
+
+    @Test
+    public void testNewAndDeletedFiles() throws Exception {
+        start(CompletionPolicy.IMMEDIATE);
+
+        File f = new File(_dir, "S20150101S0001.fits");
+        write(f, 2880);
+        DirEvent evt = nextEvent();
+        assertTrue(evt.getNewFiles().contains(f));
+
+        assertTrue(f.delete());
+        evt = nextEvent();
+        while (evt.getDeletedFiles().isEmpty()) evt = nextEvent();
+        assertTrue(evt.getDeletedFiles().contains(f));
+    }
+
+    @Test
+    public void testIncompleteFilesAreReportedWhenComplete() throws Exception {
+        // Complete when the file has a full block.
+        start(new CompletionPolicy() {
+            public boolean isComplete(File f) {
+                return f.length() == 2880;
+            }
+        });
+
+        File f = new File(_dir, "S20150101S0002.fits");
+        write(f, 100);
+        Thread.sleep(500);
+        assertTrue(_listener.events.isEmpty());
+
+        write(f, 2880);
+        DirEvent evt = nextEvent();
+        assertTrue(evt.getNewFiles().contains(f));
+    }
+
+    @Test
+    public void testWatchedByDefault() {
+        MonitoredDirConfig config = MonitoredDirConfig.DEFAULT;
+        assertTrue(config.useWatchService());
+        assertTrue(config.getWatchedFullDirPollPeriod() > config.getFullDirPollPeriod());
+    }
+}
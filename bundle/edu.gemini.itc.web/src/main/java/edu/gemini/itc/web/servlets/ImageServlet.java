@@ -13,8 +13,8 @@ import java.util.logging.Logger;
 /**
  * Image servlet for ITC. The instrument Servlet adds a tag the points to .
  * this servlet for each Image it wants to send the user. This servlet reads
- * the tag, opens the file and sends it to the user using a servlet output
- * stream.
+ * the tag, looks up the chart or spectrum kept by {@link ITCImageFileIO} and
+ * sends it to the user using a servlet output stream.
  */
 public final class ImageServlet extends HttpServlet {
 
@@ -39,7 +39,7 @@ public final class ImageServlet extends HttpServlet {
         }
 
         try {
-            // copy file to output stream
+            // copy chart or spectrum to output stream
             ITCImageFileIO.sendFiletoServOut(filename, response.getOutputStream());
 
         } catch (FileNotFoundException e) {
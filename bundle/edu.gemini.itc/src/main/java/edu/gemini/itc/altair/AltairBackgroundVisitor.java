@@ -27,8 +27,9 @@ public class AltairBackgroundVisitor implements SampledSpectrumVisitor {
      * Implements the SampledSpectrumVisitor interface
      */
     public void visit(SampledSpectrum sed) {
+        final Interpolator back = new Interpolator(_altairBack);
         for (int i = 0; i < sed.getLength(); i++) {
-            sed.setY(i, _altairBack.getY(sed.getX(i)) + sed.getY(i));
+            sed.setY(i, back.getY(sed.getX(i)) + sed.getY(i));
         }
     }
 
@@ -27,8 +27,9 @@ public class GemsBackgroundVisitor implements SampledSpectrumVisitor {
      * Implements the SampledSpectrumVisitor interface
      */
     public void visit(SampledSpectrum sed) {
+        final Interpolator back = new Interpolator(_gemsBack);
         for (int i = 0; i < sed.getLength(); i++) {
-            sed.setY(i, _gemsBack.getY(sed.getX(i)) + sed.getY(i));
+            sed.setY(i, back.getY(sed.getX(i)) + sed.getY(i));
         }
     }
 
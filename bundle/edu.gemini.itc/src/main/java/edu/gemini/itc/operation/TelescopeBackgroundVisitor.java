@@ -72,8 +72,9 @@ public class TelescopeBackgroundVisitor implements SampledSpectrumVisitor {
      * Implements the SampledSpectrumVisitor interface
      */
     public void visit(SampledSpectrum sed) {
+        final Interpolator back = new Interpolator(telescopeBack);
         for (int i = 0; i < sed.getLength(); i++) {
-            sed.setY(i, telescopeBack.getY(sed.getX(i)) + sed.getY(i));
+            sed.setY(i, back.getY(sed.getX(i)) + sed.getY(i));
         }
     }
 
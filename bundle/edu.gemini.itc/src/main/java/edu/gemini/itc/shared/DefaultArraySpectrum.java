@@ -12,7 +12,11 @@ public final class DefaultArraySpectrum implements ArraySpectrum {
     // The spectral data.  _data = new double[2][num_data_points]
     // data[0][i] = x values
     // data[1][i] = y values
-    private final double[][] _data;
+    private double[][] _data;
+
+    // True if _data may be shared with clones of this spectrum or with the
+    // cached file data, in which case it is copied before it is modified.
+    private boolean _shared;
 
     public static DefaultArraySpectrum fromUserSpectrum(String spectrum) {
         final double[][] data = DatFile.fromUserSpectrum(spectrum);
@@ -59,19 +63,32 @@ public final class DefaultArraySpectrum implements ArraySpectrum {
      *                 separated by whitespace or comma.
      */
     public DefaultArraySpectrum(String fileName) {
-        final double[][] data = DatFile.arrays().apply(fileName);
-        // for now make a copy of cached values, just to be on the safe side
-        _data = new double[2][];
-        _data[0] = data[0].clone();
-        _data[1] = data[1].clone();
+        // the cached values are only copied if this spectrum is modified
+        _data   = DatFile.arrays().apply(fileName);
+        _shared = true;
+    }
+
+    // Private c'tor to support clone(), shares the data with the original.
+    private DefaultArraySpectrum(final DefaultArraySpectrum sp) {
+        _data   = sp._data;
+        _shared = true;
     }
 
     /**
-     * Implements Cloneable interface
+     * Implements Cloneable interface.  The data is only copied once either
+     * this spectrum or the clone is modified.
      */
     public Object clone() {
-        // constructor will clone the data array
-        return new DefaultArraySpectrum(_data);
+        _shared = true;
+        return new DefaultArraySpectrum(this);
+    }
+
+    // Makes sure the data isn't shared before modifying it.
+    private void own() {
+        if (_shared) {
+            _data   = new double[][] { _data[0].clone(), _data[1].clone() };
+            _shared = false;
+        }
     }
 
     /**
@@ -146,7 +163,7 @@ public final class DefaultArraySpectrum implements ArraySpectrum {
     }
 
     public void applyWavelengthCorrection() {
-
+        own();
         for (int i = 0; i < getLength(); ++i) {
             _data[1][i] = _data[1][i] * _data[0][i];
         }
@@ -158,6 +175,7 @@ public final class DefaultArraySpectrum implements ArraySpectrum {
      */
     public void setY(int index, double y) {
         if (index < 0 || index >= getLength()) return;  // no-op
+        own();
         _data[1][index] = y;
     }
 
@@ -166,6 +184,7 @@ public final class DefaultArraySpectrum implements ArraySpectrum {
      */
     public void rescaleX(double factor) {
         if (factor == 1.0) return;
+        own();
         for (int i = 0; i < getLength(); ++i) {
             _data[0][i] *= factor;
         }
@@ -176,6 +195,7 @@ public final class DefaultArraySpectrum implements ArraySpectrum {
      */
     public void rescaleY(double factor) {
         if (factor == 1.0) return;
+        own();
         for (int i = 0; i < getLength(); ++i) {
             _data[1][i] *= factor;
         }
@@ -183,6 +203,7 @@ public final class DefaultArraySpectrum implements ArraySpectrum {
 
     public void smoothY(int smoothing_element) {
         if (smoothing_element == 1.0) return;
+        own();
         for (int i = 0; i < getLength(); ++i) {
             try {
                 if (i + smoothing_element > getLength())
@@ -364,6 +385,8 @@ public final class DefaultArraySpectrum implements ArraySpectrum {
      * alter the return value.
      */
     public double[][] getData() {
+        // callers get the actual data, which they may modify
+        own();
         return _data;
     }
 
@@ -25,6 +25,10 @@ import java.text.NumberFormat;
 public class DefaultSampledSpectrum implements VisitableSampledSpectrum {
     private double[] _y; //Array containing flux values in relative units
 
+    // True if _y may be shared with clones of this spectrum, in which case
+    // it is copied before it is modified.
+    private boolean _shared;
+
     //Values of start and end points
     private double _xStart, _xEnd;
 
@@ -51,19 +55,26 @@ public class DefaultSampledSpectrum implements VisitableSampledSpectrum {
         double xEnd = sp.getEnd();
         int numIntervals = (int) ((xEnd - xStart) / xInterval);
         double[] data = new double[numIntervals + 1];
+        Interpolator in = new Interpolator(sp);
         for (int i = 0; i <= numIntervals; ++i) {
-            data[i] = sp.getY(i * xInterval + xStart);
+            data[i] = in.getY(i * xInterval + xStart);
         }
-        reset(data, xStart, xInterval);
+        set(data, xStart, xInterval);
+    }
+
+    // Private c'tor to support clone(), shares the data with the original.
+    private DefaultSampledSpectrum(DefaultSampledSpectrum sp) {
+        set(sp._y, sp._xStart, sp._xInterval);
+        _shared = true;
     }
 
     /**
-     * Implements the Cloneable interface.
+     * Implements the Cloneable interface.  The data is only copied once
+     * either this spectrum or the clone is modified.
      */
     public Object clone() {
-        double[] data = new double[getLength()];
-        System.arraycopy(getValues(), 0, data, 0, getLength());
-        return new DefaultSampledSpectrum(data, getStart(), getSampling());
+        _shared = true;
+        return new DefaultSampledSpectrum(this);
     }
 
     public void trim(double newStart, double newEnd) {
@@ -81,7 +92,7 @@ public class DefaultSampledSpectrum implements VisitableSampledSpectrum {
         //System.out.println("startpos: " + new Double((newStart-getStart())/_xInterval).intValue() + "length: " + getLength() + " copylength: " + new Double((newEnd-newStart)/_xInterval).intValue());
 
         System.arraycopy(getValues(), new Double((newStart - getStart()) / _xInterval).intValue(), data, 0, new Double((newEnd - newStart) / _xInterval).intValue());
-        reset(data, newStart, _xInterval);
+        set(data, newStart, _xInterval);
     }
 
 
@@ -92,14 +103,27 @@ public class DefaultSampledSpectrum implements VisitableSampledSpectrum {
      */
     public void reset(double[] y, double xStart,
                       double xInterval) {
-        _y = new double[y.length];
         // need our own copy so client can't mess with it.
-        System.arraycopy(y, 0, _y, 0, y.length);
+        set(y.clone(), xStart, xInterval);
+    }
+
+    // Sets all parameters, taking ownership of the given array.
+    private void set(double[] y, double xStart, double xInterval) {
+        _y = y;
+        _shared = false;
         _xStart = xStart;
         _xInterval = xInterval;
         _xEnd = _xStart + (_y.length - 1) * _xInterval;
     }
 
+    // Makes sure the data isn't shared with any clone before modifying it.
+    private void own() {
+        if (_shared) {
+            _y = _y.clone();
+            _shared = false;
+        }
+    }
+
 
     /**
      * The accept(SampledSpectrumVisitor) method is used by Visitors to
@@ -205,6 +229,7 @@ public class DefaultSampledSpectrum implements VisitableSampledSpectrum {
         double start = getStart();
         double sampling = getSampling();
 
+        own();
         for (int i = 0; i < getLength(); ++i) {
             _y[i] = _y[i] * (start + i * sampling);
         }
@@ -216,6 +241,7 @@ public class DefaultSampledSpectrum implements VisitableSampledSpectrum {
      */
     public void setY(int bin, double y) {
         if (bin < 0 || bin >= getLength()) return;  // no-op
+        own();
         _y[bin] = y;
     }
 
@@ -233,7 +259,7 @@ public class DefaultSampledSpectrum implements VisitableSampledSpectrum {
             x = (double) i * getSampling() + xStart;
             data[i] = getY(x / factor);
         }
-        reset(data, xStart, getSampling());
+        set(data, xStart, getSampling());
     }
 
     /**
@@ -241,6 +267,7 @@ public class DefaultSampledSpectrum implements VisitableSampledSpectrum {
      */
     public void rescaleY(double factor) {
         if (factor == 1.0) return;
+        own();
         for (int i = 0; i < getLength(); ++i) {
             _y[i] *= factor;
         }
@@ -270,6 +297,7 @@ public class DefaultSampledSpectrum implements VisitableSampledSpectrum {
         }
         //System.out.println("End"+ new Double(smoothing_element/2).intValue()+ "  " + getSampling());
         _y = _y_temp;
+        _shared = false;
     }
 
     /**
@@ -6,83 +6,174 @@ import org.jfree.chart.ChartUtilities;
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.*;
+import java.nio.charset.Charset;
+import java.security.SecureRandom;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Store for the charts and spectra produced by the recipes, until they are
+ * requested by the user through the links in the result page.  They used to
+ * be written to temp files; they are now kept in memory, keyed by a generated
+ * file name, for at most {@link #EXPIRY_MS}.  Charts are encoded as PNG when
+ * they are saved.  Once the stored results take up more than
+ * {@link #MAX_BYTES}, the oldest ones are dropped, except for those created
+ * in the last {@link #MIN_AGE_MS} and for spectrum names that have been
+ * reserved but not written to yet.
+ */
 public final class ITCImageFileIO {
 
-    //Try to use the /tmp dir.  Every UNIX machine has one.
-    private static final String _directory = "/tmp";
-    private static final String _subDir = "/ITCTempImages";
-    private static final File _tempDir = new File(File.separator + _directory + File.separator + _subDir);
+    /** Total size of the charts and spectra above which the oldest are dropped. */
+    public static final long MAX_BYTES = 64L * 1024 * 1024;
 
-    static {
-        //Include code here to check Directory structure and Exit
-        // if it cannot complete its task.
-        if (!(_tempDir.exists())) {
-            _tempDir.mkdir();
+    /** Age below which charts and spectra are kept whatever their total size. */
+    public static final long MIN_AGE_MS = TimeUnit.MINUTES.toMillis(1);
+
+    /** Time after which charts and spectra are discarded. */
+    public static final long EXPIRY_MS = TimeUnit.HOURS.toMillis(1);
+
+    // DataOutputStream.writeBytes, used for the temp files, wrote the low byte of every char
+    private static final Charset SED_CHARSET = Charset.forName("ISO-8859-1");
+
+    private static final SecureRandom _random = new SecureRandom();
+
+    // in creation order, i.e. oldest first
+    private static final Map<String, Entry> _entries = new LinkedHashMap<>();
+
+    // total size of the entries
+    private static long _bytes = 0;
+
+    /**
+     * A stored chart or spectrum.  Entries are only accessed while holding
+     * the class lock.
+     */
+    private static final class Entry {
+        private final long created = System.currentTimeMillis();
+        private final byte[] png;
+        private final StringBuilder sed;
+
+        Entry(final byte[] png) {
+            this.png = png;
+            this.sed = null;
+        }
+
+        Entry() {
+            this.png = null;
+            this.sed = new StringBuilder();
+        }
+
+        boolean isExpired(final long now) {
+            return now - created > EXPIRY_MS;
+        }
+
+        // a spectrum name handed out by getRandomFileName but not saved yet
+        boolean isReserved() {
+            return sed != null && sed.length() == 0;
+        }
+
+        // one byte per char for the spectra
+        long size() {
+            return (png != null) ? png.length : sed.length();
+        }
+
+        byte[] bytes() {
+            return (png != null) ? png : sed.toString().getBytes(SED_CHARSET);
         }
     }
 
     /**
-     * Copies a file from the temp file storage to the given output stream.
-     * @param filename
+     * Copies a chart or spectrum to the given output stream.
+     * @param filename name returned when the chart or spectrum was saved
      * @param out
+     * @throws FileNotFoundException if there is no such chart or spectrum, or it has expired
      * @throws IOException
      */
     public static void sendFiletoServOut(final String filename, final OutputStream out) throws IOException {
-        final FileInputStream in = new FileInputStream(getImagePath() + File.separator + filename);
-        try (final BufferedInputStream bis = new BufferedInputStream(in)) {
-            int data;
-            while ((data = bis.read()) != -1) {
-                out.write(data);
-            }
-        }
+        out.write(lookup(filename));
+        out.flush();
     }
 
-    public static String saveCharttoDisk(final Image tmpChart) throws IOException {
-        final File randomFileName = File.createTempFile("SessionID", ".png", _tempDir);
-        final FileOutputStream outfile = new FileOutputStream(randomFileName);
-        try (final OutputStream out = new BufferedOutputStream(outfile)) {
-            ChartUtilities.writeBufferedImageAsPNG(out, (BufferedImage) tmpChart);
-        }
-        return randomFileName.getName();
+    /**
+     * Stores a chart as PNG, returning the name under which it can be requested.
+     */
+    public static String saveChart(final Image tmpChart) throws IOException {
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        ChartUtilities.writeBufferedImageAsPNG(bos, (BufferedImage) tmpChart);
+        return put(".png", new Entry(bos.toByteArray()));
     }
 
+    // TODO : collapse saveSeds into one function!
+    public static void saveSed(final String header, final SampledSpectrum sed, final String randomFilename) throws IOException {
+        appendSed(randomFilename, header, sed.printSpecAsString());
+    }
 
-    // TODO : collapse saveSedtoDisks into one function!
-    public static void saveSedtoDisk(final String header, final SampledSpectrum sed, final String randomFilename) throws IOException {
-        final File tmpOut = new File(getImagePath() + "/" + randomFilename);
-        final FileOutputStream Outfile = new FileOutputStream(getImagePath() + "/" + randomFilename, true);  //append if exists
-        final OutputStream out = new BufferedOutputStream(Outfile);
-        try (final DataOutputStream dout = new DataOutputStream(out)) {
-            String specOutput = sed.printSpecAsString();
-            if (tmpOut.length() > 10) {
-                dout.writeBytes(specOutput);  //if the file already existed then just append spectrum to it.
-            } else {
-                dout.writeBytes(header + " \n" + specOutput);
-            }
-        }
+    public static void saveSed(final String header, final SampledSpectrum sed, final String randomFilename, final int firstIndex, final int lastIndex) throws IOException {
+        appendSed(randomFilename, header, sed.printSpecAsString(firstIndex, lastIndex));
     }
 
-    public static void saveSedtoDisk(final String header, final SampledSpectrum sed, final String randomFilename, final int firstIndex, final int lastIndex) throws IOException {
-        final File tmpOut = new File(getImagePath() + "/" + randomFilename);
-        final FileOutputStream Outfile = new FileOutputStream(getImagePath() + "/" + randomFilename, true);  //append if exists
-        final OutputStream out = new BufferedOutputStream(Outfile);
-        try (final DataOutputStream dout = new DataOutputStream(out)) {
-            String specOutput = sed.printSpecAsString(firstIndex, lastIndex);
-            if (tmpOut.length() > 10) {
-                dout.writeBytes(specOutput);  //if the file already existed then just append spectrum to it.
-            } else {
-                dout.writeBytes(header + " \n" + specOutput);
-            }
-        }
+    /**
+     * Reserves a name for a spectrum to be saved with <code>saveSed</code>.
+     */
+    public static String getRandomFileName(final String extension) {
+        return put(extension, new Entry());
     }
 
-    public static String getRandomFileName(final String extension) throws IOException {
-        return File.createTempFile("SessionID", extension, _tempDir).getName();
+    private static synchronized void appendSed(final String filename, final String header, final String specOutput) throws FileNotFoundException {
+        final long now = System.currentTimeMillis();
+        removeExpired(now);
+        final Entry e = _entries.get(filename);
+        if (e == null || e.sed == null) throw new FileNotFoundException(filename);
+
+        final long before = e.size();
+        if (e.sed.length() == 0) e.sed.append(header).append(" \n");  //if there is data already then just append spectrum to it.
+        e.sed.append(specOutput);
+        _bytes += e.size() - before;
+        removeOldest(now);
+    }
+
+    private static synchronized String put(final String extension, final Entry e) {
+        final long now = System.currentTimeMillis();
+        removeExpired(now);
+        String filename;
+        do {
+            filename = "SessionID" + (_random.nextLong() & Long.MAX_VALUE) + extension;
+        } while (_entries.containsKey(filename));
+        _entries.put(filename, e);
+        _bytes += e.size();
+        removeOldest(now);
+        return filename;
+    }
+
+    private static synchronized byte[] lookup(final String filename) throws FileNotFoundException {
+        removeExpired(System.currentTimeMillis());
+        final Entry e = _entries.get(filename);
+        if (e == null) throw new FileNotFoundException(filename);
+        return e.bytes();
     }
 
-    public static String getImagePath() {
-        return _tempDir.getPath();
+    private static void removeExpired(final long now) {
+        final Iterator<Entry> it = _entries.values().iterator();
+        while (it.hasNext()) {
+            final Entry e = it.next();
+            if (!e.isExpired(now)) break;
+            it.remove();
+            _bytes -= e.size();
+        }
+    }
+
+    // Drops the oldest entries until the store fits in MAX_BYTES, keeping
+    // recent entries that are about to be requested or written to.
+    private static void removeOldest(final long now) {
+        final Iterator<Entry> it = _entries.values().iterator();
+        while (_bytes > MAX_BYTES && it.hasNext()) {
+            final Entry e = it.next();
+            if (now - e.created < MIN_AGE_MS) break;
+            if (e.isReserved()) continue;
+            it.remove();
+            _bytes -= e.size();
+        }
     }
 
 }
@@ -56,8 +56,9 @@ public abstract class Instrument {
      * Method adds the instrument background flux to the specified spectrum.
      */
     public void addBackground(ArraySpectrum sky) {
+        final Interpolator back = new Interpolator(background);
         for (int i = 0; i < sky.getLength(); i++) {
-            sky.setY(i, background.getY(sky.getX(i)) + sky.getY(i));
+            sky.setY(i, back.getY(sky.getX(i)) + sky.getY(i));
         }
     }
 
@@ -0,0 +1,53 @@
+package edu.gemini.itc.shared;
+
+/**
+ * Linear interpolation of an ArraySpectrum at a sequence of increasing x
+ * values, as used when applying a transmission or background curve to
+ * every sample of another spectrum.  Instead of searching the spectrum for
+ * each x value as <code>getY(double)</code> does, the interpolator keeps
+ * walking forward from the data point found for the previous x value, so
+ * interpolating a whole spectrum is a single pass over both.  The values
+ * are the same as those of <code>getY(double)</code> for a
+ * DefaultArraySpectrum; x values that go backwards are still interpolated
+ * correctly but need a new search.
+ * <p>
+ * Sampled spectra are uniformly spaced and can already find the data point
+ * for any x value without searching, so for them this simply delegates to
+ * <code>getY(double)</code>.
+ */
+public final class Interpolator {
+    private final ArraySpectrum _sp;
+    private final boolean _sampled;
+    private final int _last;    // last possible lower index
+    private int _low;           // lower index of the previous x value
+
+    public Interpolator(ArraySpectrum sp) {
+        _sp      = sp;
+        _sampled = sp instanceof SampledSpectrum;
+        _last    = sp.getLength() - 2;
+        _low     = 0;
+    }
+
+    /**
+     * @return y value at specified x using linear interpolation.
+     * Silently returns zero if x is out of spectrum range.
+     */
+    public double getY(double x) {
+        if (_sampled) return _sp.getY(x);
+        if (x < _sp.getStart() || x > _sp.getEnd()) return 0;
+
+        if (_low > 0 && _sp.getX(_low) >= x) {
+            _low = _sp.getLowerIndex(x);
+        } else {
+            while (_low < _last && _sp.getX(_low + 1) < x) ++_low;
+        }
+
+        final double y1 = _sp.getY(_low);
+        final double y2 = _sp.getY(_low + 1);
+        final double x1 = _sp.getX(_low);
+        final double x2 = _sp.getX(_low + 1);
+        final double slope = (y2 - y1) / (x2 - x1);
+        return (slope * (x - x1) + y1);
+    }
+
+}
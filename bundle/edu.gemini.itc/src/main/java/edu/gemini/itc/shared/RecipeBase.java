@@ -33,7 +33,7 @@ public abstract class RecipeBase implements Recipe {
 
     protected void _println(BufferedImage image, String imageName) {
         try {
-            final String fileName = ITCImageFileIO.saveCharttoDisk(image);
+            final String fileName = ITCImageFileIO.saveChart(image);
             _print("<IMG alt=\"" + fileName
                     + "\" height=500 src=\"" + ServerInfo.getServerURL()
                     + "itc/servlet/images?type=img&filename="
@@ -81,7 +81,7 @@ public abstract class RecipeBase implements Recipe {
         // be taken by the user
 
         try {
-            ITCImageFileIO.saveSedtoDisk(header, sed, spectrumName);
+            ITCImageFileIO.saveSed(header, sed, spectrumName);
         } catch (Exception ex) {
             System.out.println("Unable to save file");
             ex.printStackTrace();
@@ -93,7 +93,7 @@ public abstract class RecipeBase implements Recipe {
         // be taken by the user
 
         try {
-            ITCImageFileIO.saveSedtoDisk(header, sed, spectrumName, firstIndex, lastIndex);
+            ITCImageFileIO.saveSed(header, sed, spectrumName, firstIndex, lastIndex);
         } catch (Exception ex) {
             System.out.println("Unable to save file");
             ex.printStackTrace();
@@ -31,9 +31,10 @@ public class TransmissionElement implements SampledSpectrumVisitor {
      * Apply the transmission convolution for this component.
      */
     public void visit(final SampledSpectrum sed) {
+        final Interpolator trans = new Interpolator(_trans);
         for (int i = 0; i < sed.getLength(); i++) {
             final double startval = sed.getX(i);
-            final double multiplier = _trans.getY(startval);
+            final double multiplier = trans.getY(startval);
             sed.setY(i, sed.getY(i) * multiplier);
         }
     }
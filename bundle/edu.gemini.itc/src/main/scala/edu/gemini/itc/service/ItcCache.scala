@@ -0,0 +1,130 @@
+package edu.gemini.itc.service
+
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.{Callable, ConcurrentHashMap, ExecutionException, FutureTask}
+import java.util.{LinkedHashMap => JLinkedHashMap}
+
+import edu.gemini.itc.shared._
+
+/**
+ * Cache of ITC results by calculation parameters.
+ *
+ * The OT asks for the same calculations over and over again, e.g. whenever the sequence of an observation is shown
+ * and for all observations that share the same setup, so the results of successful calculations are kept, evicting
+ * the least recently used ones beyond `maxEntries`. Identical calculations requested while one of them is still
+ * running wait for its result instead of calculating it again. Failed calculations are not cached.
+ */
+class ItcCache(val maxEntries: Int) {
+  import ItcCache._
+  import ItcService.Result
+
+  require(maxEntries > 0)
+
+  // in access order, i.e. least recently used first
+  private val results = new JLinkedHashMap[Key, Result](16, 0.75f, true)
+
+  private val inFlight = new ConcurrentHashMap[Key, FutureTask[Result]]()
+
+  private val hits = new AtomicLong()
+  private val misses = new AtomicLong()
+  private val coalesced = new AtomicLong()
+
+  /**
+   * Gets the result for the given parameters from the cache, from a running identical calculation, or else by
+   * calling `calculate` on the current thread and caching its result if successful.
+   */
+  def apply(source: SourceDefinition, obs: ObservationDetails, cond: ObservingConditions, tele: TelescopeDetails, ins: InstrumentDetails)(calculate: => Result): Result = {
+    val k = key(source, obs, cond, tele, ins)
+    find(k) match {
+      case Some(r) =>
+        hits.incrementAndGet()
+        r
+      case None    =>
+        val task = new FutureTask[Result](new Callable[Result] {
+          def call(): Result =
+            // It may have been cached while we were checking for running calculations
+            find(k) match {
+              case Some(r) =>
+                hits.incrementAndGet()
+                r
+              case None    =>
+                misses.incrementAndGet()
+                val r = calculate
+                if (r.isSuccess) put(k, r)
+                r
+            }
+        })
+        val running = inFlight.putIfAbsent(k, task)
+        if (running != null) {
+          coalesced.incrementAndGet()
+          get(running)
+        } else {
+          try {
+            task.run()
+            get(task)
+          } finally {
+            inFlight.remove(k, task)
+          }
+        }
+    }
+  }
+
+  /** Removes all results. */
+  def clear(): Unit = synchronized {
+    results.clear()
+  }
+
+  /** Gets a snapshot of the cache usage. */
+  def stats: Stats = synchronized {
+    Stats(hits.get, misses.get, coalesced.get, results.size)
+  }
+
+  private def find(k: Key): Option[Result] = synchronized {
+    Option(results.get(k))
+  }
+
+  private def put(k: Key, r: Result): Unit = synchronized {
+    results.put(k, r)
+    val it = results.values.iterator
+    while (results.size > maxEntries && it.hasNext) {
+      it.next()
+      it.remove()
+    }
+  }
+
+  private def get(task: FutureTask[Result]): Result =
+    try {
+      task.get
+    } catch {
+      case ex: ExecutionException => throw ex.getCause
+    }
+
+}
+
+object ItcCache {
+
+  /** Default maximum number of results. */
+  val DefaultMaxEntries = 1000
+
+  /** Cache usage statistics. */
+  case class Stats(hits: Long, misses: Long, coalesced: Long, entries: Int) {
+    def hitRate: Double = if (hits + misses == 0) 0.0 else hits.toDouble / (hits + misses)
+  }
+
+  private case class Key(values: List[Any])
+
+  // The parameter classes shared with the clients don't define equality, so the key is made of the values that
+  // the recipes can get from them. The instrument parameters are case classes.
+  private def key(source: SourceDefinition, obs: ObservationDetails, cond: ObservingConditions, tele: TelescopeDetails, ins: InstrumentDetails): Key =
+    Key(List(
+      source.profile, source.distribution, source.normBand, source.redshift,
+      obs.getMethod, obs.getAnalysis,
+      cond.getImageQuality, cond.getImageQualityPercentile,
+      cond.getSkyTransparencyCloud, cond.getSkyTransparencyCloudPercentile,
+      cond.getSkyTransparencyWater, cond.getSkyTransparencyWaterPercentile, cond.getSkyTransparencyWaterCategory,
+      cond.getSkyBackground, cond.getSkyBackgroundPercentile, cond.getSkyBackgroundCategory,
+      cond.getAirmass,
+      tele.getMirrorCoating, tele.getInstrumentPort, tele.getWFS,
+      ins))
+
+}
@@ -15,7 +15,15 @@ class ItcServiceImpl extends ItcService {
 
   private val dummyPlotParams = new PlottingDetails(PlottingDetails.PlotLimits.AUTO, 0, 1)
 
-  def calculate(source: SourceDefinition, obs: ObservationDetails, cond: ObservingConditions, tele: TelescopeDetails, ins: InstrumentDetails): Result = try {
+  /** Results of previous calculations. */
+  val cache = new ItcCache(ItcCache.DefaultMaxEntries)
+
+  def calculate(source: SourceDefinition, obs: ObservationDetails, cond: ObservingConditions, tele: TelescopeDetails, ins: InstrumentDetails): Result =
+    cache(source, obs, cond, tele, ins) {
+      calculateUncached(source, obs, cond, tele, ins)
+    }
+
+  private def calculateUncached(source: SourceDefinition, obs: ObservationDetails, cond: ObservingConditions, tele: TelescopeDetails, ins: InstrumentDetails): Result = try {
     ins match {
       case i: GmosParameters  => calculateGmos(source, obs, cond, tele, i)
       case _                  => throw new NotImplementedError // TODO: no other instruments are implemented yet
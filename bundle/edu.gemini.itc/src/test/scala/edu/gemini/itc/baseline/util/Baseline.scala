@@ -1,6 +1,6 @@
 package edu.gemini.itc.baseline.util
 
-import java.io.{ByteArrayOutputStream, File, PrintWriter}
+import java.io.{ByteArrayOutputStream, PrintWriter}
 import edu.gemini.itc.shared.{InstrumentDetails, ITCImageFileIO, Recipe}
 
 import scala.io.Source
@@ -21,8 +21,9 @@ case class Output(string: String) {
       foldLeft(17L)((acc, s) => 37L*acc + s.hashCode.toLong)
 
   def hashDatFile(f: String): Int = {
-    val path = ITCImageFileIO.getImagePath
-    val file = io.Source.fromFile(path + File.separator + f)
+    val out = new ByteArrayOutputStream()
+    ITCImageFileIO.sendFiletoServOut(f, out)
+    val file = io.Source.fromBytes(out.toByteArray, "ISO-8859-1")
     // first line is a comment with timestamp, don't take into account for hash!
     // for testing it is safe to assume there is at least one line (header)
     file.getLines().drop(1).foldLeft(17)((acc, s) => 37*acc + s.hashCode)
@@ -40,6 +40,21 @@ class BaselineTest {
   def checkAll(): Unit =
     baselines().foreach { b => assertTrue(Baseline.checkAgainstBaseline(b))}
 
+  /**
+   * Rough timing of the GMOS recipes, which push spectra through most of the visitors, in order to compare the
+   * performance of changes to the spectrum code. Only meant to be executed manually.
+   */
+  @Ignore
+  @Test
+  def timing(): Unit = {
+    val runs = 5
+    executeAll(BaselineGmos.Fixtures, BaselineGmos.executeRecipe) // warm up
+    val start = System.nanoTime()
+    (1 to runs).foreach(_ => BaselineGmos.Fixtures.foreach(BaselineGmos.executeRecipe))
+    val ms = (System.nanoTime() - start) / 1e6 / (runs * BaselineGmos.Fixtures.size)
+    System.out.println(f"GMOS: ${BaselineGmos.Fixtures.size} fixtures, $ms%.2f ms per recipe")
+  }
+
   private def baselines(): Seq[Baseline] =
     executeAll(BaselineAcqCam.Fixtures,    BaselineAcqCam.executeRecipe)        ++
     executeAll(BaselineF2.Fixtures,        BaselineF2.executeRecipe)            ++
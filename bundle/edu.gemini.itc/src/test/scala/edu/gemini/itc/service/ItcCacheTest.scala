@@ -0,0 +1,88 @@
+package edu.gemini.itc.service
+
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.{CountDownLatch, TimeUnit}
+
+import edu.gemini.itc.baseline.BaselineGmos
+import edu.gemini.itc.shared._
+import org.junit.Assert._
+import org.junit.Test
+
+import scala.concurrent.ExecutionContext.Implicits.global
+import scala.concurrent.duration._
+import scala.concurrent.{Await, Future}
+
+/**
+ * Tests for the ITC result cache.
+ */
+class ItcCacheTest {
+
+  private val f1 = BaselineGmos.Fixtures(0)
+  private val f2 = BaselineGmos.Fixtures(1)
+
+  private val result = ItcResult.forCcd(ItcImagingResult(1.0, 2.0, 3.0))
+
+  @Test
+  def cachesSuccessfulResults(): Unit = {
+    val cache = new ItcCache(10)
+    val calls = new AtomicInteger(0)
+    def calc = { calls.incrementAndGet(); result }
+
+    assertEquals(result, cache(f1.src, f1.odp, f1.ocp, f1.tep, f1.ins)(calc))
+    assertEquals(result, cache(f1.src, f1.odp, f1.ocp, f1.tep, f1.ins)(calc))
+    assertEquals(1, calls.get)
+    assertEquals(ItcCache.Stats(1, 1, 0, 1), cache.stats)
+
+    cache(f2.src, f2.odp, f2.ocp, f2.tep, f2.ins)(calc)
+    assertEquals(2, calls.get)
+  }
+
+  @Test
+  def doesNotCacheFailures(): Unit = {
+    val cache = new ItcCache(10)
+    val calls = new AtomicInteger(0)
+    def calc = { calls.incrementAndGet(); ItcResult.forException(new RuntimeException("oops")) }
+
+    cache(f1.src, f1.odp, f1.ocp, f1.tep, f1.ins)(calc)
+    cache(f1.src, f1.odp, f1.ocp, f1.tep, f1.ins)(calc)
+    assertEquals(2, calls.get)
+    assertEquals(0, cache.stats.entries)
+  }
+
+  @Test
+  def evictsLeastRecentlyUsed(): Unit = {
+    val cache = new ItcCache(1)
+    cache(f1.src, f1.odp, f1.ocp, f1.tep, f1.ins)(result)
+    cache(f2.src, f2.odp, f2.ocp, f2.tep, f2.ins)(result)
+    assertEquals(1, cache.stats.entries)
+
+    val calls = new AtomicInteger(0)
+    cache(f1.src, f1.odp, f1.ocp, f1.tep, f1.ins) { calls.incrementAndGet(); result }
+    assertEquals(1, calls.get)
+  }
+
+  @Test
+  def sharesRunningCalculations(): Unit = {
+    val cache   = new ItcCache(10)
+    val calls   = new AtomicInteger(0)
+    val started = new CountDownLatch(1)
+    val latch   = new CountDownLatch(1)
+    def calc = {
+      calls.incrementAndGet()
+      started.countDown()
+      latch.await()
+      result
+    }
+
+    val r1 = Future(cache(f1.src, f1.odp, f1.ocp, f1.tep, f1.ins)(calc))
+    assertTrue(started.await(5, TimeUnit.SECONDS))
+    val r2 = Future(cache(f1.src, f1.odp, f1.ocp, f1.tep, f1.ins)(calc))
+    while (cache.stats.coalesced == 0) Thread.sleep(10)
+    latch.countDown()
+
+    assertEquals(result, Await.result(r1, 5.seconds))
+    assertEquals(result, Await.result(r2, 5.seconds))
+    assertEquals(1, calls.get)
+  }
+
+}
@@ -0,0 +1,43 @@
+package edu.gemini.itc.shared
+
+import java.awt.image.BufferedImage
+import java.io.{ByteArrayOutputStream, FileNotFoundException}
+
+import org.junit.Assert._
+import org.junit.Test
+
+/**
+ * Tests for the in-memory chart and spectrum store.
+ */
+class ITCImageFileIOTest {
+
+  private def send(f: String): Array[Byte] = {
+    val out = new ByteArrayOutputStream()
+    ITCImageFileIO.sendFiletoServOut(f, out)
+    out.toByteArray
+  }
+
+  @Test
+  def appendsSpectraAfterHeader(): Unit = {
+    val sed = new DefaultSampledSpectrum(Array(1.0, 2.0), 100.0, 1.0)
+    val f   = ITCImageFileIO.getRandomFileName(".dat")
+    ITCImageFileIO.saveSed("# header", sed, f)
+    ITCImageFileIO.saveSed("# header", sed, f)
+    assertEquals("# header \n" + sed.printSpecAsString + sed.printSpecAsString, new String(send(f), "ISO-8859-1"))
+  }
+
+  @Test
+  def rendersChartsAsPng(): Unit = {
+    val f   = ITCImageFileIO.saveChart(new BufferedImage(10, 10, BufferedImage.TYPE_INT_RGB))
+    val png = send(f)
+    assertEquals(0x89.toByte, png(0))
+    assertEquals("PNG", new String(png, 1, 3, "US-ASCII"))
+    assertArrayEquals(png, send(f))
+  }
+
+  @Test(expected = classOf[FileNotFoundException])
+  def unknownFile(): Unit = {
+    send("SessionID0.png")
+  }
+
+}
@@ -0,0 +1,43 @@
+package edu.gemini.itc.shared
+
+import org.junit.Assert._
+import org.junit.Test
+
+/**
+ * Tests for copying and interpolating spectra.
+ */
+class SpectrumTest {
+
+  private val File = "/gems/canopus_background.dat"
+
+  @Test
+  def interpolatorMatchesSearch(): Unit = {
+    val sp = new DefaultArraySpectrum(File)
+    val in = new Interpolator(sp)
+    val xs = (sp.getStart - 10.0 to sp.getEnd + 10.0 by 0.37).toList
+    // increasing values, and then some going backwards
+    (xs ++ xs.reverse.take(20)).foreach { x =>
+      assertEquals(sp.getY(x), in.getY(x), 0.0)
+    }
+  }
+
+  @Test
+  def clonesAreIndependent(): Unit = {
+    val sp = new DefaultArraySpectrum(File)
+    val y0 = sp.getY(0)
+    val cl = sp.clone().asInstanceOf[DefaultArraySpectrum]
+    cl.setY(0, y0 + 1)
+    assertEquals(y0, sp.getY(0), 0.0)
+    assertEquals(y0 + 1, cl.getY(0), 0.0)
+    // the cached file data must not change either
+    assertEquals(y0, new DefaultArraySpectrum(File).getY(0), 0.0)
+
+    val sampled = new DefaultSampledSpectrum(Array(1.0, 2.0, 3.0), 100.0, 1.0)
+    val copy    = sampled.clone().asInstanceOf[DefaultSampledSpectrum]
+    copy.rescaleY(2.0)
+    sampled.setY(0, 5.0)
+    assertArrayEquals(Array(5.0, 2.0, 3.0), sampled.getValues, 0.0)
+    assertArrayEquals(Array(2.0, 4.0, 6.0), copy.getValues, 0.0)
+  }
+
+}
@@ -0,0 +1,110 @@
+package edu.gemini.pot.sp;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * An immutable histogram of lock wait or hold times.  Bucket <code>i</code>
+ * counts durations of less than <code>2^(i+1)</code> microseconds (and at
+ * least <code>2^i</code> microseconds for <code>i &gt; 0</code>) with the last
+ * bucket counting everything longer.
+ */
+public final class LockHistogram implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Number of buckets.  The last bucket starts at about 8 seconds.
+     */
+    public static final int BUCKET_COUNT = 24;
+
+    public static final LockHistogram EMPTY = new LockHistogram(new long[BUCKET_COUNT], 0, 0);
+
+    private final long[] _buckets;
+    private final long _totalNanos;
+    private final long _maxNanos;
+
+    public LockHistogram(long[] buckets, long totalNanos, long maxNanos) {
+        if (buckets.length != BUCKET_COUNT) {
+            throw new IllegalArgumentException("Expected " + BUCKET_COUNT + " buckets, not " + buckets.length);
+        }
+        _buckets    = buckets.clone();
+        _totalNanos = totalNanos;
+        _maxNanos   = maxNanos;
+    }
+
+    /**
+     * Gets the index of the bucket that counts the given duration.
+     */
+    public static int bucketFor(long nanos) {
+        final long micros = nanos / 1000;
+        if (micros <= 1) return 0;
+        return Math.min(BUCKET_COUNT - 1, 63 - Long.numberOfLeadingZeros(micros));
+    }
+
+    /**
+     * Gets the exclusive upper bound of the given bucket in microseconds, or
+     * <code>Long.MAX_VALUE</code> for the last bucket.
+     */
+    public static long bucketLimitMicros(int bucket) {
+        return (bucket >= BUCKET_COUNT - 1) ? Long.MAX_VALUE : (2L << bucket);
+    }
+
+    public long getBucket(int bucket) { return _buckets[bucket]; }
+
+    public long[] getBuckets() { return _buckets.clone(); }
+
+    public long getCount() {
+        long res = 0;
+        for (long c : _buckets) res += c;
+        return res;
+    }
+
+    public long getTotalNanos() { return _totalNanos; }
+
+    public long getMaxNanos() { return _maxNanos; }
+
+    public long getMeanNanos() {
+        final long count = getCount();
+        return (count == 0) ? 0 : _totalNanos / count;
+    }
+
+    /**
+     * Gets an upper bound on the given percentile (0-100), in microseconds,
+     * based on the bucket limits.
+     */
+    public long getPercentileMicros(double percentile) {
+        final long count = getCount();
+        if (count == 0) return 0;
+
+        final long target = (long) Math.ceil(count * percentile / 100.0);
+        long seen = 0;
+        for (int i=0; i<BUCKET_COUNT; ++i) {
+            seen += _buckets[i];
+            if (seen >= target) {
+                return Math.min(bucketLimitMicros(i), _maxNanos / 1000 + 1);
+            }
+        }
+        return _maxNanos / 1000 + 1;
+    }
+
+    @Override public boolean equals(Object o) {
+        if (this == o) return true;
+        if ((o == null) || (getClass() != o.getClass())) return false;
+
+        final LockHistogram that = (LockHistogram) o;
+        return (_totalNanos == that._totalNanos) && (_maxNanos == that._maxNanos) &&
+                Arrays.equals(_buckets, that._buckets);
+    }
+
+    @Override public int hashCode() {
+        int res = Arrays.hashCode(_buckets);
+        res = 31 * res + (int) (_totalNanos ^ (_totalNanos >>> 32));
+        res = 31 * res + (int) (_maxNanos ^ (_maxNanos >>> 32));
+        return res;
+    }
+
+    @Override public String toString() {
+        return String.format("count=%d, mean=%dus, p99<%dus, max=%dus",
+                getCount(), getMeanNanos() / 1000, getPercentileMicros(99), _maxNanos / 1000);
+    }
+}
@@ -0,0 +1,62 @@
+package edu.gemini.pot.sp;
+
+import java.io.Serializable;
+import java.util.Comparator;
+import java.util.Date;
+
+/**
+ * Describes a single (outermost) hold of a program lock by a thread, either
+ * completed or still in progress.
+ */
+public final class LockHolder implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Orders holders from the longest to the shortest hold time.
+     */
+    public static final Comparator<LockHolder> LONGEST_FIRST = new Comparator<LockHolder>() {
+        @Override public int compare(LockHolder h1, LockHolder h2) {
+            return (h1._holdNanos < h2._holdNanos) ? 1 : ((h1._holdNanos == h2._holdNanos) ? 0 : -1);
+        }
+    };
+
+    private final SPNodeKey _key;
+    private final String _threadName;
+    private final boolean _write;
+    private final long _startTime;
+    private final long _holdNanos;
+    private final boolean _active;
+
+    public LockHolder(SPNodeKey key, String threadName, boolean write, long startTime, long holdNanos, boolean active) {
+        _key        = key;
+        _threadName = threadName;
+        _write      = write;
+        _startTime  = startTime;
+        _holdNanos  = holdNanos;
+        _active     = active;
+    }
+
+    /** Key of the program whose lock was held. */
+    public SPNodeKey getKey() { return _key; }
+
+    /** Name of the thread that held the lock. */
+    public String getThreadName() { return _threadName; }
+
+    /** Whether this was a write lock, as opposed to a read lock. */
+    public boolean isWrite() { return _write; }
+
+    /** Time at which the lock was acquired, in ms since the epoch. */
+    public long getStartTime() { return _startTime; }
+
+    /** How long the lock was held, or has been held so far if active. */
+    public long getHoldNanos() { return _holdNanos; }
+
+    /** Whether the lock is still held. */
+    public boolean isActive() { return _active; }
+
+    @Override public String toString() {
+        return String.format("%s %s lock on %s by '%s' at %tT: %,d ms%s",
+                _active ? "Holding" : "Held", _write ? "write" : "read", _key, _threadName,
+                new Date(_startTime), _holdNanos / 1000000, _active ? " so far" : "");
+    }
+}
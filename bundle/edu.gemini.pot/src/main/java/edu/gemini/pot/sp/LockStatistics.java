@@ -0,0 +1,66 @@
+package edu.gemini.pot.sp;
+
+import java.io.Serializable;
+import java.util.Comparator;
+
+/**
+ * A snapshot of the wait and hold time histograms of a single program lock.
+ */
+public final class LockStatistics implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Orders statistics from the most to the least total time spent waiting
+     * for the lock.
+     */
+    public static final Comparator<LockStatistics> MOST_CONTENDED_FIRST = new Comparator<LockStatistics>() {
+        @Override public int compare(LockStatistics s1, LockStatistics s2) {
+            final long w1 = s1.getTotalWaitNanos();
+            final long w2 = s2.getTotalWaitNanos();
+            return (w1 < w2) ? 1 : ((w1 == w2) ? 0 : -1);
+        }
+    };
+
+    private final SPNodeKey _key;
+    private final LockHistogram _readWait;
+    private final LockHistogram _readHold;
+    private final LockHistogram _writeWait;
+    private final LockHistogram _writeHold;
+    private final int _queueLength;
+
+    public LockStatistics(SPNodeKey key, LockHistogram readWait, LockHistogram readHold,
+                          LockHistogram writeWait, LockHistogram writeHold, int queueLength) {
+        _key         = key;
+        _readWait    = readWait;
+        _readHold    = readHold;
+        _writeWait   = writeWait;
+        _writeHold   = writeHold;
+        _queueLength = queueLength;
+    }
+
+    public SPNodeKey getKey() { return _key; }
+
+    /** Time spent waiting to acquire the read lock. */
+    public LockHistogram getReadWait() { return _readWait; }
+
+    /** Time the read lock was held, counting only outermost acquisitions. */
+    public LockHistogram getReadHold() { return _readHold; }
+
+    /** Time spent waiting to acquire the write lock. */
+    public LockHistogram getWriteWait() { return _writeWait; }
+
+    /** Time the write lock was held, counting only outermost acquisitions. */
+    public LockHistogram getWriteHold() { return _writeHold; }
+
+    /** Estimated number of threads waiting for the lock at snapshot time. */
+    public int getQueueLength() { return _queueLength; }
+
+    public long getTotalWaitNanos() {
+        return _readWait.getTotalNanos() + _writeWait.getTotalNanos();
+    }
+
+    @Override public String toString() {
+        return String.format("%s (queue %d)\n  read  wait: %s\n  read  hold: %s\n  write wait: %s\n  write hold: %s",
+                _key, _queueLength, _readWait, _readHold, _writeWait, _writeHold);
+    }
+}
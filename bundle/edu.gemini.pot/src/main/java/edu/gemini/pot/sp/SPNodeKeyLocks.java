@@ -1,42 +1,259 @@
 package edu.gemini.pot.sp;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.concurrent.locks.Lock;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * Provides a low-level API for getting read/write locks associated with
  * SPNodeKeys.  Locks are created on demand but never removed.
+ *
+ * <p>Once metrics are enabled (see {@link #enableMetrics}), the time spent
+ * waiting for and holding each lock is recorded in histograms available via
+ * {@link #getStatistics}, and the longest holds are available via
+ * {@link #getSlowestHolders}.  Metrics are off by default since they add
+ * timing and bookkeeping to every lock operation.  Locks are non-fair unless
+ * the <code>edu.gemini.pot.sp.fairLocks</code> system property is set to
+ * <code>true</code>.
  */
 public enum SPNodeKeyLocks {
     instance;
 
-    private Map<SPNodeKey, ReentrantReadWriteLock> locks = new HashMap<SPNodeKey, ReentrantReadWriteLock>();
+    /**
+     * System property that, if <code>true</code>, makes newly created locks
+     * fair.
+     */
+    public static final String FAIR_LOCKS_PROP = "edu.gemini.pot.sp.fairLocks";
+
+    /**
+     * System property that, if <code>true</code>, enables the lock metrics
+     * from startup.
+     */
+    public static final String LOCK_METRICS_PROP = "edu.gemini.pot.sp.lockMetrics";
+
+    /**
+     * Number of completed holds kept for {@link #getSlowestHolders}.
+     */
+    public static final int SLOWEST_HOLDER_COUNT = 20;
+
+    private static final class Recorder {
+        private final AtomicLongArray buckets = new AtomicLongArray(LockHistogram.BUCKET_COUNT);
+        private final AtomicLong total = new AtomicLong();
+        private final AtomicLong max   = new AtomicLong();
+
+        void record(long nanos) {
+            buckets.incrementAndGet(LockHistogram.bucketFor(nanos));
+            total.addAndGet(nanos);
+            long m = max.get();
+            while ((nanos > m) && !max.compareAndSet(m, nanos)) m = max.get();
+        }
+
+        LockHistogram snapshot() {
+            final long[] counts = new long[LockHistogram.BUCKET_COUNT];
+            for (int i=0; i<counts.length; ++i) counts[i] = buckets.get(i);
+            return new LockHistogram(counts, total.get(), max.get());
+        }
+    }
+
+    // An outermost acquisition of a lock by a thread.
+    private static final class Hold {
+        final Thread thread;
+        final boolean write;
+        final long startNanos = System.nanoTime();
+        final long startTime  = System.currentTimeMillis();
+
+        Hold(Thread thread, boolean write) {
+            this.thread = thread;
+            this.write  = write;
+        }
+
+        LockHolder toHolder(SPNodeKey key, long endNanos, boolean active) {
+            return new LockHolder(key, thread.getName(), write, startTime, endNanos - startNanos, active);
+        }
+    }
+
+    private static final class KeyLock {
+        final SPNodeKey key;
+        final ReentrantReadWriteLock rw;
+
+        final Recorder readWait  = new Recorder();
+        final Recorder readHold  = new Recorder();
+        final Recorder writeWait = new Recorder();
+        final Recorder writeHold = new Recorder();
+
+        final ConcurrentMap<Thread, Hold> readers = new ConcurrentHashMap<Thread, Hold>();
+        volatile Hold writer;
+
+        KeyLock(SPNodeKey key, boolean fair) {
+            this.key = key;
+            this.rw  = new ReentrantReadWriteLock(fair);
+        }
+
+        LockStatistics statistics() {
+            return new LockStatistics(key, readWait.snapshot(), readHold.snapshot(),
+                    writeWait.snapshot(), writeHold.snapshot(), rw.getQueueLength());
+        }
+    }
+
+    private final boolean fair = Boolean.getBoolean(FAIR_LOCKS_PROP);
 
-    private synchronized ReentrantReadWriteLock getLock(SPNodeKey key) {
-        ReentrantReadWriteLock l = locks.get(key);
+    private final ConcurrentMap<SPNodeKey, KeyLock> locks = new ConcurrentHashMap<SPNodeKey, KeyLock>();
+
+    // Only turned on, never off, so that every recorded hold is completed.
+    private volatile boolean metrics = Boolean.getBoolean(LOCK_METRICS_PROP);
+
+    // Longest completed holds, shortest first.
+    private final PriorityQueue<LockHolder> slowest =
+            new PriorityQueue<LockHolder>(SLOWEST_HOLDER_COUNT, Collections.reverseOrder(LockHolder.LONGEST_FIRST));
+    private volatile long slowestThreshold = 0;
+
+    private KeyLock getLock(SPNodeKey key) {
+        KeyLock l = locks.get(key);
         if (l == null) {
-            l = new ReentrantReadWriteLock();
-            locks.put(key, l);
+            final KeyLock newLock = new KeyLock(key, fair);
+            l = locks.putIfAbsent(key, newLock);
+            if (l == null) l = newLock;
         }
         return l;
     }
 
-    private Lock getReadLock(SPNodeKey key)  { return getLock(key).readLock();  }
-    private Lock getWriteLock(SPNodeKey key) { return getLock(key).writeLock(); }
+    private void recordHold(KeyLock l, Hold h) {
+        final long end   = System.nanoTime();
+        final long nanos = end - h.startNanos;
+        (h.write ? l.writeHold : l.readHold).record(nanos);
+
+        if (nanos <= slowestThreshold) return;
+        synchronized (slowest) {
+            slowest.add(h.toHolder(l.key, end, false));
+            if (slowest.size() > SLOWEST_HOLDER_COUNT) slowest.poll();
+            if (slowest.size() == SLOWEST_HOLDER_COUNT) slowestThreshold = slowest.peek().getHoldNanos();
+        }
+    }
+
+    /**
+     * Starts recording lock wait and hold times.  Locks already held when
+     * metrics are enabled are not recorded.
+     */
+    public void enableMetrics() {
+        metrics = true;
+    }
+
+    public boolean isMetricsEnabled() {
+        return metrics;
+    }
+
+    public void readLock(SPNodeKey key) {
+        final KeyLock l = getLock(key);
+        if (!metrics) {
+            l.rw.readLock().lock();
+            return;
+        }
+
+        final long start = System.nanoTime();
+        l.rw.readLock().lock();
+        l.readWait.record(System.nanoTime() - start);
 
-    public void readLock(SPNodeKey key)     { getReadLock(key).lock();   }
-    public void readUnlock(SPNodeKey key)   { getReadLock(key).unlock(); }
+        if (l.rw.getReadHoldCount() == 1) {
+            final Thread t = Thread.currentThread();
+            l.readers.put(t, new Hold(t, false));
+        }
+    }
 
-    public void writeLock(SPNodeKey key)    { getWriteLock(key).lock();   }
-    public void writeUnlock(SPNodeKey key)  { getWriteLock(key).unlock(); }
+    public void readUnlock(SPNodeKey key) {
+        final KeyLock l = getLock(key);
+        if (metrics && (l.rw.getReadHoldCount() == 1)) {
+            final Hold h = l.readers.remove(Thread.currentThread());
+            if (h != null) recordHold(l, h);
+        }
+        l.rw.readLock().unlock();
+    }
+
+    public void writeLock(SPNodeKey key) {
+        final KeyLock l = getLock(key);
+        if (!metrics) {
+            l.rw.writeLock().lock();
+            return;
+        }
+
+        final long start = System.nanoTime();
+        l.rw.writeLock().lock();
+        l.writeWait.record(System.nanoTime() - start);
+
+        if (l.rw.getWriteHoldCount() == 1) {
+            l.writer = new Hold(Thread.currentThread(), true);
+        }
+    }
+
+    public void writeUnlock(SPNodeKey key) {
+        final KeyLock l = getLock(key);
+        if (metrics && (l.rw.getWriteHoldCount() == 1)) {
+            final Hold h = l.writer;
+            l.writer = null;
+            if (h != null) recordHold(l, h);
+        }
+        l.rw.writeLock().unlock();
+    }
 
     /**
      * Returns <code>true</code> if the current thread has a write lock for the
      * indicated program key.
      */
     public boolean isWriteLockHeld(SPNodeKey key) {
-        return getLock(key).isWriteLockedByCurrentThread();
+        return getLock(key).rw.isWriteLockedByCurrentThread();
+    }
+
+    /**
+     * Gets a snapshot of the wait and hold time statistics of the indicated
+     * program's lock.
+     */
+    public LockStatistics getStatistics(SPNodeKey key) {
+        return getLock(key).statistics();
+    }
+
+    /**
+     * Gets the statistics of the (up to) <code>count</code> locks with the
+     * most total time spent waiting to acquire them, or an empty list if
+     * metrics are off.
+     */
+    public List<LockStatistics> getStatistics(int count) {
+        if (!metrics) return new ArrayList<LockStatistics>();
+        final List<LockStatistics> res = new ArrayList<LockStatistics>(locks.size());
+        for (KeyLock l : locks.values()) res.add(l.statistics());
+        Collections.sort(res, LockStatistics.MOST_CONTENDED_FIRST);
+        return (res.size() <= count) ? res : new ArrayList<LockStatistics>(res.subList(0, count));
+    }
+
+    /**
+     * Gets the (up to) <code>count</code> longest lock holds, including locks
+     * that are still held, longest first.  Only the slowest
+     * {@link #SLOWEST_HOLDER_COUNT} completed holds are remembered.
+     */
+    public List<LockHolder> getSlowestHolders(int count) {
+        final long now = System.nanoTime();
+        final List<LockHolder> res = new ArrayList<LockHolder>();
+        for (KeyLock l : locks.values()) {
+            final Hold w = l.writer;
+            if (w != null) res.add(w.toHolder(l.key, now, true));
+            for (Hold r : l.readers.values()) res.add(r.toHolder(l.key, now, true));
+        }
+        synchronized (slowest) {
+            res.addAll(slowest);
+        }
+        Collections.sort(res, LockHolder.LONGEST_FIRST);
+        return (res.size() <= count) ? res : new ArrayList<LockHolder>(res.subList(0, count));
+    }
+
+    /**
+     * Forgets the slowest completed holds.  The histograms are cumulative and
+     * are not reset.
+     */
+    public void resetSlowestHolders() {
+        synchronized (slowest) {
+            slowest.clear();
+            slowestThreshold = 0;
+        }
     }
-}
\ No newline at end of file
+}
@@ -59,6 +59,10 @@ public final class MemSerializer {
         storeAndClose(mab, new ObjectOutputStream(new BufferedOutputStream(fos)));
     }
 
+    /**
+     * Serializes the program to a byte array, holding the program read lock
+     * while doing so.
+     */
     public byte[] store(ISPRootNode mab) throws IOException {
         final ByteArrayOutputStream baos = new ByteArrayOutputStream();
         storeAndClose(mab, new ObjectOutputStream(baos));
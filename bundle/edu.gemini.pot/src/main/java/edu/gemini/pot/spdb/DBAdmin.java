@@ -7,7 +7,12 @@
 
 package edu.gemini.pot.spdb;
 
+import edu.gemini.pot.sp.LockHolder;
+import edu.gemini.pot.sp.LockStatistics;
+import edu.gemini.pot.sp.SPNodeKeyLocks;
+
 import java.io.Serializable;
+import java.util.List;
 
 
 
@@ -104,4 +109,19 @@ public class DBAdmin implements IDBAdmin {
         return _dataMan.getTotalStorage();
     }
 
+    public List<LockHolder> getSlowestLockHolders(int count) {
+        return SPNodeKeyLocks.instance.getSlowestHolders(count);
+    }
+
+    public List<LockStatistics> getLockStatistics(int count) {
+        return SPNodeKeyLocks.instance.getStatistics(count);
+    }
+
+    public void enableLockMetrics() {
+        SPNodeKeyLocks.instance.enableMetrics();
+    }
+
+    public boolean isLockMetricsEnabled() {
+        return SPNodeKeyLocks.instance.isMetricsEnabled();
+    }
 }
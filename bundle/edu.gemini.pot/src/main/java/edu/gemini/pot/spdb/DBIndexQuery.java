@@ -0,0 +1,127 @@
+package edu.gemini.pot.spdb;
+
+import edu.gemini.pot.sp.SPComponentType;
+import edu.gemini.spModel.core.ProgramType;
+import edu.gemini.spModel.core.Semester;
+import edu.gemini.spModel.obs.ObservationStatus;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * An immutable description of the programs or observations to visit in an
+ * indexed query.  See the <code>{@link IDBQueryRunner}</code> methods that
+ * accept a <code>DBIndexQuery</code>.  Each attribute is either unconstrained
+ * (the default) or constrained to a set of matching values.  A node matches
+ * when all of the constrained attributes match, so for example
+ *
+ * <pre>
+ * DBIndexQuery.ANY.withStatus(ObservationStatus.READY)
+ *                 .withInstrument(InstGmosSouth.SP_TYPE)
+ *                 .withSemester(new Semester(Site.GS))
+ * </pre>
+ *
+ * matches the ready GMOS-S observations in programs of the current semester.
+ * Observation status and instrument constraints are ignored when querying
+ * programs.
+ */
+public final class DBIndexQuery implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * A query that matches every node.
+     */
+    public static final DBIndexQuery ANY = new DBIndexQuery(null, null, null, null);
+
+    // A null set is unconstrained.
+    private final Set<ObservationStatus> _statuses;
+    private final Set<SPComponentType> _instruments;
+    private final Set<Semester> _semesters;
+    private final Set<ProgramType> _programTypes;
+
+    private DBIndexQuery(Set<ObservationStatus> statuses, Set<SPComponentType> instruments,
+                         Set<Semester> semesters, Set<ProgramType> programTypes) {
+        _statuses     = statuses;
+        _instruments  = instruments;
+        _semesters    = semesters;
+        _programTypes = programTypes;
+    }
+
+    private static <T> Set<T> _toSet(T[] values) {
+        return Collections.unmodifiableSet(new HashSet<T>(Arrays.asList(values)));
+    }
+
+    /**
+     * Returns a copy of this query that matches observations with any of the
+     * given statuses.
+     */
+    public DBIndexQuery withStatus(ObservationStatus... statuses) {
+        return new DBIndexQuery(_toSet(statuses), _instruments, _semesters, _programTypes);
+    }
+
+    /**
+     * Returns a copy of this query that matches observations of any of the
+     * given instruments.
+     */
+    public DBIndexQuery withInstrument(SPComponentType... instruments) {
+        return new DBIndexQuery(_statuses, _toSet(instruments), _semesters, _programTypes);
+    }
+
+    /**
+     * Returns a copy of this query that matches programs (or observations in
+     * programs) whose id falls in any of the given semesters.
+     */
+    public DBIndexQuery withSemester(Semester... semesters) {
+        return new DBIndexQuery(_statuses, _instruments, _toSet(semesters), _programTypes);
+    }
+
+    /**
+     * Returns a copy of this query that matches programs (or observations in
+     * programs) whose id has any of the given program types.
+     */
+    public DBIndexQuery withProgramType(ProgramType... programTypes) {
+        return new DBIndexQuery(_statuses, _instruments, _semesters, _toSet(programTypes));
+    }
+
+    /**
+     * Gets the matching observation statuses, or <code>null</code> if the
+     * status is unconstrained.
+     */
+    public Set<ObservationStatus> getStatuses() { return _statuses; }
+
+    /**
+     * Gets the matching instruments, or <code>null</code> if the instrument
+     * is unconstrained.
+     */
+    public Set<SPComponentType> getInstruments() { return _instruments; }
+
+    /**
+     * Gets the matching semesters, or <code>null</code> if the semester is
+     * unconstrained.
+     */
+    public Set<Semester> getSemesters() { return _semesters; }
+
+    /**
+     * Gets the matching program types, or <code>null</code> if the program
+     * type is unconstrained.
+     */
+    public Set<ProgramType> getProgramTypes() { return _programTypes; }
+
+    boolean matchesProgram(Semester semester, ProgramType programType) {
+        return ((_semesters    == null) || _semesters.contains(semester)) &&
+               ((_programTypes == null) || _programTypes.contains(programType));
+    }
+
+    boolean matchesObservation(ObservationStatus status, SPComponentType instrument) {
+        return ((_statuses    == null) || _statuses.contains(status)) &&
+               ((_instruments == null) || _instruments.contains(instrument));
+    }
+
+    @Override public String toString() {
+        return "DBIndexQuery{status=" + _statuses + ", instrument=" + _instruments +
+                ", semester=" + _semesters + ", programType=" + _programTypes + "}";
+    }
+}
@@ -38,6 +38,18 @@ public final class DBLocalDatabase implements IDBDatabaseService {
         return new DBLocalDatabase(loadUuid(dbRootDir), new FileManager(dbDir));
     }
 
+    /**
+     * Creates a database that appends data object updates to per-program
+     * journals rather than rewriting whole program files on each change.
+     * The on-disk snapshot format is the same as that of the database
+     * returned by <code>{@link #create(File)}</code>.
+     */
+    public static IDBDatabaseService createJournaled(final File dbRootDir) throws IOException {
+        final File dbDir = getVersionedDatabaseDir(dbRootDir);
+        initDbDir(dbDir);
+        return new DBLocalDatabase(loadUuid(dbRootDir), new JournalFileManager(dbDir));
+    }
+
     public static IDBDatabaseService createTransient() {
         try {
             return new DBLocalDatabase(UUID.randomUUID(), DoNothingPersister.INSTANCE);
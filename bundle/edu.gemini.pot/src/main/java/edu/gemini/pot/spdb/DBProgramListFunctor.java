@@ -24,7 +24,7 @@ import java.util.logging.Logger;
  * be used by clients to obtain a listing of all the available program
  * IDs.
  */
-public class DBProgramListFunctor extends DBAbstractQueryFunctor implements IDBParallelFunctor {
+public class DBProgramListFunctor extends DBAbstractQueryFunctor implements IDBParallelFunctor, IDBParallelQueryFunctor {
 
     private List<SPNodeKey> _keyList;
 
@@ -57,5 +57,13 @@ public class DBProgramListFunctor extends DBAbstractQueryFunctor implements IDBP
         }
         _keyList = res;
     }
+
+    public IDBParallelQueryFunctor newPartition() {
+        return new DBProgramListFunctor();
+    }
+
+    public void mergePartitions(Collection<IDBParallelQueryFunctor> partitions) {
+        mergeResults(new ArrayList<IDBFunctor>(partitions));
+    }
 }
 
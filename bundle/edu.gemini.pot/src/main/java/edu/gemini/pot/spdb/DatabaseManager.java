@@ -25,6 +25,7 @@ final class DatabaseManager {
     private final ProgramManager<ISPNightlyRecord> _planMan;
     private final StorageManager<ISPProgram> _progStoreMan;
     private final StorageManager<ISPNightlyRecord> _planStoreMan;
+    private final ProgramIndex _progIndex;
 
     //private DBAdmin _admin;
     private final ISPFactory _fact;
@@ -53,6 +54,10 @@ final class DatabaseManager {
         _progStoreMan = new StorageManager<ISPProgram>(_progMan, _persister);
         _planStoreMan = new StorageManager<ISPNightlyRecord>(_planMan, _persister);
 
+        // Maintain secondary indexes of the programs and their observations
+        // for indexed queries.
+        _progIndex = new ProgramIndex(_progMan);
+
         _fact = POTUtil.createFactory(uuid);
     }
 
@@ -78,6 +83,13 @@ final class DatabaseManager {
         return _progMan;
     }
 
+    /**
+     * Obtains a reference to the <code>ProgramIndex</code>.
+     */
+    ProgramIndex getProgramIndex() {
+        return _progIndex;
+    }
+
     /**
      * Obtains a reference to the <code>NightlyPlanManager</code>
      */
@@ -105,8 +117,10 @@ final class DatabaseManager {
     void shutdown() {
         _progStoreMan.shutdown();
         _planStoreMan.shutdown();
+        _progIndex.shutdown();
         _progMan.shutdown();
         _planMan.shutdown();
+        _persister.shutdown();
         functorLogger.cancel();
     }
 
@@ -27,14 +27,21 @@ import java.util.*;
  */
 @SuppressWarnings("unchecked")
 final class DirtyProgramListener<N extends ISPRootNode> implements PropertyChangeListener {
+    private static final String DATA_OBJECT_PROP = SPUtil.getDataObjectPropertyName();
+
     private final Set<N> _progSet;
 
+    // Subset of the dirty programs that have seen changes other than simple
+    // data object updates (structure changes, other client data, etc.)
+    private final Set<N> _otherSet;
+
     /**
      * Default constructor declared because superclass default constructor
      * throws <code>RemoteException</code>.
      */
     DirtyProgramListener()  {
-        _progSet = new HashSet<N>();
+        _progSet  = new HashSet<N>();
+        _otherSet = new HashSet<N>();
     }
 
     @Override public void propertyChange(PropertyChangeEvent pce) {
@@ -45,7 +52,11 @@ final class DirtyProgramListener<N extends ISPRootNode> implements PropertyChang
 
         ISPRootNode root = ((ISPNode) src).getRootAncestor();
         if (root != null) {
-            synchronized (this) { _progSet.add((N)root); }
+            final boolean other = !DATA_OBJECT_PROP.equals(pce.getPropertyName());
+            synchronized (this) {
+                _progSet.add((N)root);
+                if (other) _otherSet.add((N)root);
+            }
         }
     }
 
@@ -59,9 +70,28 @@ final class DirtyProgramListener<N extends ISPRootNode> implements PropertyChang
     synchronized List<N> getDirtyPrograms() {
         final List<N> lst = _progSet.isEmpty() ? Collections.<N>emptyList() : new ArrayList<N>(_progSet);
         _progSet.clear();
+        _otherSet.clear();
         return lst;
     }
 
+    /**
+     * Gets the modified, "dirty", programs along with an indication of
+     * whether the only changes were updates to data objects and clears the
+     * record of their being dirty.
+     *
+     * @return map from modified program to <code>true</code> if only data
+     * objects were updated, <code>false</code> otherwise
+     */
+    synchronized Map<N, Boolean> getDirtyProgramMap() {
+        if (_progSet.isEmpty()) return Collections.emptyMap();
+
+        final Map<N, Boolean> res = new HashMap<N, Boolean>();
+        for (N prog : _progSet) res.put(prog, !_otherSet.contains(prog));
+        _progSet.clear();
+        _otherSet.clear();
+        return res;
+    }
+
     /**
      * Removes the given program from its collection of modified, "dirty",
      * programs.  If the program isn't in the collection, then nothing is done.
@@ -69,5 +99,6 @@ final class DirtyProgramListener<N extends ISPRootNode> implements PropertyChang
     synchronized void removeProgram(N prog) {
         if (_progSet.size() == 0) return;
         _progSet.remove(prog);
+        _otherSet.remove(prog);
     }
 }
@@ -31,6 +31,10 @@ public final class DoNothingPersister implements IDBPersister {
         // Do nothing.
     }
 
+    @Override public void storeDataObjectUpdates(ISPRootNode node) {
+        // Do nothing.
+    }
+
     @Override public void remove(SPNodeKey key) {
         // Do nothing.
     }
@@ -42,4 +46,8 @@ public final class DoNothingPersister implements IDBPersister {
     @Override public long getTotalStorage() {
         return 0L;
     }
+
+    @Override public void shutdown() {
+        // Do nothing.
+    }
 }
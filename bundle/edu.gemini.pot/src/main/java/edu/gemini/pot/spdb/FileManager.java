@@ -7,6 +7,10 @@ import edu.gemini.spModel.core.SPProgramID;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 
 /**
@@ -17,6 +21,7 @@ import java.util.*;
  * <code>FileManager</code>.
  */
 final class FileManager implements IDBPersister {
+    private static final Logger LOG = Logger.getLogger(FileManager.class.getName());
 
     /** The file suffix that is appended to programs in the database. */
     public static final String PROGRAM_SUFFIX = ".sp";
@@ -48,7 +53,18 @@ final class FileManager implements IDBPersister {
     private static final ISPFileFilter _progFilter = new ISPFileFilter(PROGRAM_SUFFIX);
     private static final ISPFileFilter _planFilter = new ISPFileFilter(PLAN_SUFFIX);
 
+    /**
+     * Default upper bound on the number of threads used to load program
+     * files at startup.  Loading is mostly deserialization so it scales with
+     * cores but there is little point in going much further than that.
+     */
+    public static final int MAX_LOAD_THREADS = 8;
+
+    /** Number of slowest loads to report after loading the database. */
+    private static final int SLOW_LOAD_REPORT_COUNT = 5;
+
     private final File _dbDir;
+    private final int _loadThreads;
     private final MemSerializer _ser;
     private final Map<SPNodeKey, File> _fileMap = new HashMap<SPNodeKey, File>();
 
@@ -60,9 +76,22 @@ final class FileManager implements IDBPersister {
      * @throws IOException if <code>dbDir</code> is not valid
      */
     FileManager(final File dbDir) throws IOException {
+        this(dbDir, Math.min(MAX_LOAD_THREADS, Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * Constructs the <code>FileManager</code> with the database directory
+     * to use and the maximum number of threads to use when loading program
+     * files.
+     *
+     * @throws IOException if <code>dbDir</code> is not valid
+     */
+    FileManager(final File dbDir, final int loadThreads) throws IOException {
+        if (loadThreads < 1) throw new IllegalArgumentException("loadThreads must be > 0");
         _setupDbDirectory(dbDir);
-        _dbDir = dbDir;
-        _ser   = new MemSerializer();
+        _dbDir       = dbDir;
+        _loadThreads = loadThreads;
+        _ser         = new MemSerializer();
     }
 
     /**
@@ -137,6 +166,76 @@ final class FileManager implements IDBPersister {
         return reload("plan", _planFilter);
     }
 
+    /**
+     * Result of loading a single file, recording how long it took.
+     */
+    private static final class LoadResult<T> {
+        final File file;
+        final T node;      // null if the file could not be loaded
+        final long timeMs;
+
+        LoadResult(File file, T node, long timeMs) {
+            this.file   = file;
+            this.node   = node;
+            this.timeMs = timeMs;
+        }
+    }
+
+    private <T extends ISPRootNode> LoadResult<T> load(final File progFile) {
+        final long start = System.currentTimeMillis();
+        T prog = null;
+        try {
+            prog = (T) _ser.load(progFile);
+        } catch (Exception ex) {
+            String path = _getPath(progFile);
+            if (ex.getCause() instanceof InvalidClassException) {
+                System.err.println("Warning: incompatible file: '" + path + "'. Please delete and reimport from XML");
+            } else {
+                System.err.println("Problem reading program file `" + path + "': " + ex);
+            }
+        }
+        return new LoadResult<T>(progFile, prog, System.currentTimeMillis() - start);
+    }
+
+    private int _loadThreadCount(File[] fileA) {
+        return Math.min(_loadThreads, Math.max(1, fileA.length));
+    }
+
+    private <T extends ISPRootNode> List<LoadResult<T>> loadAll(final File[] fileA) throws IOException {
+        final ExecutorService pool = Executors.newFixedThreadPool(_loadThreadCount(fileA), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+            @Override public Thread newThread(Runnable r) {
+                final Thread t = new Thread(r, "ODB Loader " + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+
+        try {
+            // Submit in file order and collect in file order so that the
+            // handling of duplicate programs below doesn't depend on timing.
+            final List<Future<LoadResult<T>>> futures = new ArrayList<Future<LoadResult<T>>>(fileA.length);
+            for (final File progFile : fileA) {
+                futures.add(pool.submit(new Callable<LoadResult<T>>() {
+                    @Override public LoadResult<T> call() {
+                        return FileManager.this.<T>load(progFile);
+                    }
+                }));
+            }
+
+            final List<LoadResult<T>> results = new ArrayList<LoadResult<T>>(fileA.length);
+            for (Future<LoadResult<T>> f : futures) results.add(f.get());
+            return results;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading the database", ex);
+        } catch (ExecutionException ex) {
+            throw new IOException("Problem loading the database", ex.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
     private <T extends ISPRootNode> List<T> reload(final String name, final FileFilter filter) throws IOException {
         System.out.println(String.format("Loading the %s database ...", name));
 
@@ -144,90 +243,143 @@ final class FileManager implements IDBPersister {
         final File[] fileA    = _dbDir.listFiles(filter);
         final List<T> retList = new ArrayList<T>(fileA.length);
 
-        // Try to load each file.
-        for (final File progFile : fileA) {
-
-            // Load the program file.
-            final T prog;
-            try {
-                prog = (T) _ser.load(progFile);
-                if (prog == null) continue;
-            } catch (Exception ex) {
-                String path = _getPath(progFile);
-                if (ex.getCause() instanceof InvalidClassException) {
-                    System.err.println("Warning: incompatible file: '" + path + "'. Please delete and reimport from XML");
-                } else {
-                    System.err.println("Problem reading program file `" + path + "': " + ex);
-                }
-                continue;
-            }
+        // Load the files in parallel.
+        final List<LoadResult<T>> results = loadAll(fileA);
+
+        for (LoadResult<T> res : results) {
+            final T prog = res.node;
+            if (prog == null) continue;
 
             // If there are two program files with the same program (i.e.,
             // with the same key), just skip the next one read.
             final SPNodeKey key = prog.getNodeKey();
-            if (_fileMap.get(key) != null) {
-                System.out.println("Already loaded: " + key);
-                continue; // already loaded
+            synchronized (this) {
+                if (_fileMap.get(key) != null) {
+                    System.out.println("Already loaded: " + key);
+                    continue; // already loaded
+                }
+                _fileMap.put(key, res.file);
             }
-            _fileMap.put(key, progFile);
 
             retList.add(prog);
         }
 
         final long time2 = System.currentTimeMillis();
 
-        final String msg = String.format("Finished loading: %d ms, %d %ss", time2-time1, fileA.length, name);
+        final String msg = String.format("Finished loading: %d ms, %d %ss, %d threads", time2-time1, fileA.length, name, _loadThreadCount(fileA));
         System.out.println(msg);
+        _logLoadTimes(name, results);
         return retList;
 
     }
 
-    public void store(ISPRootNode mab) throws IOException {
-        if (mab instanceof ISPNightlyRecord) {
-            _storeProgram(mab, PLAN_SUFFIX);
-        } else {
-            _storeProgram(mab, PROGRAM_SUFFIX);
+    /**
+     * Logs the time taken to load each file at FINE level and a summary of
+     * the slowest loads at INFO level.
+     */
+    private static <T extends ISPRootNode> void _logLoadTimes(String name, List<LoadResult<T>> results) {
+        if (results.isEmpty()) return;
+
+        if (LOG.isLoggable(Level.FINE)) {
+            for (LoadResult<T> res : results) {
+                LOG.fine(String.format("Loaded %s %s in %d ms", name, res.file.getName(), res.timeMs));
+            }
+        }
+
+        final List<LoadResult<T>> sorted = new ArrayList<LoadResult<T>>(results);
+        Collections.sort(sorted, new Comparator<LoadResult<T>>() {
+            @Override public int compare(LoadResult<T> r1, LoadResult<T> r2) {
+                return r1.timeMs < r2.timeMs ? 1 : (r1.timeMs == r2.timeMs ? 0 : -1);
+            }
+        });
+
+        long total = 0;
+        for (LoadResult<T> res : results) total += res.timeMs;
+
+        final StringBuilder buf = new StringBuilder();
+        buf.append(String.format("%s load times: mean %d ms, slowest", name, total / results.size()));
+        for (LoadResult<T> res : sorted.subList(0, Math.min(SLOW_LOAD_REPORT_COUNT, sorted.size()))) {
+            buf.append(String.format(" %s (%d ms)", res.file.getName(), res.timeMs));
         }
+        LOG.info(buf.toString());
     }
 
+    /**
+     * A root node serialized in memory, along with the file it belongs in.
+     * Separating serialization from writing lets callers that must hold a
+     * lock while capturing the node's state do the disk I/O after releasing
+     * it.
+     */
+    static final class Serialized {
+        final SPNodeKey key;
+        final File file;
+        final byte[] bytes;
+
+        Serialized(SPNodeKey key, File file, byte[] bytes) {
+            this.key   = key;
+            this.file  = file;
+            this.bytes = bytes;
+        }
+    }
 
-    private File _storeProgram(ISPRootNode node, String suffix) throws IOException {
-        final SPNodeKey key = node.getNodeKey();
-        final File newFile = _getDocumentFile(node, suffix);
+    public void store(ISPRootNode mab) throws IOException {
+        write(serialize(mab));
+    }
 
-        _storeProgram(node, newFile);
+    /**
+     * Stores the entire node since the file format has no provision for
+     * partial updates.
+     */
+    public void storeDataObjectUpdates(ISPRootNode node) throws IOException {
+        store(node);
+    }
+
+    /**
+     * Serializes the given node in memory, holding the program read lock
+     * while doing so.  Nothing is written until the result is passed to
+     * <code>{@link #write}</code>.
+     */
+    Serialized serialize(ISPRootNode node) throws IOException {
+        final String suffix = (node instanceof ISPNightlyRecord) ? PLAN_SUFFIX : PROGRAM_SUFFIX;
+        return new Serialized(node.getNodeKey(), _getDocumentFile(node, suffix), _ser.store(node));
+    }
+
+    /**
+     * Writes a serialized node to its file, replacing any previous file for
+     * the same node.
+     */
+    void write(Serialized ser) throws IOException {
+        _writeFile(ser.bytes, ser.file);
 
         synchronized (this) {
-            final File oldFile = _fileMap.get(key);
-            if ((oldFile != null) && !newFile.equals(oldFile) && oldFile.exists()) {
+            final File oldFile = _fileMap.get(ser.key);
+            if ((oldFile != null) && !ser.file.equals(oldFile) && oldFile.exists()) {
                 // Cleanup the old file
                 oldFile.delete();
             }
-            _fileMap.put(key, newFile);
+            _fileMap.put(ser.key, ser.file);
         }
-
-        return newFile;
     }
 
     /**
-     * Stores the given <code>prog</code>ram in the given <code>progFile</code>.
+     * Writes the given bytes to the given <code>file</code> by way of a
+     * temporary file.
      */
-    private void _storeProgram(ISPRootNode node, File file) throws IOException {
+    private static void _writeFile(byte[] bytes, File file) throws IOException {
         // Create a temp file to write the object.
         final File tmpFile = _createTempFile(file);
 
-        final SPNodeKey key = node.getProgramKey();
-        SPNodeKeyLocks.instance.readLock(key);
+        // Write the object to the temp file.
+        final OutputStream os = new FileOutputStream(tmpFile);
         try {
-            // Write the object to the temp file.
-            _ser.store(node, tmpFile);
-
-            // Rename the temp file to the destination file.
-            file.delete(); // under win2k, rename fails if file exists
-            if (!tmpFile.renameTo(file)) throw new IOException("Couldn't store the program.");
+            os.write(bytes);
         } finally {
-            SPNodeKeyLocks.instance.readUnlock(key);
+            os.close();
         }
+
+        // Rename the temp file to the destination file.
+        file.delete(); // under win2k, rename fails if file exists
+        if (!tmpFile.renameTo(file)) throw new IOException("Couldn't store the program.");
     }
 
     @Override public synchronized long size(SPNodeKey key) {
@@ -277,6 +429,11 @@ final class FileManager implements IDBPersister {
         return total;
     }
 
+    @Override
+    public void shutdown() {
+        // Nothing to release.
+    }
+
  }
 
 
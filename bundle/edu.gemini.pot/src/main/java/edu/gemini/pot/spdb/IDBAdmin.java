@@ -7,6 +7,10 @@
 
 package edu.gemini.pot.spdb;
 
+import edu.gemini.pot.sp.LockHolder;
+import edu.gemini.pot.sp.LockStatistics;
+
+import java.util.List;
 
 
 
@@ -62,4 +66,28 @@ public interface IDBAdmin {
      */
     long getTotalStorage();
 
-}
\ No newline at end of file
+    /**
+     * Gets the (up to) <code>count</code> longest program lock holds,
+     * including locks that are currently held, longest first.
+     */
+    List<LockHolder> getSlowestLockHolders(int count);
+
+    /**
+     * Gets wait and hold time statistics for the (up to) <code>count</code>
+     * program locks with the most total time spent waiting for them.
+     */
+    List<LockStatistics> getLockStatistics(int count);
+
+    /**
+     * Starts recording program lock wait and hold times, which are otherwise
+     * only recorded if enabled at startup.
+     */
+    void enableLockMetrics();
+
+    /**
+     * Returns <code>true</code> if program lock wait and hold times are being
+     * recorded.
+     */
+    boolean isLockMetricsEnabled();
+
+}
@@ -0,0 +1,41 @@
+package edu.gemini.pot.spdb;
+
+import java.util.Collection;
+
+/**
+ * An <code>{@link IDBQueryFunctor}</code> that may be run in parallel on the
+ * programs in the database.  Query functors that implement this interface
+ * are not run sequentially over the nodes as usual.  Instead the query
+ * runner splits the programs into partitions and asks the functor for a new,
+ * empty functor for each one via {@link #newPartition}.  The partitions are
+ * executed concurrently, each holding the read lock of the program whose
+ * nodes it is visiting, and the completed partition functors are finally
+ * passed to {@link #mergePartitions} to be combined into this functor.
+ *
+ * <p>Partition functors see their own <code>init</code>, <code>isDone</code>,
+ * <code>execute</code> and <code>finished</code> calls on a pool thread.
+ * Since they hold program read locks while executing, they must not modify
+ * the programs they visit.  The functor on which the query was started is
+ * itself initialized before the partitions are created and finished after
+ * they have been merged, but is never passed to <code>execute</code>.
+ * Once any partition functor reports that it is done, the remaining
+ * partitions stop as well, so a search for the first match ends early.
+ */
+public interface IDBParallelQueryFunctor extends IDBQueryFunctor {
+
+    /**
+     * Creates a new functor, sharing any query parameters with this one but
+     * with empty results, that will be executed on one partition of the
+     * programs.
+     */
+    IDBParallelQueryFunctor newPartition();
+
+    /**
+     * Merges the results contained in the executed partition functors into
+     * this functor.  The partitions are provided in program order.
+     *
+     * @param partitions functors returned by {@link #newPartition} after
+     * they have been executed
+     */
+    void mergePartitions(Collection<IDBParallelQueryFunctor> partitions);
+}
@@ -12,6 +12,14 @@ interface IDBPersister {
     List<ISPProgram> reloadPrograms() throws IOException;
     List<ISPNightlyRecord> reloadPlans() throws IOException;
     void store(ISPRootNode node) throws IOException;
+
+    /**
+     * Stores the given node, which is known to have been modified only by
+     * updates to the data objects of nodes that were already present the
+     * last time it was stored.  Persisters that cannot take advantage of this
+     * simply store the whole node.
+     */
+    void storeDataObjectUpdates(ISPRootNode node) throws IOException;
     void remove(SPNodeKey key);
 
     /** Gets the size of the program file on disk, or -1 if not known. */
@@ -19,4 +27,7 @@ interface IDBPersister {
 
     /** Returns the total storage size, on disk, or zero for transient databases. */
     long getTotalStorage();
+
+    /** Releases any resources held by the persister once the database shuts down. */
+    void shutdown();
 }
@@ -36,6 +36,27 @@ public interface IDBQueryRunner {
      */
     <T extends IDBQueryFunctor> T queryPrograms(T functor) ;
 
+    /**
+     * Queries the observations that match the given <code>query</code>,
+     * applying the given <code>functor</code> on each.  Matching observations
+     * are found with secondary indexes maintained by the database so that
+     * non-matching observations are never visited.
+     *
+     * @return the query functor itself; if called remotely the return
+     * value will (of course) be a distinct copy of the method argument
+     */
+    <T extends IDBQueryFunctor> T queryObservations(DBIndexQuery query, T functor) ;
+
+    /**
+     * Queries the programs that match the given <code>query</code>,
+     * applying the given <code>functor</code> on each.  Observation status
+     * and instrument constraints in the query are ignored.
+     *
+     * @return the query functor itself; if called remotely the return
+     * value will (of course) be a distinct copy of the method argument
+     */
+    <T extends IDBQueryFunctor> T queryPrograms(DBIndexQuery query, T functor) ;
+
     /**
      * Queries the available nightly plans, applying the given
      * <code>functor</code> on each.
@@ -0,0 +1,472 @@
+package edu.gemini.pot.spdb;
+
+import edu.gemini.pot.sp.*;
+import edu.gemini.pot.sp.version.JavaVersionMapOps;
+import edu.gemini.pot.sp.version.LifespanId;
+import edu.gemini.shared.util.VersionVector;
+import edu.gemini.spModel.data.ISPDataObject;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * An <code>{@link IDBPersister}</code> that keeps the whole-program snapshot
+ * files written by the <code>{@link FileManager}</code> but, when a program
+ * has only seen data object updates since it was last stored, appends just
+ * the modified nodes to a per-program journal file instead of rewriting the
+ * entire snapshot.  Journal entries are keyed by <code>SPNodeKey</code> and
+ * carry the node's version vector and new data object.
+ *
+ * <p>When a journal grows large relative to its snapshot, the program is
+ * compacted in the background: a fresh snapshot is written and the journal
+ * is discarded.  Any change that isn't a simple data object update (structure
+ * edits, new nodes, other client data) also results in a fresh snapshot.
+ *
+ * <p>On reload, journal entries are replayed onto the snapshot.  An entry is
+ * only applied if its version vector strictly dominates the version of the
+ * node in the snapshot, which makes replay idempotent and safe in the face of
+ * a compaction that was interrupted before the journal was removed.
+ */
+final class JournalFileManager implements IDBPersister {
+    private static final Logger LOG = Logger.getLogger(JournalFileManager.class.getName());
+
+    /** The file suffix that is appended to program journals. */
+    public static final String JOURNAL_SUFFIX = ".spj";
+
+    /**
+     * Default ratio of journal size to snapshot size at which compaction is
+     * triggered.
+     */
+    public static final double DEFAULT_COMPACTION_RATIO = 0.5;
+
+    /**
+     * Minimum journal size in bytes before compaction is considered,
+     * regardless of the snapshot size.
+     */
+    public static final long MIN_COMPACTION_SIZE = 64 * 1024;
+
+    /** How long shutdown waits for pending compactions to finish. */
+    private static final long SHUTDOWN_TIMEOUT_MS = 60 * 1000;
+
+    private static final FileFilter JOURNAL_FILTER = new FileFilter() {
+        @Override public boolean accept(File f) {
+            return f.getName().endsWith(JOURNAL_SUFFIX) && f.canRead() && f.canWrite();
+        }
+    };
+
+    /**
+     * A single journaled node update.
+     */
+    private static final class Entry implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        final SPNodeKey key;
+        final VersionVector<LifespanId, Integer> version;
+        final ISPDataObject dataObject;
+
+        Entry(SPNodeKey key, VersionVector<LifespanId, Integer> version, ISPDataObject dataObject) {
+            this.key        = key;
+            this.version    = version;
+            this.dataObject = dataObject;
+        }
+    }
+
+    /**
+     * Per-program record of what has been persisted so far.  Access to the
+     * fields is synchronized on the instance itself.  The
+     * <code>writeLock</code> is held for the duration of each append,
+     * compaction or removal so that they cannot interleave and the files are
+     * written in the order the program's state was captured.  The program's state is captured in memory holding the
+     * program read lock and the instance monitor, but neither is held while
+     * writing files.
+     */
+    private static final class ProgState {
+        final File journal;
+        final Lock writeLock = new ReentrantLock();
+        scala.collection.immutable.Map<SPNodeKey, VersionVector<LifespanId, Integer>> versions;
+        boolean compactionPending;
+
+        // Set once the program has been removed so that a compaction that
+        // was already scheduled doesn't write its snapshot back.
+        boolean removed;
+
+        ProgState(File journal, scala.collection.immutable.Map<SPNodeKey, VersionVector<LifespanId, Integer>> versions) {
+            this.journal  = journal;
+            this.versions = versions;
+        }
+    }
+
+    private final File _dbDir;
+    private final FileManager _snapshots;
+    private final double _compactionRatio;
+    private final Map<SPNodeKey, ProgState> _states = new HashMap<SPNodeKey, ProgState>();
+
+    private final ExecutorService _compactor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override public Thread newThread(Runnable r) {
+            final Thread t = new Thread(r, "ODB JournalCompactor");
+            t.setDaemon(true);
+            t.setPriority(Thread.NORM_PRIORITY - 1);
+            return t;
+        }
+    });
+
+    JournalFileManager(File dbDir) throws IOException {
+        this(dbDir, DEFAULT_COMPACTION_RATIO);
+    }
+
+    JournalFileManager(File dbDir, double compactionRatio) throws IOException {
+        if (compactionRatio <= 0) throw new IllegalArgumentException("compactionRatio must be > 0");
+        _snapshots       = new FileManager(dbDir);
+        _dbDir           = dbDir;
+        _compactionRatio = compactionRatio;
+    }
+
+    private File _getJournalFile(SPNodeKey key) {
+        return new File(_dbDir, key.toString() + JOURNAL_SUFFIX);
+    }
+
+    private synchronized ProgState _getState(SPNodeKey key) {
+        return _states.get(key);
+    }
+
+    private synchronized void _putState(SPNodeKey key, ProgState state) {
+        _states.put(key, state);
+    }
+
+    private synchronized ProgState _getOrCreateState(SPNodeKey key) {
+        ProgState state = _states.get(key);
+        if (state == null) {
+            state = new ProgState(_getJournalFile(key), JavaVersionMapOps.emptyVersionMap());
+            _states.put(key, state);
+        }
+        return state;
+    }
+
+    private synchronized ProgState _removeState(SPNodeKey key) {
+        return _states.remove(key);
+    }
+
+    public List<ISPProgram> reloadPrograms() throws IOException {
+        final List<ISPProgram> progs = _snapshots.reloadPrograms();
+
+        final long time1 = System.currentTimeMillis();
+        int replayed = 0;
+        for (ISPProgram prog : progs) {
+            final SPNodeKey key = prog.getProgramKey();
+            final File journal = _getJournalFile(key);
+            if (journal.exists()) {
+                replayed += _replay(prog, journal);
+            }
+            _putState(key, new ProgState(journal, prog.getVersions()));
+        }
+        final long time2 = System.currentTimeMillis();
+
+        LOG.info(String.format("Replayed %d journaled updates in %d ms", replayed, time2 - time1));
+        return progs;
+    }
+
+    public List<ISPNightlyRecord> reloadPlans() throws IOException {
+        return _snapshots.reloadPlans();
+    }
+
+    public void store(ISPRootNode node) throws IOException {
+        if (node instanceof ISPProgram) {
+            _snapshot((ISPProgram) node);
+        } else {
+            _snapshots.store(node);
+        }
+    }
+
+    public void storeDataObjectUpdates(ISPRootNode node) throws IOException {
+        if (!(node instanceof ISPProgram)) {
+            _snapshots.store(node);
+            return;
+        }
+
+        final ISPProgram prog = (ISPProgram) node;
+        final ProgState state = _getState(prog.getProgramKey());
+        if (state == null) {
+            _snapshot(prog);
+            return;
+        }
+
+        final boolean compact;
+        state.writeLock.lock();
+        try {
+            final byte[] frame;
+            final scala.collection.immutable.Map<SPNodeKey, VersionVector<LifespanId, Integer>> versions;
+            synchronized (state) {
+                if (state.removed) return;
+
+                prog.getProgramReadLock();
+                try {
+                    versions = prog.getVersions();
+                    final List<SPNodeKey> changed = JavaVersionMapOps.changedKeys(versions, state.versions);
+                    if (changed.isEmpty()) return;
+
+                    final List<Entry> entries = new ArrayList<Entry>();
+                    final Map<SPNodeKey, ISPNode> nodes = _nodeMap(prog);
+                    boolean structural = false;
+                    for (SPNodeKey k : changed) {
+                        final ISPNode n = nodes.get(k);
+
+                        // A new or removed node means we can't just update
+                        // data objects on reload, so fall back to a full
+                        // snapshot.
+                        if ((n == null) || !state.versions.contains(k)) {
+                            structural = true;
+                            break;
+                        }
+                        entries.add(new Entry(k, JavaVersionMapOps.getOrEmpty(versions, k), n.getDataObject()));
+                    }
+                    frame = structural ? null : _frame(entries);
+                } finally {
+                    prog.returnProgramReadLock();
+                }
+            }
+
+            if (frame == null) {
+                _snapshot(prog, state);
+                return;
+            }
+
+            _append(state.journal, frame);
+
+            final boolean needsCompaction = _needsCompaction(prog.getProgramKey(), state);
+            synchronized (state) {
+                state.versions = versions;
+                compact = !state.compactionPending && needsCompaction;
+                if (compact) state.compactionPending = true;
+            }
+        } finally {
+            state.writeLock.unlock();
+        }
+
+        if (compact) _scheduleCompaction(prog);
+    }
+
+    private boolean _needsCompaction(SPNodeKey key, ProgState state) {
+        final long journalSize = state.journal.length();
+        if (journalSize < MIN_COMPACTION_SIZE) return false;
+
+        final long snapshotSize = _snapshots.size(key);
+        return (snapshotSize < 0) || (journalSize >= snapshotSize * _compactionRatio);
+    }
+
+    private void _scheduleCompaction(final ISPProgram prog) {
+        _compactor.execute(new Runnable() {
+            @Override public void run() {
+                final ProgState state = _getState(prog.getProgramKey());
+                if (state == null) return; // removed in the meantime
+                state.writeLock.lock();
+                try {
+                    _snapshot(prog, state);
+                } catch (Exception ex) {
+                    LOG.log(Level.WARNING, "Could not compact journal for program " + prog.getProgramKey(), ex);
+                    synchronized (state) { state.compactionPending = false; }
+                } finally {
+                    state.writeLock.unlock();
+                }
+            }
+        });
+    }
+
+    private void _snapshot(ISPProgram prog) throws IOException {
+        final ProgState state = _getOrCreateState(prog.getProgramKey());
+        state.writeLock.lock();
+        try {
+            _snapshot(prog, state);
+        } finally {
+            state.writeLock.unlock();
+        }
+    }
+
+    /**
+     * Writes a complete snapshot of the program and discards its journal,
+     * unless the program has been removed.  Assumes the caller holds the
+     * <code>state</code>'s <code>writeLock</code>.
+     */
+    private void _snapshot(ISPProgram prog, ProgState state) throws IOException {
+        final FileManager.Serialized ser;
+        final scala.collection.immutable.Map<SPNodeKey, VersionVector<LifespanId, Integer>> versions;
+        synchronized (state) {
+            if (state.removed) return;
+            prog.getProgramReadLock();
+            try {
+                versions = prog.getVersions();
+                ser      = _snapshots.serialize(prog);
+            } finally {
+                prog.returnProgramReadLock();
+            }
+        }
+
+        _snapshots.write(ser);
+        if (state.journal.exists() && !state.journal.delete()) {
+            throw new IOException("Could not remove journal " + state.journal);
+        }
+
+        synchronized (state) {
+            state.versions          = versions;
+            state.compactionPending = false;
+        }
+    }
+
+    private static Map<SPNodeKey, ISPNode> _nodeMap(ISPProgram prog) {
+        final Map<SPNodeKey, ISPNode> res = new HashMap<SPNodeKey, ISPNode>();
+        final Deque<ISPNode> rem = new ArrayDeque<ISPNode>();
+        rem.push(prog);
+        while (!rem.isEmpty()) {
+            final ISPNode n = rem.pop();
+            res.put(n.getNodeKey(), n);
+            if (n instanceof ISPContainerNode) {
+                for (ISPNode c : ((ISPContainerNode) n).getChildren()) rem.push(c);
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Serializes a list of entries for <code>{@link #_append}</code>.
+     */
+    private static byte[] _frame(List<Entry> entries) throws IOException {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        final ObjectOutputStream oos = new ObjectOutputStream(baos);
+        oos.writeObject(new ArrayList<Entry>(entries));
+        oos.close();
+        return baos.toByteArray();
+    }
+
+    /**
+     * Appends a frame of serialized entries to the journal.  Each frame is
+     * written as its length, the serialized entry list, and a CRC32 of the
+     * serialized bytes so that a partially written trailing frame can be
+     * detected and ignored on reload.
+     */
+    private static void _append(File journal, byte[] bytes) throws IOException {
+        final CRC32 crc = new CRC32();
+        crc.update(bytes);
+
+        final FileOutputStream fos = new FileOutputStream(journal, true);
+        try {
+            final DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(fos));
+            dos.writeInt(bytes.length);
+            dos.write(bytes);
+            dos.writeLong(crc.getValue());
+            dos.flush();
+            fos.getFD().sync();
+        } finally {
+            fos.close();
+        }
+    }
+
+    /**
+     * Replays the journal onto the freshly loaded program, returning the
+     * number of entries applied.
+     */
+    @SuppressWarnings("unchecked")
+    private static int _replay(ISPProgram prog, File journal) throws IOException {
+        final Map<SPNodeKey, ISPNode> nodes = _nodeMap(prog);
+        int count = 0;
+
+        final DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(journal)));
+        try {
+            while (true) {
+                final byte[] bytes;
+                try {
+                    final int len = dis.readInt();
+                    if (len < 0) break;
+                    bytes = new byte[len];
+                    dis.readFully(bytes);
+                    final CRC32 crc = new CRC32();
+                    crc.update(bytes);
+                    if (crc.getValue() != dis.readLong()) {
+                        LOG.warning("Ignoring corrupt trailing frame in journal " + journal);
+                        break;
+                    }
+                } catch (EOFException ex) {
+                    break; // end of journal or truncated trailing frame
+                }
+
+                final List<Entry> entries;
+                try {
+                    final ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes));
+                    entries = (List<Entry>) ois.readObject();
+                } catch (ClassNotFoundException ex) {
+                    throw new IOException("Could not read journal " + journal, ex);
+                }
+
+                for (Entry e : entries) {
+                    final ISPNode n = nodes.get(e.key);
+                    if ((n != null) && JavaVersionMapOps.isNewer(e.version, n.getVersion())) {
+                        n.setDataObjectAndVersion(e.dataObject, e.version);
+                        ++count;
+                    }
+                }
+            }
+        } finally {
+            dis.close();
+        }
+        return count;
+    }
+
+    public void remove(SPNodeKey key) {
+        final ProgState state = _removeState(key);
+        if (state != null) {
+            synchronized (state) { state.removed = true; }
+
+            // Wait for any write in progress so that it can't recreate the
+            // files after they are removed.
+            state.writeLock.lock();
+            try {
+                _snapshots.remove(key);
+                state.journal.delete();
+            } finally {
+                state.writeLock.unlock();
+            }
+        } else {
+            _snapshots.remove(key);
+            _getJournalFile(key).delete();
+        }
+    }
+
+    @Override public long size(SPNodeKey key) {
+        final long snapshotSize = _snapshots.size(key);
+        if (snapshotSize < 0) return snapshotSize;
+        final ProgState state = _getState(key);
+        return (state == null) ? snapshotSize : snapshotSize + state.journal.length();
+    }
+
+    @Override public long getTotalStorage() {
+        long total = _snapshots.getTotalStorage();
+        final File[] journals = _dbDir.listFiles(JOURNAL_FILTER);
+        if (journals != null) {
+            for (File f : journals) total = total + f.length();
+        }
+        return total;
+    }
+
+    /**
+     * Stops the compactor once the compactions already scheduled have run.
+     * Any that don't finish in time leave their journals in place to be
+     * replayed on the next reload.
+     */
+    @Override public void shutdown() {
+        _compactor.shutdown();
+        try {
+            if (!_compactor.awaitTermination(SHUTDOWN_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                LOG.warning("Timed out waiting for journal compaction to finish");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
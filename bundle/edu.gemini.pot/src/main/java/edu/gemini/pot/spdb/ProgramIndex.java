@@ -0,0 +1,366 @@
+package edu.gemini.pot.spdb;
+
+import edu.gemini.pot.sp.*;
+import edu.gemini.spModel.core.ProgramId;
+import edu.gemini.spModel.core.ProgramId$;
+import edu.gemini.spModel.core.ProgramType;
+import edu.gemini.spModel.core.SPProgramID;
+import edu.gemini.spModel.core.Semester;
+import edu.gemini.spModel.obs.ObservationStatus;
+import edu.gemini.spModel.util.SPTreeUtil;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.*;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Maintains in-memory secondary indexes of the programs in the database by
+ * semester and program type, and of their observations by status and
+ * instrument.  The index is a composite change listener on every program and
+ * records which programs and observations have changed.  Changed nodes are
+ * reindexed lazily, when the index is next consulted, so that edits are not
+ * slowed down by the (potentially expensive) status calculation.
+ *
+ * <p>Data object updates to an observation or its descendants only require
+ * reindexing the observation.  Any other change in a program that involves
+ * its structure reindexes the whole program.  Data object updates outside of
+ * an observation do not affect the index and are ignored.
+ */
+final class ProgramIndex implements ProgramEventListener<ISPProgram>, PropertyChangeListener {
+    private static final Logger LOG = Logger.getLogger(ProgramIndex.class.getName());
+
+    private static final String DATA_OBJECT_PROP = SPUtil.getDataObjectPropertyName();
+
+    private static final class ObsEntry {
+        final ISPObservation obs;
+        final ObservationStatus status;
+        final SPComponentType instrument;
+
+        ObsEntry(ISPObservation obs, ObservationStatus status, SPComponentType instrument) {
+            this.obs        = obs;
+            this.status     = status;
+            this.instrument = instrument;
+        }
+    }
+
+    private static final class ProgEntry {
+        final ISPProgram prog;
+        final Semester semester;
+        final ProgramType programType;
+        final List<ObsEntry> obs;
+
+        ProgEntry(ISPProgram prog, Semester semester, ProgramType programType, List<ObsEntry> obs) {
+            this.prog        = prog;
+            this.semester    = semester;
+            this.programType = programType;
+            this.obs         = obs;
+        }
+    }
+
+    private final ProgramManager<ISPProgram> _progMan;
+
+    // Programs currently in the database.
+    private final Set<ISPProgram> _live = new HashSet<ISPProgram>();
+
+    // Programs and observations that must be reindexed.
+    private final Set<ISPProgram> _staleProgs    = new HashSet<ISPProgram>();
+    private final Set<ISPObservation> _staleObs  = new HashSet<ISPObservation>();
+
+    // Index entries, by node key.
+    private final Map<SPNodeKey, ProgEntry> _progs = new HashMap<SPNodeKey, ProgEntry>();
+    private final Map<SPNodeKey, ObsEntry> _obs    = new HashMap<SPNodeKey, ObsEntry>();
+
+    // The secondary indexes themselves, from attribute to node keys.
+    private final Map<Semester, Set<SPNodeKey>> _bySemester             = new HashMap<Semester, Set<SPNodeKey>>();
+    private final Map<ProgramType, Set<SPNodeKey>> _byProgramType       = new HashMap<ProgramType, Set<SPNodeKey>>();
+    private final Map<ObservationStatus, Set<SPNodeKey>> _byStatus      = new EnumMap<ObservationStatus, Set<SPNodeKey>>(ObservationStatus.class);
+    private final Map<SPComponentType, Set<SPNodeKey>> _byInstrument    = new EnumMap<SPComponentType, Set<SPNodeKey>>(SPComponentType.class);
+
+    // Serializes reindexing.  Held while computing index entries, which
+    // requires program read locks, so it must never be acquired while holding
+    // this object's monitor.
+    private final Lock _refreshLock = new ReentrantLock();
+
+    ProgramIndex(ProgramManager<ISPProgram> pm) {
+        _progMan = pm;
+        pm.addListener(this);
+
+        // Everything starts out stale and is indexed on first use.
+        for (ISPProgram prog : pm.getPrograms()) _track(prog);
+    }
+
+    void shutdown() {
+        _progMan.removeListener(this);
+        synchronized (this) {
+            for (ISPProgram prog : _live) prog.removeCompositeChangeListener(this);
+        }
+    }
+
+    private synchronized void _track(ISPProgram prog) {
+        _live.add(prog);
+        _staleProgs.add(prog);
+        prog.addCompositeChangeListener(this);
+    }
+
+    private synchronized void _untrack(ISPProgram prog) {
+        prog.removeCompositeChangeListener(this);
+        _live.remove(prog);
+        _staleProgs.remove(prog);
+        _removeProgram(prog.getProgramKey());
+    }
+
+    public void programAdded(ProgramEvent<ISPProgram> pme) {
+        _track(pme.getNewProgram());
+    }
+
+    public void programReplaced(ProgramEvent<ISPProgram> pme) {
+        _untrack(pme.getOldProgram());
+        _track(pme.getNewProgram());
+    }
+
+    public void programRemoved(ProgramEvent<ISPProgram> pme) {
+        _untrack(pme.getOldProgram());
+    }
+
+    @Override public void propertyChange(PropertyChangeEvent pce) {
+        final String prop = pce.getPropertyName();
+        if (SPUtil.isTransientClientDataPropertyName(prop)) return;
+
+        final Object src = pce.getSource();
+        if (!(src instanceof ISPNode)) return;
+
+        final ISPNode node = (ISPNode) src;
+        final ISPRootNode root = node.getRootAncestor();
+        if (!(root instanceof ISPProgram)) return;
+
+        final boolean dataObj = DATA_OBJECT_PROP.equals(prop);
+        final ISPObservation obs = dataObj ? node.getContextObservation() : null;
+        if (dataObj && (obs == null)) return;
+
+        synchronized (this) {
+            if (!_live.contains(root)) return;
+            if (obs == null) {
+                _staleProgs.add((ISPProgram) root);
+            } else {
+                _staleObs.add(obs);
+            }
+        }
+    }
+
+    // -- Index computation. Called without holding the monitor.
+
+    private static ObsEntry _index(ISPObservation obs) {
+        obs.getProgramReadLock();
+        try {
+            ObservationStatus status = null;
+            try {
+                status = ObservationStatus.computeFor(obs);
+            } catch (Exception ex) {
+                LOG.log(Level.WARNING, "Could not compute status of " + obs.getObservationID(), ex);
+            }
+
+            final ISPObsComponent inst = SPTreeUtil.findInstrument(obs);
+            return new ObsEntry(obs, status, (inst == null) ? null : inst.getType());
+        } finally {
+            obs.returnProgramReadLock();
+        }
+    }
+
+    private static ProgEntry _index(ISPProgram prog) {
+        prog.getProgramReadLock();
+        try {
+            Semester semester       = null;
+            ProgramType programType = null;
+
+            final SPProgramID pid = prog.getProgramID();
+            if (pid != null) {
+                final ProgramId id = ProgramId$.MODULE$.parse(pid.stringValue());
+                if (id.semester().isDefined()) semester    = id.semester().get();
+                if (id.ptype().isDefined())    programType = id.ptype().get();
+            }
+
+            final List<ObsEntry> obs = new ArrayList<ObsEntry>();
+            for (ISPObservation o : prog.getAllObservations()) obs.add(_index(o));
+            return new ProgEntry(prog, semester, programType, obs);
+        } finally {
+            prog.returnProgramReadLock();
+        }
+    }
+
+    // -- Index updates. Called holding the monitor.
+
+    private static <K> void _add(Map<K, Set<SPNodeKey>> m, K k, SPNodeKey key) {
+        if (k == null) return;
+        Set<SPNodeKey> s = m.get(k);
+        if (s == null) {
+            s = new HashSet<SPNodeKey>();
+            m.put(k, s);
+        }
+        s.add(key);
+    }
+
+    private static <K> void _remove(Map<K, Set<SPNodeKey>> m, K k, SPNodeKey key) {
+        if (k == null) return;
+        final Set<SPNodeKey> s = m.get(k);
+        if (s == null) return;
+        s.remove(key);
+        if (s.isEmpty()) m.remove(k);
+    }
+
+    private void _putObservation(ObsEntry e) {
+        final SPNodeKey key = e.obs.getNodeKey();
+        _removeObservation(key);
+        _obs.put(key, e);
+        _add(_byStatus,     e.status,     key);
+        _add(_byInstrument, e.instrument, key);
+    }
+
+    private void _removeObservation(SPNodeKey key) {
+        final ObsEntry e = _obs.remove(key);
+        if (e == null) return;
+        _remove(_byStatus,     e.status,     key);
+        _remove(_byInstrument, e.instrument, key);
+    }
+
+    private void _putProgram(ProgEntry e) {
+        final SPNodeKey key = e.prog.getProgramKey();
+        _removeProgram(key);
+        _progs.put(key, e);
+        _add(_bySemester,    e.semester,    key);
+        _add(_byProgramType, e.programType, key);
+        for (ObsEntry oe : e.obs) _putObservation(oe);
+    }
+
+    private void _removeProgram(SPNodeKey key) {
+        final ProgEntry e = _progs.remove(key);
+        if (e == null) return;
+        _remove(_bySemester,    e.semester,    key);
+        _remove(_byProgramType, e.programType, key);
+        for (ObsEntry oe : e.obs) _removeObservation(oe.obs.getNodeKey());
+    }
+
+    /**
+     * Reindexes any programs and observations that have changed since the
+     * last refresh.
+     */
+    private void _refresh() {
+        _refreshLock.lock();
+        try {
+            final List<ISPProgram> progs;
+            final List<ISPObservation> obs;
+            synchronized (this) {
+                if (_staleProgs.isEmpty() && _staleObs.isEmpty()) return;
+                progs = new ArrayList<ISPProgram>(_staleProgs);
+                obs   = new ArrayList<ISPObservation>(_staleObs);
+                _staleProgs.clear();
+                _staleObs.clear();
+            }
+
+            final Set<ISPProgram> progSet = new HashSet<ISPProgram>(progs);
+            final List<ProgEntry> progEntries = new ArrayList<ProgEntry>(progs.size());
+            for (ISPProgram p : progs) progEntries.add(_index(p));
+
+            final List<ObsEntry> obsEntries = new ArrayList<ObsEntry>(obs.size());
+            for (ISPObservation o : obs) {
+                if (!progSet.contains(o.getRootAncestor())) obsEntries.add(_index(o));
+            }
+
+            synchronized (this) {
+                // Skip anything removed from the database in the meantime.
+                for (ProgEntry e : progEntries) {
+                    if (_live.contains(e.prog)) _putProgram(e);
+                }
+                for (ObsEntry e : obsEntries) {
+                    final ISPRootNode root = e.obs.getRootAncestor();
+                    final ProgEntry pe = (root == null) ? null : _progs.get(root.getProgramKey());
+                    if ((pe != null) && (pe.prog == root)) _putObservation(e);
+                }
+            }
+        } finally {
+            _refreshLock.unlock();
+        }
+    }
+
+    // -- Lookup.
+
+    // Returns the smallest of the candidate key sets selected by the given
+    // attribute values, or null if there is no constraint.
+    private static <K> Set<SPNodeKey> _candidates(Map<K, Set<SPNodeKey>> m, Set<K> values) {
+        if (values == null) return null;
+        final Set<SPNodeKey> res = new HashSet<SPNodeKey>();
+        for (K k : values) {
+            final Set<SPNodeKey> s = m.get(k);
+            if (s != null) res.addAll(s);
+        }
+        return res;
+    }
+
+    private static Set<SPNodeKey> _smallest(Set<SPNodeKey> a, Set<SPNodeKey> b) {
+        if (a == null) return b;
+        if (b == null) return a;
+        return (a.size() <= b.size()) ? a : b;
+    }
+
+    private List<ProgEntry> _programEntries(DBIndexQuery q) {
+        final Set<SPNodeKey> keys = _smallest(_candidates(_bySemester, q.getSemesters()),
+                                              _candidates(_byProgramType, q.getProgramTypes()));
+        final Collection<ProgEntry> entries;
+        if (keys == null) {
+            entries = _progs.values();
+        } else {
+            entries = new ArrayList<ProgEntry>(keys.size());
+            for (SPNodeKey k : keys) entries.add(_progs.get(k));
+        }
+
+        final List<ProgEntry> res = new ArrayList<ProgEntry>();
+        for (ProgEntry e : entries) {
+            if (q.matchesProgram(e.semester, e.programType)) res.add(e);
+        }
+        return res;
+    }
+
+    /**
+     * Gets the programs that match the given query.
+     */
+    List<ISPProgram> programs(DBIndexQuery q) {
+        _refresh();
+        synchronized (this) {
+            final List<ISPProgram> res = new ArrayList<ISPProgram>();
+            for (ProgEntry e : _programEntries(q)) res.add(e.prog);
+            return res;
+        }
+    }
+
+    /**
+     * Gets the observations that match the given query.  Only the index
+     * entries of the candidate nodes are examined.
+     */
+    List<ISPObservation> observations(DBIndexQuery q) {
+        _refresh();
+        synchronized (this) {
+            final List<ISPObservation> res = new ArrayList<ISPObservation>();
+            final Set<SPNodeKey> keys = _smallest(_candidates(_byStatus, q.getStatuses()),
+                                                  _candidates(_byInstrument, q.getInstruments()));
+
+            if (keys == null) {
+                // No observation constraints, so go through the programs.
+                for (ProgEntry pe : _programEntries(q)) {
+                    for (ObsEntry e : pe.obs) res.add(e.obs);
+                }
+            } else {
+                for (SPNodeKey k : keys) {
+                    final ObsEntry e = _obs.get(k);
+                    if (!q.matchesObservation(e.status, e.instrument)) continue;
+
+                    final ProgEntry pe = _progs.get(e.obs.getProgramKey());
+                    if ((pe != null) && q.matchesProgram(pe.semester, pe.programType)) res.add(e.obs);
+                }
+            }
+            return res;
+        }
+    }
+}
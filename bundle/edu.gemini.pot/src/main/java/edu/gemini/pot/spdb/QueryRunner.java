@@ -13,10 +13,17 @@ import edu.gemini.pot.sp.ISPProgram;
 import edu.gemini.pot.sp.SPNodeNotLocalException;
 
 import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -28,6 +35,14 @@ import java.util.logging.Logger;
 final class QueryRunner implements IDBQueryRunner {
     private static final Logger LOG = Logger.getLogger(QueryRunner.class.getName());
 
+    // Number of partitions per pool thread.  More partitions than threads
+    // evens out the work when a few programs are much larger than the rest.
+    private static final int PARTITIONS_PER_THREAD = 4;
+
+    // Shared pool on which parallel queries are executed.
+    private static final ForkJoinPool POOL =
+            new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
     private DBLocalDatabase _database;
     private DatabaseManager _dataMan;
     private Set<Principal> _principals;
@@ -45,6 +60,11 @@ final class QueryRunner implements IDBQueryRunner {
      * Runs a query on the available observations.
      */
     public <T extends IDBQueryFunctor> T queryObservations(T queryFunctor) {
+        if (queryFunctor instanceof IDBParallelQueryFunctor) {
+            _doParallelQuery(_dataMan.getProgramManager().getPrograms(), true, (IDBParallelQueryFunctor) queryFunctor);
+            return queryFunctor;
+        }
+
         List<ISPObservation> lst = new LinkedList<ISPObservation>();
         for (ISPProgram prog : _dataMan.getProgramManager().getPrograms()) {
             lst.addAll(prog.getAllObservations());
@@ -57,14 +77,44 @@ final class QueryRunner implements IDBQueryRunner {
      */
     public <T extends IDBQueryFunctor> T queryPrograms(T queryFunctor) {
         List lst = _dataMan.getProgramManager().getPrograms();
+        if (queryFunctor instanceof IDBParallelQueryFunctor) {
+            _doParallelQuery(lst, false, (IDBParallelQueryFunctor) queryFunctor);
+            return queryFunctor;
+        }
         return _doQuery(lst, queryFunctor);
     }
 
+    /**
+     * Runs a query on the observations that match the index query.
+     */
+    public <T extends IDBQueryFunctor> T queryObservations(DBIndexQuery query, T queryFunctor) {
+        return _doIndexedQuery(_dataMan.getProgramIndex().observations(query), queryFunctor);
+    }
+
+    /**
+     * Runs a query on the programs that match the index query.
+     */
+    public <T extends IDBQueryFunctor> T queryPrograms(DBIndexQuery query, T queryFunctor) {
+        return _doIndexedQuery(_dataMan.getProgramIndex().programs(query), queryFunctor);
+    }
+
+    private <T extends IDBQueryFunctor> T _doIndexedQuery(List<? extends ISPNode> nodeList, T queryFunctor) {
+        if (queryFunctor instanceof IDBParallelQueryFunctor) {
+            _doParallelQuery(nodeList, false, (IDBParallelQueryFunctor) queryFunctor);
+            return queryFunctor;
+        }
+        return _doQuery(nodeList, queryFunctor);
+    }
+
     /**
      * Runs a query on the available nightly plans.
      */
     public <T extends IDBQueryFunctor> T queryNightlyPlans(T queryFunctor) {
         List lst = _dataMan.getNightlyPlanManager().getPrograms();
+        if (queryFunctor instanceof IDBParallelQueryFunctor) {
+            _doParallelQuery(lst, false, (IDBParallelQueryFunctor) queryFunctor);
+            return queryFunctor;
+        }
         return _doQuery(lst, queryFunctor);
     }
 
@@ -97,4 +147,121 @@ final class QueryRunner implements IDBQueryRunner {
         return queryFunctor;
     }
 
+    /**
+     * Runs a parallel query functor on the given root nodes.  The roots are
+     * split into contiguous partitions, each of which is executed on the
+     * shared pool by a functor obtained from
+     * {@link IDBParallelQueryFunctor#newPartition}.  As soon as any partition
+     * functor reports that it is done, all the partitions stop.
+     *
+     * @param rootList programs or nightly plans to query, or individual
+     * nodes if <code>observations</code> is <code>false</code>
+     * @param observations whether the functor should be applied to the
+     * observations of each root rather than the root itself
+     */
+    void _doParallelQuery(final List rootList, final boolean observations, final IDBParallelQueryFunctor queryFunctor) {
+        WithPriority.exec(queryFunctor.getPriority(), new Runnable() {
+            public void run() {
+                FunctorLogger.Handback hb = _dataMan.functorLogger.logQueryStart(queryFunctor);
+                try {
+                    queryFunctor.init();
+
+                    final List<Partition> parts = _partition(rootList, observations, queryFunctor);
+                    final List<IDBParallelQueryFunctor> res = new ArrayList<IDBParallelQueryFunctor>(parts.size());
+                    for (Future<IDBParallelQueryFunctor> f : POOL.invokeAll(parts)) {
+                        res.add(_get(f));
+                    }
+
+                    queryFunctor.mergePartitions(res);
+                    queryFunctor.finished();
+                } catch (Exception ex) {
+                    LOG.log(Level.WARNING, "Problem running functor: " + queryFunctor, ex);
+                    queryFunctor.setException(ex);
+                }
+                _dataMan.functorLogger.logQueryEnd(queryFunctor, hb);
+            }
+        });
+    }
+
+    private static IDBParallelQueryFunctor _get(Future<IDBParallelQueryFunctor> f) throws Exception {
+        try {
+            return f.get();
+        } catch (ExecutionException ex) {
+            final Throwable cause = ex.getCause();
+            if (cause instanceof Exception) throw (Exception) cause;
+            throw ex;
+        }
+    }
+
+    private List<Partition> _partition(List rootList, boolean observations, IDBParallelQueryFunctor queryFunctor) {
+        final int count = POOL.getParallelism() * PARTITIONS_PER_THREAD;
+        final int size  = Math.max(1, (rootList.size() + count - 1) / count);
+
+        final AtomicBoolean stop = new AtomicBoolean(false);
+        final List<Partition> res = new ArrayList<Partition>();
+        for (int i=0; i<rootList.size(); i+=size) {
+            final List sub = rootList.subList(i, Math.min(rootList.size(), i + size));
+            res.add(new Partition(sub, observations, queryFunctor.newPartition(), stop));
+        }
+        return res;
+    }
+
+    /**
+     * Executes a partition functor on a contiguous range of root nodes,
+     * holding each root's program read lock while visiting it.  The stop
+     * flag is shared by all the partitions of a query.
+     */
+    private final class Partition implements Callable<IDBParallelQueryFunctor> {
+        private final List _roots;
+        private final boolean _observations;
+        private final IDBParallelQueryFunctor _functor;
+        private final AtomicBoolean _stop;
+
+        Partition(List roots, boolean observations, IDBParallelQueryFunctor functor, AtomicBoolean stop) {
+            _roots        = roots;
+            _observations = observations;
+            _functor      = functor;
+            _stop         = stop;
+        }
+
+        private boolean _isDone() {
+            if (_stop.get()) return true;
+            if (!_functor.isDone()) return false;
+            _stop.set(true);
+            return true;
+        }
+
+        private void _execute(ISPNode root) {
+            root.getProgramReadLock();
+            try {
+                final List<? extends ISPNode> nodes;
+                if (_observations) {
+                    nodes = ((ISPProgram) root).getAllObservations();
+                } else {
+                    nodes = Collections.singletonList(root);
+                }
+
+                for (ISPNode node : nodes) {
+                    if (_isDone()) return;
+                    _functor.execute(_database, node, _principals);
+                }
+            } finally {
+                root.returnProgramReadLock();
+            }
+        }
+
+        public IDBParallelQueryFunctor call() {
+            WithPriority.exec(_functor.getPriority(), new Runnable() {
+                public void run() {
+                    _functor.init();
+                    final Iterator it = _roots.iterator();
+                    while (!_isDone() && it.hasNext()) {
+                        _execute((ISPNode) it.next());
+                    }
+                    _functor.finished();
+                }
+            });
+            return _functor;
+        }
+    }
 }
@@ -10,6 +10,7 @@ package edu.gemini.pot.spdb;
 import edu.gemini.pot.sp.ISPRootNode;
 import edu.gemini.spModel.core.SPProgramID;
 
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -201,9 +202,14 @@ final class StorageManager<N extends ISPRootNode> implements ProgramEventListene
      * Stores all the modified programs, if any.
      */
     private void _storeDirtyPrograms() {
-        for (N n : _dirty.getDirtyPrograms()) {
+        for (Map.Entry<N, Boolean> me : _dirty.getDirtyProgramMap().entrySet()) {
+            final N n = me.getKey();
             try {
-                _persister.store(n);
+                if (me.getValue()) {
+                    _persister.storeDataObjectUpdates(n);
+                } else {
+                    _persister.store(n);
+                }
             } catch (Exception ex) {
                 log(n, ex);
             }
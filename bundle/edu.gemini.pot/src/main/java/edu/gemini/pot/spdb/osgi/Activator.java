@@ -34,6 +34,13 @@ public class Activator implements BundleActivator {
      */
     public static final String BUNDLE_PROP_DIR = "edu.gemini.spdb.dir";
 
+    /**
+     * Bundle property that specifies whether data object updates should be
+     * journaled rather than written as complete program files.  Default is
+     * <code>false</code>.
+     */
+    public static final String BUNDLE_PROP_JOURNAL = "edu.gemini.spdb.journal";
+
     // Mutable state
     private DatabaseLoader loader;
 
@@ -52,7 +59,8 @@ public class Activator implements BundleActivator {
             } else {
                 dbDir = ExternalStorage$.MODULE$.getExternalDataFile(context, "spdb");
             }
-            loader = new DatabaseLoader(context, dbDir);
+            final boolean journal = props.getBoolean(BUNDLE_PROP_JOURNAL, false);
+            loader = new DatabaseLoader(context, dbDir, journal);
         }
 
     }
@@ -72,16 +80,18 @@ public class Activator implements BundleActivator {
 
         private final BundleContext ctx;
         private final File dbDir;
+        private final boolean journal;
 
         private State state;
         private IDBDatabaseService db;
         private ServiceRegistration<IDBDatabaseService> dbReg;
         private ServiceRegistration<IDBQueryRunner>     qrReg;
 
-        DatabaseLoader(BundleContext ctx, File dir) {
-            this.ctx   = ctx;
-            this.dbDir = dir;
-            this.state = State.loading;
+        DatabaseLoader(BundleContext ctx, File dir, boolean journal) {
+            this.ctx     = ctx;
+            this.dbDir   = dir;
+            this.journal = journal;
+            this.state   = State.loading;
 
             Thread t = new Thread(this, "DatabaseLoader");
             t.setDaemon(true);
@@ -139,7 +149,7 @@ public class Activator implements BundleActivator {
         public void run() {
             LOGGER.info("Starting local database on " + dbDir.getAbsolutePath());
             try {
-                setReady(DBLocalDatabase.create(dbDir));
+                setReady(journal ? DBLocalDatabase.createJournaled(dbDir) : DBLocalDatabase.create(dbDir));
             } catch (IOException ex) {
                 LOGGER.log(Level.SEVERE, "Could not start ODB on " + dbDir, ex);
                 try {
@@ -0,0 +1,289 @@
+package edu.gemini.spModel.config2;
+
+import edu.gemini.shared.util.immutable.MapOp;
+
+import java.io.ObjectStreamException;
+import java.util.*;
+
+/**
+ * A columnar representation of the complete (as opposed to compact) steps of
+ * a {@link ConfigSequence}.  Each distinct item key is stored once, along
+ * with a run-length encoded column of its values.  A new run is only started
+ * when the value actually changes, so the value of any item at any step is
+ * found with a binary search over the (usually few) runs of its column.
+ *
+ * <p>Steps may only be appended.  Values at existing steps never change, so
+ * the step views handed out by {@link #getStep} remain valid as the sequence
+ * grows.  Any other modification of the sequence requires a new instance.
+ *
+ * <p>Not MT-safe, like the ConfigSequence that uses it.
+ */
+final class ConfigColumns {
+
+    // Run-length encoded values of a single item.  The value at a step is
+    // the value of the last run starting at or before it, or null if the
+    // item was introduced after the step.
+    private static final class Column {
+        private int[] starts    = new int[1];
+        private Object[] values = new Object[1];
+        private int runs;
+
+        void append(int step, Object value) {
+            if ((runs > 0) && Objects.equals(values[runs - 1], value)) return;
+            if (runs == starts.length) {
+                starts = Arrays.copyOf(starts, runs * 2);
+                values = Arrays.copyOf(values, runs * 2);
+            }
+            starts[runs] = step;
+            values[runs] = value;
+            ++runs;
+        }
+
+        Object valueAt(int step) {
+            int lo = 0;
+            int hi = runs - 1;
+            int res = -1;
+            while (lo <= hi) {
+                final int mid = (lo + hi) >>> 1;
+                if (starts[mid] <= step) {
+                    res = mid;
+                    lo  = mid + 1;
+                } else {
+                    hi  = mid - 1;
+                }
+            }
+            return (res < 0) ? null : values[res];
+        }
+
+        // Fills res with the value at each step in [0, res.length).
+        void fill(Object[] res) {
+            for (int i=0; i<runs; ++i) {
+                final int end = (i + 1 < runs) ? starts[i + 1] : res.length;
+                Arrays.fill(res, starts[i], end, values[i]);
+            }
+        }
+
+        void distinct(Set<Object> res) {
+            if ((runs == 0) || (starts[0] > 0)) res.add(null);
+            for (int i=0; i<runs; ++i) res.add(values[i]);
+        }
+    }
+
+    private final Map<ItemKey, Column> _columns = new HashMap<ItemKey, Column>();
+    private ItemKey[] _sortedKeys; // lazily computed
+    private int _size;
+
+    /**
+     * Number of steps.
+     */
+    int size() {
+        return _size;
+    }
+
+    /**
+     * Adds a step that contains all the items in effect at the previous step,
+     * updated with the items in <code>conf</code>.
+     */
+    void append(Config conf) {
+        for (ItemEntry ie : conf.itemEntries()) {
+            Column col = _columns.get(ie.getKey());
+            if (col == null) {
+                col = new Column();
+                _columns.put(ie.getKey(), col);
+                _sortedKeys = null;
+            }
+            col.append(_size, ie.getItemValue());
+        }
+        ++_size;
+    }
+
+    Object valueAt(int step, ItemKey key) {
+        final Column col = _columns.get(key);
+        return (col == null) ? null : col.valueAt(step);
+    }
+
+    /**
+     * Gets the value of the item at each step, using <code>null</code> for
+     * steps before its introduction.
+     */
+    Object[] valuesAtEachStep(ItemKey key) {
+        final Object[] res = new Object[_size];
+        final Column col = _columns.get(key);
+        if (col != null) col.fill(res);
+        return res;
+    }
+
+    /**
+     * Gets the distinct values of the item, including <code>null</code> if it
+     * is missing at any step.
+     */
+    Set<Object> distinctValues(ItemKey key) {
+        final Set<Object> res = new HashSet<Object>();
+        if (_size == 0) return res;
+
+        final Column col = _columns.get(key);
+        if (col == null) {
+            res.add(null);
+        } else {
+            col.distinct(res);
+        }
+        return res;
+    }
+
+    /**
+     * Finds the first step that contains all the items in the
+     * <code>template</code>, or -1 if none.
+     */
+    int indexMatching(Config template) {
+        final ItemEntry[] entries = template.itemEntries();
+        final Column[] cols = new Column[entries.length];
+        for (int i=0; i<entries.length; ++i) {
+            cols[i] = _columns.get(entries[i].getKey());
+            if (cols[i] == null) return -1;
+        }
+
+        for (int step=0; step<_size; ++step) {
+            boolean match = true;
+            for (int i=0; match && (i<entries.length); ++i) {
+                final Object val = cols[i].valueAt(step);
+                match = (val != null) && val.equals(entries[i].getItemValue());
+            }
+            if (match) return step;
+        }
+        return -1;
+    }
+
+    private ItemKey[] _sortedKeys() {
+        if (_sortedKeys == null) {
+            final ItemKey[] keys = _columns.keySet().toArray(ItemKey.EMPTY_ARRAY);
+            Arrays.sort(keys);
+            _sortedKeys = keys;
+        }
+        return _sortedKeys;
+    }
+
+    private int _sizeAt(int step) {
+        int res = 0;
+        for (Column col : _columns.values()) {
+            if (col.valueAt(step) != null) ++res;
+        }
+        return res;
+    }
+
+    /**
+     * Creates a new DefaultConfig with all the items in effect at the given
+     * step.
+     */
+    DefaultConfig toConfig(int step) {
+        final DefaultConfig res = new DefaultConfig();
+        for (ItemKey key : _sortedKeys()) {
+            final Object val = _columns.get(key).valueAt(step);
+            if (val != null) res.putItem(key, val);
+        }
+        return res;
+    }
+
+    /**
+     * Gets a lazy view of the items in effect at the given step.  The view is
+     * independent of the sequence in that modifying it does not modify the
+     * sequence.
+     */
+    Config getStep(int step) {
+        if ((step < 0) || (step >= _size)) {
+            throw new IndexOutOfBoundsException("Step: " + step + ", Size: " + _size);
+        }
+        return new StepConfig(this, step);
+    }
+
+    /**
+     * A copy-on-write view of a single step.  Item lookups are answered from
+     * the columns.  The first operation that needs the full set of items
+     * materializes a private DefaultConfig, and the first modification
+     * detaches the view from the columns altogether.
+     */
+    private static final class StepConfig implements Config {
+        private ConfigColumns _cols;
+        private final int _step;
+        private DefaultConfig _config;
+
+        StepConfig(ConfigColumns cols, int step) {
+            _cols = cols;
+            _step = step;
+        }
+
+        private DefaultConfig _read() {
+            if (_config == null) _config = _cols.toConfig(_step);
+            return _config;
+        }
+
+        private DefaultConfig _write() {
+            _read();
+            _cols = null;
+            return _config;
+        }
+
+        // Serialize as a plain DefaultConfig.
+        private Object writeReplace() throws ObjectStreamException {
+            return _read();
+        }
+
+        public boolean containsItem(ItemKey key) {
+            return getItemValue(key) != null;
+        }
+
+        public Object getItemValue(ItemKey key) {
+            return (_config == null) ? _cols.valueAt(_step, key) : _config.getItemValue(key);
+        }
+
+        public boolean matches(Config config) {
+            if (_config != null) return _config.matches(config);
+            for (ItemEntry ie : config.itemEntries()) {
+                final Object val = getItemValue(ie.getKey());
+                if ((val == null) || !val.equals(ie.getItemValue())) return false;
+            }
+            return true;
+        }
+
+        public int size() {
+            return (_config == null) ? _cols._sizeAt(_step) : _config.size();
+        }
+
+        public boolean isEmpty() {
+            return size() == 0;
+        }
+
+        public ItemEntry[] itemEntries()                 { return _read().itemEntries();       }
+        public ItemEntry[] itemEntries(ItemKey parent)   { return _read().itemEntries(parent); }
+        public ItemKey[] getKeys()                       { return _read().getKeys();           }
+        public ItemKey[] getKeys(ItemKey parent)         { return _read().getKeys(parent);     }
+        public Config getAll(ItemKey parent)             { return _read().getAll(parent);      }
+        public Config getAll(ItemKey[] parents)          { return _read().getAll(parents);     }
+
+        public <K> Map<K, ItemEntry[]> groupBy(MapOp<ItemEntry, K> f) {
+            return _read().groupBy(f);
+        }
+
+        public void clear()                              { _write().clear();                   }
+        public Object putItem(ItemKey key, Object item)  { return _write().putItem(key, item); }
+        public void putAll(Config config)                { _write().putAll(config);            }
+        public Object remove(ItemKey key)                { return _write().remove(key);        }
+        public void removeAll(ItemKey parent)            { _write().removeAll(parent);         }
+        public void removeAll(ItemKey[] parents)         { _write().removeAll(parents);        }
+        public void removeAll(Config config)             { _write().removeAll(config);         }
+        public void retainAll(ItemKey parent)            { _write().retainAll(parent);         }
+        public void retainAll(ItemKey[] parents)         { _write().retainAll(parents);        }
+        public void retainAll(Config config)             { _write().retainAll(config);         }
+
+        public boolean equals(Object other) {
+            return _read().equals(other);
+        }
+
+        public int hashCode() {
+            return _read().hashCode();
+        }
+
+        public String toString() {
+            return _read().toString();
+        }
+    }
+}
@@ -33,6 +33,11 @@ import java.io.IOException;
  * successive steps is available via the {@link #getCompactView()} and
  * {@link #compactIterator()} methods.
  *
+ * <p>The complete steps are not stored as separate Configs.  Instead they are
+ * kept in a columnar form with a run-length encoded column of values per
+ * item, and the Configs returned by methods like {@link #getStep(int)} and
+ * {@link #iterator()} are lazy copy-on-write views of it.
+ *
  * <p><b>Note that this class is not mt-safe</b> If multiple threads access a
  * ConfigSequence concurrently, and at least one of the threads modifies the
  * sequence structurally, it <em>must</em> be synchronized externally.
@@ -46,22 +51,26 @@ public class ConfigSequence implements Serializable {
     private List<Config> _configs = new ArrayList<Config>();
     private boolean _isCompact = true;
 
-    private transient List<Config> _completeConfigs;
+    private transient ConfigColumns _columns;
 
-    // Iterator class used to make copies of the Config object it generates.
-    private class CopyIterator implements Iterator<Config> {
-        private Iterator<Config> _srcIter;
+    // Iterator over views of the complete steps.
+    private static class StepIterator implements Iterator<Config> {
+        private final ConfigColumns _cols;
+        private final int _size;
+        private int _step;
 
-        CopyIterator(Iterator<Config> srcIter) {
-            _srcIter = srcIter;
+        StepIterator(ConfigColumns cols) {
+            _cols = cols;
+            _size = cols.size();
         }
 
         public boolean hasNext() {
-            return _srcIter.hasNext();
+            return _step < _size;
         }
 
         public Config next() {
-            return new DefaultConfig(_srcIter.next());
+            if (_step >= _size) throw new NoSuchElementException();
+            return _cols.getStep(_step++);
         }
 
         public void remove() {
@@ -130,21 +139,16 @@ public class ConfigSequence implements Serializable {
     }
 
     //
-    // Fills in the transient _completeConfigs list with Config instances in
-    // which every successive Config contains all items that are in effect at
-    // that step.
+    // Fills in the transient _columns with the items that are in effect at
+    // each step.
     //
-    private void _complete() {
-        if (_completeConfigs != null) return;
-
-        _completeConfigs = new ArrayList<Config>();
-        if (_configs.size() == 0) return;
-
-        Config curConfig = new DefaultConfig();
-        for (Config config : _configs) {
-            curConfig.putAll(config);
-            _completeConfigs.add(new DefaultConfig(curConfig));
+    private ConfigColumns _complete() {
+        if (_columns == null) {
+            final ConfigColumns cols = new ConfigColumns();
+            for (Config config : _configs) cols.append(config);
+            _columns = cols;
         }
+        return _columns;
     }
 
     /**
@@ -158,11 +162,11 @@ public class ConfigSequence implements Serializable {
      * @return all the {@link Config} objects in this sequence
      */
     public Config[] getAllSteps() {
-        _complete();
+        final ConfigColumns cols = _complete();
 
-        Config[] res = _completeConfigs.toArray(DefaultConfig.EMPTY_ARRAY);
+        Config[] res = new Config[cols.size()];
         for (int i=0; i<res.length; ++i) {
-            res[i] = new DefaultConfig(res[i]);
+            res[i] = cols.getStep(i);
         }
         return res;
     }
@@ -177,9 +181,10 @@ public class ConfigSequence implements Serializable {
      * predicate
      */
     public ConfigSequence filter(Predicate p) {
-        _complete();
-        List<Config> res = new ArrayList<Config>(_completeConfigs.size());
-        for (Config c : _completeConfigs) {
+        final ConfigColumns cols = _complete();
+        List<Config> res = new ArrayList<Config>(cols.size());
+        for (int i=0; i<cols.size(); ++i) {
+            Config c = cols.getStep(i);
             if (p.matches(c)) res.add(c);
         }
         return new ConfigSequence(res.toArray(new Config[res.size()]));
@@ -213,8 +218,7 @@ public class ConfigSequence implements Serializable {
      * @return Config at the given <code>step</code>
      */
     public Config getStep(int step) {
-        _complete();
-        return new DefaultConfig(_completeConfigs.get(step));
+        return _complete().getStep(step);
     }
 
     /**
@@ -228,8 +232,11 @@ public class ConfigSequence implements Serializable {
      * <code
      */
     public Object getItemValue(int step, ItemKey key) {
-        Config conf = getStep(step);
-        return conf.getItemValue(key);
+        final ConfigColumns cols = _complete();
+        if ((step < 0) || (step >= cols.size())) {
+            throw new IndexOutOfBoundsException("Step: " + step + ", Size: " + cols.size());
+        }
+        return cols.valueAt(step, key);
     }
 
     /**
@@ -244,13 +251,7 @@ public class ConfigSequence implements Serializable {
      * associated with <code>key</code>
      */
     public Object[] getItemValueAtEachStep(ItemKey key) {
-        _complete();
-        Object[] res = new Object[_completeConfigs.size()];
-        int i = 0;
-        for (Config completeConfig : _completeConfigs) {
-            res[i++] = completeConfig.getItemValue(key);
-        }
-        return res;
+        return _complete().valuesAtEachStep(key);
     }
 
     /**
@@ -265,11 +266,7 @@ public class ConfigSequence implements Serializable {
      * <code>key</code> obtains over the lifetime of the ConfigSequence
      */
     public Object[] getDistinctItemValues(ItemKey key) {
-        _complete();
-        Set<Object> s = new HashSet<Object>();
-        for (Config completeConfig : _completeConfigs) {
-            s.add(completeConfig.getItemValue(key));
-        }
+        Set<Object> s = _complete().distinctValues(key);
         return s.toArray(new Object[s.size()]);
     }
 
@@ -358,13 +355,7 @@ public class ConfigSequence implements Serializable {
      * any; -1 otherwise
      */
     public int indexMatching(Config template) {
-       _complete();
-        int i=0;
-        for (Config conf : _completeConfigs) {
-            if (conf.matches(template)) return i;
-            ++i;
-        }
-        return -1;
+        return _complete().indexMatching(template);
     }
 
     /**
@@ -385,17 +376,21 @@ public class ConfigSequence implements Serializable {
     public void addStep(Config conf) {
         Config nextConfig = new DefaultConfig(conf);
 
-        if (_isCompact && (_completeConfigs != null)) {
-            Config lastConfig = _completeConfigs.get(_completeConfigs.size() - 1);
-            nextConfig.removeAll(lastConfig);
+        if (_isCompact && (_columns != null)) {
+            // Keep only the items that differ from the last step.
+            int last = _columns.size() - 1;
+            if (last >= 0) {
+                for (ItemEntry ie : conf.itemEntries()) {
+                    if (Objects.equals(ie.getItemValue(), _columns.valueAt(last, ie.getKey()))) {
+                        nextConfig.remove(ie.getKey());
+                    }
+                }
+            }
             _configs.add(nextConfig);
-
-            lastConfig = new DefaultConfig(lastConfig);
-            lastConfig.putAll(nextConfig);
-            _completeConfigs.add(lastConfig);
+            _columns.append(nextConfig);
         } else {
             _isCompact = false;
-            _completeConfigs = null;
+            _columns = null;
             _configs.add(nextConfig);
         }
     }
@@ -418,7 +413,7 @@ public class ConfigSequence implements Serializable {
             addStep(conf);
         } else {
             _isCompact = false;
-            _completeConfigs = null;
+            _columns = null;
             _configs.add(step, new DefaultConfig(conf));
         }
     }
@@ -428,7 +423,7 @@ public class ConfigSequence implements Serializable {
      */
     public void clear() {
         _configs.clear();
-        if (_completeConfigs != null) _completeConfigs.clear();
+        _columns = null;
         _isCompact = true;
     }
 
@@ -437,8 +432,7 @@ public class ConfigSequence implements Serializable {
      * {@link #compactIterator()}.
      */
     public Iterator<Config> iterator() {
-        _complete();
-        return new CopyIterator(_completeConfigs.iterator());
+        return new StepIterator(_complete());
     }
 
     /**
@@ -449,8 +443,7 @@ public class ConfigSequence implements Serializable {
      * in each successive Config.
      */
     public Iterator<Config> compactIterator() {
-        _compact();
-        return new CopyIterator(_configs.iterator());
+        return Arrays.asList(getCompactView()).iterator();
     }
 
     /**
@@ -473,8 +466,8 @@ public class ConfigSequence implements Serializable {
     public void removeStep(int step) {
         if (step != (_configs.size() - 1)) {
             _isCompact = false;
-            _completeConfigs = null;
         }
+        _columns = null;
         _configs.remove(step);
     }
 
@@ -497,7 +490,7 @@ public class ConfigSequence implements Serializable {
      */
     public void setStep(int step, Config conf) {
         _isCompact = false;
-        _completeConfigs = null;
+        _columns = null;
         _configs.set(step, new DefaultConfig(conf));
     }
 
@@ -525,10 +518,10 @@ public class ConfigSequence implements Serializable {
      * <code>to</code> index.
      */
     public ConfigSequence subSequence(int from, int to) {
-        _complete();
+        final ConfigColumns cols = _complete();
         Config[] subconfigs = new Config[to - from];
         for (int i=from; i<to; ++i) {
-            subconfigs[i-from] = _completeConfigs.get(i);
+            subconfigs[i-from] = cols.getStep(i);
         }
         return new ConfigSequence(subconfigs);
     }
@@ -35,6 +35,19 @@ public class CalibrationKeyImpl implements CalibrationKey {
         return config;
     }
 
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        final CalibrationKeyImpl that = (CalibrationKeyImpl) o;
+        return (config == null) ? that.config == null : config.equals(that.config);
+    }
+
+    @Override
+    public int hashCode() {
+        return (config == null) ? 0 : config.hashCode();
+    }
+
 
     public static class WithWavelength extends CalibrationKeyImpl implements CalibrationKey.WithWavelength {
 
@@ -50,6 +63,18 @@ public class CalibrationKeyImpl implements CalibrationKey {
             return wavelength;
         }
 
+        @Override
+        public boolean equals(Object o) {
+            if (!super.equals(o)) return false;
+            final WithWavelength that = (WithWavelength) o;
+            return (wavelength == null) ? that.wavelength == null : wavelength.equals(that.wavelength);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * super.hashCode() + ((wavelength == null) ? 0 : wavelength.hashCode());
+        }
+
     }
 
 }
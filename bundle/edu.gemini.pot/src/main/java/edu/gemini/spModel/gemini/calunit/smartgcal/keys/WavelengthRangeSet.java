@@ -31,9 +31,25 @@ public class WavelengthRangeSet implements Serializable {
         }
     }
 
+    /**
+     * Lookup structure for wavelengths: the ranges sorted by their lower boundary. Since the ranges don't overlap,
+     * the only candidate range for a wavelength is the last one starting at or below it.
+     */
+    private static final class Index {
+        private final double[] mins;
+        private final RangeCalibrationTuple[] tuples;
+        private Index(double[] mins, RangeCalibrationTuple[] tuples) {
+            this.mins = mins;
+            this.tuples = tuples;
+        }
+    }
+
     // set of range/calibration pairs
     private final List<RangeCalibrationTuple> ranges;
 
+    // built on first lookup after the ranges change
+    private transient volatile Index index;
+
     /**
      * Constructs a new empty wavelength range set.
      */
@@ -59,6 +75,7 @@ public class WavelengthRangeSet implements Serializable {
             }
             existing = new RangeCalibrationTuple(range);
             ranges.add(existing);
+            index = null;
         }
         existing.calibrations.add(c);
     }
@@ -111,12 +128,29 @@ public class WavelengthRangeSet implements Serializable {
      * @return
      */
     private RangeCalibrationTuple findTuple(double value) {
-        for (RangeCalibrationTuple t : ranges) {
-            if (value >= t.range.getMin() && value < t.range.getMax()) {
-                return t;
-            }
+        final Index ix = getIndex();
+        int i = Arrays.binarySearch(ix.mins, value + 0.0); // + 0.0 turns -0.0 into 0.0 for the search
+        if (i < 0) i = -i - 2; // insertion point - 1, i.e. the last range starting below the value
+        if (i < 0) return null;
+        final RangeCalibrationTuple t = ix.tuples[i];
+        return (value >= t.range.getMin() && value < t.range.getMax()) ? t : null;
+    }
+
+    private Index getIndex() {
+        Index ix = index;
+        if (ix == null) {
+            final RangeCalibrationTuple[] tuples = ranges.toArray(new RangeCalibrationTuple[ranges.size()]);
+            Arrays.sort(tuples, new Comparator<RangeCalibrationTuple>() {
+                @Override public int compare(RangeCalibrationTuple t1, RangeCalibrationTuple t2) {
+                    return Double.compare(t1.range.getMin(), t2.range.getMin());
+                }
+            });
+            final double[] mins = new double[tuples.length];
+            for (int i = 0; i < tuples.length; ++i) mins[i] = tuples[i].range.getMin();
+            ix = new Index(mins, tuples);
+            index = ix;
         }
-        return null;
+        return ix;
     }
 
 }
@@ -21,4 +21,22 @@ object JavaVersionMapOps {
       l <- local.get(k)
       r <- remote.get(k)
     } yield l.tryCompareTo(r).forall(_ > 0)).getOrElse(false)
+
+  /**
+   * Returns true if `a` strictly dominates `b`.
+   */
+  def isNewer(a: NodeVersions, b: NodeVersions): Boolean =
+    a.tryCompareTo(b).exists(_ > 0)
+
+  /**
+   * Gets the keys of all nodes whose versions in `cur` differ from those in
+   * `prev`, including nodes that are not present in `prev` at all.
+   */
+  def changedKeys(cur: VersionMap, prev: VersionMap): java.util.List[SPNodeKey] = {
+    val res = new java.util.ArrayList[SPNodeKey]()
+    if (!(cur eq prev)) cur.foreach { case (k, v) =>
+      if (!prev.get(k).exists(_ == v)) res.add(k)
+    }
+    res
+  }
 }
@@ -0,0 +1,77 @@
+package edu.gemini.pot.sp.version
+
+import edu.gemini.pot.sp.{ISPNode, ISPObservation, SPNodeKey}
+
+import java.nio.ByteBuffer
+import java.security.MessageDigest
+
+/**
+ * A hash tree summarizing the versions of the nodes in a program tree.  Each
+ * entry holds a digest of the keys and versions of all the nodes in the
+ * subtree rooted at its node, so two copies of a program whose entries for a
+ * node match have identical version data for that entire subtree.
+ *
+ * Observations are `atomic`: they are compared as a unit, so `matching` never
+ * looks for matching subtrees inside them.  Their nodes still have entries,
+ * since a node may be in an observation in one copy of the program but not in
+ * the other.
+ */
+@SerialVersionUID(1L)
+final case class VmSummary(key: SPNodeKey, digest: VmSummary.Digest, children: List[VmSummary], atomic: Boolean) {
+
+  /** Digests of all the subtrees in this summary, keyed by their root. */
+  def digests: Map[SPNodeKey, VmSummary.Digest] = {
+    def go(m: Map[SPNodeKey, VmSummary.Digest], s: VmSummary): Map[SPNodeKey, VmSummary.Digest] =
+      ((m + (s.key -> s.digest))/:s.children) { go }
+    go(Map.empty, this)
+  }
+
+  /**
+   * Finds the largest subtrees of this summary that have the same digest in
+   * `that` summary.  Subtrees nested in a matching subtree or in an atomic
+   * one are not listed.
+   */
+  def matching(that: VmSummary): Map[SPNodeKey, VmSummary.Digest] = {
+    val other = that.digests
+    def go(m: Map[SPNodeKey, VmSummary.Digest], s: VmSummary): Map[SPNodeKey, VmSummary.Digest] =
+      if (other.get(s.key).exists(_ == s.digest)) m + (s.key -> s.digest)
+      else if (s.atomic) m
+      else (m/:s.children) { go }
+    go(Map.empty, this)
+  }
+}
+
+object VmSummary {
+
+  /** MD5 digest of the versions in a subtree. */
+  @SerialVersionUID(1L)
+  final case class Digest(hi: Long, lo: Long)
+
+  /** Summarizes the versions of the nodes in the tree rooted at `n`. */
+  def apply(n: ISPNode): VmSummary = {
+    val vm  = n.getProgram.getVersions
+    val md5 = MessageDigest.getInstance("MD5")
+
+    // Children are digested before their parent, so a single MessageDigest
+    // serves the whole tree.
+    def digest(n: ISPNode, children: List[Digest]): Digest = {
+      val key = n.getNodeKey
+      val nv  = nodeVersions(vm, key)
+      val buf = ByteBuffer.allocate(16 + nv.clocks.size * 20 + children.size * 16)
+      putNodeVersions(buf, key, nv)
+      children.foreach { d => buf.putLong(d.hi).putLong(d.lo) }
+      md5.update(buf.array())
+
+      val res = ByteBuffer.wrap(md5.digest())
+      Digest(res.getLong, res.getLong)
+    }
+
+    def go(n: ISPNode, inObs: Boolean): VmSummary = {
+      val obs = inObs || n.isInstanceOf[ISPObservation]
+      val cs  = children(n).map(go(_, obs))
+      VmSummary(n.getNodeKey, digest(n, cs.map(_.digest)), cs, obs)
+    }
+
+    go(n, inObs = false)
+  }
+}
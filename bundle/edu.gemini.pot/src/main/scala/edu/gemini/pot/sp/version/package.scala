@@ -26,7 +26,7 @@ package object version {
 
   def nodeVersions(vm: VersionMap, k: SPNodeKey): NodeVersions = vm.getOrElse(k, EmptyNodeVersions)
 
-  private def children(n: ISPNode): List[ISPNode] = n match {
+  private[version] def children(n: ISPNode): List[ISPNode] = n match {
     case c: ISPContainerNode => c.getChildren.asScala.toList
     case _ => Nil
   }
@@ -44,7 +44,7 @@ package object version {
     subMap(EmptyVersionMap, n)
   }
 
-  private def putNodeVersions(buf: ByteBuffer, key: SPNodeKey, nv: NodeVersions): Unit = {
+  private[version] def putNodeVersions(buf: ByteBuffer, key: SPNodeKey, nv: NodeVersions): Unit = {
     def putUuid(u: UUID): Unit = {
       buf.putLong(u.getMostSignificantBits)
       buf.putLong(u.getLeastSignificantBits)
@@ -7,7 +7,7 @@ import edu.gemini.spModel.rich.pot.sp.obsWrapper
 import edu.gemini.spModel.rich.shared.immutable._
 import edu.gemini.spModel.target.obsComp.TargetObsComp
 import edu.gemini.util.skycalc.SiderealTarget
-import edu.gemini.util.skycalc.calc.{Interval, TargetCalculator}
+import edu.gemini.util.skycalc.calc.{Interval, TargetCalculator, TargetCalculatorCache}
 
 import jsky.coords.WorldCoords
 import edu.gemini.skycalc.{TimeUtils, Coordinates}
@@ -53,7 +53,9 @@ object ObsTargetCalculatorService {
       // If the duration is going to be smaller than the default step size of 30 seconds used by the
       // target calc, we will have divide by 0 issues, so take this into account.
       val stepSize = if (duration >= TimeUtils.seconds(30)) TimeUtils.seconds(30) else duration
-      TargetCalculator(s, st, Interval(b.start, end), stepSize)
+
+      // Observations with the same target and scheduling block share the calculator.
+      TargetCalculatorCache.shared(s, st, Interval(b.start, end), stepSize)
     }
 
     for {
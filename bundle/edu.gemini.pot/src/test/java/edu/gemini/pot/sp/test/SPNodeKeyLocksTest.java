@@ -0,0 +1,54 @@
+package edu.gemini.pot.sp.test;
+
+import edu.gemini.pot.sp.LockHistogram;
+import edu.gemini.pot.sp.LockHolder;
+import edu.gemini.pot.sp.LockStatistics;
+import edu.gemini.pot.sp.SPNodeKey;
+import edu.gemini.pot.sp.SPNodeKeyLocks;
+import junit.framework.TestCase;
+
+import java.util.List;
+
+/**
+ * Test cases for the statistics of SPNodeKeyLocks.
+ */
+public class SPNodeKeyLocksTest extends TestCase {
+    private static final SPNodeKeyLocks LOCKS = SPNodeKeyLocks.instance;
+
+    public SPNodeKeyLocksTest(String name) {
+        super(name);
+    }
+
+    public void testStatistics() throws Exception {
+        final SPNodeKey key = new SPNodeKey();
+        LOCKS.enableMetrics();
+        LOCKS.resetSlowestHolders();
+
+        LOCKS.readLock(key);
+        LOCKS.readLock(key); // reentrant, counts as one hold
+        LOCKS.readUnlock(key);
+        LOCKS.readUnlock(key);
+
+        LOCKS.writeLock(key);
+        Thread.sleep(20);
+        LOCKS.writeUnlock(key);
+
+        final LockStatistics stats = LOCKS.getStatistics(key);
+        assertEquals(2, stats.getReadWait().getCount());
+        assertEquals(1, stats.getReadHold().getCount());
+        assertEquals(1, stats.getWriteHold().getCount());
+        assertTrue(stats.getWriteHold().getMaxNanos() >= 20000000L);
+
+        final List<LockHolder> slowest = LOCKS.getSlowestHolders(SPNodeKeyLocks.SLOWEST_HOLDER_COUNT);
+        boolean found = false;
+        for (LockHolder h : slowest) found |= key.equals(h.getKey()) && h.isWrite() && !h.isActive();
+        assertTrue(found);
+    }
+
+    public void testHistogramBuckets() throws Exception {
+        assertEquals(0, LockHistogram.bucketFor(0));
+        assertEquals(0, LockHistogram.bucketFor(1999));
+        assertEquals(1, LockHistogram.bucketFor(2000));
+        assertEquals(LockHistogram.BUCKET_COUNT - 1, LockHistogram.bucketFor(Long.MAX_VALUE));
+    }
+}
@@ -0,0 +1,118 @@
+package edu.gemini.pot.spdb.test;
+
+import edu.gemini.pot.sp.ISPObservation;
+import edu.gemini.pot.sp.ISPProgram;
+import edu.gemini.pot.sp.SPNodeKey;
+import edu.gemini.pot.spdb.DBLocalDatabase;
+import edu.gemini.pot.spdb.IDBDatabaseService;
+import edu.gemini.spModel.core.SPProgramID;
+import edu.gemini.spModel.data.ISPDataObject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FilenameFilter;
+
+import static org.junit.Assert.*;
+
+/**
+ * Round trips data object updates through the journaling persister.
+ */
+public final class JournalFileManagerTest {
+
+    @Rule public final TemporaryFolder tmp = new TemporaryFolder();
+
+    private static File[] journals(File dbRootDir) {
+        final File dbDir = DBLocalDatabase.getVersionedDatabaseDir(dbRootDir);
+        return dbDir.listFiles(new FilenameFilter() {
+            @Override public boolean accept(File dir, String name) {
+                return name.endsWith(".spj");
+            }
+        });
+    }
+
+    @Test
+    public void testReplayDataObjectUpdates() throws Exception {
+        final File root = tmp.newFolder("spdb");
+        final SPProgramID pid = SPProgramID.toProgramID("GS-2015B-Q-1");
+
+        IDBDatabaseService db = DBLocalDatabase.createJournaled(root);
+        final ISPProgram prog = db.getFactory().createProgram(new SPNodeKey(), pid);
+        final ISPObservation obs = db.getFactory().createObservation(prog, null);
+        prog.addObservation(obs);
+        db.put(prog);
+        db.checkpoint();
+
+        // Only a data object update, so it should be journaled.
+        final ISPDataObject dobj = obs.getDataObject();
+        dobj.setTitle("Journaled Title");
+        obs.setDataObject(dobj);
+        db.checkpoint();
+        assertEquals(1, journals(root).length);
+
+        final SPNodeKey obsKey = obs.getNodeKey();
+        db.getDBAdmin().shutdown();
+
+        db = DBLocalDatabase.createJournaled(root);
+        try {
+            final ISPProgram reloaded = db.lookupProgramByID(pid);
+            assertNotNull(reloaded);
+
+            final ISPObservation reloadedObs = reloaded.getAllObservations().get(0);
+            assertEquals(obsKey, reloadedObs.getNodeKey());
+            assertEquals("Journaled Title", reloadedObs.getDataObject().getTitle());
+            assertEquals(obs.getVersion(), reloadedObs.getVersion());
+        } finally {
+            db.getDBAdmin().shutdown();
+        }
+    }
+
+    @Test
+    public void testStructureChangeWritesSnapshot() throws Exception {
+        final File root = tmp.newFolder("spdb");
+        final SPProgramID pid = SPProgramID.toProgramID("GS-2015B-Q-2");
+
+        final IDBDatabaseService db = DBLocalDatabase.createJournaled(root);
+        try {
+            final ISPProgram prog = db.getFactory().createProgram(new SPNodeKey(), pid);
+            db.put(prog);
+            db.checkpoint();
+
+            prog.addObservation(db.getFactory().createObservation(prog, null));
+            db.checkpoint();
+            assertEquals(0, journals(root).length);
+        } finally {
+            db.getDBAdmin().shutdown();
+        }
+    }
+
+    @Test
+    public void testRemoveIsNotUndone() throws Exception {
+        final File root = tmp.newFolder("spdb");
+        final SPProgramID pid = SPProgramID.toProgramID("GS-2015B-Q-3");
+
+        IDBDatabaseService db = DBLocalDatabase.createJournaled(root);
+        final ISPProgram prog = db.getFactory().createProgram(new SPNodeKey(), pid);
+        final ISPObservation obs = db.getFactory().createObservation(prog, null);
+        prog.addObservation(obs);
+        db.put(prog);
+        db.checkpoint();
+
+        final ISPDataObject dobj = obs.getDataObject();
+        dobj.setTitle("Removed Title");
+        obs.setDataObject(dobj);
+        db.checkpoint();
+
+        db.remove(prog);
+        db.getDBAdmin().shutdown();
+        assertEquals(0, journals(root).length);
+
+        db = DBLocalDatabase.createJournaled(root);
+        try {
+            assertNull(db.lookupProgramByID(pid));
+        } finally {
+            db.getDBAdmin().shutdown();
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package edu.gemini.pot.spdb.test;
+
+import edu.gemini.pot.sp.ISPNode;
+import edu.gemini.pot.sp.ISPProgram;
+import edu.gemini.pot.sp.SPNodeKey;
+import edu.gemini.pot.spdb.DBAbstractQueryFunctor;
+import edu.gemini.pot.spdb.DBProgramListFunctor;
+import edu.gemini.pot.spdb.IDBDatabaseService;
+import edu.gemini.pot.spdb.IDBParallelQueryFunctor;
+import org.junit.Test;
+
+import java.security.Principal;
+import java.util.Collection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs parallel query functors over a database with several programs.
+ */
+public final class ParallelQueryTest extends SpdbBaseTestCase {
+
+    private static final class KeyFunctor extends DBAbstractQueryFunctor implements IDBParallelQueryFunctor {
+        private final Set<SPNodeKey> keys = new HashSet<SPNodeKey>();
+        private boolean merged;
+
+        public void execute(IDBDatabaseService db, ISPNode node, Set<Principal> principals) {
+            keys.add(node.getNodeKey());
+        }
+
+        public IDBParallelQueryFunctor newPartition() {
+            return new KeyFunctor();
+        }
+
+        public void mergePartitions(Collection<IDBParallelQueryFunctor> partitions) {
+            for (IDBParallelQueryFunctor f : partitions) keys.addAll(((KeyFunctor) f).keys);
+            merged = true;
+        }
+    }
+
+    // Done as soon as it sees the target node, slow on any other node.
+    private static final class FindFunctor extends DBAbstractQueryFunctor implements IDBParallelQueryFunctor {
+        private final SPNodeKey target;
+        private final AtomicInteger executed;
+        private boolean found;
+
+        FindFunctor(SPNodeKey target, AtomicInteger executed) {
+            this.target   = target;
+            this.executed = executed;
+        }
+
+        public boolean isDone() {
+            return found;
+        }
+
+        public void execute(IDBDatabaseService db, ISPNode node, Set<Principal> principals) {
+            executed.incrementAndGet();
+            if (target.equals(node.getNodeKey())) {
+                found = true;
+            } else {
+                try {
+                    Thread.sleep(2);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        public IDBParallelQueryFunctor newPartition() {
+            return new FindFunctor(target, executed);
+        }
+
+        public void mergePartitions(Collection<IDBParallelQueryFunctor> partitions) {
+            for (IDBParallelQueryFunctor f : partitions) found |= ((FindFunctor) f).found;
+        }
+    }
+
+    private static final int PROGRAM_COUNT = 25;
+    private static final int OBS_COUNT     = 3;
+
+    private Set<SPNodeKey> _populate(Set<SPNodeKey> progKeys) throws Exception {
+        final Set<SPNodeKey> obsKeys = new HashSet<SPNodeKey>();
+        for (int i=0; i<PROGRAM_COUNT; ++i) {
+            final ISPProgram prog = createProgram();
+            progKeys.add(prog.getNodeKey());
+            for (int j=0; j<OBS_COUNT; ++j) {
+                prog.addObservation(getDatabase().getFactory().createObservation(prog, null));
+            }
+            for (ISPNode obs : prog.getAllObservations()) obsKeys.add(obs.getNodeKey());
+        }
+        return obsKeys;
+    }
+
+    @Test
+    public void testQueryObservations() throws Exception {
+        final Set<SPNodeKey> obsKeys = _populate(new HashSet<SPNodeKey>());
+
+        final Set<Principal> user = Collections.emptySet();
+        final KeyFunctor f = getDatabase().getQueryRunner(user).queryObservations(new KeyFunctor());
+        assertTrue(f.merged);
+        assertEquals(PROGRAM_COUNT * OBS_COUNT, f.keys.size());
+        assertEquals(obsKeys, f.keys);
+    }
+
+    @Test
+    public void testQueryPrograms() throws Exception {
+        final Set<SPNodeKey> progKeys = new HashSet<SPNodeKey>();
+        _populate(progKeys);
+
+        final Set<Principal> user = Collections.emptySet();
+        final KeyFunctor f = getDatabase().getQueryRunner(user).queryPrograms(new KeyFunctor());
+        assertTrue(f.merged);
+        assertEquals(progKeys, f.keys);
+    }
+
+    @Test
+    public void testAllPartitionsStopWhenOneIsDone() throws Exception {
+        _populate(new HashSet<SPNodeKey>());
+
+        // Look for the first observation of the first program, which the
+        // first partition visits right away.
+        final Set<Principal> user = Collections.emptySet();
+        final SPNodeKey first  = getDatabase().getQueryRunner(user).queryPrograms(new DBProgramListFunctor()).getKeyList().get(0);
+        final SPNodeKey target = getDatabase().lookupProgram(first).getAllObservations().get(0).getNodeKey();
+
+        final AtomicInteger executed = new AtomicInteger();
+        final FindFunctor f = getDatabase().getQueryRunner(user).queryObservations(new FindFunctor(target, executed));
+        assertTrue(f.isDone());
+        // Each of the other partitions visits at most the node it was on.
+        assertTrue(executed.get() < PROGRAM_COUNT * OBS_COUNT / 2);
+    }
+
+    @Test
+    public void testProgramListInProgramOrder() throws Exception {
+        final Set<SPNodeKey> progKeys = new HashSet<SPNodeKey>();
+        _populate(progKeys);
+
+        // A functor that isn't parallel visits the programs in order.
+        final List<SPNodeKey> expected = new ArrayList<SPNodeKey>();
+        final Set<Principal> user = Collections.emptySet();
+        getDatabase().getQueryRunner(user).queryPrograms(new DBAbstractQueryFunctor() {
+            public void execute(IDBDatabaseService db, ISPNode node, Set<Principal> principals) {
+                expected.add(node.getNodeKey());
+            }
+        });
+
+        final DBProgramListFunctor f = getDatabase().getQueryRunner(user).queryPrograms(new DBProgramListFunctor());
+        assertEquals(expected, f.getKeyList());
+        assertEquals(progKeys, new HashSet<SPNodeKey>(f.getKeyList()));
+    }
+}
@@ -0,0 +1,111 @@
+package edu.gemini.pot.spdb.test;
+
+import edu.gemini.pot.sp.ISPNode;
+import edu.gemini.pot.sp.ISPObservation;
+import edu.gemini.pot.sp.ISPProgram;
+import edu.gemini.pot.sp.SPNodeKey;
+import edu.gemini.pot.spdb.DBAbstractQueryFunctor;
+import edu.gemini.pot.spdb.DBIndexQuery;
+import edu.gemini.pot.spdb.IDBDatabaseService;
+import edu.gemini.pot.spdb.IDBQueryRunner;
+import edu.gemini.spModel.core.ProgramType;
+import edu.gemini.spModel.core.SPProgramID;
+import edu.gemini.spModel.core.Semester;
+import edu.gemini.spModel.obs.ObsPhase2Status;
+import edu.gemini.spModel.obs.ObservationStatus;
+import edu.gemini.spModel.obs.SPObservation;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.security.Principal;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that indexed queries visit only the matching nodes and that the
+ * indexes follow program edits.
+ */
+public final class ProgramIndexTest extends SpdbBaseTestCase {
+
+    private static final class KeyFunctor extends DBAbstractQueryFunctor {
+        private final Set<SPNodeKey> keys = new HashSet<SPNodeKey>();
+
+        public void execute(IDBDatabaseService db, ISPNode node, Set<Principal> principals) {
+            keys.add(node.getNodeKey());
+        }
+    }
+
+    private IDBQueryRunner _runner;
+    private ISPProgram _progA;
+    private ISPProgram _progB;
+
+    private ISPProgram _createProgram(String id, int obsCount) throws Exception {
+        final IDBDatabaseService db = getDatabase();
+        final ISPProgram prog = db.getFactory().createProgram(new SPNodeKey(), SPProgramID.toProgramID(id));
+        for (int i=0; i<obsCount; ++i) prog.addObservation(db.getFactory().createObservation(prog, null));
+        recordProgram(prog);
+        return prog;
+    }
+
+    private static Set<SPNodeKey> _obsKeys(ISPProgram prog) {
+        final Set<SPNodeKey> res = new HashSet<SPNodeKey>();
+        for (ISPObservation obs : prog.getAllObservations()) res.add(obs.getNodeKey());
+        return res;
+    }
+
+    private Set<SPNodeKey> _queryObs(DBIndexQuery q) {
+        return _runner.queryObservations(q, new KeyFunctor()).keys;
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        final Set<Principal> user = Collections.emptySet();
+        _runner = getDatabase().getQueryRunner(user);
+        _progA  = _createProgram("GS-2015B-Q-1", 2);
+        _progB  = _createProgram("GS-2016A-C-2", 3);
+    }
+
+    @Test
+    public void testProgramAttributes() throws Exception {
+        final DBIndexQuery sem = DBIndexQuery.ANY.withSemester(Semester.parse("2015B"));
+        assertEquals(Collections.singleton(_progA.getNodeKey()), _runner.queryPrograms(sem, new KeyFunctor()).keys);
+
+        final DBIndexQuery typ = DBIndexQuery.ANY.withProgramType(ProgramType.Classical$.MODULE$);
+        assertEquals(Collections.singleton(_progB.getNodeKey()), _runner.queryPrograms(typ, new KeyFunctor()).keys);
+        assertEquals(_obsKeys(_progB), _queryObs(typ));
+    }
+
+    @Test
+    public void testStatusFollowsEdits() throws Exception {
+        final DBIndexQuery inactive = DBIndexQuery.ANY.withStatus(ObservationStatus.INACTIVE);
+        assertTrue(_queryObs(inactive).isEmpty());
+
+        final ISPObservation obs = _progB.getAllObservations().get(1);
+        final SPObservation dobj = (SPObservation) obs.getDataObject();
+        dobj.setPhase2Status(ObsPhase2Status.INACTIVE);
+        obs.setDataObject(dobj);
+
+        assertEquals(Collections.singleton(obs.getNodeKey()), _queryObs(inactive));
+        assertTrue(_queryObs(inactive.withSemester(Semester.parse("2015B"))).isEmpty());
+
+        final Set<SPNodeKey> phase2 = _obsKeys(_progA);
+        phase2.addAll(_obsKeys(_progB));
+        phase2.remove(obs.getNodeKey());
+        assertEquals(phase2, _queryObs(DBIndexQuery.ANY.withStatus(ObservationStatus.PHASE2)));
+    }
+
+    @Test
+    public void testStructureChanges() throws Exception {
+        final DBIndexQuery q = DBIndexQuery.ANY.withSemester(Semester.parse("2015B"));
+
+        _progA.addObservation(getDatabase().getFactory().createObservation(_progA, null));
+        assertEquals(3, _queryObs(q).size());
+
+        getDatabase().removeProgram(_progA.getNodeKey());
+        assertTrue(_queryObs(q).isEmpty());
+    }
+}
@@ -0,0 +1,125 @@
+package edu.gemini.spModel.config2.test;
+
+import edu.gemini.spModel.config2.Config;
+import edu.gemini.spModel.config2.ConfigSequence;
+import edu.gemini.spModel.config2.DefaultConfig;
+import edu.gemini.spModel.config2.ItemKey;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A simple benchmark, run by hand, that compares the columnar ConfigSequence
+ * with the previous approach of materializing a complete DefaultConfig for
+ * each step.  The sequence mimics a long imaging sequence with a few dozen
+ * static instrument items and offsets that change at every step.
+ *
+ * <pre>
+ * ConfigSequenceBenchmark [steps [staticItems [iterations]]]
+ * </pre>
+ */
+public final class ConfigSequenceBenchmark {
+
+    private static final ItemKey P_KEY      = new ItemKey("telescope:p");
+    private static final ItemKey Q_KEY      = new ItemKey("telescope:q");
+    private static final ItemKey FILTER_KEY = new ItemKey("instrument:filter");
+
+    private static Config[] deltas(int steps, int staticItems) {
+        final Config[] res = new Config[steps];
+        for (int i=0; i<steps; ++i) {
+            final Config c = new DefaultConfig();
+            if (i == 0) {
+                for (int j=0; j<staticItems; ++j) c.putItem(new ItemKey("instrument:item" + j), "value" + j);
+            }
+            c.putItem(P_KEY, (double) (i % 9));
+            c.putItem(Q_KEY, (double) (i % 7));
+            if (i % 50 == 0) c.putItem(FILTER_KEY, "filter" + (i / 50) % 3);
+            res[i] = c;
+        }
+        return res;
+    }
+
+    // The previous implementation: one complete TreeMap copy per step, plus
+    // a copy per iterated step.
+    private static long legacy(Config[] deltas) {
+        final List<Config> complete = new ArrayList<Config>(deltas.length);
+        final Config cur = new DefaultConfig();
+        for (Config d : deltas) {
+            cur.putAll(d);
+            complete.add(new DefaultConfig(cur));
+        }
+
+        long sum = 0;
+        for (Config c : complete) {
+            final Config copy = new DefaultConfig(c);
+            sum += copy.getItemValue(P_KEY).hashCode() + copy.getItemValue(FILTER_KEY).hashCode();
+        }
+        return sum;
+    }
+
+    private static long columnar(Config[] deltas) {
+        final ConfigSequence seq = new ConfigSequence();
+        for (Config d : deltas) seq.addStep(d);
+
+        long sum = 0;
+        for (Iterator<Config> it = seq.iterator(); it.hasNext(); ) {
+            final Config c = it.next();
+            sum += c.getItemValue(P_KEY).hashCode() + c.getItemValue(FILTER_KEY).hashCode();
+        }
+        return sum;
+    }
+
+    private static long usedMemory() {
+        final Runtime rt = Runtime.getRuntime();
+        for (int i=0; i<3; ++i) System.gc();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    private static void report(String label, long nanos, int iterations, long bytes) {
+        System.out.println(String.format("%-10s %8.3f ms/op  %,12d bytes retained", label,
+                nanos / 1e6 / iterations, bytes));
+    }
+
+    public static void main(String[] args) {
+        final int steps       = (args.length > 0) ? Integer.parseInt(args[0]) : 2000;
+        final int staticItems = (args.length > 1) ? Integer.parseInt(args[1]) : 60;
+        final int iterations  = (args.length > 2) ? Integer.parseInt(args[2]) : 200;
+
+        final Config[] deltas = deltas(steps, staticItems);
+
+        // Warm up both.
+        long check = 0;
+        for (int i=0; i<iterations; ++i) check += legacy(deltas) - columnar(deltas);
+        if (check != 0) throw new IllegalStateException("Implementations disagree");
+
+        long t = System.nanoTime();
+        for (int i=0; i<iterations; ++i) check += legacy(deltas);
+        final long legacyNanos = System.nanoTime() - t;
+
+        t = System.nanoTime();
+        for (int i=0; i<iterations; ++i) check -= columnar(deltas);
+        final long columnarNanos = System.nanoTime() - t;
+
+        // Retained size of the complete steps.
+        long before = usedMemory();
+        final List<Config> complete = new ArrayList<Config>(steps);
+        final Config cur = new DefaultConfig();
+        for (Config d : deltas) {
+            cur.putAll(d);
+            complete.add(new DefaultConfig(cur));
+        }
+        final long legacyBytes = usedMemory() - before;
+
+        before = usedMemory();
+        final ConfigSequence seq = new ConfigSequence();
+        for (Config d : deltas) seq.addStep(d);
+        seq.getItemValue(0, P_KEY); // force the complete representation
+        final long columnarBytes = usedMemory() - before;
+
+        System.out.println(String.format("%d steps, %d static items, %d iterations (check %d, %d, %d)",
+                steps, staticItems, iterations, check, complete.size(), seq.size()));
+        report("legacy",   legacyNanos,   iterations, legacyBytes);
+        report("columnar", columnarNanos, iterations, columnarBytes);
+    }
+}
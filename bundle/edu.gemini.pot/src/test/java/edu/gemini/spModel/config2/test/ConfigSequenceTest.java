@@ -624,4 +624,51 @@ public class ConfigSequenceTest extends TestCase {
         seq = _seq.subSequence(0, _seq.size());
         assertEquals(3, seq.size());
     }
+
+    public void testStepViewsAfterAddStep() throws Exception {
+        // Build up the complete representation, then append to it.
+        ConfigSequence seq = new ConfigSequence(new Config[] { _config0, _config1 });
+        seq.getCompactView();
+        Config step1 = seq.getStep(1);
+
+        seq.addStep(_config2);
+        assertEquals(3, seq.size());
+
+        // The earlier view is unaffected by the new step.
+        ConfigTestUtils.assertConfigContains(new String[][] {
+            { _nochangeKey.getPath(), "nochange" },
+            { _changeKey.getPath(),   "change1"  },
+            { _newKey1.getPath(),     "new1"     },
+        }, step1);
+
+        assertEquals("change2", seq.getItemValue(2, _changeKey));
+        assertEquals(_seq.getStep(2), seq.getStep(2));
+
+        // Step views serialize as plain configs.
+        java.io.ByteArrayOutputStream bos = new java.io.ByteArrayOutputStream();
+        java.io.ObjectOutputStream oos = new java.io.ObjectOutputStream(bos);
+        oos.writeObject(step1);
+        oos.close();
+        Object copy = new java.io.ObjectInputStream(new java.io.ByteArrayInputStream(bos.toByteArray())).readObject();
+        assertTrue(copy instanceof DefaultConfig);
+        assertEquals(step1, copy);
+    }
+
+    public void testNullItemValues() {
+        Config c0 = new DefaultConfig();
+        c0.putItem(_changeKey, null);
+        Config c1 = new DefaultConfig();
+        c1.putItem(_changeKey, "change1");
+
+        ConfigSequence seq = new ConfigSequence(new Config[] { c0, c1 });
+        assertEquals("change1", seq.getItemValue(1, _changeKey));
+
+        // Appending to the step views with a null value.
+        Config c2 = new DefaultConfig();
+        c2.putItem(_changeKey, null);
+        seq.addStep(c2);
+        assertEquals(3, seq.size());
+        assertNull(seq.getItemValue(2, _changeKey));
+        assertEquals("change1", seq.getItemValue(1, _changeKey));
+    }
 }
@@ -8,7 +8,7 @@ import edu.gemini.qv.plugin.util.ConstraintsCache.{MaxElevation, MinElevation}
 import edu.gemini.qv.plugin.util.{SemesterData, NonSiderealCache, SolutionProvider}
 import edu.gemini.skycalc.TimeUtils
 import edu.gemini.spModel.core.Site
-import edu.gemini.util.skycalc.calc.{TargetCalculator, Interval, Solution}
+import edu.gemini.util.skycalc.calc.{TargetCalculatorCache, TargetCalculator, Interval, Solution}
 import edu.gemini.util.skycalc.{SkycalcTarget, SiderealTarget, Night}
 import java.awt.{Stroke, Color}
 import java.util.UUID
@@ -236,28 +236,7 @@ object XYPlotter {
   }
 
 
-  // Target Calc cache!!
-  case class CalcKey(site: Site, target: SkycalcTarget, sampling: Vector[Long])
-  case class TimedKey(t: Long, key: CalcKey) extends Ordered[TimedKey] {
-    def compare(that: TimedKey): Int = (this.t - that.t).toInt
-  }
-  private val calcCache = concurrent.TrieMap[CalcKey, TargetCalculator]()
-  private val calcAge = mutable.SortedSet[TimedKey]()
-
-  def getCalculator(site: Site, target: SkycalcTarget, sampling: Vector[Long]): TargetCalculator = {
-    val key = CalcKey(site, target, sampling)
-    calcCache.getOrElseUpdate(key, {
-      if (calcCache.size >= 500) {
-        val oldest = calcAge.head
-        calcAge.remove(oldest)
-        calcCache.remove(oldest.key)
-      }
-      val tc = TargetCalculator(site, target, sampling)
-      val ts = System.currentTimeMillis()
-      calcAge.add(new TimedKey(ts, key))
-      calcCache.put(key, tc)
-      tc
-    })
-
-  }
+  // Target calculators are shared with all other users in this process.
+  def getCalculator(site: Site, target: SkycalcTarget, sampling: Vector[Long]): TargetCalculator =
+    TargetCalculatorCache.shared(site, target, sampling)
 }
@@ -183,7 +183,7 @@ class ConstraintsCache(allNights: Seq[Night]) extends Publisher {
 
     // restrict all calculations to time between nautical twilights (science time)
     val bounds = night.scienceTime
-    val tc = TargetCalculator(night.site, target, bounds, TimeUtils.minutes(10))
+    val tc = TargetCalculatorCache.shared(night.site, target, bounds, TimeUtils.minutes(10))
 
     // return a tuple with all values of interest
     (
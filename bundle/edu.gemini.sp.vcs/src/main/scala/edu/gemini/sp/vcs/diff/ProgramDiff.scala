@@ -76,7 +76,30 @@ object ProgramDiff {
     * @return `MergePlan` describing differences between the two program
     *         instances
     */
-  def compare(p: ISPProgram, vm: VersionMap, removed: Set[SPNodeKey]): MergePlan = {
+  def compare(p: ISPProgram, vm: VersionMap, removed: Set[SPNodeKey]): MergePlan =
+    diff(p, vm, removed, Set.empty)
+
+  /** Compares a program with the `VersionMap` of a remote copy from which the
+    * versions of the subtrees in `same` have been left out, because they
+    * had the same digest in both copies.  Subtrees whose digest still matches
+    * are `Unmodified`.  Any other subtree simply has no remote version data,
+    * so its nodes show up as differences.
+    */
+  def compare(p: ISPProgram, vm: VersionMap, removed: Set[SPNodeKey], same: Map[SPNodeKey, VmSummary.Digest]): MergePlan =
+    diff(p, vm, removed,
+      if (same.isEmpty) Set.empty[SPNodeKey]
+      else VmSummary(p).digests.filter { case (k, d) => same.get(k).exists(_ == d) }.keySet)
+
+  /** Compares a program with a remote copy summarized by `other`, where `ds`
+    * is the remote `DiffState` from [[summarizedState]].  Subtrees with the
+    * same digest in `other` are `Unmodified`, and every other node is
+    * `Modified` since its remote version is not known.  The remote copy must
+    * add the nodes that this program doesn't know about with [[complete]].
+    */
+  def compare(p: ISPProgram, ds: DiffState, other: VmSummary): MergePlan =
+    diff(p, ds.vm, ds.removed, VmSummary(p).matching(other).keySet)
+
+  private def diff(p: ISPProgram, vm: VersionMap, removed: Set[SPNodeKey], unchanged: Set[SPNodeKey]): MergePlan = {
     def versionDiffers(k: SPNodeKey): Boolean =
       vm.get(k).forall(_ =/= p.getVersions(k))
 
@@ -93,6 +116,9 @@ object ProgramDiff {
     // Present differences in in-use nodes rooted at r.
     def presentDiffs(r: ISPNode): Tree[MergeNode] =
       r match {
+        case _ if unchanged.contains(r.key) =>
+          unmodified(r).leaf
+
         case o: ISPObservation =>
           // Observations are atomic.  If anything differs at all in either
           // version copy the entire observation.
@@ -127,4 +153,44 @@ object ProgramDiff {
 
   def compare(p: ISPProgram, vs: DiffState): MergePlan =
     compare(p, vs.vm, vs.removed)
+
+  /** Creates a `DiffState` for comparison with a copy of the program
+    * summarized by `other`, leaving out the version data of the largest
+    * subtrees that are the same in both.  These are returned along with their
+    * digest, to be passed to `compare`.
+    */
+  def diffState(p: ISPProgram, other: VmSummary): (DiffState, Map[SPNodeKey, VmSummary.Digest]) = {
+    val same  = VmSummary(p).matching(other)
+    val nodes = p.nodeMap
+    val keys  = same.keySet.flatMap { k => nodes.get(k).fold(Set.empty[SPNodeKey])(_.keySet) }
+    (DiffState(p.getProgramKey, p.getVersions -- keys, removedKeys(p)), same)
+  }
+
+  /** Creates the `DiffState` that goes along with a `VmSummary` of the
+    * program.  The summary stands in for the versions of the nodes in the
+    * program, so only those of the removed nodes are included.
+    */
+  def summarizedState(p: ISPProgram): DiffState = {
+    val removed = removedKeys(p)
+    DiffState(p.getProgramKey, p.getVersions.filter { case (k, _) => removed.contains(k) }, removed)
+  }
+
+  /** Completes a `MergePlan` obtained by sending a summary of program `p`,
+    * adding `Missing` entries for the nodes of `p` that the remote program
+    * doesn't know about.  The remote copy can't tell which they are from the
+    * summary, but every remote node is either in the plan or in an
+    * `Unmodified` subtree, which has the same nodes as `p`.
+    */
+  def complete(p: ISPProgram, mp: MergePlan): MergePlan = {
+    val nodes  = p.nodeMap
+    val remote = mp.update.foldRight(mp.delete.map(_.key)) { (mn, ks) =>
+      mn match {
+        case Unmodified(k) => ks ++ nodes.get(k).fold(Set(k))(_.keySet)
+        case _             => ks + mn.key
+      }
+    }
+    val unknown = nodes.keySet &~ remote
+    if (unknown.isEmpty) mp
+    else mp.copy(delete = mp.delete ++ unknown.map(k => Missing(k, EmptyNodeVersions)))
+  }
 }
@@ -4,7 +4,7 @@ import edu.gemini.pot.sp.{SPNodeKey, ISPFactory, ISPProgram}
 import edu.gemini.pot.sp.version._
 import edu.gemini.shared.util.VersionComparison.{Same, Newer}
 import edu.gemini.sp.vcs.diff.ProgramLocation.{LocalOnly, Neither, Remote}
-import edu.gemini.sp.vcs.diff.VcsFailure.{IdClash, NeedsUpdate}
+import edu.gemini.sp.vcs.diff.VcsFailure.{IdClash, NeedsUpdate, VcsException}
 import edu.gemini.sp.vcs.log.VcsEventSet
 import edu.gemini.spModel.core.{Peer, SPProgramID}
 import edu.gemini.spModel.rich.pot.sp._
@@ -55,7 +55,7 @@ class Vcs(user: VcsAction[Set[Principal]], server: VcsServer, service: Peer => V
 
     def evaluate(p: ISPProgram): VcsAction[MergeEval] =
       for {
-        diffs <- client.fetchDiffs(id, DiffState(p))
+        diffs <- client.fetchDiffs(id, p)
         _     <- validateProgKey(p, diffs)
         mc     = MergeContext(p, diffs)
         prelim = PreliminaryMerge.merge(mc)
@@ -91,14 +91,22 @@ class Vcs(user: VcsAction[Set[Principal]], server: VcsServer, service: Peer => V
       if (lKey === rKey) VcsAction.unit else VcsAction.fail(IdClash(id, lKey, rKey))
     }
 
+    // Summarizes the local program and compares it with the remote diff state
+    // under the same read lock, so that the summary can't go stale.
+    def diff(client: Client, p: ISPProgram): TryVcs[(SPNodeKey, DiffState, MergePlan)] =
+      client.diffStateFor(id, VmSummary(p)).map { case (ds, same) =>
+        (p.getProgramKey, ds, ProgramDiff.compare(p, ds.vm, ds.removed, same))
+      }
+
     val client = Client(peer)
     for {
-      diffState <- client.diffState(id)
       u         <- user
-      keyDiff   <- server.read(id, u) { p => (p.getProgramKey, ProgramDiff.compare(p, diffState)) }
+      tryDiff   <- server.read(id, u)(diff(client, _))
+      keyDiff   <- tryDiff.liftVcs
+      diffState  = keyDiff._2
       _         <- validateProgKey(keyDiff._1, diffState)
-      res       <- keyDiff._2.compare(diffState.vm) match {
-        case Newer => client.storeDiffs(id, keyDiff._2)
+      res       <- keyDiff._3.compare(diffState.vm) match {
+        case Newer => client.storeDiffs(id, keyDiff._3)
         case Same  => VcsAction(false)
         case _     => VcsAction.fail(NeedsUpdate)
       }
@@ -154,9 +162,34 @@ class Vcs(user: VcsAction[Set[Principal]], server: VcsServer, service: Peer => V
     def checkout(id: SPProgramID): VcsAction[ISPProgram] = s.checkout(id).liftVcs
     def diffState(id: SPProgramID): VcsAction[DiffState] = s.diffState(id).liftVcs
 
+    // Peers that predate version map summaries have neither the calls that
+    // take one nor the `VmSummary` class, so fall back to the full version map.
+    private def orElseFull[A](summarized: TryVcs[A])(full: => TryVcs[A]): TryVcs[A] =
+      summarized match {
+        case -\/(VcsException(_: NoSuchMethodException | _: ClassNotFoundException)) => full
+        case res                                                                     => res
+      }
+
+    /** Gets the remote `DiffState` for comparison with the local program
+      * summarized by `other`, along with the subtrees left out of it because
+      * they are the same. */
+    def diffStateFor(id: SPProgramID, other: VmSummary): TryVcs[(DiffState, Map[SPNodeKey, VmSummary.Digest])] =
+      orElseFull(s.diffStateFor(id, other)) {
+        s.diffState(id).map(ds => (ds, Map.empty[SPNodeKey, VmSummary.Digest]))
+      }
+
     def fetchDiffs(id: SPProgramID, vs: DiffState): VcsAction[MergePlan] =
       s.fetchDiffs(id, vs).map(_.decode).liftVcs
 
+    /** Fetches the remote differences with the local program `p`, sending a
+      * summary of its versions instead of the whole `VersionMap`. */
+    def fetchDiffs(id: SPProgramID, p: ISPProgram): VcsAction[MergePlan] =
+      orElseFull {
+        s.fetchDiffsFor(id, ProgramDiff.summarizedState(p), VmSummary(p)).map(mpt => ProgramDiff.complete(p, mpt.decode))
+      } {
+        s.fetchDiffs(id, DiffState(p)).map(_.decode)
+      }.liftVcs
+
     def storeDiffs(id: SPProgramID, mp: MergePlan): VcsAction[Boolean] =
       s.storeDiffs(id, mp.encode).liftVcs
 
@@ -1,7 +1,7 @@
 package edu.gemini.sp.vcs.diff
 
 import edu.gemini.pot.sp.{ISPFactory, SPNodeKeyLocks, ISPProgram, SPNodeKey}
-import edu.gemini.pot.sp.version.VersionMap
+import edu.gemini.pot.sp.version.{VmSummary, VersionMap}
 import edu.gemini.pot.spdb.{DBIDClashException, IDBDatabaseService}
 import edu.gemini.shared.util.VersionComparison.{Same, Newer}
 import edu.gemini.sp.vcs.diff.VcsAction._
@@ -117,12 +117,21 @@ class VcsServer(odb: IDBDatabaseService, vcsLog: VcsLog) { vs =>
     override def diffState(id: SPProgramID): TryVcs[DiffState] =
       vs.read(id, user)(DiffState.apply).unsafeRun
 
+    override def diffStateFor(id: SPProgramID, other: VmSummary): TryVcs[(DiffState, Map[SPNodeKey, VmSummary.Digest])] =
+      vs.read(id, user)(p => ProgramDiff.diffState(p, other)).unsafeRun
+
     override def fetchDiffs(id: SPProgramID, state: DiffState): TryVcs[MergePlan.Transport] =
       vs.read(id, user) { p =>
         vcsLog.log(OpFetch, id, geminiPrincipals)
         ProgramDiff.compare(p, state)
       }.map(_.encode).unsafeRun
 
+    override def fetchDiffsFor(id: SPProgramID, state: DiffState, other: VmSummary): TryVcs[MergePlan.Transport] =
+      vs.read(id, user) { p =>
+        vcsLog.log(OpFetch, id, geminiPrincipals)
+        ProgramDiff.compare(p, state, other)
+      }.map(_.encode).unsafeRun
+
     override def storeDiffs(id: SPProgramID, mpt: MergePlan.Transport): TryVcs[Boolean] = {
       val mp = mpt.decode
       vs.write[Boolean](id, user,
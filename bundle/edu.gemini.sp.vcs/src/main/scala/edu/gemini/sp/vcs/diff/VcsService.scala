@@ -1,7 +1,7 @@
 package edu.gemini.sp.vcs.diff
 
-import edu.gemini.pot.sp.ISPProgram
-import edu.gemini.pot.sp.version.VersionMap
+import edu.gemini.pot.sp.{ISPProgram, SPNodeKey}
+import edu.gemini.pot.sp.version.{VmSummary, VersionMap}
 import edu.gemini.sp.vcs.diff.VcsFailure.VcsException
 import edu.gemini.sp.vcs.log.VcsEventSet
 import edu.gemini.spModel.core.{Peer, SPProgramID}
@@ -30,9 +30,19 @@ trait VcsService {
     * deleted nodes. */
   def diffState(id: SPProgramID): TryVcs[DiffState]
 
+  /** Gets the `DiffState` for comparison with a copy of the program
+    * summarized by `other`, leaving out the version data of the subtrees that
+    * are the same in both.  These subtrees are returned with their digest. */
+  def diffStateFor(id: SPProgramID, other: VmSummary): TryVcs[(DiffState, Map[SPNodeKey, VmSummary.Digest])]
+
   /** Obtains remote differences based on the provided local diff state. */
   def fetchDiffs(id: SPProgramID, ds: DiffState): TryVcs[MergePlan.Transport]
 
+  /** Obtains remote differences for a local program summarized by `other`,
+    * with the diff state of its removed nodes in `ds`.  The local program must
+    * complete the result with `ProgramDiff.complete`. */
+  def fetchDiffsFor(id: SPProgramID, ds: DiffState, other: VmSummary): TryVcs[MergePlan.Transport]
+
   /** Applies the given `MergePlan` to the remote program, returning `true`
     * if the program is actually updated; `false` otherwise. */
   def storeDiffs(id: SPProgramID, mp: MergePlan.Transport): TryVcs[Boolean]
@@ -51,12 +61,18 @@ object VcsService {
     override def fetchDiffs(id: SPProgramID, ds: DiffState) =
       call(_.fetchDiffs(id, ds))
 
+    override def fetchDiffsFor(id: SPProgramID, ds: DiffState, other: VmSummary) =
+      call(_.fetchDiffsFor(id, ds, other))
+
     override def log(p: SPProgramID, offset: Int, length: Int) =
       call(_.log(p, offset, length))
 
     override def diffState(id: SPProgramID) =
       call(_.diffState(id))
 
+    override def diffStateFor(id: SPProgramID, other: VmSummary) =
+      call(_.diffStateFor(id, other))
+
     override def checkout(id: SPProgramID) =
       call(_.checkout(id))
 
@@ -126,4 +126,34 @@ class ProgramDiffTest extends JUnitSuite {
 
     new MergePropertyTest(mkDiffs).checkAllProperties(props)
   }
+
+  private def shape(mp: MergePlan): (List[(SPNodeKey, Boolean)], Set[Missing]) =
+    (mp.update.flatten.toList.map(mn => (mn.key, mn.isModified)), mp.delete)
+
+  // Diffs computed from summaries must be the same as with the full version map.
+  private val sameAsFull: NamedProperty[MergePlan] =
+    ("diffs computed from a summary are the same as with the full version map",
+      (start, local, remote, mp) =>
+        shape(mp) == shape(ProgramDiff.compare(remote, local.getVersions, removedKeys(local)))
+    )
+
+  @Test
+  def testSummarizedDiffStateProperties(): Unit = {
+    // Diffs computed without the version data of matching subtrees.
+    def mkDiffs(f: ISPFactory, s: ISPProgram, l: ISPProgram, r: ISPProgram): MergePlan = {
+      val stateSame = ProgramDiff.diffState(l, VmSummary(r))
+      ProgramDiff.compare(r, stateSame._1.vm, stateSame._1.removed, stateSame._2)
+    }
+
+    new MergePropertyTest(mkDiffs).checkAllProperties(sameAsFull :: props)
+  }
+
+  @Test
+  def testSummaryDiffProperties(): Unit = {
+    // Diffs computed from a summary of the local program, as in a pull.
+    def mkDiffs(f: ISPFactory, s: ISPProgram, l: ISPProgram, r: ISPProgram): MergePlan =
+      ProgramDiff.complete(l, ProgramDiff.compare(r, ProgramDiff.summarizedState(l), VmSummary(l)))
+
+    new MergePropertyTest(mkDiffs).checkAllProperties(sameAsFull :: props)
+  }
 }
@@ -8,6 +8,7 @@ import edu.gemini.sp.vcs.diff.VcsAction._
 import edu.gemini.sp.vcs.diff.VcsFailure._
 import edu.gemini.spModel.core.SPProgramID
 import edu.gemini.spModel.gemini.obscomp.SPProgram
+import edu.gemini.spModel.obs.ObsQaState
 import edu.gemini.util.security.principal.{ProgramPrincipal, StaffPrincipal}
 
 import java.security.Principal
@@ -173,6 +174,90 @@ class VcsServerSpec extends VcsSpecification {
     }
   }
 
+  "fetchDiffsFor" should {
+    "only fetch the subtrees that differ from the summary" in withVcs { env =>
+      env.remote.progTitle = "The Myth of Sisyphus"
+
+      val rp  = env.remote.prog
+      val svs = new env.local.server.SecureVcsService(StaffUser)
+      svs.fetchDiffsFor(Q1, ProgramDiff.summarizedState(rp), VmSummary(rp)) match {
+        case \/-(mpt) =>
+          val mp = ProgramDiff.complete(rp, mpt.decode)
+          (mp.update.rootLabel must beLike {
+            case Modified(k, _, _, _) => k must_== Key
+          }) and
+            (mp.update.subForest.map(_.rootLabel).toList must contain(Unmodified(ObsKey): MergeNode)) and
+            (mp.delete must beEmpty)
+        case _         => ko("expected a merge plan here")
+      }
+    }
+
+    "be completed with Missing entries for nodes only the requesting program has" in withVcs { env =>
+      val rp    = env.remote.prog
+      val group = env.remote.odb.getFactory.createGroup(rp, null)
+      rp.addGroup(group)
+
+      val svs = new env.local.server.SecureVcsService(StaffUser)
+      svs.fetchDiffsFor(Q1, ProgramDiff.summarizedState(rp), VmSummary(rp)) match {
+        case \/-(mpt) =>
+          val mp = ProgramDiff.complete(rp, mpt.decode)
+          (mpt.decode.delete must beEmpty) and
+            (mp.delete must_== Set(Missing(group.getNodeKey, EmptyNodeVersions)))
+        case _         => ko("expected a merge plan here")
+      }
+    }
+  }
+
+  "diffStateFor" should {
+    "leave out the version data of an identical program" in withVcs { env =>
+      val svs = new env.local.server.SecureVcsService(StaffUser)
+      svs.diffStateFor(Q1, VmSummary(env.local.prog)) match {
+        case \/-((ds, same)) =>
+          (ds.vm must beEmpty) and (same.keySet must_== Set(Key))
+        case _                => ko("expected a diff state here")
+      }
+    }
+
+    "only include the version data of subtrees that differ" in withVcs { env =>
+      env.remote.progTitle = "The Myth of Sisyphus"
+
+      val nodes = env.local.prog.nodeMap
+      val svs   = new env.local.server.SecureVcsService(StaffUser)
+      svs.diffStateFor(Q1, VmSummary(env.remote.prog)) match {
+        case \/-((ds, same)) =>
+          val sameKeys = same.keySet.flatMap(k => nodes(k).keySet)
+          (same.keySet must contain(ObsKey)) and
+            (same.keySet must not contain(Key)) and
+            (ds.vm.keySet must_== env.local.prog.getVersions.keySet -- sameKeys) and
+            (ProgramDiff.compare(env.remote.prog, ds.vm, ds.removed, same).update.rootLabel must beLike {
+              case Modified(k, _, _, _) => k must_== Key
+            })
+        case _                => ko("expected a diff state here")
+      }
+    }
+
+    "not hide changes made to the program after it was summarized" in withVcs { env =>
+      env.remote.progTitle = "The Myth of Sisyphus"
+
+      val svs = new env.local.server.SecureVcsService(StaffUser)
+      svs.diffStateFor(Q1, VmSummary(env.remote.prog)) match {
+        case \/-((ds, same)) =>
+          // The observation was the same when summarized, but no longer is.
+          env.remote.setQaState(ObsKey, ObsQaState.PASS)
+
+          def shape(mp: MergePlan): List[(SPNodeKey, Boolean)] =
+            mp.update.flatten.toList.map(mn => (mn.key, mn.isModified))
+
+          val mp   = ProgramDiff.compare(env.remote.prog, ds.vm, ds.removed, same)
+          val full = ProgramDiff.compare(env.remote.prog, DiffState(env.local.prog))
+          (same.keySet must contain(ObsKey)) and
+            (shape(mp) must contain((ObsKey, true))) and
+            (shape(mp) must_== shape(full))
+        case _                => ko("expected a diff state here")
+      }
+    }
+  }
+
   "storeDiffs" should {
     "do nothing if there are no diffs to store" in withVcs { env =>
       val update = (Unmodified(Key): MergeNode).node()
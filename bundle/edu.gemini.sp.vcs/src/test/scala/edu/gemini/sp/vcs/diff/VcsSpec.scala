@@ -1,8 +1,10 @@
 package edu.gemini.sp.vcs.diff
 
 
+import edu.gemini.pot.sp.ISPProgram
+import edu.gemini.pot.sp.version.VmSummary
 import edu.gemini.sp.vcs.diff.VcsAction._
-import edu.gemini.sp.vcs.diff.VcsFailure.NeedsUpdate
+import edu.gemini.sp.vcs.diff.VcsFailure.{NeedsUpdate, VcsException}
 import edu.gemini.spModel.core.SPProgramID
 import edu.gemini.spModel.obscomp.SPNote
 import edu.gemini.util.security.principal.ProgramPrincipal
@@ -10,6 +12,7 @@ import org.specs2.specification.Fragments
 
 
 import scalaz._
+import Scalaz._
 
 class VcsSpec extends VcsSpecification {
   import TestEnv._
@@ -210,6 +213,51 @@ class VcsSpec extends VcsSpecification {
     }
   }
 
+  // A remote peer that predates the calls that take a `VmSummary`, failing
+  // them with the given exception.
+  private def olderPeer(env: TestEnv, ex: => Exception): Vcs =
+    env.local.copy(service = p => new OlderVcsService(env.local.service(p), ex)).superStaffVcs
+
+  private class OlderVcsService(vs: VcsService, ex: => Exception) extends VcsService {
+    def version(id: SPProgramID)   = vs.version(id)
+    def add(p: ISPProgram)         = vs.add(p)
+    def checkout(id: SPProgramID)  = vs.checkout(id)
+    def diffState(id: SPProgramID) = vs.diffState(id)
+    def diffStateFor(id: SPProgramID, other: VmSummary) = VcsException(ex).left
+    def fetchDiffs(id: SPProgramID, ds: DiffState) = vs.fetchDiffs(id, ds)
+    def fetchDiffsFor(id: SPProgramID, ds: DiffState, other: VmSummary) = VcsException(ex).left
+    def storeDiffs(id: SPProgramID, mp: MergePlan.Transport) = vs.storeDiffs(id, mp)
+    def log(p: SPProgramID, offset: Int, length: Int) = vs.log(p, offset, length)
+  }
+
+  def olderPeerFragments(name: String, ex: => Exception): Fragments =
+    ("a peer missing the summary calls with " + name) should {
+      "fall back to the full version map to pull" in withVcs { env =>
+        env.remote.progTitle = "The Myth of Sisyphus"
+
+        expect(olderPeer(env, ex).pull(Q1, DummyPeer)) {
+          case \/-(true) => ok("")
+        } and (env.local.progTitle must_== "The Myth of Sisyphus")
+      }
+
+      "fall back to the full version map to push" in withVcs { env =>
+        env.local.progTitle = "The Myth of Sisyphus"
+
+        expect(olderPeer(env, ex).push(Q1, DummyPeer)) {
+          case \/-(true) => ok("")
+        } and (env.remote.progTitle must_== "The Myth of Sisyphus")
+      }
+    }
+
+  olderPeerFragments("NoSuchMethodException", new NoSuchMethodException("fetchDiffsFor"))
+  olderPeerFragments("ClassNotFoundException", new ClassNotFoundException("edu.gemini.pot.sp.version.VmSummary"))
+
+  "a peer failing the summary calls for other reasons" should {
+    "not fall back to the full version map" in withVcs { env =>
+      exception(olderPeer(env, new RuntimeException("boom")).pull(Q1, DummyPeer), "boom")
+    }
+  }
+
   syncFragments("sync", (vcs, pid) => vcs.sync(pid, DummyPeer))
   syncFragments("retrySync", (vcs, pid) => vcs.retrySync(pid, DummyPeer, 10))
 
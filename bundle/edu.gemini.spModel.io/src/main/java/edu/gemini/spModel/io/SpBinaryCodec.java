@@ -0,0 +1,91 @@
+package edu.gemini.spModel.io;
+
+import edu.gemini.pot.sp.ISPFactory;
+import edu.gemini.pot.sp.ISPNightlyRecord;
+import edu.gemini.pot.sp.ISPProgram;
+import edu.gemini.pot.sp.ISPRootNode;
+import edu.gemini.spModel.io.impl.PioDocumentBuilder;
+import edu.gemini.spModel.io.impl.PioSpXmlParser;
+import edu.gemini.spModel.pio.Document;
+import edu.gemini.spModel.pio.binary.PioBinaryUtil;
+
+import java.io.*;
+
+/**
+ * Encodes programs and nightly records in the compact binary PIO format.
+ * The schema is the same PIO container / param set model used for XML
+ * import and export, so data objects are written through their explicit
+ * <code>getParamSet</code> codecs rather than default Java serialization and
+ * the usual XML migrations apply when reading.
+ */
+public final class SpBinaryCodec {
+
+    private final ISPFactory _factory;
+
+    /**
+     * Constructs with the factory that will be used to create the nodes of
+     * decoded programs.
+     */
+    public SpBinaryCodec(ISPFactory factory) {
+        _factory = factory;
+    }
+
+    private static Document toDocument(ISPRootNode root) {
+        final PioDocumentBuilder builder = new PioDocumentBuilder();
+        if (root instanceof ISPProgram) {
+            return builder.toDocument((ISPProgram) root, false);
+        } else if (root instanceof ISPNightlyRecord) {
+            return builder.toDocument((ISPNightlyRecord) root);
+        } else {
+            throw new IllegalArgumentException("Unexpected root node type: " + root.getClass().getName());
+        }
+    }
+
+    public void write(ISPRootNode root, OutputStream os) throws IOException {
+        root.getProgramReadLock();
+        try {
+            PioBinaryUtil.write(toDocument(root), os);
+        } finally {
+            root.returnProgramReadLock();
+        }
+    }
+
+    public void write(ISPRootNode root, File file) throws IOException {
+        final OutputStream os = new BufferedOutputStream(new FileOutputStream(file));
+        try {
+            write(root, os);
+        } finally {
+            os.close();
+        }
+    }
+
+    public byte[] toBytes(ISPRootNode root) throws IOException {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        write(root, baos);
+        return baos.toByteArray();
+    }
+
+    public ISPRootNode read(InputStream is) throws IOException {
+        final Document doc = PioBinaryUtil.read(is);
+        try {
+            return new PioSpXmlParser(_factory).parseDocument(doc);
+        } catch (IOException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new IOException("Could not decode program", ex);
+        }
+    }
+
+    public ISPRootNode read(File file) throws IOException {
+        final InputStream is = new BufferedInputStream(new FileInputStream(file));
+        try {
+            return read(is);
+        } finally {
+            is.close();
+        }
+    }
+
+    public ISPRootNode read(byte[] bytes) throws IOException {
+        return read(new ByteArrayInputStream(bytes));
+    }
+}
@@ -0,0 +1,116 @@
+package edu.gemini.spModel.io.app;
+
+import edu.gemini.pot.sp.ISPRootNode;
+import edu.gemini.pot.sp.memImpl.MemSerializer;
+import edu.gemini.pot.util.POTUtil;
+import edu.gemini.spModel.io.SpBinaryCodec;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.util.UUID;
+
+/**
+ * Command line application that reads the Java-serialized program files of
+ * an ODB directory and compares them with the compact binary PIO format.  It
+ * reports the size of each encoding and the time taken to store and load
+ * each, and optionally writes the converted files to an output directory.
+ */
+public final class BinaryFormatApp {
+
+    private static final class Totals {
+        long serSize, binSize;
+        long serStoreNs, serLoadNs, binStoreNs, binLoadNs;
+        int count;
+
+        void print(String label) {
+            System.out.println(String.format(
+                "%-20s %4d files  ser %10d bytes (store %6d ms, load %6d ms)  bin %10d bytes (store %6d ms, load %6d ms)  size %.2f",
+                label, count,
+                serSize, serStoreNs / 1000000, serLoadNs / 1000000,
+                binSize, binStoreNs / 1000000, binLoadNs / 1000000,
+                (serSize == 0) ? 0.0 : ((double) binSize) / serSize));
+        }
+    }
+
+    private final MemSerializer _ser   = new MemSerializer();
+    private final SpBinaryCodec _codec = new SpBinaryCodec(POTUtil.createFactory(UUID.randomUUID()));
+    private final Totals _totals       = new Totals();
+
+    private void process(File f, File outDir) throws Exception {
+        // Load with the existing format.  This is also the migration path for
+        // old files.
+        long t0 = System.nanoTime();
+        final ISPRootNode root = (ISPRootNode) _ser.load(f);
+        final long serLoad = System.nanoTime() - t0;
+
+        t0 = System.nanoTime();
+        final byte[] ser = _ser.store(root);
+        final long serStore = System.nanoTime() - t0;
+
+        t0 = System.nanoTime();
+        final byte[] bin = _codec.toBytes(root);
+        final long binStore = System.nanoTime() - t0;
+
+        t0 = System.nanoTime();
+        _codec.read(bin);
+        final long binLoad = System.nanoTime() - t0;
+
+        if (outDir != null) _codec.write(root, new File(outDir, f.getName() + "b"));
+
+        final Totals t = new Totals();
+        t.serSize = ser.length; t.serStoreNs = serStore; t.serLoadNs = serLoad;
+        t.binSize = bin.length; t.binStoreNs = binStore; t.binLoadNs = binLoad;
+        t.count   = 1;
+        t.print(f.getName());
+
+        _totals.serSize    += t.serSize;
+        _totals.serStoreNs += t.serStoreNs;
+        _totals.serLoadNs  += t.serLoadNs;
+        _totals.binSize    += t.binSize;
+        _totals.binStoreNs += t.binStoreNs;
+        _totals.binLoadNs  += t.binLoadNs;
+        _totals.count      += 1;
+    }
+
+    private void run(File dbDir, File outDir) {
+        final File[] files = dbDir.listFiles(new FileFilter() {
+            @Override public boolean accept(File f) {
+                return f.getName().endsWith(".sp") || f.getName().endsWith(".pl");
+            }
+        });
+        if (files == null) {
+            System.out.println("Not a directory: " + dbDir);
+            return;
+        }
+
+        for (File f : files) {
+            try {
+                process(f, outDir);
+            } catch (Exception ex) {
+                System.out.println("Could not convert " + f.getName() + ": " + ex);
+            }
+        }
+        _totals.print("TOTAL");
+    }
+
+    /**
+     * Main: BinaryFormatApp dbDir [outDir]
+     */
+    public static void main(String args[]) {
+        if ((args.length < 1) || (args.length > 2)) {
+            System.out.println("Usage: BinaryFormatApp dbDir [outDir]\n\n"
+                    + "Compares the Java-serialized program files in dbDir with the binary\n"
+                    + "PIO format, optionally writing converted files to outDir.");
+            System.exit(1);
+        }
+
+        final File outDir = (args.length == 2) ? new File(args[1]) : null;
+        if ((outDir != null) && !(outDir.isDirectory() || outDir.mkdirs())) {
+            System.out.println("Could not create output directory: " + outDir);
+            System.exit(1);
+        }
+
+        new BinaryFormatApp().run(new File(args[0]), outDir);
+        System.exit(0);
+    }
+}
@@ -21,13 +21,22 @@ public final class PioDocumentBuilder {
     private static final Logger LOG = Logger.getLogger(PioDocumentBuilder.class.getName());
 
     public Document toDocument(ISPProgram program)  {
+        return toDocument(program, true);
+    }
+
+    /**
+     * Creates a document for the program, optionally leaving the program
+     * password in place.  The password should only be kept when the document
+     * is used for storage rather than export.
+     */
+    public Document toDocument(ISPProgram program, boolean stripPassword)  {
         PioFactory factory = new PioXmlFactory();
         Document doc = factory.createDocument();
 
         _addContainer(factory, doc, program, doc);
 
         // Don't want to write the password, if present.
-        _stripPassword(doc);
+        if (stripPassword) _stripPassword(doc);
 
         doc.addContainer(VersionVectorPio.toContainer(factory, program.getVersions()));
 
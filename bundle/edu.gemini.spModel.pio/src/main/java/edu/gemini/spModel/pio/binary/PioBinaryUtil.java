@@ -0,0 +1,316 @@
+package edu.gemini.spModel.pio.binary;
+
+import edu.gemini.spModel.pio.*;
+import edu.gemini.spModel.pio.xml.PioXmlFactory;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Utility class for reading and writing a compact binary representation of
+ * PIO documents.  The binary format carries exactly the information in the
+ * XML format (containers, param sets, params and their attributes) but each
+ * distinct string, including kinds, types and param names, is written only
+ * once and subsequently referred to by index.  Since the same param names
+ * repeat for every node of a given type, this is much smaller and faster to
+ * read than the XML.
+ *
+ * <p>The stream starts with a magic number and a format version.  Readers
+ * reject streams with an unknown version so that the encoding can evolve.
+ */
+public final class PioBinaryUtil {
+
+    /** Magic number that starts every binary PIO stream ("PIOB"). */
+    public static final int MAGIC = 0x50494F42;
+
+    /** Current version of the binary format. */
+    public static final int FORMAT_VERSION = 1;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    // Node tags.
+    private static final int TAG_END       = 0;
+    private static final int TAG_CONTAINER = 1;
+    private static final int TAG_PARAMSET  = 2;
+    private static final int TAG_PARAM     = 3;
+
+    // String references.  Anything else is an index into the string table,
+    // offset by STR_FIRST_INDEX.
+    private static final int STR_NULL        = 0;
+    private static final int STR_NEW         = 1;
+    private static final int STR_FIRST_INDEX = 2;
+
+    // ParamSet flags.
+    private static final int FLAG_NOT_EDITABLE  = 0x1;
+    private static final int FLAG_NOT_PUBLIC    = 0x2;
+
+    private PioBinaryUtil() {
+        // defeat instantiation
+    }
+
+    /**
+     * Returns <code>true</code> if the given header bytes start a binary PIO
+     * stream.
+     */
+    public static boolean isBinary(byte[] header) {
+        if ((header == null) || (header.length < 4)) return false;
+        final int magic = ((header[0] & 0xff) << 24) | ((header[1] & 0xff) << 16) |
+                          ((header[2] & 0xff) <<  8) |  (header[3] & 0xff);
+        return magic == MAGIC;
+    }
+
+    public static void write(Document doc, File file) throws IOException {
+        final OutputStream os = new BufferedOutputStream(new FileOutputStream(file));
+        try {
+            write(doc, os);
+        } finally {
+            os.close();
+        }
+    }
+
+    public static void write(Document doc, OutputStream os) throws IOException {
+        final BinaryWriter w = new BinaryWriter(new DataOutputStream(os));
+        w.out.writeInt(MAGIC);
+        w.writeVarInt(FORMAT_VERSION);
+        for (Object o : doc.getContainers()) w.writeContainer((Container) o);
+        w.writeVarInt(TAG_END);
+        w.out.flush();
+    }
+
+    public static byte[] toBytes(Document doc) throws IOException {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        write(doc, baos);
+        return baos.toByteArray();
+    }
+
+    public static Document read(File file) throws IOException {
+        final InputStream is = new BufferedInputStream(new FileInputStream(file));
+        try {
+            return read(is);
+        } finally {
+            is.close();
+        }
+    }
+
+    public static Document read(byte[] bytes) throws IOException {
+        return read(new ByteArrayInputStream(bytes));
+    }
+
+    public static Document read(InputStream is) throws IOException {
+        final BinaryReader r = new BinaryReader(new DataInputStream(is), new PioXmlFactory());
+        if (r.in.readInt() != MAGIC) throw new IOException("Not a binary PIO document");
+
+        final int version = r.readVarInt();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported binary PIO format version: " + version);
+        }
+
+        final Document doc = r.fact.createDocument();
+        for (int tag = r.readVarInt(); tag != TAG_END; tag = r.readVarInt()) {
+            if (tag != TAG_CONTAINER) throw new IOException("Expected a container, not tag " + tag);
+            doc.addContainer(r.readContainer());
+        }
+        return doc;
+    }
+
+    private static final class BinaryWriter {
+        final DataOutputStream out;
+        private final Map<String, Integer> strings = new HashMap<String, Integer>();
+
+        BinaryWriter(DataOutputStream out) {
+            this.out = out;
+        }
+
+        void writeVarInt(int i) throws IOException {
+            while ((i & ~0x7f) != 0) {
+                out.writeByte((i & 0x7f) | 0x80);
+                i >>>= 7;
+            }
+            out.writeByte(i);
+        }
+
+        void writeString(String s) throws IOException {
+            if (s == null) {
+                writeVarInt(STR_NULL);
+                return;
+            }
+
+            final Integer index = strings.get(s);
+            if (index != null) {
+                writeVarInt(index + STR_FIRST_INDEX);
+            } else {
+                strings.put(s, strings.size());
+                final byte[] bytes = s.getBytes(UTF8);
+                writeVarInt(STR_NEW);
+                writeVarInt(bytes.length);
+                out.write(bytes);
+            }
+        }
+
+        void writeContainer(Container c) throws IOException {
+            writeVarInt(TAG_CONTAINER);
+            writeString(c.getKind());
+            writeString(c.getType());
+            writeString((c.getVersion() == null) ? null : c.getVersion().toString());
+            writeString(c.getName());
+            writeString(c.getSubtype());
+            writeString(c.getKey());
+            writeVarInt(c.getSequence() + 1); // sequence is -1 if unset
+
+            for (Object o : c.getChildren()) {
+                if (o instanceof Container) {
+                    writeContainer((Container) o);
+                } else if (o instanceof ParamSet) {
+                    writeParamSet((ParamSet) o);
+                }
+            }
+            writeVarInt(TAG_END);
+        }
+
+        void writeParamSet(ParamSet ps) throws IOException {
+            writeVarInt(TAG_PARAMSET);
+            writeString(ps.getName());
+            writeString(ps.getKind());
+            writeString(ps.getId());
+
+            final String ref = ps.getReferenceId();
+            writeString(ref);
+
+            int flags = 0;
+            if (!ps.isEditable())     flags |= FLAG_NOT_EDITABLE;
+            if (!ps.isPublicAccess()) flags |= FLAG_NOT_PUBLIC;
+            writeVarInt(flags);
+            writeVarInt(ps.getSequence() + 1);
+
+            // References share the children of their referent.
+            if (ref == null) {
+                for (Object o : ps.getChildren()) {
+                    if (o instanceof ParamSet) {
+                        writeParamSet((ParamSet) o);
+                    } else if (o instanceof Param) {
+                        writeParam((Param) o);
+                    }
+                }
+            }
+            writeVarInt(TAG_END);
+        }
+
+        void writeParam(Param p) throws IOException {
+            writeVarInt(TAG_PARAM);
+            writeString(p.getName());
+            writeString(p.getUnits());
+
+            final List<String> values = p.getValues();
+            writeVarInt(values.size());
+            for (String v : values) writeString(v);
+        }
+    }
+
+    private static final class BinaryReader {
+        final DataInputStream in;
+        final PioFactory fact;
+        private final List<String> strings = new ArrayList<String>();
+
+        BinaryReader(DataInputStream in, PioFactory fact) {
+            this.in   = in;
+            this.fact = fact;
+        }
+
+        int readVarInt() throws IOException {
+            int res   = 0;
+            int shift = 0;
+            while (true) {
+                final int b = in.readUnsignedByte();
+                res |= (b & 0x7f) << shift;
+                if ((b & 0x80) == 0) return res;
+                shift += 7;
+                if (shift > 28) throw new IOException("Malformed varint");
+            }
+        }
+
+        String readString() throws IOException {
+            final int ref = readVarInt();
+            switch (ref) {
+                case STR_NULL:
+                    return null;
+                case STR_NEW:
+                    final byte[] bytes = new byte[readVarInt()];
+                    in.readFully(bytes);
+                    final String s = new String(bytes, UTF8);
+                    strings.add(s);
+                    return s;
+                default:
+                    final int index = ref - STR_FIRST_INDEX;
+                    if (index >= strings.size()) throw new IOException("Bad string reference: " + index);
+                    return strings.get(index);
+            }
+        }
+
+        Container readContainer() throws IOException {
+            final String kind    = readString();
+            final String type    = readString();
+            final String version = readString();
+            final Container c = fact.createContainer(kind, type, (version == null) ? "" : version);
+
+            final String name = readString();
+            if (name != null) c.setName(name);
+            c.setSubtype(readString());
+            c.setKey(readString());
+            final int seq = readVarInt() - 1;
+            if (seq >= 0) c.setSequence(seq);
+
+            for (int tag = readVarInt(); tag != TAG_END; tag = readVarInt()) {
+                switch (tag) {
+                    case TAG_CONTAINER: c.addContainer(readContainer()); break;
+                    case TAG_PARAMSET:  c.addParamSet(readParamSet());   break;
+                    default: throw new IOException("Unexpected tag in container: " + tag);
+                }
+            }
+            return c;
+        }
+
+        ParamSet readParamSet() throws IOException {
+            final ParamSet ps = fact.createParamSet(readString());
+
+            final String kind = readString();
+            if (kind != null) ps.setKind(kind);
+            final String id = readString();
+            if (id != null) ps.setId(id);
+            final String ref = readString();
+            if (ref != null) ps.setReferenceId(ref);
+
+            final int flags = readVarInt();
+            if ((flags & FLAG_NOT_EDITABLE) != 0) ps.setEditable(false);
+            if ((flags & FLAG_NOT_PUBLIC)   != 0) ps.setPublicAccess(false);
+            final int seq = readVarInt() - 1;
+            if (seq >= 0) ps.setSequence(seq);
+
+            for (int tag = readVarInt(); tag != TAG_END; tag = readVarInt()) {
+                switch (tag) {
+                    case TAG_PARAMSET: ps.addParamSet(readParamSet()); break;
+                    case TAG_PARAM:    ps.addParam(readParam());       break;
+                    default: throw new IOException("Unexpected tag in param set: " + tag);
+                }
+            }
+            return ps;
+        }
+
+        Param readParam() throws IOException {
+            final Param p = fact.createParam(readString());
+            final String units = readString();
+            if (units != null) p.setUnits(units);
+
+            final int count = readVarInt();
+            if (count > 0) {
+                final List<String> values = new ArrayList<String>(count);
+                for (int i = 0; i < count; ++i) values.add(readString());
+                p.setValues(values);
+            }
+            return p;
+        }
+    }
+}
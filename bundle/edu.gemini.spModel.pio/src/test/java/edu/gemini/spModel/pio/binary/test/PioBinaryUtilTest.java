@@ -0,0 +1,90 @@
+package edu.gemini.spModel.pio.binary.test;
+
+import edu.gemini.spModel.pio.*;
+import edu.gemini.spModel.pio.binary.PioBinaryUtil;
+import edu.gemini.spModel.pio.xml.PioXmlFactory;
+import edu.gemini.spModel.pio.xml.PioXmlUtil;
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Test cases for the {@link PioBinaryUtil} class.
+ */
+public class PioBinaryUtilTest extends TestCase {
+
+    public PioBinaryUtilTest(String name) {
+        super(name);
+    }
+
+    private Document _doc;
+
+    public void setUp() {
+        final PioFactory fact = new PioXmlFactory();
+        _doc = fact.createDocument();
+
+        final Container prog = fact.createContainer("program", "Program", "2015B-1");
+        prog.setName("GS-2015B-Q-1");
+        prog.setKey("4a6b6a3b-4fda-4c34-9a3b-2c3a8b1e0f11");
+        _doc.addContainer(prog);
+
+        final ParamSet ps = fact.createParamSet("Science Program");
+        ps.setKind("dataObj");
+        prog.addParamSet(ps);
+
+        final Param title = fact.createParam("title");
+        title.setValue("A title with\nmore than one line");
+        ps.addParam(title);
+
+        final Param ra = fact.createParam("ra");
+        ra.setUnits("degrees");
+        ra.setValue("10.5");
+        ps.addParam(ra);
+
+        final Param list = fact.createParam("list");
+        list.setValues(Arrays.asList("a", "b", "a"));
+        ps.addParam(list);
+
+        final ParamSet referent = fact.createParamSet("referent");
+        referent.setId("ref0");
+        referent.setEditable(false);
+        referent.addParam(fact.createParam("ra"));
+        ps.addParamSet(referent);
+
+        final ParamSet reference = fact.createParamSet("reference");
+        reference.setReferenceId("ref0");
+        reference.setSequence(2);
+        ps.addParamSet(reference);
+
+        final Container obs = fact.createContainer("observation", "Observation", "2015B-1");
+        obs.setSequence(1);
+        prog.addContainer(obs);
+    }
+
+    private Document _roundTrip(Document doc) throws IOException {
+        return PioBinaryUtil.read(PioBinaryUtil.toBytes(doc));
+    }
+
+    public void testRoundTrip() throws Exception {
+        final Document res = _roundTrip(_doc);
+        assertEquals(PioXmlUtil.toXmlString(_doc), PioXmlUtil.toXmlString(res));
+    }
+
+    public void testSmallerThanXml() throws Exception {
+        final byte[] bin = PioBinaryUtil.toBytes(_doc);
+        assertTrue(PioBinaryUtil.isBinary(bin));
+        assertTrue(bin.length < PioXmlUtil.toXmlString(_doc).length());
+    }
+
+    public void testRejectsUnknownVersion() throws Exception {
+        final byte[] bin = PioBinaryUtil.toBytes(_doc);
+        bin[4] = (byte) (PioBinaryUtil.FORMAT_VERSION + 1);
+        try {
+            PioBinaryUtil.read(bin);
+            fail("Expected unsupported version");
+        } catch (IOException ex) {
+            // expected
+        }
+    }
+}
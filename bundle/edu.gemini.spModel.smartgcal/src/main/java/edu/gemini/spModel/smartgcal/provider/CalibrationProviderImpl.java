@@ -10,9 +10,11 @@ import java.awt.event.ActionListener;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * This class will be used to create a singleton to provide access to the smart calibration information
@@ -22,9 +24,15 @@ public class CalibrationProviderImpl implements CalibrationProvider, ActionListe
 
     private static SimpleDateFormat sdf = new SimpleDateFormat("yyyy/MM/dd HH:mm:ss z");
 
+    // upper bound for the number of resolved keys remembered
+    private static final int MAX_RESOLVED = 10000;
+
     private CalibrationRepository repository;
     private Map<String, CalibrationMap> cache;
 
+    // calibrations already resolved for a key; the maps don't change once loaded (an update replaces the provider)
+    private transient volatile ConcurrentHashMap<CalibrationKey, List<Calibration>> resolved;
+
     public CalibrationProviderImpl(CalibrationRepository repository) {
         this.repository = repository;
         this.cache = new HashMap<String, CalibrationMap>(32);
@@ -33,6 +41,22 @@ public class CalibrationProviderImpl implements CalibrationProvider, ActionListe
 
     @Override
     public List<Calibration> getCalibrations(CalibrationKey key) {
+        ConcurrentHashMap<CalibrationKey, List<Calibration>> r = resolved;
+        if (r == null) {
+            r = new ConcurrentHashMap<CalibrationKey, List<Calibration>>();
+            resolved = r;
+        }
+        List<Calibration> calibrations = r.get(key);
+        if (calibrations == null) {
+            calibrations = Collections.unmodifiableList(lookupCalibrations(key));
+            if (r.size() >= MAX_RESOLVED) r.clear();
+            r.put(key, calibrations);
+        }
+        // callers get their own copy, as they always did
+        return new ArrayList<Calibration>(calibrations);
+    }
+
+    private List<Calibration> lookupCalibrations(CalibrationKey key) {
         ConfigurationKey configKey = key.getConfig();
         if (key instanceof CalibrationKeyImpl.WithWavelength) {
             Double wavelength = ((CalibrationKeyImpl.WithWavelength) key).getWavelength();
@@ -71,6 +71,30 @@ public class CalibrationKeyTest {
         Assert.assertNull(rangeSet.findRange(60.0d));
     }
 
+    @Test
+    public void canFindRangesAddedInAnyOrder() {
+        WavelengthRangeSet rangeSet = new WavelengthRangeSet();
+        WavelengthRange[] ranges = {
+            new WavelengthRange(50.0d, 60.0d),
+            new WavelengthRange(10.0d, 20.0d),
+            new WavelengthRange(30.0d, 40.0d)
+        };
+        for (WavelengthRange range : ranges) {
+            rangeSet.add(range, null);
+        }
+        Assert.assertEquals(ranges[1], rangeSet.findRange(10.0d));
+        Assert.assertEquals(ranges[2], rangeSet.findRange(35.0d));
+        Assert.assertEquals(ranges[0], rangeSet.findRange(59.9d));
+        Assert.assertNull(rangeSet.findRange(25.0d));
+        Assert.assertNull(rangeSet.findRange(70.0d));
+
+        // ranges added after a lookup are found as well
+        WavelengthRange added = new WavelengthRange(40.0d, 45.0d);
+        rangeSet.add(added, null);
+        Assert.assertEquals(added, rangeSet.findRange(42.0d));
+        Assert.assertEquals(ranges[1], rangeSet.findRange(15.0d));
+    }
+
     @Test
     public void canNotCreateInvalidRangeSet() {
         WavelengthRangeSet rangeSet = new WavelengthRangeSet();
@@ -6,6 +6,7 @@ package edu.gemini.dbTools.tigratable;
 import edu.gemini.pot.sp.ISPProgram;
 import edu.gemini.pot.sp.ISPNode;
 import edu.gemini.pot.spdb.DBAbstractQueryFunctor;
+import edu.gemini.pot.spdb.DBIndexQuery;
 import edu.gemini.pot.spdb.IDBDatabaseService;
 import edu.gemini.pot.spdb.IDBQueryRunner;
 import edu.gemini.sp.vcs.VcsServer;
@@ -31,6 +32,10 @@ class TigraTableFunctor extends DBAbstractQueryFunctor {
         TYPE_SET = Collections.unmodifiableSet(s);
     }
 
+    // Visits only the programs of the included types.
+    static final DBIndexQuery QUERY =
+            DBIndexQuery.ANY.withProgramType(TYPE_SET.toArray(new ProgramType[TYPE_SET.size()]));
+
     // semester string (e.g., GN_2004A) -> TigraTable
     private final VcsServer vcs;
     private final Map<Semester, TigraTable> _tigraTableMap = new TreeMap<Semester, TigraTable>();
@@ -85,6 +90,6 @@ class TigraTableFunctor extends DBAbstractQueryFunctor {
     public static List<TigraTable> getTigraTables(final IDBDatabaseService db, final VcsServer vcs, final Set<Principal> user) {
         final TigraTableFunctor funct = new TigraTableFunctor(vcs);
         final IDBQueryRunner qr = db.getQueryRunner(user);
-        return qr.queryPrograms(funct).getTigraTables();
+        return qr.queryPrograms(QUERY, funct).getTigraTables();
     }
 }
@@ -0,0 +1,289 @@
+package edu.gemini.spdb.reports.impl;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.security.Principal;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import edu.gemini.pot.sp.ISPNode;
+import edu.gemini.pot.sp.ISPObservation;
+import edu.gemini.pot.sp.ISPProgram;
+import edu.gemini.pot.sp.ISPRootNode;
+import edu.gemini.pot.sp.SPNodeKey;
+import edu.gemini.pot.sp.SPUtil;
+import edu.gemini.pot.spdb.DBProgramListFunctor;
+import edu.gemini.pot.spdb.IDBDatabaseService;
+import edu.gemini.pot.spdb.ProgramEvent;
+import edu.gemini.pot.spdb.ProgramEventListener;
+import edu.gemini.spdb.reports.IColumn;
+import edu.gemini.spdb.reports.ITable;
+import edu.gemini.spdb.reports.ITable.Domain;
+
+/**
+ * Table rows of the programs in a database, kept up to date as programs are
+ * added, replaced, removed or edited so that queries become a filter and sort
+ * over rows that have already been computed instead of a walk over the whole
+ * database. The rows of a table are computed the first time it is queried,
+ * and from then on only for the programs that changed since the last query.
+ * Each program's rows are stored column by column.
+ * <p>
+ * There is at most one view per database, opened when the database becomes
+ * available and found by the {@link QueryManager} via {@link #lookup}.
+ * Tables on the NULL domain aren't handled by the view.
+ */
+public final class MaterializedView implements ProgramEventListener<ISPProgram>, PropertyChangeListener {
+
+	private static final Logger LOGGER = Logger.getLogger(MaterializedView.class.getName());
+
+	private static final Map<IDBDatabaseService, MaterializedView> VIEWS =
+			new ConcurrentHashMap<IDBDatabaseService, MaterializedView>();
+
+	/**
+	 * Opens the view of the given database, listening to its programs from
+	 * now on. The user is only needed to list the programs already there.
+	 */
+	public static MaterializedView open(IDBDatabaseService db, Set<Principal> user) {
+		final MaterializedView view = new MaterializedView(db);
+		final MaterializedView old = VIEWS.put(db, view);
+		if (old != null) old.stop();
+		view.start(user);
+		return view;
+	}
+
+	/**
+	 * Stops maintaining the view of the given database, if any.
+	 */
+	public static void close(IDBDatabaseService db) {
+		final MaterializedView view = VIEWS.remove(db);
+		if (view != null) view.stop();
+	}
+
+	/**
+	 * Returns the view of the given database, or null if it isn't open.
+	 */
+	public static MaterializedView lookup(IDBDatabaseService db) {
+		return VIEWS.get(db);
+	}
+
+	/**
+	 * A program along with a stamp that changes whenever the program does.
+	 */
+	private static final class Program {
+		final ISPProgram node;
+		final long stamp;
+
+		Program(ISPProgram node, long stamp) {
+			this.node = node;
+			this.stamp = stamp;
+		}
+	}
+
+	private final IDBDatabaseService db;
+
+	// Programs in the order in which they were first seen.
+	private final Map<SPNodeKey, Program> programs = new LinkedHashMap<SPNodeKey, Program>();
+	private final Map<ITable, TableRows> tables = new HashMap<ITable, TableRows>();
+	private long stamp;
+
+	private MaterializedView(IDBDatabaseService db) {
+		this.db = db;
+	}
+
+	private void start(Set<Principal> user) {
+		db.addProgramEventListener(this);
+		final DBProgramListFunctor func = db.getQueryRunner(user).queryPrograms(new DBProgramListFunctor());
+		for (SPNodeKey key: func.getKeyList()) {
+			final ISPProgram prog = db.lookupProgram(key);
+			if (prog != null) add(prog, false);
+		}
+	}
+
+	private void stop() {
+		db.removeProgramEventListener(this);
+		final List<Program> progs;
+		synchronized (this) {
+			progs = new ArrayList<Program>(programs.values());
+			programs.clear();
+			tables.clear();
+		}
+		for (Program p: progs) p.node.removeCompositeChangeListener(this);
+	}
+
+	/**
+	 * Returns all rows of the given table, first bringing the rows of any
+	 * program that changed since the last call up to date. The rows must not
+	 * be modified.
+	 */
+	public List<Map<IColumn, ?>> getRows(ITable table) {
+		final TableRows t;
+		final List<Program> progs;
+		synchronized (this) {
+			TableRows tr = tables.get(table);
+			if (tr == null) {
+				tr = new TableRows(table);
+				tables.put(table, tr);
+			}
+			t = tr;
+			progs = new ArrayList<Program>(programs.values());
+		}
+		// Programs are read without holding the view lock, since their change
+		// events need it.
+		return t.getRows(progs);
+	}
+
+	public void programAdded(ProgramEvent<ISPProgram> pme) {
+		add(pme.getNewProgram(), true);
+	}
+
+	public void programReplaced(ProgramEvent<ISPProgram> pme) {
+		pme.getOldProgram().removeCompositeChangeListener(this);
+		add(pme.getNewProgram(), true);
+	}
+
+	public void programRemoved(ProgramEvent<ISPProgram> pme) {
+		final ISPProgram prog = pme.getOldProgram();
+		prog.removeCompositeChangeListener(this);
+		synchronized (this) {
+			programs.remove(prog.getProgramKey());
+		}
+	}
+
+	/**
+	 * Marks the program of the node that changed as modified.
+	 */
+	public void propertyChange(PropertyChangeEvent pce) {
+		if (SPUtil.isTransientClientDataPropertyName(pce.getPropertyName())) return;
+
+		final Object src = pce.getSource();
+		if (!(src instanceof ISPNode)) return;
+
+		final ISPRootNode root = ((ISPNode) src).getRootAncestor();
+		if (root instanceof ISPProgram) {
+			synchronized (this) {
+				final Program p = programs.get(root.getProgramKey());
+				if (p != null && p.node == root) programs.put(p.node.getProgramKey(), new Program(p.node, ++stamp));
+			}
+		}
+	}
+
+	// Adds the program, replacing any previous version if asked to. The
+	// listener is added without the lock, since the program's own lock may be
+	// needed.
+	private void add(ISPProgram prog, boolean replace) {
+		final boolean added;
+		synchronized (this) {
+			final Program p = programs.get(prog.getProgramKey());
+			added = (p == null) || (replace && p.node != prog);
+			if (added) programs.put(prog.getProgramKey(), new Program(prog, ++stamp));
+		}
+		if (added) prog.addCompositeChangeListener(this);
+	}
+
+	/**
+	 * The rows of one program, stored column by column.
+	 */
+	private static final class Segment {
+		final long stamp;
+		final Object[][] columns;
+		final int size;
+
+		Segment(long stamp, Map<IColumn, Integer> index, List<Map<IColumn, Object>> rows) {
+			this.stamp = stamp;
+			this.size = rows.size();
+			this.columns = new Object[index.size()][size];
+			for (int r = 0; r < size; r++) {
+				for (Map.Entry<IColumn, Object> e: rows.get(r).entrySet()) {
+					final Integer c = index.get(e.getKey());
+					if (c != null) columns[c][r] = e.getValue();
+				}
+			}
+		}
+	}
+
+	/**
+	 * The materialized rows of a table, by program.
+	 */
+	private static final class TableRows {
+		private final ITable table;
+		private final Map<IColumn, Integer> index = new HashMap<IColumn, Integer>();
+		private Map<SPNodeKey, Segment> segments = new HashMap<SPNodeKey, Segment>();
+
+		TableRows(ITable table) {
+			this.table = table;
+			for (IColumn col: table.getColumns()) index.put(col, index.size());
+		}
+
+		synchronized List<Map<IColumn, ?>> getRows(List<Program> progs) {
+			final Map<SPNodeKey, Segment> current = new HashMap<SPNodeKey, Segment>(progs.size() * 2);
+			final List<Map<IColumn, ?>> res = new ArrayList<Map<IColumn, ?>>();
+			for (Program p: progs) {
+				final SPNodeKey key = p.node.getProgramKey();
+				Segment s = segments.get(key);
+				if (s == null || s.stamp != p.stamp) s = materialize(p);
+				current.put(key, s);
+				for (int r = 0; r < s.size; r++) res.add(new RowView(index, s.columns, r));
+			}
+			// Forget the programs that have been removed.
+			segments = current;
+			return res;
+		}
+
+		private Segment materialize(Program p) {
+			final List<Map<IColumn, Object>> rows = new ArrayList<Map<IColumn, Object>>();
+			if (table.getDomain() == Domain.OBSERVATION) {
+				for (ISPObservation obs: p.node.getAllObservations()) addRows(obs, rows);
+			} else {
+				addRows(p.node, rows);
+			}
+			return new Segment(p.stamp, index, rows);
+		}
+
+		private void addRows(ISPNode node, List<Map<IColumn, Object>> rows) {
+			try {
+				rows.addAll(table.getRows(node));
+			} catch (Throwable t) {
+				LOGGER.log(Level.SEVERE, "Problem computing rows of " + table.getDisplayName(), t);
+			}
+		}
+	}
+
+	/**
+	 * Read-only row backed by the columns of a segment.
+	 */
+	private static final class RowView extends AbstractMap<IColumn, Object> {
+		private final Map<IColumn, Integer> index;
+		private final Object[][] columns;
+		private final int row;
+
+		RowView(Map<IColumn, Integer> index, Object[][] columns, int row) {
+			this.index = index;
+			this.columns = columns;
+			this.row = row;
+		}
+
+		@Override
+		public Object get(Object key) {
+			final Integer c = index.get(key);
+			return c == null ? null : columns[c][row];
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return get(key) != null;
+		}
+
+		@Override
+		public Set<Entry<IColumn, Object>> entrySet() {
+			final Set<Entry<IColumn, Object>> res = new LinkedHashSet<Entry<IColumn, Object>>();
+			for (Map.Entry<IColumn, Integer> e: index.entrySet()) {
+				final Object val = columns[e.getValue()][row];
+				if (val != null) res.add(new SimpleImmutableEntry<IColumn, Object>(e.getKey(), val));
+			}
+			return res;
+		}
+	}
+
+}
@@ -75,7 +75,6 @@ class QueryFunctor extends DBAbstractQueryFunctor {
 				if (f == null || f.accept(row))
 					rows.add(row);
 			}
-			Thread.yield(); // Try not to bog down the server.
 		} catch (Throwable t) {
 			LOGGER.log(Level.SEVERE, "Problem executing functor.", t);
 		}
@@ -84,50 +83,10 @@ class QueryFunctor extends DBAbstractQueryFunctor {
 	/**
 	 * Group and sort the raw rows, then create IRows to return.
 	 */
-	@SuppressWarnings("unchecked")
 	@Override
 	public void finished() {
 		try {
-
-			// Group and sort the rows.
-			Map<IColumn, ?>[] rowArray = rows.toArray(new Map[rows.size()]);
-			RowComparator rc = new RowComparator();
-			for (ISort s: query.getGroups()) rc.addComparator(s);
-			for (ISort s: query.getSorts()) rc.addComparator(s);
-			Arrays.sort(rowArray, rc);
-
-			// And turn them into IRows.
-			final IColumn[] outputColumns = query.getOutputColumns().toArray(new IColumn[0]);
-			final ISort[] groups = query.getGroups().toArray(new ISort[0]);
-			IRow prev = null;
-			for (Map<IColumn, ?> row: rowArray) {
-
-				// Values
-				Object[] values = new Object[outputColumns.length];
-				for (int i = 0; i < outputColumns.length; i++) {
-					IColumn col = outputColumns[i];
-					Object val = row.get(col);
-					values[i] = val == null ? IRow.NULL_VALUE : val;
-				}
-
-				// GroupValues and GroupIndex
-				int groupIndex = (prev == null && groups.length > 0) ? 0 : -1;
-				Object[] groupValues = new Object[groups.length];
-				for (int i = 0; i < groups.length; i++) {
-					IColumn col = groups[i].getColumn();
-					Object val = row.get(col);
-					if (groupIndex == -1 && (!equiv(val, prev.getGroupValues()[i])))
-						groupIndex = i;
-					groupValues[i] = val == null ? IRow.NULL_VALUE : val;
-				}
-
-				// Done.
-				results.add(prev = new Row(values, groupValues, groupIndex));
-
-				// Let the server breathe.
-				Thread.yield();
-
-			}
+			results.addAll(collate(query, rows));
 
 			// Clean up a little. Don't need this anymore.
 			rows.clear();
@@ -137,6 +96,53 @@ class QueryFunctor extends DBAbstractQueryFunctor {
 		}
 	}
 
+	/**
+	 * Groups and sorts raw rows that passed the query's filter, and turns
+	 * them into IRows.
+	 */
+	@SuppressWarnings("unchecked")
+	static List<IRow> collate(IQuery query, List<Map<IColumn, ?>> rows) {
+
+		// Group and sort the rows.
+		Map<IColumn, ?>[] rowArray = rows.toArray(new Map[rows.size()]);
+		RowComparator rc = new RowComparator();
+		for (ISort s: query.getGroups()) rc.addComparator(s);
+		for (ISort s: query.getSorts()) rc.addComparator(s);
+		Arrays.sort(rowArray, rc);
+
+		// And turn them into IRows.
+		final List<IRow> results = new ArrayList<IRow>(rowArray.length);
+		final IColumn[] outputColumns = query.getOutputColumns().toArray(new IColumn[0]);
+		final ISort[] groups = query.getGroups().toArray(new ISort[0]);
+		IRow prev = null;
+		for (Map<IColumn, ?> row: rowArray) {
+
+			// Values
+			Object[] values = new Object[outputColumns.length];
+			for (int i = 0; i < outputColumns.length; i++) {
+				IColumn col = outputColumns[i];
+				Object val = row.get(col);
+				values[i] = val == null ? IRow.NULL_VALUE : val;
+			}
+
+			// GroupValues and GroupIndex
+			int groupIndex = (prev == null && groups.length > 0) ? 0 : -1;
+			Object[] groupValues = new Object[groups.length];
+			for (int i = 0; i < groups.length; i++) {
+				IColumn col = groups[i].getColumn();
+				Object val = row.get(col);
+				if (groupIndex == -1 && (!equiv(val, prev.getGroupValues()[i])))
+					groupIndex = i;
+				groupValues[i] = val == null ? IRow.NULL_VALUE : val;
+			}
+
+			// Done.
+			results.add(prev = new Row(values, groupValues, groupIndex));
+
+		}
+		return results;
+	}
+
 	private static boolean equiv(Object a, Object b) {
 		return (a == b) || (a != null && a.equals(b));
 	}
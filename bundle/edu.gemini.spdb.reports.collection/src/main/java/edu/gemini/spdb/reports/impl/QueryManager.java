@@ -1,13 +1,17 @@
 package edu.gemini.spdb.reports.impl;
 
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Collections;
 import java.security.Principal;
+import java.util.Map;
 import java.util.Set;
 
 import edu.gemini.pot.spdb.IDBDatabaseService;
 import edu.gemini.pot.spdb.IDBQueryRunner;
+import edu.gemini.spdb.reports.IColumn;
+import edu.gemini.spdb.reports.IFilter;
 import edu.gemini.spdb.reports.IQuery;
 import edu.gemini.spdb.reports.IQueryManager;
 import edu.gemini.spdb.reports.IRow;
@@ -33,14 +37,26 @@ public class QueryManager implements IQueryManager {
 	}
 
 	/**
-	 * Runs the specified query by wrapping it in a query functor and
+	 * Runs the specified query against the database's materialized view
+	 * if there is one, or else by wrapping it in a query functor and
 	 * either calling it directly with null for NULL domains, or
 	 * passing it to a query runner via queryObservations() or
 	 * queryPrograms().
 	 */
 	public List<IRow> runQuery(IQuery query, IDBDatabaseService dbs) {
-        QueryFunctor func = new QueryFunctor(query);
         Domain domain = query.getTable().getDomain();
+        MaterializedView view = (domain == Domain.NULL) ? null : MaterializedView.lookup(dbs);
+        if (view != null) {
+            IFilter f = query.getFilter();
+            List<Map<IColumn, ?>> rows = new ArrayList<Map<IColumn, ?>>();
+            for (Map<IColumn, ?> row: view.getRows(query.getTable())) {
+                if (f == null || f.accept(row))
+                    rows.add(row);
+            }
+            return QueryFunctor.collate(query, rows);
+        }
+
+        QueryFunctor func = new QueryFunctor(query);
         if (domain == Domain.NULL) {
             func.init();
             func.execute(null, null, Collections.<Principal>emptySet());
@@ -2,6 +2,7 @@ package edu.gemini.spdb.reports.osgi;
 
 import edu.gemini.pot.spdb.IDBDatabaseService;
 import edu.gemini.spdb.reports.impl.BatchReportsTask;
+import edu.gemini.spdb.reports.impl.MaterializedView;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.ServiceReference;
 import org.osgi.util.tracker.ServiceTracker;
@@ -26,6 +27,7 @@ public class DatabaseTracker extends ServiceTracker {
 	@Override
 	public Object addingService(ServiceReference ref) {
 		IDBDatabaseService db = (IDBDatabaseService) context.getService(ref);
+        MaterializedView.open(db, user);
         httpTracker = new HttpTracker(context, batchRoot, db, user);
         httpTracker.open();
 		return db;
@@ -34,6 +36,7 @@ public class DatabaseTracker extends ServiceTracker {
 	@Override
 	public void removedService(ServiceReference ref, Object service) {
         httpTracker.close();
+        MaterializedView.close((IDBDatabaseService) service);
 		context.ungetService(ref);
 	}
 
@@ -0,0 +1,94 @@
+package edu.gemini.dbTools.tigratable;
+
+import edu.gemini.pot.sp.ISPNode;
+import edu.gemini.pot.sp.ISPProgram;
+import edu.gemini.pot.sp.SPNodeKey;
+import edu.gemini.pot.spdb.DBAbstractQueryFunctor;
+import edu.gemini.pot.spdb.DBLocalDatabase;
+import edu.gemini.pot.spdb.IDBDatabaseService;
+import edu.gemini.sp.vcs.OldVcsFailure;
+import edu.gemini.sp.vcs.VcsServer;
+import edu.gemini.spModel.core.SPProgramID;
+import edu.gemini.util.security.principal.StaffPrincipal;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import scalaz.$bslash$div;
+import scalaz.$minus$bslash$div;
+
+import java.security.Principal;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class TigraTableFunctorTest {
+
+    private final Set<Principal> user = Collections.<Principal>singleton(StaffPrincipal.Gemini());
+
+    // A server without any sync history.
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private static final class NoLogVcsServer implements VcsServer {
+        private static $bslash$div unexpected() {
+            return new $minus$bslash$div(new OldVcsFailure.Unexpected("unused"));
+        }
+
+        public $bslash$div version(SPProgramID id) { return unexpected(); }
+        public $bslash$div fetch(SPProgramID id) { return unexpected(); }
+        public $bslash$div store(ISPProgram p) { return unexpected(); }
+        public $bslash$div log(SPProgramID p, int offset, int length) { return unexpected(); }
+    }
+
+    private static final class IdFunctor extends DBAbstractQueryFunctor {
+        private final Set<String> ids = new TreeSet<String>();
+
+        public void execute(IDBDatabaseService db, ISPNode node, Set<Principal> principals) {
+            ids.add(((ISPProgram) node).getProgramID().stringValue());
+        }
+    }
+
+    private IDBDatabaseService db;
+
+    @Before
+    public void setUp() throws Exception {
+        db = DBLocalDatabase.createTransient();
+        for (String id : new String[] {
+                "GS-2015A-Q-1", "GS-2015A-C-2", "GS-2015A-ENG-3", "GS-2015A-CAL-4",
+                "GN-2015B-LP-5", "GN-2015B-FT-6", "GN-2015B-DD-7", "GS-ENG20150101"}) {
+            db.put(db.getFactory().createProgram(new SPNodeKey(), SPProgramID.toProgramID(id)));
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        db.getDBAdmin().shutdown();
+    }
+
+    private static Map<String, Set<String>> ids(List<TigraTable> tables) {
+        final Map<String, Set<String>> res = new TreeMap<String, Set<String>>();
+        for (TigraTable tt : tables) {
+            final Set<String> ids = new TreeSet<String>();
+            for (TigraTableRow row : tt.getRows()) ids.add(row.getProgramId().stringValue());
+            res.put(tt.getSemesterKey(), ids);
+        }
+        return res;
+    }
+
+    @Test
+    public void testIndexedQueryMatchesFullScan() throws Exception {
+        final Map<String, Set<String>> expected = new TreeMap<String, Set<String>>();
+        expected.put("15A", new TreeSet<String>(Arrays.asList("GS-2015A-C-2", "GS-2015A-Q-1")));
+        expected.put("15B", new TreeSet<String>(Arrays.asList("GN-2015B-FT-6", "GN-2015B-LP-5")));
+
+        final VcsServer vcs = new NoLogVcsServer();
+        final TigraTableFunctor scan = db.getQueryRunner(user).queryPrograms(new TigraTableFunctor(vcs));
+        assertEquals(expected, ids(scan.getTigraTables()));
+        assertEquals(expected, ids(TigraTableFunctor.getTigraTables(db, vcs, user)));
+    }
+
+    @Test
+    public void testIndexedQueryVisitsOnlyIncludedTypes() throws Exception {
+        final Set<String> expected = new TreeSet<String>(Arrays.asList(
+                "GS-2015A-Q-1", "GS-2015A-C-2", "GN-2015B-LP-5", "GN-2015B-FT-6"));
+        assertEquals(expected, db.getQueryRunner(user).queryPrograms(TigraTableFunctor.QUERY, new IdFunctor()).ids);
+    }
+}
@@ -0,0 +1,135 @@
+package edu.gemini.spdb.reports.impl;
+
+import edu.gemini.pot.sp.ISPProgram;
+import edu.gemini.pot.sp.SPNodeKey;
+import edu.gemini.pot.spdb.DBLocalDatabase;
+import edu.gemini.pot.spdb.IDBDatabaseService;
+import edu.gemini.spModel.core.SPProgramID;
+import edu.gemini.spModel.gemini.obscomp.SPProgram;
+import edu.gemini.spdb.reports.IColumn;
+import edu.gemini.spdb.reports.IFilter;
+import edu.gemini.spdb.reports.IQuery;
+import edu.gemini.spdb.reports.IRow;
+import edu.gemini.spdb.reports.ISort;
+import edu.gemini.spdb.reports.util.AbstractTable;
+import edu.gemini.spdb.reports.util.SimpleSort;
+import edu.gemini.util.security.principal.StaffPrincipal;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.security.Principal;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class MaterializedViewTest {
+
+    private final Set<Principal> user = Collections.<Principal>singleton(StaffPrincipal.Gemini());
+
+    private IDBDatabaseService db;
+    private CountingTable table;
+
+    public static enum Columns implements IColumn {
+        PROGRAM_ID,
+        TITLE,
+        ;
+
+        public String getCaption() { return name(); }
+        public String format(Object value) { return String.valueOf(value); }
+        public Comparator getComparator() { return null; }
+    }
+
+    // A program table that counts the programs it has been asked for.
+    private static final class CountingTable extends AbstractTable {
+        int count;
+
+        CountingTable() {
+            super(Domain.PROGRAM, Columns.values(), "Counting", "Counting");
+        }
+
+        public List<Map<IColumn, Object>> getRows(Object node) {
+            ++count;
+            final ISPProgram prog = (ISPProgram) node;
+            final Map<IColumn, Object> row = new HashMap<>();
+            row.put(Columns.PROGRAM_ID, prog.getProgramID().toString());
+            row.put(Columns.TITLE, ((SPProgram) prog.getDataObject()).getTitle());
+            return Collections.singletonList(row);
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        db = DBLocalDatabase.createTransient();
+        table = new CountingTable();
+        addProgram("GS-2015A-Q-1", "one");
+        MaterializedView.open(db, user);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        MaterializedView.close(db);
+        db.getDBAdmin().shutdown();
+    }
+
+    private ISPProgram addProgram(String id, String title) throws Exception {
+        final ISPProgram prog = db.getFactory().createProgram(new SPNodeKey(), SPProgramID.toProgramID(id));
+        setTitle(prog, title);
+        db.put(prog);
+        return prog;
+    }
+
+    private static void setTitle(ISPProgram prog, String title) {
+        final SPProgram dataObj = (SPProgram) prog.getDataObject();
+        dataObj.setTitle(title);
+        prog.setDataObject(dataObj);
+    }
+
+    private List<String> titles() {
+        final IQuery q = new QueryManager(user).createQuery(table);
+        q.setSorts(new SimpleSort(Columns.PROGRAM_ID, ISort.Order.ASC));
+        q.setOutputColumns(Columns.TITLE);
+        final List<String> res = new ArrayList<>();
+        for (IRow row: new QueryManager(user).runQuery(q, db)) res.add((String) row.getValue(0));
+        return res;
+    }
+
+    @Test
+    public void testOnlyChangedProgramsAreRecomputed() throws Exception {
+        final ISPProgram two = addProgram("GS-2015A-Q-2", "two");
+        assertEquals(Arrays.asList("one", "two"), titles());
+        assertEquals(2, table.count);
+
+        assertEquals(Arrays.asList("one", "two"), titles());
+        assertEquals(2, table.count);
+
+        setTitle(two, "deux");
+        assertEquals(Arrays.asList("one", "deux"), titles());
+        assertEquals(3, table.count);
+    }
+
+    @Test
+    public void testAddedAndRemovedPrograms() throws Exception {
+        assertEquals(Collections.singletonList("one"), titles());
+
+        final ISPProgram three = addProgram("GS-2015A-Q-3", "three");
+        assertEquals(Arrays.asList("one", "three"), titles());
+
+        db.remove(three);
+        assertEquals(Collections.singletonList("one"), titles());
+        assertEquals(2, table.count);
+    }
+
+    @Test
+    public void testFilter() throws Exception {
+        addProgram("GS-2015A-Q-2", "two");
+        final IQuery q = new QueryManager(user).createQuery(table);
+        q.setFilter(new IFilter() {
+            public boolean accept(Map<IColumn, ?> row) {
+                return "two".equals(row.get(Columns.TITLE));
+            }
+        });
+        final List<IRow> rows = new QueryManager(user).runQuery(q, db);
+        assertEquals(1, rows.size());
+    }
+}
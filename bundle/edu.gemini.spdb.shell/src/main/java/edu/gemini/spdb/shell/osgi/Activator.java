@@ -34,6 +34,10 @@ public class Activator implements BundleActivator, ServiceTrackerCustomizer<IDBD
                 "importXml",
                 "exportXml",
                 "du",
+                "locks",
+                "lockstats",
+                "lockmetrics",
+                "policycache",
                 "purge",
                 "migrateAltair"
         });
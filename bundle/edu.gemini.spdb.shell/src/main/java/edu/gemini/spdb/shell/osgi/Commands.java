@@ -2,7 +2,11 @@ package edu.gemini.spdb.shell.osgi;
 
 import edu.gemini.pot.sp.ISPNode;
 import edu.gemini.pot.sp.ISPProgram;
+import edu.gemini.pot.sp.LockHolder;
+import edu.gemini.pot.sp.LockStatistics;
+import edu.gemini.pot.sp.SPNodeKeyLocks;
 import edu.gemini.pot.spdb.DBAbstractQueryFunctor;
+import edu.gemini.pot.spdb.IDBAdmin;
 import edu.gemini.pot.spdb.IDBDatabaseService;
 import edu.gemini.pot.spdb.IDBQueryFunctor;
 import edu.gemini.pot.spdb.IDBQueryRunner;
@@ -12,6 +16,7 @@ import edu.gemini.spModel.io.SpImportService;
 import edu.gemini.spdb.shell.misc.ExportXmlCommand;
 import edu.gemini.spdb.shell.misc.ImportXmlCommand;
 import edu.gemini.spdb.shell.misc.LsProgs;
+import edu.gemini.util.security.policy.ImplicitPolicyForJava;
 import org.osgi.util.tracker.ServiceTracker;
 
 import java.io.File;
@@ -136,6 +141,60 @@ class Commands {
         return String.format("Total SPDB storage %,d bytes.", db().getDBAdmin().getTotalStorage());
     }
 
+    private static final int DEFAULT_LOCK_REPORT_COUNT = 10;
+
+    private static final String LOCK_METRICS_OFF =
+        "Lock metrics are off (enable with lockmetrics or -D" + SPNodeKeyLocks.LOCK_METRICS_PROP + "=true).";
+
+    // show whether lock metrics are being recorded
+    public String lockmetrics() {
+        return db().getDBAdmin().isLockMetricsEnabled() ? "Lock metrics are on." : LOCK_METRICS_OFF;
+    }
+
+    // start recording lock metrics
+    public String lockmetrics(boolean on) {
+        if (!on) return "Lock metrics can only be turned off by restarting.";
+        db().getDBAdmin().enableLockMetrics();
+        return "Lock metrics are on.";
+    }
+
+    // show the longest program lock holds
+    public String locks() {
+        return locks(DEFAULT_LOCK_REPORT_COUNT);
+    }
+
+    public String locks(int count) {
+        final IDBAdmin admin = db().getDBAdmin();
+        if (!admin.isLockMetricsEnabled()) return LOCK_METRICS_OFF;
+
+        final StringBuilder buf = new StringBuilder();
+        for (LockHolder h : admin.getSlowestLockHolders(count)) {
+            buf.append(h).append("\n");
+        }
+        return (buf.length() == 0) ? "No program locks have been held." : buf.toString();
+    }
+
+    // show the most contended program locks
+    public String lockstats() {
+        return lockstats(DEFAULT_LOCK_REPORT_COUNT);
+    }
+
+    public String lockstats(int count) {
+        final IDBAdmin admin = db().getDBAdmin();
+        if (!admin.isLockMetricsEnabled()) return LOCK_METRICS_OFF;
+
+        final StringBuilder buf = new StringBuilder();
+        for (LockStatistics s : admin.getLockStatistics(count)) {
+            buf.append(s).append("\n");
+        }
+        return (buf.length() == 0) ? "No program locks have been used." : buf.toString();
+    }
+
+    // show the usage of the program permission decision cache
+    public String policycache() {
+        return "Policy decision cache: " + ImplicitPolicyForJava.decisionCacheStats();
+    }
+
     private final String PURGE_CONFIRMATION = "" + System.currentTimeMillis();
 
     public String purge() {
@@ -0,0 +1,412 @@
+//
+// $Id$
+//
+
+package edu.gemini.fits;
+
+import edu.gemini.file.util.LockedFileChannel;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Reads FITS headers through memory-mapped buffers.
+ *
+ * <p>The boundaries of the header/data units of a file are located once and
+ * remembered in an index shared by all readers, keyed by the file's path,
+ * size and modification time.  Reading a header of an indexed file maps just
+ * the records of that header.  Requested keywords are compared against the
+ * raw bytes of each card, and only the matching cards are decoded.
+ *
+ * <p>{@link #readPrimaries} reads the primary headers of many files in
+ * parallel.
+ */
+public final class HeaderReader {
+    private static final Logger LOG = Logger.getLogger(HeaderReader.class.getName());
+
+    /**
+     * Maximum number of files whose header offsets are remembered.
+     */
+    public static final int MAX_INDEXED_FILES = 10000;
+
+    // Records mapped at first when looking for the END of a header.  The
+    // window doubles until END is found.
+    private static final int WINDOW_RECORDS = 4;
+
+    private static final int KEYWORD_SIZE = 8;
+
+    private static final long END    = _key("END");
+    private static final long BITPIX = _key("BITPIX");
+    private static final long PCOUNT = _key("PCOUNT");
+    private static final long GCOUNT = _key("GCOUNT");
+
+    // NAXIS, NAXISn: the first 5 bytes of the keyword.
+    private static final long NAXIS_MASK = 0xFFFFFFFFFF000000L;
+    private static final long NAXIS      = _key("NAXIS") & NAXIS_MASK;
+
+    // Offsets of a header/data unit.
+    private static final class Hdu {
+        final long start;       // first record of the header
+        final long end;         // end of the record holding END
+        final Header dataSize;  // items giving the size of the data
+
+        Hdu(long start, long end, Header dataSize) {
+            this.start    = start;
+            this.end      = end;
+            this.dataSize = dataSize;
+        }
+
+        // Start of the following unit.  Only needed to get past this one, so
+        // a malformed data size doesn't keep this header from being read.
+        long next() throws FitsParseException {
+            return end + Hedit.calculateDataSectionSize(dataSize);
+        }
+    }
+
+    // A file as it was when its units were located.
+    private static final class FileVersion {
+        private final String _path;
+        private final long _size;
+        private final long _lastModified;
+
+        FileVersion(File f, long size) {
+            _path         = f.getAbsolutePath();
+            _size         = size;
+            _lastModified = f.lastModified();
+        }
+
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof FileVersion)) return false;
+
+            FileVersion that = (FileVersion) o;
+            return (_size == that._size) && (_lastModified == that._lastModified) &&
+                    _path.equals(that._path);
+        }
+
+        public int hashCode() {
+            int res = _path.hashCode();
+            res = 31 * res + (int) (_size ^ (_size >>> 32));
+            res = 31 * res + (int) (_lastModified ^ (_lastModified >>> 32));
+            return res;
+        }
+    }
+
+    // Units located so far in each file, in order.  The lists are never
+    // modified, they are replaced when more units are located.
+    private static final Map<FileVersion, List<Hdu>> _index =
+            new LinkedHashMap<FileVersion, List<Hdu>>(16, 0.75f, true) {
+                protected boolean removeEldestEntry(Map.Entry<FileVersion, List<Hdu>> me) {
+                    return size() > MAX_INDEXED_FILES;
+                }
+            };
+
+    /**
+     * Forgets the header offsets of all files.
+     */
+    public static void clearIndex() {
+        synchronized (_index) {
+            _index.clear();
+        }
+    }
+
+    private final File _file;
+
+    public HeaderReader(File fitsFile) {
+        _file = fitsFile;
+    }
+
+    /**
+     * Reads a header of the file.
+     *
+     * @param headerIndex index of the header, 0 being the primary header
+     * @param keywords keywords of the items to read, or <code>null</code> to
+     * read all of them
+     *
+     * @return header with the matching items, in file order
+     *
+     * @throws FitsParseException if the file has no such header or the header
+     * cannot be parsed
+     */
+    public Header readHeader(int headerIndex, Set<String> keywords)
+            throws IOException, FitsParseException, InterruptedException {
+
+        long[] keys = _keys(keywords);
+        LockedFileChannel lfc = _lock();
+        try {
+            FileChannel channel = lfc.getChannel();
+            FileVersion version = new FileVersion(_file, channel.size());
+
+            Hdu hdu = _locate(channel, version, headerIndex);
+            if (hdu == null) {
+                throw new FitsParseException("No header " + headerIndex + " in " + _file.getName());
+            }
+            return _read(channel, version, hdu, headerIndex, keys);
+        } finally {
+            _unlock(lfc);
+        }
+    }
+
+    /**
+     * Reads all the headers of the file.
+     *
+     * @param keywords keywords of the items to read, or <code>null</code> to
+     * read all of them
+     */
+    public List<Header> readAllHeaders(Set<String> keywords)
+            throws IOException, FitsParseException, InterruptedException {
+
+        long[] keys = _keys(keywords);
+        LockedFileChannel lfc = _lock();
+        try {
+            FileChannel channel = lfc.getChannel();
+            FileVersion version = new FileVersion(_file, channel.size());
+
+            List<Header> res = new ArrayList<Header>();
+            Hdu hdu;
+            while ((hdu = _locate(channel, version, res.size())) != null) {
+                res.add(_read(channel, version, hdu, res.size(), keys));
+            }
+            return res;
+        } finally {
+            _unlock(lfc);
+        }
+    }
+
+    private LockedFileChannel _lock() throws IOException, InterruptedException {
+        LockedFileChannel lfc = new LockedFileChannel(_file, LockedFileChannel.Mode.r);
+        lfc.lock();
+        return lfc;
+    }
+
+    private void _unlock(LockedFileChannel lfc) throws IOException {
+        try {
+            lfc.unlock();
+        } catch (IOException ex) {
+            // not sure what to do here
+            String msg = "Could not unlock cleanly: " + _file.getName();
+            LOG.log(Level.SEVERE, msg, ex);
+        } finally {
+            lfc.close();
+        }
+    }
+
+    // Finds the offsets of the given unit, locating the units before it if
+    // needed.  Returns null if the file has no such unit.
+    private static Hdu _locate(FileChannel channel, FileVersion version, int headerIndex)
+            throws IOException, FitsParseException {
+
+        List<Hdu> known;
+        synchronized (_index) {
+            known = _index.get(version);
+        }
+        if ((known != null) && (headerIndex < known.size())) return known.get(headerIndex);
+
+        List<Hdu> found = (known == null) ? new ArrayList<Hdu>() : new ArrayList<Hdu>(known);
+        while (found.size() <= headerIndex) {
+            long pos = found.isEmpty() ? 0 : found.get(found.size() - 1).next();
+            if (pos >= version._size) break;
+            found.add(_scan(channel, pos, found.size(), version._size));
+        }
+
+        if ((known == null) || (found.size() > known.size())) {
+            synchronized (_index) {
+                _index.put(version, Collections.unmodifiableList(found));
+            }
+        }
+        return (headerIndex < found.size()) ? found.get(headerIndex) : null;
+    }
+
+    // Finds the end of the header starting at pos and the items giving the
+    // size of the data that follows it.
+    private static Hdu _scan(FileChannel channel, long pos, int headerIndex, long size)
+            throws IOException, FitsParseException {
+
+        // Only whole records count, as with RecordIterator.
+        long available = (size - pos) / FitsConstants.RECORD_SIZE * FitsConstants.RECORD_SIZE;
+
+        Header dataSize = new DefaultHeader(headerIndex);
+        long scanned = 0;
+        long window  = (long) WINDOW_RECORDS * FitsConstants.RECORD_SIZE;
+        while (scanned < available) {
+            long len = Math.min(window, available - scanned);
+            ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, pos + scanned, len);
+            for (int offset = 0; offset < len; offset += FitsConstants.HEADER_ITEM_SIZE) {
+                long key = buf.getLong(offset);
+                if (key == END) {
+                    long end = pos + scanned + offset / FitsConstants.RECORD_SIZE * FitsConstants.RECORD_SIZE
+                            + FitsConstants.RECORD_SIZE;
+                    return new Hdu(pos, end, dataSize);
+                }
+                if ((key == BITPIX) || (key == PCOUNT) || (key == GCOUNT) ||
+                        ((key & NAXIS_MASK) == NAXIS)) {
+                    try {
+                        dataSize.add(_decode(buf, offset));
+                    } catch (FitsParseException ex) {
+                        // left out, so only reading past this unit fails
+                    }
+                }
+            }
+            scanned += len;
+            window  *= 2;
+        }
+        throw new FitsParseException("Header " + headerIndex + " has no END");
+    }
+
+    // Reads the items matching the keys from the unit's header.
+    private static Header _read(FileChannel channel, FileVersion version, Hdu hdu, int headerIndex, long[] keys)
+            throws IOException, FitsParseException {
+
+        Header res = new DefaultHeader(headerIndex);
+        if (hdu.end <= version._size) {
+            ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, hdu.start, hdu.end - hdu.start);
+            for (int offset = 0; offset < buf.capacity(); offset += FitsConstants.HEADER_ITEM_SIZE) {
+                long key = buf.getLong(offset);
+                if (key == END) return res;
+                if ((keys == null) || (Arrays.binarySearch(keys, key) >= 0)) {
+                    res.add(_decode(buf, offset));
+                }
+            }
+        }
+
+        // The file no longer matches the index, although its size and
+        // modification time have not changed.  Locate its units again.
+        LOG.fine("Stale header offsets for " + version._path);
+        synchronized (_index) {
+            _index.remove(version);
+        }
+        Hdu current = _locate(channel, version, headerIndex);
+        if ((current == null) || ((current.start == hdu.start) && (current.end == hdu.end))) {
+            throw new FitsParseException("Header " + headerIndex + " has no END");
+        }
+        return _read(channel, version, current, headerIndex, keys);
+    }
+
+    private static HeaderItem _decode(ByteBuffer buf, int offset) throws FitsParseException {
+        byte[] card = new byte[FitsConstants.HEADER_ITEM_SIZE];
+        buf.position(offset);
+        buf.get(card);
+        return HeaderItemFormat.parse(new String(card, FitsConstants.CHARSET));
+    }
+
+    // The first 8 bytes of the cards with the given keyword, as a big-endian
+    // long like ByteBuffer.getLong.
+    private static long _key(String keyword) {
+        byte[] bytes = new byte[KEYWORD_SIZE];
+        Arrays.fill(bytes, (byte) ' ');
+        byte[] kw = keyword.getBytes(FitsConstants.CHARSET);
+        System.arraycopy(kw, 0, bytes, 0, kw.length);
+        return ByteBuffer.wrap(bytes).getLong();
+    }
+
+    // Sorted keys of the keywords, or null to match all cards.  Keywords
+    // longer than 8 characters match no card.
+    private static long[] _keys(Set<String> keywords) {
+        if (keywords == null) return null;
+
+        long[] res = new long[keywords.size()];
+        int n = 0;
+        for (String kw : keywords) {
+            if (kw.length() <= KEYWORD_SIZE) res[n++] = _key(kw);
+        }
+        res = Arrays.copyOf(res, n);
+        Arrays.sort(res);
+        return res;
+    }
+
+    /**
+     * Reads the primary headers of the given files using the given number of
+     * threads.  Files that cannot be read are logged and left out of the
+     * result.
+     *
+     * @param keywords keywords of the items to read, or <code>null</code> to
+     * read all of them
+     *
+     * @return primary headers by file, in the order of <code>files</code>
+     */
+    public static Map<File, Header> readPrimaries(Collection<File> files, final Set<String> keywords, int threads)
+            throws InterruptedException {
+
+        Map<File, Header> res = new LinkedHashMap<File, Header>();
+        if ((threads <= 1) || (files.size() <= 1)) {
+            for (File f : files) {
+                Header h = _readPrimary(f, keywords);
+                if (h != null) res.put(f, h);
+            }
+            return res;
+        }
+
+        ExecutorService exec = Executors.newFixedThreadPool(Math.min(threads, files.size()));
+        try {
+            List<Callable<Header>> tasks = new ArrayList<Callable<Header>>(files.size());
+            for (final File f : files) {
+                tasks.add(new Callable<Header>() {
+                    public Header call() throws InterruptedException {
+                        return _readPrimary(f, keywords);
+                    }
+                });
+            }
+            List<Future<Header>> results = exec.invokeAll(tasks);
+
+            int i = 0;
+            for (File f : files) {
+                Header h = results.get(i++).get();
+                if (h != null) res.put(f, h);
+            }
+        } catch (ExecutionException ex) {
+            // _readPrimary handles everything but interruptions and Errors
+            if (ex.getCause() instanceof InterruptedException) throw (InterruptedException) ex.getCause();
+            throw new RuntimeException(ex.getCause());
+        } finally {
+            exec.shutdownNow();
+        }
+        return res;
+    }
+
+    /**
+     * Reads the primary headers of the files in a directory that are accepted
+     * by the filter, if any, using the given number of threads.
+     *
+     * @see #readPrimaries(Collection, Set, int)
+     */
+    public static Map<File, Header> readPrimaries(File dir, FileFilter filter, Set<String> keywords, int threads)
+            throws IOException, InterruptedException {
+
+        File[] files = dir.listFiles(filter);
+        if (files == null) throw new IOException("Could not list " + dir);
+        Arrays.sort(files);
+        return readPrimaries(Arrays.asList(files), keywords, threads);
+    }
+
+    private static Header _readPrimary(File f, Set<String> keywords) throws InterruptedException {
+        try {
+            return new HeaderReader(f).readHeader(0, keywords);
+        } catch (IOException ex) {
+            LOG.log(Level.WARNING, "Could not read " + f, ex);
+        } catch (FitsParseException ex) {
+            LOG.log(Level.FINE, "Could not parse " + f, ex);
+        } catch (RuntimeException ex) {
+            // one bad file mustn't keep the others from being read
+            LOG.log(Level.WARNING, "Could not read " + f, ex);
+        }
+        return null;
+    }
+}
@@ -11,159 +11,121 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.ListIterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * A utility for editing FITS file headers.
+ *
+ * <p>Header items are updated in place, and new items are written over the
+ * blank cards that precede the END card and the unused space after it.  Only
+ * when a header runs out of room does the file have to grow, in which case
+ * records are inserted in place, shifting the rest of the file down.  The
+ * header can be given extra blank space at that point (see
+ * {@link #Hedit(File, int)}) so that later additions fit without shifting
+ * the file again.
  */
 public final class Hedit {
     private static final Logger LOG = Logger.getLogger(Hedit.class.getName());
 
+    private static final byte[] END_CARD = String.format("%-80s", "END").getBytes(FitsConstants.CHARSET);
+
+    // Keywords other than NAXISn needed to skip the data after a header.
+    private static final Set<String> DATA_SIZE_KEYWORDS =
+            new HashSet<String>(Arrays.asList("BITPIX", "PCOUNT", "GCOUNT"));
+
     private File _file;
+    private final int _padding;
 
     public Hedit(File fitsFile) {
-        _file = fitsFile;
+        this(fitsFile, 0);
     }
 
+    /**
+     * @param fitsFile file to read or edit
+     * @param padding number of blank header cards to reserve before END for
+     * future additions whenever a header has to grow
+     */
+    public Hedit(File fitsFile, int padding) {
+        if (padding < 0) throw new IllegalArgumentException("padding: " + padding);
+        _file    = fitsFile;
+        _padding = padding;
+    }
+
+    /**
+     * Reads all the headers of the file.
+     *
+     * @see HeaderReader#readAllHeaders(Set)
+     */
     public List<Header> readAllHeaders()
             throws IOException, FitsParseException, InterruptedException {
-
-        long startTime = System.currentTimeMillis();
-        LockedFileChannel lfc = new LockedFileChannel(_file, LockedFileChannel.Mode.r);
-        lfc.lock();
-
-        FileChannel channel = lfc.getChannel();
-
-        List<Header> allHeaders = new ArrayList<Header>();
-        Set<String> keywords = null;
-        long endTime = System.currentTimeMillis();
-
-        try {
-            int headerIndex = 0;
-            while (channel.position() < channel.size()) {
-                Header currentHeader = _readHeader(channel, keywords, headerIndex++);
-                allHeaders.add(currentHeader);
-
-                int dataSize = calculateDataSectionSize(currentHeader);
-
-                channel.position(dataSize + channel.position());
-            }
-        } finally {
-            try {
-                lfc.unlock();
-            } catch (IOException ex) {
-                // not sure what to do here
-                String msg = "Could not unlock cleanly: " + _file.getName();
-                LOG.log(Level.SEVERE, msg, ex);
-            } finally {
-                lfc.close();
-            }
-        }
-
-
-        if (LOG.isLoggable(Level.FINE)) {
-            LOG.log(Level.FINE, "Read Primary Header in " +
-                    (endTime - startTime) + "ms");
-        }
-        return allHeaders;
+        return new HeaderReader(_file).readAllHeaders(null);
     }
 
-    private static int calculateDataSectionSize(Header pdu) {
+    // Size of the data following the header, including the padding to a whole
+    // number of records.
+    static long calculateDataSectionSize(Header pdu) throws FitsParseException {
         if (!pdu.getKeywords().isEmpty()) {
-            int bytesSize = pdu.get("BITPIX").getIntValue();
-            int nAxis = pdu.get("NAXIS").getIntValue();
-            int totalAxis = 1;
+            int bytesSize = _intValue(pdu, "BITPIX");
+            int nAxis = _intValue(pdu, "NAXIS");
+            long totalAxis = (nAxis == 0) ? 0 : 1;
             for (int i = 1; i <= nAxis; i++) {
-                totalAxis *= pdu.get("NAXIS" + i).getIntValue();
+                totalAxis *= _intValue(pdu, "NAXIS" + i);
             }
             int pCount = 0;
             if (pdu.getKeywords().contains("PCOUNT")) {
-                pCount = pdu.get("PCOUNT").getIntValue();
+                pCount = _intValue(pdu, "PCOUNT");
             }
             totalAxis += pCount;
             int gCount = 1;
             if (pdu.getKeywords().contains("GCOUNT")) {
-                gCount = pdu.get("GCOUNT").getIntValue();
+                gCount = _intValue(pdu, "GCOUNT");
             }
-            int dataSize = totalAxis * gCount * Math.abs(bytesSize) / 8;
-            dataSize += dataSize % FitsConstants.RECORD_SIZE;
+            long dataSize = totalAxis * gCount * Math.abs(bytesSize) / 8;
+            long over = dataSize % FitsConstants.RECORD_SIZE;
+            if (over != 0) dataSize += FitsConstants.RECORD_SIZE - over;
             return dataSize;
         } else {
             return 0;
         }
     }
 
+    private static int _intValue(Header h, String keyword) throws FitsParseException {
+        HeaderItem hi = h.get(keyword);
+        if (hi == null) {
+            throw new FitsParseException("Header " + h.getIndex() + " has no " + keyword);
+        }
+        try {
+            return hi.getIntValue();
+        } catch (NumberFormatException ex) {
+            throw new FitsParseException("Header " + h.getIndex() + " has a bad " + keyword + ": " + hi.getValue());
+        }
+    }
+
     public Header readPrimary() throws IOException, FitsParseException, InterruptedException {
         return readPrimary(null);
     }
 
+    /**
+     * Reads the items of the primary header with the given keywords, or all
+     * of them if <code>keywords</code> is <code>null</code>.
+     *
+     * @see HeaderReader#readHeader(int, Set)
+     */
     public Header readPrimary(Set<String> keywords)
             throws IOException, FitsParseException, InterruptedException {
-
-        long startTime = System.currentTimeMillis();
-        LockedFileChannel lfc = new LockedFileChannel(_file, LockedFileChannel.Mode.r);
-        lfc.lock();
-
-        FileChannel channel = lfc.getChannel();
-
-        Header res;
-        try {
-            res = _readHeader(channel, keywords, 0);
-        } finally {
-            try {
-                lfc.unlock();
-            } catch (IOException ex) {
-                // not sure what to do here
-                String msg = "Could not unlock cleanly: " + _file.getName();
-                LOG.log(Level.SEVERE, msg, ex);
-            } finally {
-                lfc.close();
-            }
-        }
-        long endTime = System.currentTimeMillis();
-
-        if (LOG.isLoggable(Level.FINE)) {
-            LOG.log(Level.FINE, "Read Primary Header in " +
-                    (endTime - startTime) + "ms");
-        }
-        return res;
-    }
-
-    private static Header _readHeader(FileChannel channel, Set<String> keywords, int headerIndex)
-            throws IOException, FitsParseException {
-
-        byte[] bytes = new byte[FitsConstants.RECORD_SIZE];
-        Header res = new DefaultHeader(headerIndex);
-
-        boolean done = false;
-        RecordIterator fit = RecordIterator.iterateFile(channel);
-        while (!done && fit.hasNext()) {
-            Record rec = fit.next();
-            rec.getBuffer().get(bytes);
-            int offset = 0;
-
-            while (offset < bytes.length) {
-                String keyword = (new String(bytes, offset, 8, FitsConstants.CHARSET_NAME)).trim();
-                if ("END".equals(keyword)) {
-                    done = true;
-                    break;
-                }
-
-                if ((keywords == null) || keywords.contains(keyword)) {
-                    String image = new String(bytes, offset,
-                            FitsConstants.HEADER_ITEM_SIZE, FitsConstants.CHARSET_NAME);
-                    res.add(HeaderItemFormat.parse(image));
-                }
-                offset += FitsConstants.HEADER_ITEM_SIZE;
-            }
-        }
-        return res;
+        return new HeaderReader(_file).readHeader(0, keywords);
     }
 
     @SuppressWarnings({"UNUSED_THROWS", "MethodMayBeStatic"})
@@ -181,6 +143,15 @@ public final class Hedit {
     }
 
     public void updateHeader(Collection<? extends HeaderItem> updates, int headerIndex) throws IOException, InterruptedException {
+        updateHeaders(Collections.singletonMap(headerIndex, updates));
+    }
+
+    /**
+     * Applies the updates to several headers at once, indexed by header,
+     * under a single lock of the file.
+     */
+    public void updateHeaders(Map<Integer, ? extends Collection<? extends HeaderItem>> updates)
+            throws IOException, InterruptedException {
 
         long startTime = System.currentTimeMillis();
         LockedFileChannel lfc = new LockedFileChannel(_file, LockedFileChannel.Mode.rw);
@@ -188,8 +159,9 @@ public final class Hedit {
 
         FileChannel channel = lfc.getChannel();
 
+        boolean grown;
         try {
-            _updateHeader(channel, updates, headerIndex);
+            grown = _updateHeaders(channel, updates);
         } finally {
             try {
                 lfc.unlock();
@@ -204,132 +176,193 @@ public final class Hedit {
         long endTime = System.currentTimeMillis();
 
         if (LOG.isLoggable(Level.FINE)) {
-            LOG.log(Level.FINE, "Updated Primary Header in " +
-                    (endTime - startTime) + "ms");
+            LOG.log(Level.FINE, "Updated headers " + updates.keySet() + " of " +
+                    _file.getName() + (grown ? " (grown)" : "") +
+                    " in " + (endTime - startTime) + "ms");
         }
     }
 
+    /**
+     * Location of a header in the file, and of the cards that can be updated
+     * or used for new items.
+     */
+    private static final class HeaderLayout {
+        // Position of the first card with each keyword.
+        final Map<String, Long> cards = new HashMap<String, Long>();
+
+        // Positions of the cards that can be replaced by new items: the blank
+        // cards immediately before END, END itself and the cards after it.
+        final List<Long> room = new ArrayList<Long>();
 
-    private static <H extends HeaderItem> void _updateHeader(FileChannel channel, Collection<H> updates, int headerIndex)
+        // Number of blank cards at the start of room.
+        int blanks;
+
+        // Position right after the header's last record.
+        long end;
+    }
+
+    private boolean _updateHeaders(FileChannel channel, Map<Integer, ? extends Collection<? extends HeaderItem>> updates)
             throws IOException {
-        if (updates.size() == 0) {
-            return; // nothing to do
+
+        // Items to write over existing cards, and records to insert, by
+        // file position.
+        SortedMap<Long, byte[]> writes = new TreeMap<Long, byte[]>();
+        SortedMap<Long, ByteBuffer> inserts = new TreeMap<Long, ByteBuffer>();
+
+        if (updates.isEmpty()) return false;
+        List<HeaderLayout> layouts = _readLayouts(channel, Collections.max(updates.keySet()));
+
+        for (Map.Entry<Integer, ? extends Collection<? extends HeaderItem>> me : updates.entrySet()) {
+            _planUpdate(layouts.get(me.getKey()), me.getValue(), writes, inserts);
         }
 
-        Map<String, H> hash = HeaderItemUtil.hash(updates);
+        for (Map.Entry<Long, byte[]> me : writes.entrySet()) {
+            FileUtil.writeBuf(channel, ByteBuffer.wrap(me.getValue()), me.getKey());
+        }
+
+        // Insert from the end of the file back, so that the positions of the
+        // remaining inserts aren't moved.
+        List<Long> positions = new ArrayList<Long>(inserts.keySet());
+        Collections.reverse(positions);
+        for (Long pos : positions) {
+            FileUtil.insert(channel, inserts.get(pos), pos);
+        }
+        return !inserts.isEmpty();
+    }
+
+    private static List<HeaderLayout> _readLayouts(FileChannel channel, int lastIndex)
+            throws IOException {
 
-        boolean done = false;
-        int offset = 0;
+        List<HeaderLayout> res = new ArrayList<HeaderLayout>(lastIndex + 1);
         long pos = 0;
+        for (int i = 0; i <= lastIndex; ++i) {
+            if (pos >= channel.size()) {
+                throw new IOException("No header " + i + " in the file");
+            }
+            channel.position(pos);
+            HeaderLayout layout = new HeaderLayout();
+            Header header = _readLayout(channel, layout, i);
+            res.add(layout);
+            try {
+                pos = layout.end + calculateDataSectionSize(header);
+            } catch (FitsParseException ex) {
+                throw new IOException(ex);
+            }
+        }
+        return res;
+    }
+
+    // Determines the layout of the header at the current channel position,
+    // returning the items needed to find the next header.
+    private static Header _readLayout(FileChannel channel, HeaderLayout layout, int headerIndex)
+            throws IOException {
 
         byte[] bytes = new byte[FitsConstants.RECORD_SIZE];
+        Header res = new DefaultHeader(headerIndex);
 
-        advanceToHeader(channel, headerIndex);
-        
+        List<Long> blanks = new ArrayList<Long>();
         RecordIterator fit = RecordIterator.iterateFile(channel);
-        while (!done && fit.hasNext()) {
+        while (fit.hasNext()) {
             Record rec = fit.next();
-
-            pos = rec.position();
+            long pos = rec.position();
             rec.getBuffer().get(bytes);
-            offset = 0;
 
-            while (offset < bytes.length) {
+            for (int offset = 0; offset < bytes.length; offset += FitsConstants.HEADER_ITEM_SIZE) {
+                String card = new String(bytes, offset, FitsConstants.HEADER_ITEM_SIZE, FitsConstants.CHARSET_NAME);
+                String keyword = card.substring(0, 8).trim();
 
-                String keyword = (new String(bytes, offset, 8, FitsConstants.CHARSET_NAME)).trim();
                 if ("END".equals(keyword)) {
-                    done = true;
-                    break;
+                    layout.room.addAll(blanks);
+                    layout.blanks = blanks.size();
+                    for (int o = offset; o < bytes.length; o += FitsConstants.HEADER_ITEM_SIZE) {
+                        layout.room.add(pos + o);
+                    }
+                    layout.end = pos + FitsConstants.RECORD_SIZE;
+                    return res;
                 }
 
-                if (hash.containsKey(keyword)) {
-                    HeaderItem item = hash.get(keyword);
-                    ByteBuffer writeBuf = HeaderItemFormat.toByteBuffer(item);
-                    FileUtil.writeBuf(channel, writeBuf, pos + offset);
-                    hash.remove(keyword);
+                if (card.trim().length() == 0) {
+                    blanks.add(pos + offset);
+                    continue;
+                }
+                blanks.clear();
+
+                if (!layout.cards.containsKey(keyword)) {
+                    layout.cards.put(keyword, pos + offset);
+                }
+                if (DATA_SIZE_KEYWORDS.contains(keyword) || keyword.startsWith("NAXIS")) {
+                    try {
+                        res.add(HeaderItemFormat.parse(card));
+                    } catch (FitsParseException ex) {
+                        throw new IOException(ex);
+                    }
                 }
-                offset += FitsConstants.HEADER_ITEM_SIZE;
             }
         }
+        throw new IOException("Header " + headerIndex + " has no END");
+    }
 
+    // Works out where the updates of a header have to be written.
+    private <H extends HeaderItem> void _planUpdate(HeaderLayout layout, Collection<H> updates,
+                                                    SortedMap<Long, byte[]> writes,
+                                                    SortedMap<Long, ByteBuffer> inserts) {
 
-        if (hash.size() == 0) {
-            return; // nothing to add
-        }
-
-        // Create a List of the remaining header items.
-        List<H> remUpdates = new ArrayList<H>(updates);
-        for (ListIterator<H> it = remUpdates.listIterator(); it.hasNext();) {
-            HeaderItem item = it.next();
-            if (!hash.containsKey(item.getKeyword())) {
-                it.remove();
+        // Existing keywords are updated in place, the rest are added in the
+        // order in which they were given.
+        Map<String, H> hash = HeaderItemUtil.hash(updates);
+        Map<String, H> additions = new LinkedHashMap<String, H>();
+        for (H item : updates) {
+            String keyword = item.getKeyword();
+            Long pos = layout.cards.get(keyword);
+            if (pos == null) {
+                additions.put(keyword, hash.get(keyword));
+            } else {
+                writes.put(pos, HeaderItemFormat.toBytes(hash.get(keyword)));
             }
         }
+        if (additions.isEmpty()) return;
 
-        // Fill up any remaining space in the current record.
-        int remainingCards = done ? ((FitsConstants.RECORD_SIZE - offset) / FitsConstants.HEADER_ITEM_SIZE) : 0;
-        int limit = Math.min(remainingCards, remUpdates.size());
-        if (limit > 0) {
-            int bufsize = limit * FitsConstants.HEADER_ITEM_SIZE;
-            if (limit < remainingCards) {
-                bufsize += FitsConstants.HEADER_ITEM_SIZE; // for END
-            }
-            ByteBuffer buf = ByteBuffer.allocate(bufsize);
-            for (int i = 0; i < limit; ++i) {
-                HeaderItem item = remUpdates.get(i);
-                buf.put(HeaderItemFormat.toBytes(item));
-            }
+        List<H> items = new ArrayList<H>(additions.values());
+        int n = items.size();
+        List<Long> room = layout.room;
 
-            if (limit < remainingCards) {
-                buf.put("END".getBytes());
+        // Use the blank cards before END, or else move END down.
+        if (n <= layout.blanks) {
+            for (int i = 0; i < n; ++i) {
+                writes.put(room.get(i), HeaderItemFormat.toBytes(items.get(i)));
             }
-            buf.flip();
-            FileUtil.writeBuf(channel, buf, pos + offset);
-            if (limit < remainingCards) {
-                return;
+            return;
+        }
+        if (n < room.size()) {
+            for (int i = 0; i < n; ++i) {
+                writes.put(room.get(i), HeaderItemFormat.toBytes(items.get(i)));
             }
+            writes.put(room.get(n), END_CARD);
+            return;
         }
 
-        // Now we know we'll have to insert one or more records.
-        // Figure out how many.
-        pos += FitsConstants.RECORD_SIZE; // where the insert will happen
-        int rem = remUpdates.size() - limit + 1;  // + 1 for "END"
-
+        // Fill up the room and insert records right after the header for the
+        // rest, the padding as blank cards and END.
+        for (int i = 0; i < room.size(); ++i) {
+            writes.put(room.get(i), HeaderItemFormat.toBytes(items.get(i)));
+        }
+        int rem = n - room.size() + _padding + 1;  // + 1 for "END"
         int nrecs = rem / FitsConstants.ITEMS_PER_RECORD +
                 ((rem % FitsConstants.ITEMS_PER_RECORD == 0) ? 0 : 1);
         ByteBuffer buf = ByteBuffer.allocate(nrecs * FitsConstants.RECORD_SIZE);
-        for (int i = limit; i < remUpdates.size(); ++i) {
-            HeaderItem item = remUpdates.get(i);
-            buf.put(HeaderItemFormat.toBytes(item));
+        for (int i = room.size(); i < n; ++i) {
+            buf.put(HeaderItemFormat.toBytes(items.get(i)));
         }
-        buf.put("END".getBytes());
+        for (int i = 0; i < _padding * FitsConstants.HEADER_ITEM_SIZE; ++i) {
+            buf.put((byte) ' ');
+        }
+        buf.put(END_CARD);
 
         // Fill remainder of the buffer with blank chars.
-        for (int i = buf.position(); i < buf.capacity(); ++i) {
+        while (buf.hasRemaining()) {
             buf.put((byte) ' ');
         }
-
         buf.flip();
-        FileUtil.insert(channel, buf, pos);
-    }
-
-    /**
-     * Moves the channel position to the header with index headerIndex
-     */
-    private static void advanceToHeader(FileChannel channel, int headerIndex) throws IOException {
-        int currentHeaderIndex = 0;
-
-        while (headerIndex > currentHeaderIndex) {
-            Header currentHeader = null;
-            try {
-                currentHeader = _readHeader(channel, null, currentHeaderIndex++);
-            } catch (FitsParseException e) {
-                throw new IOException(e);
-            }
-
-            int dataSize = calculateDataSectionSize(currentHeader);
-
-            channel.position(dataSize + channel.position());
-        }
+        inserts.put(layout.end, buf);
     }
-}
\ No newline at end of file
+}
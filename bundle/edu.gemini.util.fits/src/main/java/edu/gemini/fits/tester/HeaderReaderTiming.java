@@ -0,0 +1,108 @@
+package edu.gemini.fits.tester;
+
+import edu.gemini.fits.DefaultHeaderItem;
+import edu.gemini.fits.FitsConstants;
+import edu.gemini.fits.Header;
+import edu.gemini.fits.HeaderItemFormat;
+import edu.gemini.fits.HeaderReader;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Measures the throughput of reading a few keywords from the primary headers
+ * of a directory of multi-extension FITS files, sequentially and in
+ * parallel, with and without the header offsets already indexed.
+ *
+ * <p>Usage: HeaderReaderTiming [number of files] [threads] [directory]
+ */
+public class HeaderReaderTiming {
+    private static final int KEYWORDS   = 300;
+    private static final int EXTENSIONS = 3;
+
+    private static final Set<String> WANTED = new HashSet<String>(Arrays.asList(
+            "DATALAB", "OBSCLASS", "RAWGEMQA", "RAWPIREQ", "RELEASE", "PROP_MD", "DATE-OBS", "TIME-OBS"));
+
+    private static void putCard(ByteBuffer buf, String s) {
+        buf.put(String.format("%-80s", s).getBytes(FitsConstants.CHARSET));
+    }
+
+    private static void endHeader(ByteBuffer buf) {
+        putCard(buf, "END");
+        while (buf.position() % FitsConstants.RECORD_SIZE != 0) buf.put((byte) ' ');
+    }
+
+    private static void createFile(File f) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(64 * FitsConstants.RECORD_SIZE);
+        putCard(buf, "SIMPLE  =                    T");
+        putCard(buf, "BITPIX  =                   16");
+        putCard(buf, "NAXIS   =                    0");
+        putCard(buf, "EXTEND  =                    T");
+        for (int i = 0; i < KEYWORDS; ++i) {
+            buf.put(HeaderItemFormat.toBytes(DefaultHeaderItem.create("KEY" + i, "Value " + i, "Comment " + i)));
+        }
+        buf.put(HeaderItemFormat.toBytes(DefaultHeaderItem.create("DATALAB", "GS-2015A-Q-1-1-001", "Label")));
+        buf.put(HeaderItemFormat.toBytes(DefaultHeaderItem.create("OBSCLASS", "science", "Class")));
+        endHeader(buf);
+
+        for (int i = 0; i < EXTENSIONS; ++i) {
+            putCard(buf, "XTENSION= 'IMAGE   '");
+            putCard(buf, "BITPIX  =                   16");
+            putCard(buf, "NAXIS   =                    2");
+            putCard(buf, "NAXIS1  =                   72");
+            putCard(buf, "NAXIS2  =                   40");
+            endHeader(buf);
+            buf.position(buf.position() + 2 * FitsConstants.RECORD_SIZE);
+        }
+
+        FileOutputStream out = new FileOutputStream(f);
+        try {
+            out.write(buf.array(), 0, buf.position());
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void time(String label, File dir, int files, int threads) throws Exception {
+        long t0 = System.nanoTime();
+        Map<File, Header> res = HeaderReader.readPrimaries(dir, null, WANTED, threads);
+        long ms = Math.max(1, (System.nanoTime() - t0) / 1000000);
+        if (res.size() != files) throw new RuntimeException("Read " + res.size() + " of " + files);
+        System.out.println(String.format("%-22s %6d ms %8d files/s", label, ms, files * 1000L / ms));
+    }
+
+    public static void main(String[] args) throws Exception {
+        int files   = (args.length > 0) ? Integer.parseInt(args[0]) : 2000;
+        int threads = (args.length > 1) ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        File parent = (args.length > 2) ? new File(args[2]) : null;
+
+        File dir = File.createTempFile("HeaderReaderTiming", "", parent);
+        if (!dir.delete() || !dir.mkdir()) throw new IOException("Could not create " + dir);
+        try {
+            for (int i = 0; i < files; ++i) {
+                createFile(new File(dir, String.format("S20150101S%04d.fits", i)));
+            }
+            System.out.println(files + " files, " + threads + " threads");
+
+            // Warm up the JIT.
+            HeaderReader.readPrimaries(dir, null, WANTED, threads);
+
+            HeaderReader.clearIndex();
+            time("sequential, cold", dir, files, 1);
+            time("sequential, indexed", dir, files, 1);
+            HeaderReader.clearIndex();
+            time("parallel, cold", dir, files, threads);
+            time("parallel, indexed", dir, files, threads);
+        } finally {
+            File[] fs = dir.listFiles();
+            if (fs != null) for (File f : fs) f.delete();
+            dir.delete();
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package edu.gemini.fits.tester;
+
+import edu.gemini.fits.DefaultHeaderItem;
+import edu.gemini.fits.FileUtil;
+import edu.gemini.fits.FitsConstants;
+import edu.gemini.fits.HeaderItem;
+import edu.gemini.fits.HeaderItemFormat;
+import edu.gemini.fits.Hedit;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Times adding keywords to the primary header of a large multi-extension
+ * FITS file: shifting the file in place without padding (the old way),
+ * shifting it with padding, and using the padding left by the previous
+ * update.
+ *
+ * <p>Usage: HeditTiming [size in MB] [directory]
+ */
+public class HeditTiming {
+    private static final int EXTENSIONS = 12;
+
+    private static ByteBuffer card(String s) {
+        return ByteBuffer.wrap(String.format("%-80s", s).getBytes(FitsConstants.CHARSET));
+    }
+
+    // Writes a header of the given cards, ending in a full record.
+    private static void writeHeader(FileChannel c, List<String> cards) throws IOException {
+        for (String s : cards) c.write(card(s));
+        c.write(card("END"));
+        long over = c.position() % FitsConstants.RECORD_SIZE;
+        if (over != 0) {
+            byte[] blanks = new byte[(int) (FitsConstants.RECORD_SIZE - over)];
+            Arrays.fill(blanks, (byte) ' ');
+            c.write(ByteBuffer.wrap(blanks));
+        }
+    }
+
+    private static File createMef(File dir, long size) throws IOException {
+        File f = File.createTempFile("HeditTiming", ".fits", dir);
+        f.deleteOnExit();
+
+        int rows = (int) (size / EXTENSIONS / 4096 / 4);
+        RandomAccessFile raf = new RandomAccessFile(f, "rw");
+        try {
+            FileChannel c = raf.getChannel();
+            writeHeader(c, Arrays.asList(
+                    "SIMPLE  =                    T",
+                    "BITPIX  =                   16",
+                    "NAXIS   =                    0",
+                    "EXTEND  =                    T"));
+            ByteBuffer data = ByteBuffer.allocate(4096 * 4);
+            for (int i = 0; i < EXTENSIONS; ++i) {
+                writeHeader(c, Arrays.asList(
+                        "XTENSION= 'IMAGE   '",
+                        "BITPIX  =                  -32",
+                        "NAXIS   =                    2",
+                        String.format("NAXIS1  = %20d", 4096),
+                        String.format("NAXIS2  = %20d", rows),
+                        "PCOUNT  =                    0",
+                        "GCOUNT  =                    1"));
+                for (int r = 0; r < rows; ++r) {
+                    data.clear();
+                    c.write(data);
+                }
+            }
+        } finally {
+            raf.close();
+        }
+        return f;
+    }
+
+    private static List<HeaderItem> items(String prefix, int count) {
+        List<HeaderItem> res = new ArrayList<HeaderItem>(count);
+        for (int i = 0; i < count; ++i) {
+            res.add(DefaultHeaderItem.create(prefix + i, "Value " + i, "Comment " + i));
+        }
+        return res;
+    }
+
+    // Adds a record to the primary header by shifting the file: the first 4
+    // cards followed by the items, leaving 4 blank cards before END.
+    private static void insertInPlace(File f, List<HeaderItem> items) throws IOException {
+        int fixed = 4 * FitsConstants.HEADER_ITEM_SIZE;
+        RandomAccessFile raf = new RandomAccessFile(f, "rw");
+        try {
+            FileChannel c = raf.getChannel();
+            ByteBuffer buf = ByteBuffer.allocate(FitsConstants.RECORD_SIZE);
+            buf.limit(fixed);
+            FileUtil.readBuf(c, buf, 0);
+            buf.limit(buf.capacity());
+            for (HeaderItem hi : items.subList(0, FitsConstants.ITEMS_PER_RECORD - 4)) {
+                buf.put(HeaderItemFormat.toBytes(hi));
+            }
+            buf.flip();
+            FileUtil.insert(c, buf, 0);
+
+            byte[] blanks = new byte[fixed];
+            Arrays.fill(blanks, (byte) ' ');
+            FileUtil.writeBuf(c, ByteBuffer.wrap(blanks), FitsConstants.RECORD_SIZE);
+        } finally {
+            raf.close();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        long size = (args.length > 0) ? Long.parseLong(args[0]) : 512;
+        File dir  = (args.length > 1) ? new File(args[1]) : null;
+        File f    = createMef(dir, size * 1024 * 1024);
+        System.out.println("File of " + (f.length() / 1024 / 1024) + " MB");
+
+        long t0 = System.currentTimeMillis();
+        insertInPlace(f, items("OLD", FitsConstants.ITEMS_PER_RECORD));
+        long t1 = System.currentTimeMillis();
+        System.out.println("insert in place:      " + (t1 - t0) + " ms");
+
+        new Hedit(f, 2 * FitsConstants.ITEMS_PER_RECORD).updatePrimary(items("NEW", 40));
+        long t2 = System.currentTimeMillis();
+        System.out.println("insert with padding:  " + (t2 - t1) + " ms");
+
+        new Hedit(f, 2 * FitsConstants.ITEMS_PER_RECORD).updatePrimary(items("QA", 40));
+        long t3 = System.currentTimeMillis();
+        System.out.println("add to padding:       " + (t3 - t2) + " ms");
+
+        new Hedit(f).updatePrimary(Collections.singletonList(
+                DefaultHeaderItem.create("QA0", "Updated", "Updated")));
+        long t4 = System.currentTimeMillis();
+        System.out.println("update in place:      " + (t4 - t3) + " ms");
+
+        if (!f.delete()) System.out.println("Could not delete " + f);
+    }
+}
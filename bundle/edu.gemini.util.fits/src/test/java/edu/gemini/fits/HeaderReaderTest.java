@@ -0,0 +1,184 @@
+//
+// $Id$
+//
+
+package edu.gemini.fits;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ *
+ */
+public class HeaderReaderTest extends TestCase {
+    private File _dir;
+
+    public void setUp() throws Exception {
+        super.setUp();
+        _dir = File.createTempFile("HeaderReaderTest", "");
+        assertTrue(_dir.delete());
+        assertTrue(_dir.mkdir());
+    }
+
+    public void tearDown() throws Exception {
+        File[] files = _dir.listFiles();
+        if (files != null) for (File f : files) f.delete();
+        _dir.delete();
+    }
+
+    private static File _extensionsFile() throws Exception {
+        return new File(HeaderReaderTest.class.getResource("FITS_WITH_EXTENSIONS.fits").toURI());
+    }
+
+    // Writes a primary header with the given keys and one record of data.
+    private File _createFile(String name, int nkeys) throws Exception {
+        int keybytes = (nkeys + 1) * FitsConstants.HEADER_ITEM_SIZE;
+        int keyrecs  = (keybytes + FitsConstants.RECORD_SIZE - 1) / FitsConstants.RECORD_SIZE;
+        ByteBuffer buf = ByteBuffer.allocate((keyrecs + 1) * FitsConstants.RECORD_SIZE);
+
+        for (int i = 0; i < nkeys; ++i) {
+            buf.put(HeaderItemFormat.toBytes(DefaultHeaderItem.create("KEY" + i, "Value " + i, "Comment " + i)));
+        }
+        buf.put(String.format("%-80s", "END").getBytes(FitsConstants.CHARSET));
+        while (buf.position() < keyrecs * FitsConstants.RECORD_SIZE) buf.put((byte) ' ');
+
+        File f = new File(_dir, name);
+        FileOutputStream out = new FileOutputStream(f);
+        try {
+            out.write(buf.array());
+        } finally {
+            out.close();
+        }
+        return f;
+    }
+
+    private static List<String> _keywords(Header h) {
+        List<String> res = new ArrayList<String>();
+        for (HeaderItem hi : h) res.add(hi.getKeyword());
+        return res;
+    }
+
+    public void testReadSubset() throws Exception {
+        File f = _extensionsFile();
+        Set<String> keys = new HashSet<String>(Arrays.asList("NAXIS", "EXTNAME", "BITPIX", "NOTTHERE", "TOOLONGKEY"));
+
+        List<Header> all = new HeaderReader(f).readAllHeaders(null);
+        List<Header> sub = new HeaderReader(f).readAllHeaders(keys);
+        assertEquals(all.size(), sub.size());
+        for (int i = 0; i < all.size(); ++i) {
+            List<String> expected = new ArrayList<String>();
+            for (HeaderItem hi : all.get(i)) {
+                if (keys.contains(hi.getKeyword())) expected.add(hi.getKeyword() + "=" + hi.getValue());
+            }
+            List<String> actual = new ArrayList<String>();
+            for (HeaderItem hi : sub.get(i)) actual.add(hi.getKeyword() + "=" + hi.getValue());
+            assertEquals(i, sub.get(i).getIndex());
+            assertFalse(actual.isEmpty());
+            assertEquals(expected, actual);
+        }
+
+        Header ext = new HeaderReader(f).readHeader(1, keys);
+        assertEquals(_keywords(sub.get(1)), _keywords(ext));
+    }
+
+    public void testMissingHeader() throws Exception {
+        try {
+            new HeaderReader(_extensionsFile()).readHeader(2, null);
+            fail();
+        } catch (FitsParseException ex) {
+            // expected
+        }
+    }
+
+    public void testNoEnd() throws Exception {
+        File f = new File(_dir, "noend.fits");
+        FileOutputStream out = new FileOutputStream(f);
+        try {
+            byte[] blanks = new byte[FitsConstants.RECORD_SIZE];
+            Arrays.fill(blanks, (byte) ' ');
+            out.write(blanks);
+        } finally {
+            out.close();
+        }
+        try {
+            new HeaderReader(f).readHeader(0, null);
+            fail();
+        } catch (FitsParseException ex) {
+            // expected
+        }
+    }
+
+    public void testGrownHeader() throws Exception {
+        File f = _createFile("grown.fits", 35);
+        Set<String> keys = new HashSet<String>(Arrays.asList("KEY0", "KEY40"));
+        assertEquals(Arrays.asList("KEY0"), _keywords(new HeaderReader(f).readHeader(0, keys)));
+
+        List<HeaderItem> updates = new ArrayList<HeaderItem>();
+        for (int i = 35; i < 45; ++i) {
+            updates.add(DefaultHeaderItem.create("KEY" + i, "Value " + i, "Comment " + i));
+        }
+        new Hedit(f).updatePrimary(updates);
+
+        assertEquals(Arrays.asList("KEY0", "KEY40"), _keywords(new HeaderReader(f).readHeader(0, keys)));
+        assertEquals(45, new HeaderReader(f).readHeader(0, null).size());
+    }
+
+    // A primary header with a data size that cannot be worked out can still
+    // be read, only the headers after it can't.
+    public void testMalformedDataSize() throws Exception {
+        File f = new File(_dir, "malformed.fits");
+        ByteBuffer buf = ByteBuffer.allocate(FitsConstants.RECORD_SIZE);
+        for (String card : Arrays.asList("SIMPLE  =                    T", "BITPIX  = 'sixteen '",
+                                         "NAXIS   =                    2", "DATALAB = 'GS-1    '", "END")) {
+            buf.put(String.format("%-80s", card).getBytes(FitsConstants.CHARSET));
+        }
+        while (buf.hasRemaining()) buf.put((byte) ' ');
+        FileOutputStream out = new FileOutputStream(f);
+        try {
+            out.write(buf.array());
+            out.write(buf.array());
+        } finally {
+            out.close();
+        }
+
+        Set<String> keys = new HashSet<String>(Arrays.asList("DATALAB"));
+        assertEquals(Arrays.asList("DATALAB"), _keywords(new HeaderReader(f).readHeader(0, keys)));
+        try {
+            new HeaderReader(f).readHeader(1, keys);
+            fail();
+        } catch (FitsParseException ex) {
+            // expected
+        }
+
+        File good = _createFile("good.fits", 5);
+        Map<File, Header> res = HeaderReader.readPrimaries(Arrays.asList(f, good), keys, 2);
+        assertEquals(Arrays.asList(f, good), new ArrayList<File>(res.keySet()));
+    }
+
+    public void testReadPrimaries() throws Exception {
+        List<File> files = new ArrayList<File>();
+        for (int i = 0; i < 20; ++i) {
+            files.add(_createFile(String.format("S%04d.fits", i), i * 5));
+        }
+        File empty = new File(_dir, "empty.fits");
+        assertTrue(empty.createNewFile());
+
+        Set<String> keys = new HashSet<String>(Arrays.asList("KEY0", "KEY50"));
+        Map<File, Header> res = HeaderReader.readPrimaries(_dir, null, keys, 4);
+        assertEquals(files, new ArrayList<File>(res.keySet()));
+        for (int i = 0; i < files.size(); ++i) {
+            int expected = (i == 0) ? 0 : ((i > 10) ? 2 : 1);
+            assertEquals(expected, res.get(files.get(i)).size());
+        }
+        assertEquals(res.keySet(), HeaderReader.readPrimaries(files, keys, 1).keySet());
+    }
+}
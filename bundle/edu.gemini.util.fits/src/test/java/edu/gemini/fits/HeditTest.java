@@ -16,9 +16,11 @@ import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -329,6 +331,92 @@ public class HeditTest extends TestCase {
         assertEquals("New Comment", extensionHeader.get("TFORM13").getComment());
     }
 
+    // Replaces the last keywords of the header with blank cards.
+    private void _blankLastKeys(int existingKeys, int blankKeys) throws Exception {
+        RandomAccessFile raf = new RandomAccessFile(_f, "rw");
+        try {
+            byte[] blanks = new byte[blankKeys * FitsConstants.HEADER_ITEM_SIZE];
+            Arrays.fill(blanks, (byte) ' ');
+            long pos = (existingKeys - blankKeys) * FitsConstants.HEADER_ITEM_SIZE;
+            FileUtil.writeBuf(raf.getChannel(), ByteBuffer.wrap(blanks), pos);
+        } finally {
+            raf.close();
+        }
+    }
+
+    public void testAddToBlankCards() throws Exception {
+        _initFile(10, 1);
+        _blankLastKeys(10, 3);
+        long size = _f.length();
+
+        List<HeaderItem> updates = _createHeaderItems(12).subList(10, 12);
+        new Hedit(_f).updatePrimary(updates);
+
+        assertEquals(size, _f.length());
+        Header h = new Hedit(_f).readPrimary();
+        assertEquals("Value 11", h.get("KEY11").getValue());
+        assertNull(h.get("KEY9"));
+    }
+
+    public void testPadding() throws Exception {
+        _initFile(10, 1);
+
+        // 26 new keys don't fit, so the header grows by the 36 blank cards of
+        // padding as well.
+        List<HeaderItem> items = _createHeaderItems(72);
+        RandomAccessFile before = new RandomAccessFile(_f, "r");
+        try {
+            new Hedit(_f, 36).updatePrimary(items.subList(10, 36));
+            assertEquals(3 * FitsConstants.RECORD_SIZE + FitsConstants.RECORD_SIZE, _f.length());
+
+            // The file grew in place, so a channel opened before sees it.
+            assertEquals(_f.length(), before.getChannel().size());
+        } finally {
+            before.close();
+        }
+
+        // The next ones fit in the padding and after END.
+        new Hedit(_f, 36).updatePrimary(items.subList(36, 72));
+        assertEquals(3 * FitsConstants.RECORD_SIZE + FitsConstants.RECORD_SIZE, _f.length());
+
+        Header h = new Hedit(_f).readPrimary();
+        assertEquals(72, h.size());
+        assertEquals("Value 35", h.get("KEY35").getValue());
+        assertEquals("Value 71", h.get("KEY71").getValue());
+
+        // The data is still there.
+        RandomAccessFile raf = new RandomAccessFile(_f, "r");
+        try {
+            ByteBuffer data = ByteBuffer.allocate(FitsConstants.RECORD_SIZE);
+            FileUtil.readBuf(raf.getChannel(), data, 3 * FitsConstants.RECORD_SIZE);
+            assertEquals(ByteBuffer.allocate(FitsConstants.RECORD_SIZE), data.flip());
+        } finally {
+            raf.close();
+        }
+    }
+
+    public void testUpdateSeveralHeaders() throws Exception {
+        File fitsFile = new File(HeditTest.class.getResource("FITS_WITH_EXTENSIONS.fits").toURI());
+        copyFile(fitsFile, _f);
+        List<Header> before = new Hedit(_f).readAllHeaders();
+
+        // Enough new keys to make both headers grow.
+        List<HeaderItem> items = _createHeaderItems(40);
+        Map<Integer, List<HeaderItem>> updates = new HashMap<Integer, List<HeaderItem>>();
+        updates.put(0, items);
+        updates.put(1, items.subList(0, 30));
+        new Hedit(_f).updateHeaders(updates);
+
+        List<Header> headers = new Hedit(_f).readAllHeaders();
+        assertEquals(2, headers.size());
+        assertEquals(before.get(0).getKeywords().size() + 40, headers.get(0).getKeywords().size());
+        assertEquals(before.get(1).getKeywords().size() + 30, headers.get(1).getKeywords().size());
+        assertEquals("Value 39", headers.get(0).get("KEY39").getValue());
+        assertEquals("Value 29", headers.get(1).get("KEY29").getValue());
+        assertEquals(before.get(1).get("TFORM13").getValue(), headers.get(1).get("TFORM13").getValue());
+        assertEquals(0, _f.length() % FitsConstants.RECORD_SIZE);
+    }
+
     private static void copyFile(File sourceFile, File destFile) throws IOException {
         if (!destFile.exists()) {
             destFile.createNewFile();
@@ -13,6 +13,22 @@ import edu.gemini.util.security.auth.DSA
 
 class KeyServer private (keyPair: KeyPair, mailer: KeyMailer, db: KeyDatabase) { ks =>
 
+  // Notified with the principal whose previously issued keys are no longer valid
+  private val revocationListeners = new java.util.concurrent.CopyOnWriteArrayList[GeminiPrincipal => Unit]()
+
+  /**
+   * Adds a function to be called whenever the keys previously issued for a principal become invalid, because the key
+   * was revoked or the password changed. Useful for anything caching the result of `validateKey`.
+   */
+  def addRevocationListener(l: GeminiPrincipal => Unit): Unit =
+    revocationListeners.add(l)
+
+  def removeRevocationListener(l: GeminiPrincipal => Unit): Unit =
+    revocationListeners.remove(l)
+
+  private def notifyRevoked(p: GeminiPrincipal): Action[Unit] =
+    IO(revocationListeners.toArray(Array.empty[GeminiPrincipal => Unit]).foreach(_(p))).liftIO[Action]
+
   /** Action to retrieve the key for the specified principal using the given password. */
   def tryKey(principal: GeminiPrincipal, pass: String): Action[Key] =
     for {
@@ -43,6 +59,7 @@ class KeyServer private (keyPair: KeyPair, mailer: KeyMailer, db: KeyDatabase) {
   def setPassword(p: GeminiPrincipal, pass: String): Action[Key] =
     for {
       v <- db.setPass(p, pass).liftIO[Action]
+      _ <- notifyRevoked(p)
       k <- Key.sign(keyPair.getPrivate, p, v)
     } yield k
 
@@ -63,7 +80,10 @@ class KeyServer private (keyPair: KeyPair, mailer: KeyMailer, db: KeyDatabase) {
 
   /** Action to revoke a ket. */
   def revokeKey(p: GeminiPrincipal): Action[Unit] =
-    db.revokeKey(p).liftIO[Action]
+    for {
+      _ <- db.revokeKey(p).liftIO[Action]
+      _ <- notifyRevoked(p)
+    } yield ()
 
   /** Action to generate a random password. */
   def randomPassword: Action[String] =
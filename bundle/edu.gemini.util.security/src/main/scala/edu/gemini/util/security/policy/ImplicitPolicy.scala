@@ -128,6 +128,10 @@ class ImplicitPolicy private (db: IDBDatabaseService, ps: Set[Principal]) {
 object ImplicitPolicy {
 
   import java.awt.{ AWTEvent, EventQueue }
+  import java.util.concurrent.atomic.AtomicLong
+  import edu.gemini.pot.sp.SPNodeKey
+  import edu.gemini.shared.util.VersionVector
+  import edu.gemini.pot.sp.version.LifespanId
   import scalaz.effect.IO
   import edu.gemini.util.security.auth.keychain._, Action._
   import scala.collection.JavaConverters._
@@ -158,8 +162,77 @@ object ImplicitPolicy {
 
   }
 
+  /**
+   * Remembers decisions for permissions that depend on a program, i.e. on its PI, NGO and staff contacts, affiliate
+   * and library flag. Decisions are keyed by principals and permission, which names the program, and stamped with the
+   * key and version of the program node they were made against. Any change to the program's data object (or replacing
+   * the program) changes the stamp, so stale decisions are simply never matched again and eventually evicted. A copy
+   * of the program with the same stamp in another database has the same data, so the decision holds there too. Permissions that don't depend on a program are cheap to
+   * check and are not cached, nor are merge permissions, which depend on the observations being merged.
+   */
+  object DecisionCache {
+
+    val MaxEntries = 10000
+
+    private type Stamp = (SPNodeKey, VersionVector[LifespanId, Integer])
+
+    private case class Key(ps: Set[Principal], p: Permission)
+
+    // in access order, i.e. least recently used first
+    private val decisions = new java.util.LinkedHashMap[Key, (Stamp, Boolean)](16, 0.75f, true) {
+      override def removeEldestEntry(e: java.util.Map.Entry[Key, (Stamp, Boolean)]): Boolean =
+        size > MaxEntries
+    }
+
+    private val hits = new AtomicLong()
+    private val misses = new AtomicLong()
+
+    private def programOf(p: Permission): Option[SPProgramID] = p match {
+      case StaffPermission(pid)       => pid
+      case NgoPermission(pid)         => pid
+      case PiPermission(pid)          => pid
+      case ProgramPermission.Read(id) => Some(id)
+      case _                          => None
+    }
+
+    def check(db: IDBDatabaseService, ps: Set[Principal], p: Permission)(a: => Boolean): Boolean =
+      programOf(p).flatMap(pid => Option(db.lookupProgramByID(pid))).fold(a) { prog =>
+        val key   = Key(ps, p)
+        val stamp = (prog.getNodeKey, prog.getVersion)
+        synchronized { Option(decisions.get(key)) } match {
+          case Some((s, b)) if s == stamp =>
+            hits.incrementAndGet()
+            b
+          case _                          =>
+            misses.incrementAndGet()
+            val b = a
+            synchronized { decisions.put(key, (stamp, b)) }
+            b
+        }
+      }
+
+    /** Forgets all decisions. The hit and miss counts are not reset. */
+    def clear(): Unit = synchronized {
+      decisions.clear()
+    }
+
+    /** Gets a snapshot of the cache usage. */
+    def stats: Stats = synchronized {
+      Stats(hits.get, misses.get, decisions.size)
+    }
+
+  }
+
+  /** Decision cache usage statistics. */
+  case class Stats(hits: Long, misses: Long, entries: Int) {
+    def hitRate: Double = if (hits + misses == 0) 0.0 else hits.toDouble / (hits + misses)
+
+    override def toString: String =
+      f"hits=$hits misses=$misses hitRate=${hitRate * 100}%.1f%% entries=$entries"
+  }
+
   def hasPermission(db: IDBDatabaseService, ps: Set[Principal], p: Permission): IO[Boolean] =
-    IO(EventCache.check(p)(new ImplicitPolicy(db, ps).implies(p)))
+    IO(EventCache.check(p)(DecisionCache.check(db, ps, p)(new ImplicitPolicy(db, ps).implies(p))))
 
   def hasPermission(db: IDBDatabaseService, kc: KeyChain, p: Permission): Action[Boolean] =
     kc.selection.flatMap {
@@ -190,6 +263,9 @@ object ImplicitPolicyForJava {
       case f                         => throw f.toException
     }, identity)
 
+  def decisionCacheStats: ImplicitPolicy.Stats =
+    ImplicitPolicy.DecisionCache.stats
+
   def checkPermission(db: IDBDatabaseService, ps: java.util.Collection[Principal], p: Permission): Unit =
     if (hasPermission(db, ps, p)) () else fail(p)
 
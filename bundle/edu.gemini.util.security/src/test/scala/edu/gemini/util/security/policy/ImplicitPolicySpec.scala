@@ -0,0 +1,89 @@
+package edu.gemini.util.security.policy
+
+import edu.gemini.pot.sp.ISPProgram
+import edu.gemini.pot.spdb.{DBLocalDatabase, IDBDatabaseService}
+import edu.gemini.spModel.core.{Affiliate, SPProgramID}
+import edu.gemini.spModel.gemini.obscomp.SPProgram
+import edu.gemini.spModel.gemini.obscomp.SPProgram.PIInfo
+import edu.gemini.util.security.permission.PiPermission
+import edu.gemini.util.security.principal.UserPrincipal
+
+import java.security.Principal
+
+import org.specs2.mutable.Specification
+
+class ImplicitPolicySpec extends Specification {
+  import ImplicitPolicy.DecisionCache
+
+  // The decision cache is shared, so examples that count on it can't overlap.
+  sequential
+
+  val Q1      = SPProgramID.toProgramID("GS-2015B-Q-1")
+  val PiEmail = "acamus@ualger.dz"
+  val Pi      = Set[Principal](UserPrincipal(PiEmail))
+  val Other   = Set[Principal](UserPrincipal("jpsartre@ens.fr"))
+  val PiPerm  = PiPermission(Some(Q1))
+
+  def setPi(p: ISPProgram, email: String): Unit = {
+    val dob = p.getDataObject.asInstanceOf[SPProgram]
+    dob.setPIInfo(new PIInfo("Albert", "Camus", email, "", Affiliate.UNITED_STATES))
+    p.setDataObject(dob)
+  }
+
+  def withProgram[A](body: (IDBDatabaseService, ISPProgram) => A): A = {
+    val db = DBLocalDatabase.createTransient()
+    try {
+      val p = db.getFactory.createProgram(null, Q1)
+      setPi(p, PiEmail)
+      db.put(p)
+      DecisionCache.clear()
+      body(db, db.lookupProgramByID(Q1))
+    } finally {
+      db.getDBAdmin.shutdown()
+    }
+  }
+
+  def check(db: IDBDatabaseService, ps: Set[Principal]): Boolean =
+    ImplicitPolicy.hasPermission(db, ps, PiPerm).unsafePerformIO()
+
+  // Hits and misses since the given stats were taken.
+  def since(s: ImplicitPolicy.Stats): (Long, Long) = {
+    val t = DecisionCache.stats
+    (t.hits - s.hits, t.misses - s.misses)
+  }
+
+  "DecisionCache" should {
+    "reuse the decision for an unchanged program" in withProgram { (db, _) =>
+      val s0 = DecisionCache.stats
+      val b0 = check(db, Pi)
+      val b1 = check(db, Pi)
+      (b0 must beTrue) and (b1 must beTrue) and (since(s0) must_== ((1L, 1L)))
+    }
+
+    "miss for different principals" in withProgram { (db, _) =>
+      val s0 = DecisionCache.stats
+      val b0 = check(db, Pi)
+      val b1 = check(db, Other)
+      (b0 must beTrue) and (b1 must beFalse) and (since(s0) must_== ((0L, 2L)))
+    }
+
+    "decide again once the program changes" in withProgram { (db, p) =>
+      val b0 = check(db, Pi)
+      val s0 = DecisionCache.stats
+      setPi(p, "jpsartre@ens.fr")
+      val b1 = check(db, Pi)
+      val b2 = check(db, Other)
+      (b0 must beTrue) and (b1 must beFalse) and (b2 must beTrue) and (since(s0) must_== ((0L, 2L)))
+    }
+
+    "not cache permissions that don't name a program" in withProgram { (db, _) =>
+      val s0 = DecisionCache.stats
+      ImplicitPolicy.hasPermission(db, Pi, PiPermission(None)).unsafePerformIO()
+      since(s0) must_== ((0L, 0L))
+    }
+
+    "report its hit rate" in {
+      ImplicitPolicy.Stats(3, 1, 2).hitRate must_== 0.75
+    }
+  }
+}
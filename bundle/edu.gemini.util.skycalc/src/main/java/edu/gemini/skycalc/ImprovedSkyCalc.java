@@ -38,6 +38,17 @@ public final class ImprovedSkyCalc extends ImprovedSkyCalcMethods {
     private Date cachedDate;
     private boolean cachedCalculateMoon;
 
+    // Results that depend only on the time and not on the target.  These are
+    // kept until the time changes so that calculating many targets at the same
+    // time only calculates the sidereal time and the sun and moon once.
+    private Date timeDate;
+    private boolean timeMoon;
+    private double jdut;
+    private double sid;
+    private double curepoch;
+    private double rasun, decsun;
+    private double ramoon, decmoon, distmoon;
+
     public ImprovedSkyCalc(final Site site) {
         hoursLongitude = -site.longitude/15.;
         degreesLatitude = site.latitude;
@@ -56,22 +67,69 @@ public final class ImprovedSkyCalc extends ImprovedSkyCalcMethods {
     	cachedDate = date;
     	cachedCalculateMoon = calculateMoon;
 
-        final DateTime dateTime = new DateTime(date);
-        final DoubleRef jdut = new DoubleRef();
-        final DoubleRef sid = new DoubleRef();
-        final DoubleRef curepoch = new DoubleRef();
-
-        setup_time_place(dateTime, hoursLongitude, jdut, sid, curepoch);
+        calculateTime(date, calculateMoon);
 
         final double objra = obj.getRaDeg()/15;
         final double objdec = obj.getDecDeg();
         final double objepoch = 2000.;
 
-        getCircumstances(objra, objdec, objepoch, curepoch.d, sid.d, degreesLatitude, jdut, calculateMoon);
+        getCircumstances(objra, objdec, objepoch, curepoch, sid, degreesLatitude, calculateMoon);
+    }
+
+    // Calculates the time dependent results, unless already done for this time.
+    private void calculateTime(final Date date, final boolean calculateMoon) {
+        if (date.equals(timeDate) && (timeMoon || !calculateMoon)) return;
+
+        final DateTime dateTime = new DateTime(date);
+        final DoubleRef jdutRef = new DoubleRef();
+        final DoubleRef sidRef = new DoubleRef();
+        final DoubleRef curepochRef = new DoubleRef();
+
+        setup_time_place(dateTime, hoursLongitude, jdutRef, sidRef, curepochRef);
+        jdut = jdutRef.d;
+        sid = sidRef.d;
+        curepoch = curepochRef.d;
+
+        if (calculateMoon) {
+            final DoubleRef az = new DoubleRef();
+            final DoubleRef ramoonRef = new DoubleRef();
+            final DoubleRef decmoonRef = new DoubleRef();
+            final DoubleRef distmoonRef = new DoubleRef();
+            final DoubleRef georamoon = new DoubleRef();
+            final DoubleRef geodecmoon = new DoubleRef();
+            final DoubleRef geodistmoon = new DoubleRef();
+            final DoubleRef rasunRef = new DoubleRef();
+            final DoubleRef decsunRef = new DoubleRef();
+            final DoubleRef distsun = new DoubleRef();
+            final DoubleRef x = new DoubleRef();
+            final DoubleRef y = new DoubleRef();
+            final DoubleRef z = new DoubleRef();
+            final DoubleRef toporasun = new DoubleRef();
+            final DoubleRef topodecsun = new DoubleRef();
+            final double elevsea = siteAltitude;
+
+            accusun(jdut,sid,degreesLatitude,rasunRef,decsunRef,distsun, toporasun,topodecsun,x,y,z);
+            sunAltitude=altit(topodecsun.d,(sid-toporasun.d),degreesLatitude,az, new DoubleRef() /* [out] parang, ignored */);
+
+            accumoon(jdut,degreesLatitude,sid,elevsea,georamoon,geodecmoon,geodistmoon, ramoonRef,decmoonRef,distmoonRef);
+            lunarElevation=altit(decmoonRef.d,(sid-ramoonRef.d),degreesLatitude,az, new DoubleRef()  /* [out] parang, ignored */);
+
+            rasun = rasunRef.d;
+            decsun = decsunRef.d;
+            ramoon = ramoonRef.d;
+            decmoon = decmoonRef.d;
+            distmoon = distmoonRef.d;
+
+            lunarPhaseAngle = DEG_IN_RADIAN * subtend(ramoon,decmoon,toporasun.d,topodecsun.d);
+            lunarIlluminatedFraction=(float) (0.5*(1.-cos(subtend(ramoon,decmoon,rasun,decsun))));
+        }
+
+        timeDate = date;
+        timeMoon = calculateMoon;
     }
 
     private void getCircumstances(double objra, double objdec, double objepoch,
-                                  double curep, double sid, double lat, DoubleRef jdut, boolean calculateMoon) {
+                                  double curep, double sid, double lat, boolean calculateMoon) {
 
         final double ha, alt;
         final DoubleRef az = new DoubleRef();
@@ -92,41 +150,17 @@ public final class ImprovedSkyCalc extends ImprovedSkyCalcMethods {
 
 		if (calculateMoon) {
 
-			final DoubleRef ramoon = new DoubleRef();
-			final DoubleRef decmoon= new DoubleRef();
-			final DoubleRef distmoon = new DoubleRef();
-			final DoubleRef georamoon = new DoubleRef();
-			final DoubleRef geodecmoon = new DoubleRef();
-			final DoubleRef geodistmoon = new DoubleRef();
-			final DoubleRef rasun = new DoubleRef();
-			final DoubleRef decsun = new DoubleRef();
-			final DoubleRef distsun = new DoubleRef();
-			final DoubleRef x = new DoubleRef();
-			final DoubleRef y = new DoubleRef();
-			final DoubleRef z = new DoubleRef();
-			final DoubleRef toporasun = new DoubleRef();
-			final DoubleRef topodecsun = new DoubleRef();
-			final double elevsea = siteAltitude;
-
-			accusun(jdut.d,sid,degreesLatitude,rasun,decsun,distsun, toporasun,topodecsun,x,y,z);
-			sunAltitude=altit(topodecsun.d,(sid-toporasun.d),degreesLatitude,az, new DoubleRef() /* [out] parang, ignored */);
-
-			accumoon(jdut.d,degreesLatitude,sid,elevsea,georamoon,geodecmoon,geodistmoon, ramoon,decmoon,distmoon);
-			lunarElevation=altit(decmoon.d,(sid-ramoon.d),degreesLatitude,az, new DoubleRef()  /* [out] parang, ignored */);
-
 			// Sky brightness
 			lunarSkyBrightness = null;
-			lunarDistance = DEG_IN_RADIAN * subtend(ramoon.d,decmoon.d,objra,objdec);
-			lunarPhaseAngle = DEG_IN_RADIAN * subtend(ramoon.d,decmoon.d,toporasun.d,topodecsun.d);
+			lunarDistance = DEG_IN_RADIAN * subtend(ramoon,decmoon,objra,objdec);
 			if(lunarElevation > -2.) {
 				if((lunarElevation > 0.) && (altitude > 0.5) && (sunAltitude < -9.)) {
 				  lunarSkyBrightness =
 				     lunskybright(lunarPhaseAngle,lunarDistance,KZEN,lunarElevation,
-						altitude,distmoon.d);
+						altitude,distmoon);
 				}
 			}
 			totalSkyBrightness = sb(180. - lunarPhaseAngle, lunarDistance, 90 - lunarElevation, 90 - altitude, 90 - sunAltitude);
-			lunarIlluminatedFraction=(float) (0.5*(1.-cos(subtend(ramoon.d,decmoon.d,rasun.d,decsun.d))));
 
 		}
     }
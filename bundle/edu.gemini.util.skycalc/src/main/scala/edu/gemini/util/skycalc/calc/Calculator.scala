@@ -4,26 +4,46 @@ package edu.gemini.util.skycalc.calc
  * Base trait for all calculators.
  * A calculator basically holds a matrix of values which are sampled at defined points in time over a given interval.
  * For each sampling point in time a vector with an arbitrary number of values can be stored.
+ * The values are kept in primitive arrays, one per field, in order to avoid boxing every single sample; they
+ * must not be modified once calculated.
  */
 trait Calculator {
 
   val times: Vector[Long]
   def toIndex(t: Long): Int
-  val values: Vector[Vector[Double]]
+  val values: Array[Array[Double]]
 
   lazy val start = times.head
   lazy val end = times.last
   lazy val samples = times.size
 
+  /** The sampling times as a primitive array for fast index lookups. */
+  protected lazy val sampleTimes: Array[Long] = times.toArray
+
   /** True if the values for the given time are covered by this target. */
   def isDefinedAt(t: Long) = t >= start && t <= end
   def value(field: Int, ix: Int) = values(field)(ix)
   def valueAt(field: Int, t: Long) = values(field)(toIndex(t))
   def timedValues(field: Int) = times.zip(values(field))
 
-  def min(field: Int): Double = values(field).min
-  def max(field: Int): Double = values(field).max
-  def mean(field: Int): Double = values(field).sum / samples
+  def min(field: Int): Double = {
+    val vs = values(field)
+    var m = vs(0)
+    for (ix <- 1 until vs.length) if (vs(ix) < m) m = vs(ix)
+    m
+  }
+  def max(field: Int): Double = {
+    val vs = values(field)
+    var m = vs(0)
+    for (ix <- 1 until vs.length) if (vs(ix) > m) m = vs(ix)
+    m
+  }
+  def mean(field: Int): Double = {
+    val vs = values(field)
+    var sum = 0.0
+    for (ix <- 0 until vs.length) sum += vs(ix)
+    sum / samples
+  }
 
 }
 
@@ -69,8 +89,8 @@ trait FixedRateCalculator extends Calculator {
     require(t >= start)
     require(t <= end)
     val ix = Math.floor((t - start) / preciseRate).toInt   // always round down; the sample at this index gives a value <= t
-    require(times(ix) <= t)
-    require(ix == samples-1 || times(ix+1) > t)
+    require(sampleTimes(ix) <= t)
+    require(ix == samples-1 || sampleTimes(ix+1) > t)
     ix
   }
 
@@ -86,11 +106,15 @@ trait IrregularIntervalCalculator extends Calculator {
   /** Irregular interval calculators need to define a vector of times at which to sample the data. */
   val times: Vector[Long]
 
-  /** Gets the index to the left of the given value t. */
+  /** Gets the index to the left of the given value t using a binary search on the sampling times. */
   def toIndex(t: Long) = {
     require(t >= start)
     require(t <= end)
-    val ix = times.zipWithIndex.reverse.dropWhile(_._1 > t).head._2
+    val i = java.util.Arrays.binarySearch(sampleTimes, t)
+    // if t is not sampled i is (-insertion point - 1), the sample to the left is at insertion point - 1;
+    // if t is sampled more than once use the last of these samples
+    var ix = if (i >= 0) i else -i - 2
+    while (ix < samples-1 && sampleTimes(ix+1) == t) ix += 1
     // postconditions: useful for debugging / documentation
     // require(ix >= 0 && ix < samples)
     // require(times(ix) <= t && (ix == samples-1 || times(ix+1) > t))
@@ -110,13 +134,14 @@ trait LinearInterpolatingCalculator extends Calculator {
    */
   override def valueAt(field: Int, t: Long): Double = {
     val ix = toIndex(t)
-    val t0 = times(ix)
-    val v0 = values(field)(ix)
+    val vs = values(field)
+    val t0 = sampleTimes(ix)
+    val v0 = vs(ix)
     if (t0 == t || ix == samples-1) v0
     else {
-      val t1 = times(ix+1)
+      val t1 = sampleTimes(ix+1)
       // require(t0 <= t && t < t1)
-      val v1 = values(field)(ix+1)
+      val v1 = vs(ix+1)
       val v = v0 + (t - t0).toDouble/(t1 - t0) * (v1 - v0)
       // require((v0 >= v1 && v0 >= v && v >= v1) || (v0 < v1 && v0 <= v && v <= v1))
       v
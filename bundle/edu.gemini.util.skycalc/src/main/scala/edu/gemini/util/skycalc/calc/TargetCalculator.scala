@@ -23,7 +23,7 @@ trait TargetCalculator extends Calculator {
   val site: Site
   val target: SkycalcTarget
 
-  val values: Vector[Vector[Double]] = calculate()
+  val values: Array[Array[Double]] = calculate()
 
   import Fields._
 
@@ -69,30 +69,35 @@ trait TargetCalculator extends Calculator {
   // If the target is visible during the scheduled time, return the weighted mean parallactic angle as Some(angle in degrees).
   // Otherwise, the target is not visible, so return None.
   lazy val weightedMeanParallacticAngle: Option[Double] = {
-    val (weightedAngles, weights) = values(ParallacticAngle.id).zip(times).zip(values(Airmass.id)).map {
-      case ((angle, t), airmass) =>
-        // Wrap negative angles as per Andy's comment in OCSADV-16.
-        val normalizedAngle = {
-          if (angle < 0) {
-            val normalizingFactor = {
-              val dec = target.positionAt(t).getDecDeg
-              if (dec - site.latitude < -10) 0
-              else if (dec - site.latitude < 10) 180
-              else 360
-            }
-            angle + normalizingFactor
+    val angles = values(ParallacticAngle.id)
+    val airmasses = values(Airmass.id)
+    var weightedAngles = 0.0
+    var weights = 0.0
+    for (ix <- 0 until samples) {
+      val angle = angles(ix)
+      val airmass = airmasses(ix)
+      // Wrap negative angles as per Andy's comment in OCSADV-16.
+      val normalizedAngle = {
+        if (angle < 0) {
+          val normalizingFactor = {
+            val dec = target.positionAt(sampleTimes(ix)).getDecDeg
+            if (dec - site.latitude < -10) 0
+            else if (dec - site.latitude < 10) 180
+            else 360
           }
-          else angle
+          angle + normalizingFactor
         }
+        else angle
+      }
 
-        //val weight = if (airmass <= 1.0) 0.0 else 1.6 * math.pow(airmass - 1.0, 0.6)
-        val weight = if (airmass <= 1.0) 0.0 else math.pow(airmass - 1.0, 1.3)
-        (normalizedAngle * weight, weight)
-    }.unzip
+      //val weight = if (airmass <= 1.0) 0.0 else 1.6 * math.pow(airmass - 1.0, 0.6)
+      val weight = if (airmass <= 1.0) 0.0 else math.pow(airmass - 1.0, 1.3)
+      weightedAngles += normalizedAngle * weight
+      weights += weight
+    }
 
-    val weightedSum = weights.sum
-    if (weightedSum == 0) None
-    else Some(weightedAngles.sum / weightedSum)
+    if (weights == 0) None
+    else Some(weightedAngles / weights)
   }
 
   def hourAngleAt(t: Long): Double = valueAt(HourAngle.id, t)
@@ -109,44 +114,15 @@ trait TargetCalculator extends Calculator {
    * Calculates all values for the given times.
    * @return
    */
-  protected def calculate() = {
+  protected def calculate(): Array[Array[Double]] = {
     val skycalc = new ImprovedSkyCalc(site)
-
-    // prepare temporary data structure
-    val values = Array (
-      new Array[Double](samples),
-      new Array[Double](samples),
-      new Array[Double](samples),
-      new Array[Double](samples),
-      new Array[Double](samples),
-      new Array[Double](samples),
-      new Array[Double](samples)
-    )
-    // fill temporary data structure with calculated values
+    val values = TargetCalculator.newValues(samples)
     for (ix <- 0 to samples-1) {
-      val t = times(ix)
+      val t = sampleTimes(ix)
       skycalc.calculate(target.positionAt(t), new Date(t), true)
-      values(Elevation.id)(ix) = skycalc.getAltitude
-      values(Azimuth.id)(ix) = skycalc.getAzimuth
-      values(Airmass.id)(ix) = skycalc.getAirmass
-      values(LunarDistance.id)(ix) = skycalc.getLunarDistance
-      values(ParallacticAngle.id)(ix) = skycalc.getParallacticAngle
-      values(HourAngle.id)(ix) = skycalc.getHourAngle
-      values(SkyBrightness.id)(ix) = skycalc.getTotalSkyBrightness.doubleValue
+      TargetCalculator.store(skycalc, values, ix)
     }
-
-    // turn into immutable data structure
-    Vector(
-      // IMPORTANT: Make sure the order reflects the id values of the field enums!
-      Vector(values(Elevation.id):_*),
-      Vector(values(Azimuth.id):_*),
-      Vector(values(Airmass.id):_*),
-      Vector(values(LunarDistance.id):_*),
-      Vector(values(ParallacticAngle.id):_*),
-      Vector(values(HourAngle.id):_*),
-      Vector(values(SkyBrightness.id):_*)
-    )
-
+    values
   }
 }
 
@@ -156,6 +132,11 @@ case class SampleTargetCalculator(site: Site, target: SkycalcTarget, times: Vect
 
 case class SingleValueTargetCalculator(site: Site, target: SkycalcTarget, time: Long) extends SingleValueCalculator with TargetCalculator
 
+/** Target calculator for values that have already been calculated by {@link TargetCalculator.batch}. */
+private[calc] class BatchTargetCalculator(val site: Site, val target: SkycalcTarget, val times: Vector[Long], calculated: Array[Array[Double]]) extends IrregularIntervalCalculator with LinearInterpolatingCalculator with TargetCalculator {
+  override protected def calculate() = calculated
+}
+
 object TargetCalculator {
 
   /** Enumeration that defines the different fields for this calculator for indexed access in sequence. */
@@ -173,5 +154,43 @@ object TargetCalculator {
   def apply(site: Site, target: SkycalcTarget, times: Vector[Long]): TargetCalculator = {
     new SampleTargetCalculator(site, target, times)
   }
+
+  /**
+   * Calculates the values for many targets sampled at the same times, e.g. all observations over all nights of a
+   * semester. The result is the same as creating a calculator for each target separately but the parts of the
+   * calculation that only depend on the time (sidereal time, sun and moon positions) are done only once per sample
+   * time and shared by all targets.
+   */
+  def batch(site: Site, targets: Seq[SkycalcTarget], times: Vector[Long]): Seq[TargetCalculator] = {
+    require(times.size > 0)
+    val skycalc = new ImprovedSkyCalc(site)
+    val ts = times.toArray
+    val tgts = targets.toArray
+    val values = tgts.map(_ => newValues(ts.length))
+    for (ix <- 0 to ts.length-1) {
+      val date = new Date(ts(ix))
+      for (i <- 0 to tgts.length-1) {
+        skycalc.calculate(tgts(i).positionAt(ts(ix)), date, true)
+        store(skycalc, values(i), ix)
+      }
+    }
+    for (i <- 0 to tgts.length-1) yield new BatchTargetCalculator(site, tgts(i), times, values(i))
+  }
+
+  // Creates the arrays for the values of all fields.
+  private def newValues(samples: Int): Array[Array[Double]] =
+    Array.fill(Fields.maxId)(new Array[Double](samples))
+
+  // Stores the values currently held by the skycalc at the given index.
+  private def store(skycalc: ImprovedSkyCalc, vs: Array[Array[Double]], ix: Int): Unit = {
+    import Fields._
+    vs(Elevation.id)(ix) = skycalc.getAltitude
+    vs(Azimuth.id)(ix) = skycalc.getAzimuth
+    vs(Airmass.id)(ix) = skycalc.getAirmass
+    vs(LunarDistance.id)(ix) = skycalc.getLunarDistance
+    vs(ParallacticAngle.id)(ix) = skycalc.getParallacticAngle
+    vs(HourAngle.id)(ix) = skycalc.getHourAngle
+    vs(SkyBrightness.id)(ix) = skycalc.getTotalSkyBrightness.doubleValue
+  }
 }
 
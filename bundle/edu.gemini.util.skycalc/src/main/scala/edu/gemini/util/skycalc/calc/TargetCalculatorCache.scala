@@ -0,0 +1,113 @@
+package edu.gemini.util.skycalc.calc
+
+import edu.gemini.skycalc.TimeUtils
+import edu.gemini.spModel.core.Site
+import edu.gemini.util.skycalc.SkycalcTarget
+import edu.gemini.util.skycalc.calc.TargetCalculatorCache._
+import java.util.concurrent.atomic.AtomicLong
+import java.util.{LinkedHashMap => JLinkedHashMap}
+
+/**
+ * A bounded cache of target calculators that can be shared by all observations and clients in a process.
+ * Calculators are looked up by site, target (i.e. its coordinates or ephemeris), and sampling. Since the target is
+ * part of the key, changing the target of an observation simply results in a lookup for a different calculator;
+ * calculators that are no longer used are eventually evicted.
+ *
+ * The size of the cache is bounded by the total number of samples held by all cached calculators, the least
+ * recently used calculators are evicted first. Calculations are done outside of the cache lock, so two threads
+ * asking for the same missing calculator at the same time may both calculate it.
+ */
+class TargetCalculatorCache(val maxSamples: Long) {
+  require(maxSamples > 0)
+
+  // in access order, i.e. least recently used first
+  private val calculators = new JLinkedHashMap[Key, TargetCalculator](16, 0.75f, true)
+  private var samples = 0L
+
+  private val hits = new AtomicLong()
+  private val misses = new AtomicLong()
+  private val evictions = new AtomicLong()
+
+  /** Gets the calculator for the given interval sampled at the given rate. */
+  def apply(site: Site, target: SkycalcTarget, defined: Interval, rate: Long = TimeUtils.seconds(30)): TargetCalculator =
+    lookup(IntervalKey(site, target, defined, rate), TargetCalculator(site, target, defined, rate))
+
+  /** Gets the calculator for the given sampling times. */
+  def apply(site: Site, target: SkycalcTarget, times: Vector[Long]): TargetCalculator =
+    lookup(SampleKey(site, target, times), TargetCalculator(site, target, times))
+
+  private def lookup(key: Key, calc: => TargetCalculator): TargetCalculator =
+    synchronized { Option(calculators.get(key)) } match {
+      case Some(tc) =>
+        hits.incrementAndGet()
+        tc
+      case None =>
+        misses.incrementAndGet()
+        val tc = calc
+        synchronized {
+          val prev = calculators.put(key, tc)
+          if (prev != null) samples -= prev.samples
+          samples += tc.samples
+          evict()
+        }
+        tc
+    }
+
+  // Removes the least recently used calculators until the cache is within its bounds. Must hold the lock.
+  private def evict(): Unit = {
+    val it = calculators.values.iterator
+    while (samples > maxSamples && it.hasNext) {
+      samples -= it.next().samples
+      it.remove()
+      evictions.incrementAndGet()
+    }
+  }
+
+  /** Removes all calculators for the given target, e.g. after its ephemeris has been updated. */
+  def invalidate(target: SkycalcTarget): Unit = synchronized {
+    val it = calculators.entrySet.iterator
+    while (it.hasNext) {
+      val e = it.next()
+      if (e.getKey.target == target) {
+        samples -= e.getValue.samples
+        it.remove()
+      }
+    }
+  }
+
+  /** Removes all calculators. The hit and miss counts are not reset. */
+  def clear(): Unit = synchronized {
+    calculators.clear()
+    samples = 0
+  }
+
+  /** Gets a snapshot of the cache usage. */
+  def stats: Stats = synchronized {
+    Stats(hits.get, misses.get, evictions.get, calculators.size, samples)
+  }
+
+}
+
+object TargetCalculatorCache {
+
+  /** System property that overrides the default maximum number of samples held by the shared cache. */
+  val MaxSamplesProp = "edu.gemini.util.skycalc.calc.cacheSamples"
+
+  /** Default maximum number of samples, i.e. a few ten megabytes of calculated values. */
+  val DefaultMaxSamples = 500000L
+
+  /** The cache shared by everything in this process. */
+  lazy val shared = new TargetCalculatorCache(java.lang.Long.getLong(MaxSamplesProp, DefaultMaxSamples))
+
+  /** Cache usage statistics. */
+  case class Stats(hits: Long, misses: Long, evictions: Long, entries: Int, samples: Long) {
+    def hitRate: Double = if (hits + misses == 0) 0.0 else hits.toDouble / (hits + misses)
+  }
+
+  private sealed trait Key {
+    def target: SkycalcTarget
+  }
+  private case class IntervalKey(site: Site, target: SkycalcTarget, defined: Interval, rate: Long) extends Key
+  private case class SampleKey(site: Site, target: SkycalcTarget, times: Vector[Long]) extends Key
+
+}
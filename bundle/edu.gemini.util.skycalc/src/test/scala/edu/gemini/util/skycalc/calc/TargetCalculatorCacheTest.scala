@@ -0,0 +1,66 @@
+package edu.gemini.util.skycalc.calc
+
+import edu.gemini.skycalc.TimeUtils
+import edu.gemini.spModel.core.Site
+import edu.gemini.util.skycalc.SiderealTarget
+import jsky.coords.WorldCoords
+import org.junit.Test
+import org.junit.Assert._
+
+/**
+ * Tests the mechanics of the target calculator cache.
+ */
+class TargetCalculatorCacheTest {
+
+  private val t = TimeUtils.time(2014, 3, 1, 20, 0, Site.GN.timezone)
+  private val interval = Interval(t, t + TimeUtils.hours(1))   // 121 samples at 30 seconds
+
+  @Test def sharesCalculators(): Unit = {
+    val cache = new TargetCalculatorCache(10000)
+    val tc0 = cache(Site.GN, SiderealTarget(new WorldCoords(150, 20)), interval)
+    val tc1 = cache(Site.GN, SiderealTarget(new WorldCoords(150, 20)), interval)
+    val tc2 = cache(Site.GN, SiderealTarget(new WorldCoords(150, 21)), interval)
+    val tc3 = cache(Site.GS, SiderealTarget(new WorldCoords(150, 20)), interval)
+
+    assertSame(tc0, tc1)
+    assertNotSame(tc0, tc2)
+    assertNotSame(tc0, tc3)
+
+    val stats = cache.stats
+    assertEquals(1, stats.hits)
+    assertEquals(3, stats.misses)
+    assertEquals(3, stats.entries)
+    assertEquals(3 * tc0.samples, stats.samples)
+  }
+
+  @Test def evictsLeastRecentlyUsed(): Unit = {
+    val cache = new TargetCalculatorCache(250)
+    val c0 = SiderealTarget(new WorldCoords(150, 20))
+    val c1 = SiderealTarget(new WorldCoords(10, -30))
+    val c2 = SiderealTarget(new WorldCoords(270, 60))
+
+    val tc0 = cache(Site.GN, c0, interval)
+    cache(Site.GN, c1, interval)
+    assertSame(tc0, cache(Site.GN, c0, interval))   // c1 is now the least recently used
+    cache(Site.GN, c2, interval)
+
+    assertEquals(1, cache.stats.evictions)
+    assertEquals(2, cache.stats.entries)
+    assertSame(tc0, cache(Site.GN, c0, interval))
+  }
+
+  @Test def invalidatesTarget(): Unit = {
+    val cache = new TargetCalculatorCache(10000)
+    val c = SiderealTarget(new WorldCoords(150, 20))
+    val tc0 = cache(Site.GN, c, interval)
+    val tc1 = cache(Site.GN, c, Vector(t, t + 10))
+    cache(Site.GN, SiderealTarget(new WorldCoords(10, -30)), interval)
+
+    cache.invalidate(c)
+    assertEquals(1, cache.stats.entries)
+    assertEquals(tc0.samples, cache.stats.samples)
+    assertNotSame(tc0, cache(Site.GN, c, interval))
+    assertNotSame(tc1, cache(Site.GN, c, Vector(t, t + 10)))
+  }
+
+}
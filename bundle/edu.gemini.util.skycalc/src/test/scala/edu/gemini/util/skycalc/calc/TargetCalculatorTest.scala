@@ -6,6 +6,7 @@ import edu.gemini.util.skycalc.SiderealTarget
 import org.junit.{Ignore, Test}
 import org.junit.Assert._
 import edu.gemini.skycalc.TimeUtils
+import edu.gemini.util.skycalc.calc.TargetCalculator.Fields
 
 /**
  * Compare some random values with results from http://catserver.ing.iac.es/staralt/index.php
@@ -48,6 +49,35 @@ class TargetCalculatorTest {
     assertEquals(37, target.minElevation, 1)
   }
 
+  @Test def findsIrregularSamples(): Unit = {
+    val t = TimeUtils.time(2014, 3, 1, 20, 0, Site.GN.timezone)
+    val c = SiderealTarget(new WorldCoords(150, 20))
+    val times = Vector(t, t + 10, t + 100, t + 1000, t + 10000)
+    val target = SampleTargetCalculator(Site.GN, c, times)
+
+    assertEquals(0, target.toIndex(t))
+    assertEquals(0, target.toIndex(t + 9))
+    assertEquals(1, target.toIndex(t + 10))
+    assertEquals(2, target.toIndex(t + 999))
+    assertEquals(4, target.toIndex(t + 10000))
+    assertEquals(target.value(Fields.Elevation.id, 3), target.valueAt(Fields.Elevation, t + 1000), 0)
+  }
+
+  @Test def calculatesBatch(): Unit = {
+    val t = TimeUtils.time(2014, 3, 1, 20, 0, Site.GN.timezone)
+    val times = Vector.tabulate(48)(i => t + i * TimeUtils.minutes(5))
+    val targets = Seq(SiderealTarget(new WorldCoords(150, 20)), SiderealTarget(new WorldCoords(10, -30)), SiderealTarget(new WorldCoords(270, 60)))
+
+    val batch = TargetCalculator.batch(Site.GN, targets, times)
+    assertEquals(targets.size, batch.size)
+    targets.zip(batch).foreach { case (c, b) =>
+      val single = TargetCalculator(Site.GN, c, times)
+      for (f <- Fields.values; ix <- 0 until times.size) {
+        assertEquals(single.value(f.id, ix), b.value(f.id, ix), 0)
+      }
+    }
+  }
+
   // === this is for performance trimming purposes, not an actual test case
 
   @Ignore
@@ -68,4 +98,28 @@ class TargetCalculatorTest {
 
     println(s"time: ${System.currentTimeMillis() - t}ms" )
   }
+
+  // Compares calculating 200 targets over a night one by one with calculating them in a batch.
+  @Ignore
+  @Test def batchTimingTest(): Unit = {
+    val t0 = TimeUtils.time(2014, 3, 1, 14, 0, Site.GN.timezone)
+    val times = Vector.tabulate(288)(i => t0 + i * TimeUtils.minutes(5))
+    val targets = (0 until 200).map(i => SiderealTarget(new WorldCoords(i * 1.8, (i % 120) - 60)))
+
+    for (run <- 1 to 5) {
+      val t1 = System.currentTimeMillis()
+      val single = targets.map(c => TargetCalculator(Site.GN, c, times).meanElevation).sum
+      val t2 = System.currentTimeMillis()
+      val batch = TargetCalculator.batch(Site.GN, targets, times).map(_.meanElevation).sum
+      val t3 = System.currentTimeMillis()
+      println(s"run $run: single ${t2 - t1}ms, batch ${t3 - t2}ms ($single, $batch)")
+    }
+
+    // lookups on an irregular sampling
+    val tc = TargetCalculator(Site.GN, targets.head, times)
+    val t4 = System.currentTimeMillis()
+    var sum = 0.0
+    for (i <- 0 until 1000000) sum += tc.elevationAt(t0 + (i % 287) * TimeUtils.minutes(5) + 1)
+    println(s"lookups: ${System.currentTimeMillis() - t4}ms ($sum)")
+  }
 }
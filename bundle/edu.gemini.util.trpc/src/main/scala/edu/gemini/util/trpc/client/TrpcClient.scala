@@ -26,6 +26,18 @@ object TrpcClient {
   val ConnectTimeout = 20 * 1000
   val ReadTimeout    = 0
 
+  /**
+   * System property read by the client only.  When set to false the client neither asks for compressed responses
+   * nor compresses its requests, so the calls it makes are uncompressed both ways.
+   */
+  val CompressProp = "edu.gemini.util.trpc.compress"
+
+  private val compress = Option(System.getProperty(CompressProp)).forall(_.toBoolean)
+
+  // Servers known to handle deflated requests, i.e. that have sent us a deflated response. Requests to any other
+  // server are sent uncompressed, since older servers can't read them.
+  private val deflatePeers = java.util.Collections.newSetFromMap(new java.util.concurrent.ConcurrentHashMap[(String, Int), java.lang.Boolean]())
+
   private val hostnameVerifier: HostnameVerifier = new HostnameVerifier {
      def verify(s: String, sslSession: SSLSession) = true
   }
@@ -133,12 +145,18 @@ class TrpcClient private (host: String, port: Int, connectTimeout: Int, readTime
           conn.setDoInput(true)
           conn.setReadTimeout(readTimeout)
 
+          val deflateRequest = compress && deflatePeers.contains((host, port))
+          if (compress) conn.setRequestProperty("Accept-Encoding", Deflate)
+          if (deflateRequest) conn.setRequestProperty("Content-Encoding", Deflate)
+
           if (Log.isLoggable(Level.FINE))
             Log.fine("Sending %d principals:".format(keys.size) + keys.map(p => "\n\t" + p))
 
-          closing(conn.getOutputStream)(_.writeRaw(Version.current, (args, keys))) // note that args may be null
+          closing(conn.getOutputStream) { os =>
+            (if (deflateRequest) os.deflating else os).writeRaw(Version.current, (args, keys)) // note that args may be null
+          }
           conn.getResponseCode match {
-            case HttpServletResponse.SC_OK => closing(conn.getInputStream)(_.readRaw.next[Try[AnyRef]]) match {
+            case HttpServletResponse.SC_OK => read(conn) match {
               case \/-(a) => a
               case -\/(e) =>
                 val localFrames = new Exception().getStackTrace.drop(2) // throw away the proxy frames (?)
@@ -161,4 +179,12 @@ class TrpcClient private (host: String, port: Int, connectTimeout: Int, readTime
     Proxy.newProxyInstance(getClass.getClassLoader, Array(m.erasure), handler).asInstanceOf[A]
   }
 
+  // Reads the result, inflating it if needed.
+  private def read(conn: HttpsURLConnection): Try[AnyRef] = {
+    val deflated = Option(conn.getContentEncoding).exists(_.trim.equalsIgnoreCase(Deflate))
+    if (deflated) deflatePeers.add((host, port))
+
+    closing(if (deflated) conn.getInputStream.inflating else conn.getInputStream)(_.readRaw.next[Try[AnyRef]])
+  }
+
 }
@@ -3,11 +3,15 @@ package edu.gemini.util.trpc
 import scalaz._
 import Scalaz._
 import java.io._
+import java.util.zip.{InflaterInputStream, DeflaterOutputStream, Deflater}
 
 package object common {
 
   val BufSize = 1024 * 16 // ok?
 
+  /** Content encoding for deflate compressed requests and responses. */
+  val Deflate = "deflate"
+
   type Try[A] = Exception \/ A
 
   def lift[A](a: => A):Try[A] = catching(a.right[Exception])
@@ -29,10 +33,23 @@ package object common {
           oos => as.foreach(oos.writeObject)
         }
       }
+
+    /** Deflate compresses everything written to the stream, flushing compressed data whenever this stream is flushed. */
+    def deflating: OutputStream = {
+      val d = new Deflater(Deflater.BEST_SPEED)
+      new DeflaterOutputStream(os, d, BufSize, true) {
+        override def close(): Unit =
+          try super.close() finally d.end()
+      }
+    }
   }
 
   implicit class InputStreamOps(is:InputStream) {
 
+    /** Inflates a stream written through `deflating`. */
+    def inflating: InputStream =
+      new InflaterInputStream(is)
+
     def readRaw:ObjectInputStream = {
       new ObjectInputStream(new BufferedInputStream(is, BufSize)) {
 
@@ -55,6 +72,7 @@ package object common {
       val obj = ois.readObject()
       obj.asInstanceOf[A]
     }
+
   }
 
   def closing[A <: { def close():Unit }, B](a:A)(f: A => B):B = try {
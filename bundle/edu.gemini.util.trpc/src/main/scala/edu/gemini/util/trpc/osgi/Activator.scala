@@ -6,6 +6,7 @@ import edu.gemini.util.osgi.Tracker._
 import edu.gemini.util.osgi.SecureServiceFactory.BundleContextOps
 import edu.gemini.util.security.auth.keychain._
 import edu.gemini.util.security.auth.keychain.Action._
+import edu.gemini.util.security.principal.GeminiPrincipal
 import edu.gemini.util.trpc.auth._
 import edu.gemini.util.trpc.server.TrpcServlet
 import java.io.File
@@ -79,11 +80,23 @@ class Activator extends BundleActivator with ExternalStorage {
     context.registerService(classOf[KeyChain], keyChain, null) // no props
 
     // TRPC Service
-    tracker = track[KeyService, HttpService, HttpService](context) { (ks, http) =>
-      http.registerServlet(Alias, new Servlet(ks), new util.Hashtable[Any, Any], null)
+    tracker = track[KeyService, HttpService, (HttpService, Option[(ServiceReference[KeyServer], KeyServer)], GeminiPrincipal => Unit)](context) { (ks, http) =>
+      val servlet = new Servlet(ks)
+      http.registerServlet(Alias, servlet, new util.Hashtable[Any, Any], null)
       Log.info("Registered TRPC service at %s".format(Alias))
-      http
-    } { _.unregister(Alias) }
+
+      // If the key server is local, forget validated keys as soon as they are revoked
+      val revoke = (p: GeminiPrincipal) => servlet.keys.revoke(p)
+      val server = Option(context.getServiceReference(classOf[KeyServer])).flatMap(r => Option(context.getService(r)).map((r, _)))
+      server.foreach(_._2.addRevocationListener(revoke))
+      (http, server, revoke)
+    } { case (http, server, revoke) =>
+      server.foreach { case (ref, ks) =>
+        ks.removeRevocationListener(revoke)
+        context.ungetService(ref)
+      }
+      http.unregister(Alias)
+    }
     tracker.open()
 
   }
@@ -0,0 +1,47 @@
+package edu.gemini.util.trpc.server
+
+import edu.gemini.util.trpc.common._
+import java.lang.reflect.{InvocationTargetException, Method}
+import java.util.concurrent.ConcurrentHashMap
+import scalaz._
+import Scalaz._
+
+/**
+ * Methods resolved for TRPC calls, by service class, method name and argument types. Finding a compatible method
+ * walks the declared methods of the whole class hierarchy, so this is only done the first time a given call is seen.
+ * Calls that can't be resolved are not remembered.
+ */
+class DispatchTable {
+
+  private val methods = new ConcurrentHashMap[(Class[_], String, List[Class[_]]), Method]()
+
+  /** Finds the method of the service's class that can be invoked with the given arguments. */
+  def method(c: Class[_], name: String, args: Seq[AnyRef]): Try[Method] = {
+    val argTypes: List[Class[_]] = ~Option(args).map(_.toList.map(a => Option(a).map(_.getClass).orNull))
+    val key = (c, name, argTypes)
+    Option(methods.get(key)) match {
+      case Some(m) => m.right
+      case None    =>
+        c.getCompatibleMethod(name, args).map { m =>
+          m.setAccessible(true) // public stuff isn't visible if the class isn't public
+          Option(methods.putIfAbsent(key, m)).getOrElse(m)
+        }
+    }
+  }
+
+  /** Invokes the named method on the service, unwrapping any exception thrown by the method itself. */
+  def invoke(service: Any, name: String, args: Array[AnyRef]): Try[AnyRef] =
+    method(service.getClass, name, args).map(m => call(m, service, args))
+
+  /** Invokes a method previously found with `method`, unwrapping any exception thrown by the method itself. */
+  def call(m: Method, service: Any, args: Array[AnyRef]): AnyRef =
+    try {
+      m.invoke(service, args: _*)
+    } catch {
+      case ite: InvocationTargetException => throw ite.getCause // unwrap the exception
+    }
+
+  /** Number of resolved calls. */
+  def size: Int = methods.size
+
+}
@@ -0,0 +1,62 @@
+package edu.gemini.util.trpc.server
+
+import edu.gemini.util.security.auth.keychain._
+import edu.gemini.util.security.principal.GeminiPrincipal
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Keys recently validated by the key service. Validating a key verifies its signature and looks up the principal's
+ * key version, so each key is only validated again once `ttl` milliseconds have passed. Failed validations are never
+ * remembered. Keys whose principal has been revoked should be removed with `revoke`; otherwise they are accepted
+ * until they expire.
+ */
+class KeyCache(auth: KeyService, val ttl: Long, val maxKeys: Int) {
+  require(ttl >= 0 && maxKeys > 0)
+
+  // Key -> expiration time
+  private val validated = new ConcurrentHashMap[Key, java.lang.Long]()
+
+  private val hits = new AtomicLong()
+  private val misses = new AtomicLong()
+
+  /** True if the key is valid, asking the key service only if it hasn't been validated recently. */
+  def isValid(key: Key): Boolean = {
+    val now = System.currentTimeMillis
+    val exp = validated.get(key)
+    if (exp != null && exp > now) {
+      hits.incrementAndGet()
+      true
+    } else {
+      misses.incrementAndGet()
+      val valid = auth.validateKey(key).isRight
+      if (valid && ttl > 0) {
+        if (validated.size >= maxKeys) purge(now)
+        validated.put(key, now + ttl)
+      } else validated.remove(key)
+      valid
+    }
+  }
+
+  /** Forgets all keys of the given principal, e.g. after its key has been revoked or its password changed. */
+  def revoke(p: GeminiPrincipal): Unit = {
+    val it = validated.keySet.iterator
+    while (it.hasNext) if (it.next().principal == p) it.remove()
+  }
+
+  /** Forgets all keys. */
+  def clear(): Unit =
+    validated.clear()
+
+  /** (hits, misses) so far. */
+  def stats: (Long, Long) =
+    (hits.get, misses.get)
+
+  // Drops expired keys, or everything if that isn't enough to make room.
+  private def purge(now: Long): Unit = {
+    val it = validated.values.iterator
+    while (it.hasNext) if (it.next() <= now) it.remove()
+    if (validated.size >= maxKeys) validated.clear()
+  }
+
+}
@@ -0,0 +1,111 @@
+package edu.gemini.util.trpc.server
+
+import java.io.{FilterInputStream, FilterOutputStream, InputStream, OutputStream}
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
+import scala.collection.JavaConverters._
+
+/**
+ * Latency and payload size metrics per TRPC method (i.e., `class/method` path).  Payload sizes are recorded both as
+ * sent over the wire and uncompressed, which measures what compression saves on each method.
+ */
+class TrpcMetrics {
+  import TrpcMetrics._
+
+  private val methods = new ConcurrentHashMap[String, Counters]()
+
+  /** Records a call to the given method. The raw byte counts are the payload sizes before compression. */
+  def record(method: String, nanos: Long, requestBytes: Long, responseBytes: Long, rawRequestBytes: Long, rawResponseBytes: Long, failed: Boolean): Unit = {
+    val c = Option(methods.get(method)).getOrElse {
+      val n = new Counters
+      Option(methods.putIfAbsent(method, n)).getOrElse(n)
+    }
+    c.calls.incrementAndGet()
+    if (failed) c.failures.incrementAndGet()
+    c.nanos.addAndGet(nanos)
+    c.requestBytes.addAndGet(requestBytes)
+    c.responseBytes.addAndGet(responseBytes)
+    c.rawRequestBytes.addAndGet(rawRequestBytes)
+    c.rawResponseBytes.addAndGet(rawResponseBytes)
+    var max = c.maxNanos.get
+    while (nanos > max && !c.maxNanos.compareAndSet(max, nanos)) max = c.maxNanos.get
+  }
+
+  /** Snapshot of the metrics recorded so far, by method. */
+  def snapshot: Map[String, MethodMetrics] =
+    methods.asScala.map { case (m, c) =>
+      m -> MethodMetrics(c.calls.get, c.failures.get, c.nanos.get, c.maxNanos.get, c.requestBytes.get, c.responseBytes.get,
+                         c.rawRequestBytes.get, c.rawResponseBytes.get)
+    }.toMap
+
+  /** Forgets all metrics. */
+  def reset(): Unit =
+    methods.clear()
+
+}
+
+object TrpcMetrics {
+
+  private class Counters {
+    val calls         = new AtomicLong()
+    val failures      = new AtomicLong()
+    val nanos         = new AtomicLong()
+    val maxNanos      = new AtomicLong()
+    val requestBytes  = new AtomicLong()
+    val responseBytes = new AtomicLong()
+    val rawRequestBytes  = new AtomicLong()
+    val rawResponseBytes = new AtomicLong()
+  }
+
+  /** Metrics of a single method. Failures are calls that returned an exception to the client. */
+  case class MethodMetrics(calls: Long, failures: Long, totalNanos: Long, maxNanos: Long, requestBytes: Long, responseBytes: Long,
+                           rawRequestBytes: Long, rawResponseBytes: Long) {
+    def meanMillis: Double = if (calls == 0) 0.0 else totalNanos / 1e6 / calls
+    def maxMillis: Double = maxNanos / 1e6
+
+    /** Wire size of the responses as a fraction of their uncompressed size. */
+    def responseRatio: Double = if (rawResponseBytes == 0) 1.0 else responseBytes.toDouble / rawResponseBytes
+
+    override def toString: String =
+      f"calls=$calls failures=$failures mean=$meanMillis%.2fms max=$maxMillis%.2fms in=${requestBytes}B (raw ${rawRequestBytes}B) out=${responseBytes}B (raw ${rawResponseBytes}B, ratio $responseRatio%.2f)"
+  }
+
+  /** An input stream that counts the bytes read from it. */
+  class CountingInputStream(in: InputStream) extends FilterInputStream(in) {
+    var count = 0L
+
+    override def read(): Int = {
+      val b = super.read()
+      if (b >= 0) count += 1
+      b
+    }
+
+    override def read(b: Array[Byte], off: Int, len: Int): Int = {
+      val n = super.read(b, off, len)
+      if (n > 0) count += n
+      n
+    }
+
+    override def skip(n: Long): Long = {
+      val s = super.skip(n)
+      count += s
+      s
+    }
+  }
+
+  /** An output stream that counts the bytes written to it. */
+  class CountingOutputStream(out: OutputStream) extends FilterOutputStream(out) {
+    var count = 0L
+
+    override def write(b: Int): Unit = {
+      out.write(b)
+      count += 1
+    }
+
+    override def write(b: Array[Byte], off: Int, len: Int): Unit = {
+      out.write(b, off, len)
+      count += len
+    }
+  }
+
+}
@@ -2,7 +2,6 @@ package edu.gemini.util.trpc.server
 
 import javax.servlet.http.{HttpServletResponse, HttpServletRequest, HttpServlet}
 import edu.gemini.util.trpc.common._
-import java.lang.reflect.InvocationTargetException
 import edu.gemini.util.security.auth.keychain._
 import edu.gemini.util.security.auth.keychain.Action._
 import java.security.{PrivilegedActionException, PrivilegedAction, Principal}
@@ -14,15 +13,36 @@ import java.util.logging.{Level, Logger}
 import scala.util.DynamicVariable
 
 abstract class TrpcServlet(auth: KeyService) extends HttpServlet {
+  import TrpcServlet._
+
   val Log = Logger.getLogger(this.getClass.getName)
 
+  /** Service methods resolved so far. */
+  val dispatch = new DispatchTable
+
+  /** Recently validated keys. Keys of revoked principals must be removed with `keys.revoke`. */
+  val keys = new KeyCache(auth, java.lang.Long.getLong(KeyTtlProp, DefaultKeyTtl), MaxKeys)
+
+  /** Latency and payload size of the calls to each method. */
+  val metrics = new TrpcMetrics
+
   // TODO: we can replace the try/catch stuff with Validation.fromTryCatchThrowable in Scalaz 7.1
 
   // The idea is that you pass class, method, args and get back a result or a throwable.
   // POST goes to http://server:host/trpc/class/method, where local path /class/method
-  // Request payload is an Array[AnyRef] serialized as a raw bytestream
+  // Request payload is an Array[AnyRef] serialized as a raw bytestream, deflated if so marked by Content-Encoding.
+  // The response is deflated if the client sends Accept-Encoding: deflate.
   override def service(req: HttpServletRequest, res: HttpServletResponse) {
 
+    val start = System.nanoTime
+    val in  = new TrpcMetrics.CountingInputStream(req.getInputStream)
+    val out = new TrpcMetrics.CountingOutputStream(res.getOutputStream)
+    // Uncompressed payload sizes, to measure what compression saves.
+    val rawIn  = new TrpcMetrics.CountingInputStream(if (req.isDeflated) in.inflating else in)
+    var rawOut = 0L
+    var resolved = false
+    var failed = true
+
     try {
 
       // Our result object is either an exception or a valid result
@@ -31,34 +51,46 @@ abstract class TrpcServlet(auth: KeyService) extends HttpServlet {
         r <- catching {  // capture any exceptions thrown within, and turn to Failure
           for {
             n  <- req.path(1) // the name of our method
-            a  <- req.payload // our argument array
+            a  <- req.payload(rawIn) // our argument array
             ps <- subject(a._2)
-            a <- withService(c, ps) { t => t.getClass.getCompatibleMethod(n, a._1).map { m =>
-                try {
-                  m.setAccessible(true) // public stuff isn't visible if the class isn't public
-                  m.invoke(t, a._1: _*)
-                } catch {
-                  case ite:InvocationTargetException => throw ite.getCause // unwrap the exception
-                }
+            a <- withService(c, ps) { t => dispatch.method(t.getClass, n, a._1).map { m =>
+                resolved = true
+                dispatch.call(m, t, a._1)
               }
             }
           } yield a
         }
       } yield r
 
-      // Either way, send it back.
-      closing(res.getOutputStream)(_.writeRaw(result))
+      // Either way, send it back, compressed if the client can handle it.
+      val os = if (req.acceptsDeflate) {
+        res.setHeader("Content-Encoding", Deflate)
+        out.deflating
+      } else out
+      closing(new TrpcMetrics.CountingOutputStream(os)) { os =>
+        try os.writeRaw(result) finally rawOut = os.count
+      }
+      failed = result.isLeft
 
     } catch {
       case t: Exception =>
         Log.log(Level.INFO, s"Problem writing response to ${req.getRemoteAddr} for request: class=${req.path(0).getOrElse("")} method=${req.path(1).getOrElse("")}", t)
         throw t
+    } finally {
+      // Only methods that exist get their own metrics, everything else is lumped together
+      val method = if (resolved) s"${req.path(0).getOrElse("")}/${req.path(1).getOrElse("")}" else Unresolved
+      metrics.record(method, System.nanoTime - start, in.count, out.count, rawIn.count, rawOut, failed)
     }
 
   }
 
+  override def destroy() {
+    metrics.snapshot.toList.sortBy(_._1).foreach { case (m, mm) => Log.info(s"TRPC $m: $mm") }
+    super.destroy()
+  }
+
   def subject(ps:Set[Key]): Try[Set[Principal]] = try {
-    ps.collect { case a if auth.validateKey(a).isRight => a.get._1 : Principal } .toSet.right
+    ps.collect { case a if keys.isValid(a) => a.get._1 : Principal } .toSet.right
   } catch {
     case e:Exception => e.left
   }
@@ -70,3 +102,18 @@ abstract class TrpcServlet(auth: KeyService) extends HttpServlet {
   protected def withService[B](clazz: String, ps: Set[Principal])(f: Any => B): B
 
 }
+
+object TrpcServlet {
+
+  /** System property with the number of milliseconds a validated key is trusted before it is validated again. */
+  val KeyTtlProp = "edu.gemini.util.trpc.keyTtl"
+
+  val DefaultKeyTtl = 5 * 60 * 1000L
+
+  /** Maximum number of validated keys remembered. */
+  val MaxKeys = 10000
+
+  /** Metrics name for calls that didn't get as far as finding a method. */
+  val Unresolved = "(unresolved)"
+
+}
@@ -6,7 +6,7 @@ import Scalaz._
 import javax.servlet.http.{HttpServletResponse, HttpServletRequest}
 import java.{lang => jl}
 import java.lang.reflect.Method
-import java.io.{InvalidClassException, ByteArrayOutputStream, ByteArrayInputStream, ObjectInputStream}
+import java.io.{InputStream, InvalidClassException, ByteArrayOutputStream, ByteArrayInputStream, ObjectInputStream}
 import edu.gemini.spModel.core.{VersionException, Version}
 import edu.gemini.util.security.auth.keychain._
 
@@ -20,10 +20,14 @@ package object server {
       Option(req.getParameter(s)) \/> new IllegalArgumentException("Required request parameter %s was not found.".format(s))
 
     def payload: Try[(Array[AnyRef], Set[Key])] =
+      payload(req.getInputStream)
+
+    // Reads the payload from the given stream, which wraps the request's input stream
+    def payload(is: InputStream): Try[(Array[AnyRef], Set[Key])] =
       lift {
 
         // Get our object stream
-        val ios = req.getInputStream.readRaw
+        val ios = is.readRaw
 
         // Check serial compatibility
         try {
@@ -41,6 +45,14 @@ package object server {
 
       }
 
+    /** True if the request payload is deflate compressed. */
+    def isDeflated: Boolean =
+      Option(req.getHeader("Content-Encoding")).exists(_.trim.equalsIgnoreCase(Deflate))
+
+    /** True if the client accepts a deflate compressed response. */
+    def acceptsDeflate: Boolean =
+      Option(req.getHeader("Accept-Encoding")).exists(_.split(",").exists(_.trim.toLowerCase.startsWith(Deflate)))
+
     def path(n: Int): Try[String] =
       pathElems.lift(n) \/> new IllegalArgumentException("Path element %d was not found.".format(n))
 